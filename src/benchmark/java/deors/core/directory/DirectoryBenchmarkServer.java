@@ -0,0 +1,235 @@
+package deors.core.directory;
+
+import java.util.Random;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+
+/**
+ * In-process LDAP server used by the benchmarks.<br>
+ *
+ * The server listens on an ephemeral port of the loopback interface and is seeded with a
+ * synthetic directory of <code>inetOrgPerson</code> entries under
+ * <code>ou=people,dc=example,dc=com</code>. Entry contents are generated from a seed, so every
+ * run with the same parameters reads exactly the same data. Each entry has single-valued
+ * string attributes (<code>uid</code>, <code>cn</code>, <code>sn</code>, <code>givenName</code>,
+ * <code>mail</code>), a multi-valued <code>telephoneNumber</code>, a <code>description</code>
+ * and a binary <code>jpegPhoto</code> of the configured sizes.<br>
+ *
+ * Schema checking is disabled so that attribute sizes are not constrained by the server.
+ *
+ * @author deors
+ * @version 1.0
+ */
+final class DirectoryBenchmarkServer implements AutoCloseable {
+
+    /**
+     * The directory base DN.
+     */
+    static final String BASE_DN = "dc=example,dc=com"; //$NON-NLS-1$
+
+    /**
+     * The DN of the container holding the synthetic entries.
+     */
+    static final String PEOPLE_DN = "ou=people," + BASE_DN; //$NON-NLS-1$
+
+    /**
+     * The DN of the administrative user.
+     */
+    static final String ADMIN_DN = "cn=admin," + BASE_DN; //$NON-NLS-1$
+
+    /**
+     * The password of the administrative user.
+     */
+    static final String ADMIN_PASSWORD = "secret"; //$NON-NLS-1$
+
+    /**
+     * The host the server listens on.
+     */
+    static final String HOST = "127.0.0.1"; //$NON-NLS-1$
+
+    /**
+     * Characters used to generate string values.
+     */
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789"; //$NON-NLS-1$
+
+    /**
+     * The embedded server.
+     */
+    private final InMemoryDirectoryServer server;
+
+    /**
+     * The number of synthetic entries.
+     */
+    private final int entryCount;
+
+    /**
+     * Starts a new server seeded with a synthetic directory.
+     *
+     * @param entryCount the number of entries to create
+     * @param telephoneCount the number of values of the multi-valued attribute
+     * @param descriptionSize the length in characters of the description attribute
+     * @param photoSize the length in bytes of the binary attribute
+     * @param seed the seed of the random data generator
+     *
+     * @throws LDAPException the server could not be started or seeded
+     */
+    DirectoryBenchmarkServer(int entryCount, int telephoneCount, int descriptionSize,
+                             int photoSize, long seed)
+        throws LDAPException {
+
+        super();
+
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+        config.addAdditionalBindCredentials(ADMIN_DN, ADMIN_PASSWORD);
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("default", 0)); //$NON-NLS-1$
+        config.setSchema(null);
+
+        this.server = new InMemoryDirectoryServer(config);
+        this.entryCount = entryCount;
+
+        seed(telephoneCount, descriptionSize, photoSize, seed);
+        server.startListening();
+    }
+
+    /**
+     * Creates the synthetic entries.
+     *
+     * @param telephoneCount the number of values of the multi-valued attribute
+     * @param descriptionSize the length in characters of the description attribute
+     * @param photoSize the length in bytes of the binary attribute
+     * @param seed the seed of the random data generator
+     *
+     * @throws LDAPException the entries could not be added
+     */
+    private void seed(int telephoneCount, int descriptionSize, int photoSize, long seed)
+        throws LDAPException {
+
+        Random random = new Random(seed);
+
+        Entry root = new Entry(BASE_DN);
+        root.addAttribute("objectClass", "top", "domain"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        root.addAttribute("dc", "example"); //$NON-NLS-1$ //$NON-NLS-2$
+        server.add(root);
+
+        Entry people = new Entry(PEOPLE_DN);
+        people.addAttribute("objectClass", "top", "organizationalUnit"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        people.addAttribute("ou", "people"); //$NON-NLS-1$ //$NON-NLS-2$
+        server.add(people);
+
+        for (int i = 0; i < entryCount; i++) {
+            String uid = uid(i);
+            String givenName = randomString(random, 8);
+            String surname = randomString(random, 12);
+
+            String[] telephoneNumbers = new String[telephoneCount];
+            for (int j = 0; j < telephoneCount; j++) {
+                telephoneNumbers[j] = String.format("+1 555 %07d", random.nextInt(10000000)); //$NON-NLS-1$
+            }
+
+            byte[] photo = new byte[photoSize];
+            random.nextBytes(photo);
+
+            Entry entry = new Entry(getEntryDN(i));
+            entry.addAttribute("objectClass", "top", "person", "organizationalPerson", "inetOrgPerson"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+            entry.addAttribute("uid", uid); //$NON-NLS-1$
+            entry.addAttribute("cn", givenName + ' ' + surname); //$NON-NLS-1$
+            entry.addAttribute("sn", surname); //$NON-NLS-1$
+            entry.addAttribute("givenName", givenName); //$NON-NLS-1$
+            entry.addAttribute("mail", uid + "@example.com"); //$NON-NLS-1$ //$NON-NLS-2$
+            if (telephoneCount > 0) {
+                entry.addAttribute("telephoneNumber", telephoneNumbers); //$NON-NLS-1$
+            }
+            entry.addAttribute("description", randomString(random, descriptionSize)); //$NON-NLS-1$
+            if (photoSize > 0) {
+                entry.addAttribute("jpegPhoto", photo); //$NON-NLS-1$
+            }
+            server.add(entry);
+        }
+    }
+
+    /**
+     * Returns the uid of the synthetic entry with the given index.
+     *
+     * @param index the entry index
+     *
+     * @return the uid
+     */
+    static String uid(int index) {
+
+        return String.format("user%07d", index); //$NON-NLS-1$
+    }
+
+    /**
+     * Returns the DN of the synthetic entry with the given index.
+     *
+     * @param index the entry index
+     *
+     * @return the entry DN
+     */
+    static String getEntryDN(int index) {
+
+        return "uid=" + uid(index) + ',' + PEOPLE_DN; //$NON-NLS-1$
+    }
+
+    /**
+     * Returns the DNs of all synthetic entries.
+     *
+     * @return the entry DNs, in index order
+     */
+    String[] getEntryDNs() {
+
+        String[] dns = new String[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            dns[i] = getEntryDN(i);
+        }
+        return dns;
+    }
+
+    /**
+     * Returns the number of synthetic entries.
+     *
+     * @return the number of entries
+     */
+    int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the port
+     */
+    int getPort() {
+        return server.getListenPort();
+    }
+
+    /**
+     * Stops the server and closes all client connections.
+     */
+    @Override
+    public void close() {
+
+        server.shutDown(true);
+    }
+
+    /**
+     * Generates a random string.
+     *
+     * @param random the random data generator
+     * @param length the string length
+     *
+     * @return the string
+     */
+    private static String randomString(Random random, int length) {
+
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,148 @@
+package deors.core.directory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPException;
+
+/**
+ * Benchmarks of connection establishment.<br>
+ *
+ * Compares the cost of opening and closing a dedicated connection for every unit of work
+ * against borrowing an already open connection from a <code>DirectoryConnectionPool</code>.
+ * The embedded server holds a minimal directory, as entry data does not affect these
+ * costs.<br>
+ *
+ * Thread counts are selected with the JMH <code>-t</code> option and allocation rates are
+ * reported with <code>-prof gc</code>.
+ *
+ * @author deors
+ * @version 1.0
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DirectoryConnectionBenchmark {
+
+    /**
+     * Shared benchmark state: the embedded server and a pool sized to the number of threads.
+     */
+    @State(Scope.Benchmark)
+    public static class ServerState {
+
+        /**
+         * The embedded server.
+         */
+        DirectoryBenchmarkServer server;
+
+        /**
+         * The connection pool.
+         */
+        DirectoryConnectionPool pool;
+
+        /**
+         * Starts the server and fills the pool.
+         *
+         * @param params the benchmark parameters
+         *
+         * @throws Exception the server could not be started or the pool filled
+         */
+        @Setup(Level.Trial)
+        public void setUp(BenchmarkParams params)
+            throws Exception {
+
+            server = new DirectoryBenchmarkServer(1, 0, 0, 0, 0);
+            int threads = params.getThreads();
+            pool = new DirectoryConnectionPool(DirectoryBenchmarkServer.HOST, server.getPort(),
+                threads, threads, 0, 0, false, 0);
+        }
+
+        /**
+         * Closes the pool and stops the server.
+         */
+        @TearDown(Level.Trial)
+        public void tearDown() {
+
+            pool.close();
+            server.close();
+        }
+    }
+
+    /**
+     * Opens and closes a dedicated connection with <code>DirectoryManager</code>.
+     *
+     * @param state the shared benchmark state
+     *
+     * @return the manager state after closing, so the work is not optimized away
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    @Benchmark
+    public boolean createConnection(ServerState state)
+        throws DirectoryException {
+
+        DirectoryManager manager = new DirectoryManager(DirectoryBenchmarkServer.HOST, state.server.getPort());
+        manager.closeConnection();
+        return manager.isConnected();
+    }
+
+    /**
+     * Opens a dedicated connection, binds as the administrative user and closes it.
+     *
+     * @param state the shared benchmark state
+     *
+     * @return the connection state after binding, so the work is not optimized away
+     *
+     * @throws DirectoryException an error while accessing the directory
+     * @throws LDAPException an error while binding
+     */
+    @Benchmark
+    public boolean createConnectionAndBind(ServerState state)
+        throws DirectoryException, LDAPException {
+
+        DirectoryManager manager = new DirectoryManager(DirectoryBenchmarkServer.HOST, state.server.getPort());
+        try {
+            LDAPConnection connection = manager.getConnection();
+            connection.bind(LDAPConnection.LDAP_V3, DirectoryBenchmarkServer.ADMIN_DN,
+                DirectoryBenchmarkServer.ADMIN_PASSWORD.getBytes(StandardCharsets.UTF_8));
+            return connection.isBound();
+        } finally {
+            manager.closeConnection();
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool and returns it.
+     *
+     * @param state the shared benchmark state
+     *
+     * @return the connection borrowed, so the work is not optimized away
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    @Benchmark
+    public LDAPConnection borrowConnection(ServerState state)
+        throws DirectoryException {
+
+        LDAPConnection connection = state.pool.borrowConnection();
+        state.pool.returnConnection(connection);
+        return connection;
+    }
+}
@@ -0,0 +1,168 @@
+package deors.core.directory;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.novell.ldap.LDAPAttribute;
+import com.novell.ldap.LDAPAttributeSet;
+import com.novell.ldap.LDAPEntry;
+
+/**
+ * Benchmarks of the decoding of the attribute values returned by a lookup.<br>
+ *
+ * Decodes a single-valued or multi-valued attribute of an entry as returned by the directory,
+ * without reaching any server, with the JLDAP accessors, with the lean accessors used by
+ * <code>DirectoryManager</code>, and with a visitor that consumes the values as character
+ * sequences. The gain is in the allocation rate rather than in the time, so the benchmarks
+ * should be run with <code>-prof gc</code> and compared by <code>gc.alloc.rate.norm</code>,
+ * the bytes allocated per operation.
+ *
+ * @author deors
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectoryDecodingBenchmark {
+
+    /**
+     * The name of the attribute decoded.
+     */
+    private static final String ATTRIBUTE_NAME = "description"; //$NON-NLS-1$
+
+    /**
+     * Benchmark state: the entry decoded.
+     */
+    @State(Scope.Thread)
+    public static class EntryState {
+
+        /**
+         * The number of values of the attribute.
+         */
+        @Param({"1", "4"})
+        public int valueCount;
+
+        /**
+         * The length in characters of each value.
+         */
+        @Param({"16", "256"})
+        public int valueSize;
+
+        /**
+         * Whether the values are plain ASCII or contain other characters.
+         */
+        @Param({"true", "false"})
+        public boolean ascii;
+
+        /**
+         * The entry, as returned by a lookup of the attribute.
+         */
+        LDAPEntry entry;
+
+        /**
+         * Sum of the characters seen by the visitor, so its work is not eliminated.
+         */
+        long checksum;
+
+        /**
+         * Visitor consuming the values without creating strings.
+         */
+        final DirectoryValueVisitor visitor = value -> {
+            checksum += value.length() + value.charAt(0);
+            return true;
+        };
+
+        /**
+         * Creates the entry.
+         */
+        @Setup(Level.Trial)
+        public void setUp() {
+
+            String[] values = new String[valueCount];
+            for (int i = 0; i < valueCount; i++) {
+                StringBuilder value = new StringBuilder(valueSize);
+                for (int j = 0; j < valueSize; j++) {
+                    value.append(ascii ? (char) ('a' + (i + j) % 26) : (char) ('à' + (i + j) % 26));
+                }
+                values[i] = value.toString();
+            }
+
+            LDAPAttributeSet attributes = new LDAPAttributeSet();
+            attributes.add(new LDAPAttribute(ATTRIBUTE_NAME, values));
+            entry = new LDAPEntry("uid=user,ou=people,o=org", attributes); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Decodes the values with the JLDAP accessors: walking the attribute set with its raw
+     * iterator and converting the values with <code>getStringValueArray()</code>.
+     *
+     * @param state the benchmark state
+     *
+     * @return the values
+     */
+    @Benchmark
+    public String[] jldapDecoding(EntryState state) {
+
+        @SuppressWarnings("rawtypes")
+        Iterator attributes = state.entry.getAttributeSet().iterator();
+        LDAPAttribute attribute = (LDAPAttribute) attributes.next();
+        return attribute.getStringValueArray();
+    }
+
+    /**
+     * Decodes the values into strings with the accessors used by <code>DirectoryManager</code>,
+     * which read the values held by the attribute.
+     *
+     * @param state the benchmark state
+     *
+     * @return the values
+     */
+    @Benchmark
+    public String[] leanDecoding(EntryState state) {
+
+        return DirectoryAttributeValues.getStrings(firstAttribute(state));
+    }
+
+    /**
+     * Consumes the values with a visitor, decoding them into a buffer reused by the thread.
+     *
+     * @param state the benchmark state
+     * @param blackhole the sink of the number of values visited
+     */
+    @Benchmark
+    public void visitorDecoding(EntryState state, Blackhole blackhole) {
+
+        blackhole.consume(DirectoryAttributeValues.visit(firstAttribute(state), state.visitor));
+        blackhole.consume(state.checksum);
+    }
+
+    /**
+     * Returns the attribute of the entry, as done by <code>DirectoryManager</code>.
+     *
+     * @param state the benchmark state
+     *
+     * @return the attribute
+     */
+    private static LDAPAttribute firstAttribute(EntryState state) {
+
+        Iterator<?> attributes = state.entry.getAttributeSet().iterator();
+        return (LDAPAttribute) attributes.next();
+    }
+}
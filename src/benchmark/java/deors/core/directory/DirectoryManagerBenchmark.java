@@ -0,0 +1,346 @@
+package deors.core.directory;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPEntry;
+
+/**
+ * Benchmarks of <code>DirectoryManager</code> attribute lookups.<br>
+ *
+ * Each invocation reads an attribute of the next synthetic entry, cycling through all of them,
+ * so that consecutive lookups do not hit the same object. The manager under test either owns a
+ * single connection shared by all benchmark threads, borrows connections from a pool sized
+ * to the number of threads, or owns a single connection and answers string reads from an
+ * in-memory replica of the entries, as selected by the <code>connectionMode</code> parameter.
+ * The attribute cache is not used.<br>
+ *
+ * Thread counts are selected with the JMH <code>-t</code> option and allocation rates are
+ * reported with <code>-prof gc</code>.
+ *
+ * @author deors
+ * @version 1.0
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DirectoryManagerBenchmark {
+
+    /**
+     * Connection mode using a single connection owned by the manager.
+     */
+    private static final String CONNECTION_MODE_SINGLE = "single"; //$NON-NLS-1$
+
+    /**
+     * Connection mode using a single connection and a replica of the entries.
+     */
+    private static final String CONNECTION_MODE_REPLICA = "replica"; //$NON-NLS-1$
+
+    /**
+     * Shared benchmark state: the embedded server and the manager under test.
+     */
+    @State(Scope.Benchmark)
+    public static class DirectoryState {
+
+        /**
+         * The number of synthetic entries.
+         */
+        @Param({"1000"})
+        public int entryCount;
+
+        /**
+         * The number of values of the multi-valued attribute.
+         */
+        @Param({"8"})
+        public int telephoneCount;
+
+        /**
+         * The length in characters of the description attribute.
+         */
+        @Param({"256"})
+        public int descriptionSize;
+
+        /**
+         * The length in bytes of the binary attribute.
+         */
+        @Param({"4096"})
+        public int photoSize;
+
+        /**
+         * The seed of the random data generator.
+         */
+        @Param({"42"})
+        public long seed;
+
+        /**
+         * How the manager connects: <code>single</code>, <code>pooled</code> or
+         * <code>replica</code>.
+         */
+        @Param({"single", "pooled", "replica"})
+        public String connectionMode;
+
+        /**
+         * The embedded server.
+         */
+        DirectoryBenchmarkServer server;
+
+        /**
+         * The connection pool, or <code>null</code> in single connection mode.
+         */
+        DirectoryConnectionPool pool;
+
+        /**
+         * The manager under test.
+         */
+        DirectoryManager manager;
+
+        /**
+         * The replica, or <code>null</code> unless in replica mode.
+         */
+        DirectoryReplica replica;
+
+        /**
+         * The DNs of the synthetic entries.
+         */
+        String[] entryDNs;
+
+        /**
+         * Starts the server and connects the manager.
+         *
+         * @param params the benchmark parameters
+         *
+         * @throws Exception the server could not be started or the manager connected
+         */
+        @Setup(Level.Trial)
+        public void setUp(BenchmarkParams params)
+            throws Exception {
+
+            server = new DirectoryBenchmarkServer(entryCount, telephoneCount, descriptionSize, photoSize, seed);
+            entryDNs = server.getEntryDNs();
+
+            if (CONNECTION_MODE_SINGLE.equals(connectionMode)) {
+                manager = new DirectoryManager(DirectoryBenchmarkServer.HOST, server.getPort());
+            } else if (CONNECTION_MODE_REPLICA.equals(connectionMode)) {
+                manager = new DirectoryManager(DirectoryBenchmarkServer.HOST, server.getPort());
+                replica = new DirectoryReplica(manager, DirectoryBenchmarkServer.PEOPLE_DN,
+                    LDAPConnection.SCOPE_SUB, null,
+                    "uid", "cn", "sn", "givenName", "mail", "description", "telephoneNumber"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+                replica.start();
+                manager.setReplica(replica);
+            } else {
+                int threads = params.getThreads();
+                pool = new DirectoryConnectionPool(DirectoryBenchmarkServer.HOST, server.getPort(),
+                    threads, threads, 0, 0, false, 0);
+                manager = new DirectoryManager(pool);
+            }
+        }
+
+        /**
+         * Closes the manager and stops the server.
+         *
+         * @throws Exception the manager could not be closed
+         */
+        @TearDown(Level.Trial)
+        public void tearDown()
+            throws Exception {
+
+            if (replica != null) {
+                replica.close();
+            }
+            manager.close();
+            if (pool != null) {
+                pool.close();
+            }
+            server.close();
+        }
+    }
+
+    /**
+     * Per-thread state: the index of the next entry to read.
+     */
+    @State(Scope.Thread)
+    public static class CursorState {
+
+        /**
+         * The index of the next entry to read.
+         */
+        int next;
+
+        /**
+         * Returns the DN of the next entry to read.
+         *
+         * @param directory the shared benchmark state
+         *
+         * @return the entry DN
+         */
+        String nextDN(DirectoryState directory) {
+
+            String dn = directory.entryDNs[next];
+            next = next + 1 == directory.entryDNs.length ? 0 : next + 1;
+            return dn;
+        }
+
+        /**
+         * Returns the uid of the next entry to read.
+         *
+         * @param directory the shared benchmark state
+         *
+         * @return the entry uid
+         */
+        String nextUid(DirectoryState directory) {
+
+            String uid = DirectoryBenchmarkServer.uid(next);
+            next = next + 1 == directory.entryDNs.length ? 0 : next + 1;
+            return uid;
+        }
+    }
+
+    /**
+     * Reads a single-valued string attribute.
+     *
+     * @param directory the shared benchmark state
+     * @param cursor the per-thread state
+     *
+     * @return the value read
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    @Benchmark
+    public String getAttributeValue(DirectoryState directory, CursorState cursor)
+        throws DirectoryException {
+
+        return directory.manager.getAttributeValue(cursor.nextDN(directory), "mail"); //$NON-NLS-1$
+    }
+
+    /**
+     * Resolves the DN of an entry from its uid, as done on every login.
+     *
+     * @param directory the shared benchmark state
+     * @param cursor the per-thread state
+     *
+     * @return the DN found
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    @Benchmark
+    public String findDNByUid(DirectoryState directory, CursorState cursor)
+        throws DirectoryException {
+
+        try (Stream<LDAPEntry> results = directory.manager.search(DirectoryBenchmarkServer.PEOPLE_DN,
+                LDAPConnection.SCOPE_SUB, "(uid=" + cursor.nextUid(directory) + ')', "1.1")) { //$NON-NLS-1$ //$NON-NLS-2$
+            return results.findFirst().map(LDAPEntry::getDN).orElse(null);
+        }
+    }
+
+    /**
+     * Reads a multi-valued string attribute.
+     *
+     * @param directory the shared benchmark state
+     * @param cursor the per-thread state
+     *
+     * @return the values read
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    @Benchmark
+    public String[] getAttributeValues(DirectoryState directory, CursorState cursor)
+        throws DirectoryException {
+
+        return directory.manager.getAttributeValues(cursor.nextDN(directory), "telephoneNumber"); //$NON-NLS-1$
+    }
+
+    /**
+     * Reads a binary attribute.
+     *
+     * @param directory the shared benchmark state
+     * @param cursor the per-thread state
+     *
+     * @return the value read
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    @Benchmark
+    public byte[] getAttributeValueBytes(DirectoryState directory, CursorState cursor)
+        throws DirectoryException {
+
+        return directory.manager.getAttributeValueBytes(cursor.nextDN(directory), "jpegPhoto"); //$NON-NLS-1$
+    }
+
+    /**
+     * Reads a binary attribute as a read-only view, without copying the value.
+     *
+     * @param directory the shared benchmark state
+     * @param cursor the per-thread state
+     *
+     * @return the view of the value read
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    @Benchmark
+    public ByteBuffer getAttributeValueBuffer(DirectoryState directory, CursorState cursor)
+        throws DirectoryException {
+
+        return directory.manager.getAttributeValueBuffer(cursor.nextDN(directory), "jpegPhoto"); //$NON-NLS-1$
+    }
+
+    /**
+     * Reads five attributes of the same object, one lookup each.
+     *
+     * @param directory the shared benchmark state
+     * @param cursor the per-thread state
+     *
+     * @return the number of characters read, so the values are not optimized away
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    @Benchmark
+    public int getAttributeValueRepeated(DirectoryState directory, CursorState cursor)
+        throws DirectoryException {
+
+        String dn = cursor.nextDN(directory);
+        DirectoryManager manager = directory.manager;
+
+        return manager.getAttributeValue(dn, "cn").length() //$NON-NLS-1$
+            + manager.getAttributeValue(dn, "sn").length() //$NON-NLS-1$
+            + manager.getAttributeValue(dn, "givenName").length() //$NON-NLS-1$
+            + manager.getAttributeValue(dn, "mail").length() //$NON-NLS-1$
+            + manager.getAttributeValue(dn, "description").length(); //$NON-NLS-1$
+    }
+
+    /**
+     * Reads the same five attributes of an object in a single lookup.
+     *
+     * @param directory the shared benchmark state
+     * @param cursor the per-thread state
+     *
+     * @return the attributes read
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    @Benchmark
+    public DirectoryAttributes getAttributes(DirectoryState directory, CursorState cursor)
+        throws DirectoryException {
+
+        return directory.manager.getAttributes(cursor.nextDN(directory),
+            "cn", "sn", "givenName", "mail", "description"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+    }
+}
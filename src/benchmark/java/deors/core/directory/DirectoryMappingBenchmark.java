@@ -0,0 +1,202 @@
+package deors.core.directory;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.novell.ldap.LDAPAttribute;
+import com.novell.ldap.LDAPAttributeSet;
+import com.novell.ldap.LDAPEntry;
+
+/**
+ * Benchmarks of the mapping of directory entries to objects.<br>
+ *
+ * Maps an entry as returned by a search, without reaching any server, to an annotated class
+ * with <code>DirectoryObjectMapper</code>, to an equivalent record, and with a reflective loop
+ * as commonly hand-written, which inspects the fields and sets them with
+ * <code>Field.set()</code> on every call. Allocation rates are reported with
+ * <code>-prof gc</code>.
+ *
+ * @author deors
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectoryMappingBenchmark {
+
+    /**
+     * Annotated class mapped.
+     */
+    public static class Person {
+
+        /**
+         * The entry DN.
+         */
+        @DirectoryObjectDN
+        String dn;
+
+        /**
+         * The user id.
+         */
+        @DirectoryAttribute("uid")
+        String uid;
+
+        /**
+         * The common name.
+         */
+        @DirectoryAttribute("cn")
+        String cn;
+
+        /**
+         * The surname.
+         */
+        @DirectoryAttribute("sn")
+        String sn;
+
+        /**
+         * The e-mail address.
+         */
+        @DirectoryAttribute("mail")
+        String mail;
+
+        /**
+         * The numeric user id.
+         */
+        @DirectoryAttribute("uidNumber")
+        int uidNumber;
+
+        /**
+         * Constructor.
+         */
+        public Person() {
+
+            super();
+        }
+    }
+
+    /**
+     * Record mapped.
+     *
+     * @param dn the entry DN
+     * @param uid the user id
+     * @param cn the common name
+     * @param sn the surname
+     * @param mail the e-mail address
+     * @param uidNumber the numeric user id
+     */
+    public record PersonRecord(@DirectoryObjectDN String dn, String uid, String cn, String sn, String mail,
+                               int uidNumber) {
+    }
+
+    /**
+     * Benchmark state: the entry mapped.
+     */
+    @State(Scope.Thread)
+    public static class EntryState {
+
+        /**
+         * The entry, as returned by a search.
+         */
+        LDAPEntry entry;
+
+        /**
+         * Creates the entry.
+         */
+        @Setup(Level.Trial)
+        public void setUp() {
+
+            LDAPAttributeSet attributes = new LDAPAttributeSet();
+            attributes.add(new LDAPAttribute("objectClass", "inetOrgPerson")); //$NON-NLS-1$ //$NON-NLS-2$
+            attributes.add(new LDAPAttribute("uid", "jdoe")); //$NON-NLS-1$ //$NON-NLS-2$
+            attributes.add(new LDAPAttribute("cn", "John Doe")); //$NON-NLS-1$ //$NON-NLS-2$
+            attributes.add(new LDAPAttribute("sn", "Doe")); //$NON-NLS-1$ //$NON-NLS-2$
+            attributes.add(new LDAPAttribute("mail", "jdoe@example.org")); //$NON-NLS-1$ //$NON-NLS-2$
+            attributes.add(new LDAPAttribute("uidNumber", "1001")); //$NON-NLS-1$ //$NON-NLS-2$
+            entry = new LDAPEntry("uid=jdoe,ou=people,o=org", attributes); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Maps the entry to the annotated class with the precompiled mapper.
+     *
+     * @param state the benchmark state
+     *
+     * @return the object
+     *
+     * @throws DirectoryException a value cannot be converted
+     */
+    @Benchmark
+    public Person mapperMapping(EntryState state)
+        throws DirectoryException {
+
+        return DirectoryObjectMapper.forType(Person.class).map(state.entry);
+    }
+
+    /**
+     * Maps the entry to the record with the precompiled mapper.
+     *
+     * @param state the benchmark state
+     *
+     * @return the record
+     *
+     * @throws DirectoryException a value cannot be converted
+     */
+    @Benchmark
+    public PersonRecord mapperRecordMapping(EntryState state)
+        throws DirectoryException {
+
+        return DirectoryObjectMapper.forType(PersonRecord.class).map(state.entry);
+    }
+
+    /**
+     * Maps the entry to the annotated class with reflection on every call.
+     *
+     * @param state the benchmark state
+     *
+     * @return the object
+     *
+     * @throws ReflectiveOperationException an error while setting a field
+     */
+    @Benchmark
+    public Person reflectionMapping(EntryState state)
+        throws ReflectiveOperationException {
+
+        Person person = Person.class.getDeclaredConstructor().newInstance();
+
+        for (Field field : Person.class.getDeclaredFields()) {
+            if (field.isAnnotationPresent(DirectoryObjectDN.class)) {
+                field.set(person, state.entry.getDN());
+                continue;
+            }
+            DirectoryAttribute annotation = field.getAnnotation(DirectoryAttribute.class);
+            if (annotation == null) {
+                continue;
+            }
+            LDAPAttribute attribute = state.entry.getAttribute(annotation.value());
+            if (attribute == null) {
+                continue;
+            }
+            if (field.getType() == int.class) {
+                field.setInt(person, Integer.parseInt(attribute.getStringValue()));
+            } else {
+                field.set(person, attribute.getStringValue());
+            }
+        }
+
+        return person;
+    }
+}
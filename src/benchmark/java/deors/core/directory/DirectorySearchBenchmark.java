@@ -0,0 +1,185 @@
+package deors.core.directory;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPEntry;
+
+/**
+ * Benchmarks of operations reading many entries.<br>
+ *
+ * Measures a paged subtree search over the whole synthetic directory, with several page
+ * sizes, and a batch lookup of all entries by DN. Results are consumed entry by entry, so the
+ * figures include the decoding of every attribute returned.<br>
+ *
+ * Thread counts are selected with the JMH <code>-t</code> option and allocation rates are
+ * reported with <code>-prof gc</code>.
+ *
+ * @author deors
+ * @version 1.0
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SingleShotTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class DirectorySearchBenchmark {
+
+    /**
+     * The attributes read by the benchmarks.
+     */
+    private static final String[] ATTRIBUTE_NAMES = {
+        "uid", "cn", "mail", "telephoneNumber", "jpegPhoto"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+    /**
+     * Shared benchmark state: the embedded server and the manager under test.
+     */
+    @State(Scope.Benchmark)
+    public static class DirectoryState {
+
+        /**
+         * The number of synthetic entries.
+         */
+        @Param({"10000"})
+        public int entryCount;
+
+        /**
+         * The number of values of the multi-valued attribute.
+         */
+        @Param({"4"})
+        public int telephoneCount;
+
+        /**
+         * The length in characters of the description attribute.
+         */
+        @Param({"64"})
+        public int descriptionSize;
+
+        /**
+         * The length in bytes of the binary attribute.
+         */
+        @Param({"1024"})
+        public int photoSize;
+
+        /**
+         * The seed of the random data generator.
+         */
+        @Param({"42"})
+        public long seed;
+
+        /**
+         * The number of entries requested per page.
+         */
+        @Param({"100", "1000"})
+        public int pageSize;
+
+        /**
+         * The embedded server.
+         */
+        DirectoryBenchmarkServer server;
+
+        /**
+         * The connection pool.
+         */
+        DirectoryConnectionPool pool;
+
+        /**
+         * The manager under test.
+         */
+        DirectoryManager manager;
+
+        /**
+         * The DNs of the synthetic entries.
+         */
+        Collection<String> entryDNs;
+
+        /**
+         * Starts the server and connects the manager.
+         *
+         * @param params the benchmark parameters
+         *
+         * @throws Exception the server could not be started or the manager connected
+         */
+        @Setup(Level.Trial)
+        public void setUp(BenchmarkParams params)
+            throws Exception {
+
+            server = new DirectoryBenchmarkServer(entryCount, telephoneCount, descriptionSize, photoSize, seed);
+            entryDNs = Arrays.asList(server.getEntryDNs());
+
+            int threads = params.getThreads();
+            pool = new DirectoryConnectionPool(DirectoryBenchmarkServer.HOST, server.getPort(),
+                threads, threads, 0, 0, false, 0);
+            manager = new DirectoryManager(pool);
+        }
+
+        /**
+         * Closes the manager and stops the server.
+         *
+         * @throws Exception the manager could not be closed
+         */
+        @TearDown(Level.Trial)
+        public void tearDown()
+            throws Exception {
+
+            manager.close();
+            pool.close();
+            server.close();
+        }
+    }
+
+    /**
+     * Searches all entries with a paged subtree search.
+     *
+     * @param state the shared benchmark state
+     * @param blackhole the sink of the entries read
+     *
+     * @return the number of entries read
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    @Benchmark
+    public long search(DirectoryState state, Blackhole blackhole)
+        throws DirectoryException {
+
+        try (Stream<LDAPEntry> entries = state.manager.search(DirectoryBenchmarkServer.PEOPLE_DN,
+                LDAPConnection.SCOPE_ONE, "(objectClass=inetOrgPerson)", state.pageSize, ATTRIBUTE_NAMES)) { //$NON-NLS-1$
+            return entries.peek(entry -> blackhole.consume(entry.getAttributeSet().size())).count();
+        }
+    }
+
+    /**
+     * Reads all entries with a batch lookup by DN.
+     *
+     * @param state the shared benchmark state
+     *
+     * @return the batch result
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    @Benchmark
+    public DirectoryBatchResult getAttributesBatch(DirectoryState state)
+        throws DirectoryException {
+
+        return state.manager.getAttributes(state.entryDNs, ATTRIBUTE_NAMES);
+    }
+}
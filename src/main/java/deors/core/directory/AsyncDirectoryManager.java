@@ -0,0 +1,474 @@
+package deors.core.directory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPEntry;
+import com.novell.ldap.LDAPException;
+import com.novell.ldap.LDAPMessage;
+import com.novell.ldap.LDAPResponse;
+import com.novell.ldap.LDAPSearchQueue;
+import com.novell.ldap.LDAPSearchResult;
+
+/**
+ * Asynchronous manager for Directory services using LDAP protocol.<br>
+ *
+ * Operations return a <code>CompletableFuture</code> and never block the calling thread waiting
+ * for the directory. Requests are sent immediately over a single connection and their
+ * responses are collected from one shared <code>LDAPSearchQueue</code> by a dispatcher thread
+ * owned by the manager, so any number of operations can be outstanding at the same time
+ * without parking a thread per request.<br>
+ *
+ * The dispatcher thread is started by <code>connect()</code>, which performs the blocking
+ * socket connection on that same thread, and ends when the manager is closed. Futures are
+ * completed on the dispatcher thread, so callers should not run long blocking work in
+ * non-async completion stages.<br>
+ *
+ * The connection is opened with the connect timeout, response timeout and search limits in
+ * the library configuration. Searches exceeding the response timeout complete exceptionally
+ * with result code <code>LDAP_TIMEOUT</code>.<br>
+ *
+ * The class is thread-safe.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public class AsyncDirectoryManager implements AutoCloseable {
+
+    /**
+     * Connection object where the active connection is stored.
+     */
+    private volatile LDAPConnection connection;
+
+    /**
+     * Queue where the responses of all outstanding searches are collected.
+     */
+    private volatile LDAPSearchQueue searchQueue;
+
+    /**
+     * Outstanding searches keyed by message ID.
+     */
+    private final Map<Integer, PendingSearch> pendingSearches = new ConcurrentHashMap<>();
+
+    /**
+     * Signals the dispatcher that new searches were added to the queue.
+     */
+    private final Semaphore workAvailable = new Semaphore(0);
+
+    /**
+     * Lock serializing state changes and the merge of new searches into the shared queue.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Dispatcher thread, or <code>null</code> if the manager was never connected.
+     */
+    private Thread dispatcher;
+
+    /**
+     * Flag that is <code>true</code> once the manager is closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Default constructor.
+     */
+    public AsyncDirectoryManager() {
+        super();
+    }
+
+    /**
+     * Connects to the given directory host and port. The connection is opened on the
+     * dispatcher thread. If it cannot be opened the dispatcher thread ends and the manager can
+     * be connected again.
+     *
+     * @param directoryHost the directory host name or IP address
+     * @param directoryPort the directory service port
+     *
+     * @return a future completed when the connection is established
+     */
+    public CompletableFuture<Void> connect(String directoryHost, int directoryPort) {
+
+        if (directoryHost == null || directoryHost.length() == 0 || directoryPort <= 0) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMGR_ERR_OPEN_CONN_ARG")); //$NON-NLS-1$
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        lock.lock();
+        try {
+            if (dispatcher != null || closed) {
+                future.completeExceptionally(new DirectoryException(
+                    DirectoryContext.getMessage("LDAPMGR_ERR_OPEN_CONN_EXISTS"))); //$NON-NLS-1$
+                return future;
+            }
+
+            LDAPConnection newConnection = new DirectoryTimeouts().newConnection();
+            dispatcher = new Thread(() -> {
+                try {
+                    newConnection.connect(directoryHost, directoryPort);
+                    DirectoryTls.getDefault().secure(newConnection);
+                } catch (LDAPException | RuntimeException e) {
+                    connectFailed(newConnection);
+                    future.completeExceptionally(new DirectoryException(
+                        DirectoryContext.getMessage("LDAPMGR_ERR_OPEN_CONN", e.getMessage()), //$NON-NLS-1$
+                        e));
+                    return;
+                }
+                if (!connected(newConnection)) {
+                    future.completeExceptionally(new DirectoryException(
+                        DirectoryContext.getMessage("LDAPASYNC_ERR_CLOSED_CONNECT"))); //$NON-NLS-1$
+                    return;
+                }
+                future.complete(null);
+                dispatch();
+            }, "directory-async-dispatcher"); //$NON-NLS-1$
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+        } finally {
+            lock.unlock();
+        }
+
+        return future;
+    }
+
+    /**
+     * Publishes a connection just opened, unless the manager was closed while it was being
+     * opened, in which case the connection is discarded.
+     *
+     * @param newConnection the connection just opened
+     *
+     * @return <code>true</code> if the connection was published
+     */
+    private boolean connected(LDAPConnection newConnection) {
+
+        lock.lock();
+        try {
+            if (!closed) {
+                connection = newConnection;
+                return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            newConnection.disconnect();
+        } catch (LDAPException disconnectError) {
+            // the connection is being discarded anyway
+        }
+        return false;
+    }
+
+    /**
+     * Discards a connection that could not be opened and forgets the dispatcher thread, which
+     * ends without dispatching, so the manager can be connected again.
+     *
+     * @param failedConnection the connection that could not be opened
+     */
+    private void connectFailed(LDAPConnection failedConnection) {
+
+        try {
+            failedConnection.disconnect();
+        } catch (LDAPException disconnectError) {
+            // the connection is being discarded anyway
+        }
+
+        lock.lock();
+        try {
+            dispatcher = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the connection. Outstanding operations are completed exceptionally.
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    @Override
+    public void close()
+        throws DirectoryException {
+
+        LDAPConnection activeConnection;
+
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            activeConnection = connection;
+            connection = null;
+        } finally {
+            lock.unlock();
+        }
+
+        workAvailable.release();
+
+        try {
+            if (activeConnection != null) {
+                activeConnection.disconnect();
+            }
+        } catch (LDAPException ldape) {
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPMGR_ERR_CLOSE_CONN", ldape.getMessage()), //$NON-NLS-1$
+                ldape);
+        } finally {
+            failPendingSearches(new DirectoryException(DirectoryContext.getMessage("LDAPASYNC_ERR_CLOSED"))); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Returns whether the manager has an active connection.
+     *
+     * @return <code>true</code> if connected
+     */
+    public boolean isConnected() {
+
+        return connection != null;
+    }
+
+    /**
+     * Returns the number of searches waiting for their responses.
+     *
+     * @return the number of outstanding searches
+     */
+    public int getOutstandingCount() {
+
+        return pendingSearches.size();
+    }
+
+    /**
+     * Returns the given attributes of an object.
+     *
+     * @param objectDN the object DN
+     * @param attributeNames the attribute names, or none for all user attributes
+     *
+     * @return a future completed with the attributes found
+     */
+    public CompletableFuture<DirectoryAttributes> getAttributes(String objectDN, String... attributeNames) {
+
+        String[] requestedAttributes = attributeNames == null || attributeNames.length == 0
+            ? null : attributeNames.clone();
+
+        return search(objectDN, LDAPConnection.SCOPE_BASE, DirectoryContext.BLANK, requestedAttributes)
+            .thenApply(entries -> DirectoryManager.toDirectoryAttributes(
+                objectDN, entries.isEmpty() ? null : entries.get(0)));
+    }
+
+    /**
+     * Returns the attribute value as a string.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     *
+     * @return a future completed with the attribute value or <code>null</code> if not found
+     */
+    public CompletableFuture<String> getAttributeValue(String objectDN, String attributeName) {
+
+        return getAttributes(objectDN, attributeName)
+            .thenApply(attributes -> attributes.getValue(attributeName));
+    }
+
+    /**
+     * Returns the attribute values as a string array.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     *
+     * @return a future completed with the attribute values or an empty array if not found
+     */
+    public CompletableFuture<String[]> getAttributeValues(String objectDN, String attributeName) {
+
+        return getAttributes(objectDN, attributeName)
+            .thenApply(attributes -> attributes.getValues(attributeName));
+    }
+
+    /**
+     * Returns the attribute value as a byte array.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     *
+     * @return a future completed with the attribute value or an empty array if not found
+     */
+    public CompletableFuture<byte[]> getAttributeValueBytes(String objectDN, String attributeName) {
+
+        return getAttributes(objectDN, attributeName)
+            .thenApply(attributes -> attributes.getValueBytes(attributeName));
+    }
+
+    /**
+     * Searches the directory.
+     *
+     * @param searchBase the search base DN
+     * @param searchScope the search scope, one of the <code>LDAPConnection.SCOPE_*</code> values
+     * @param searchFilter the search filter
+     * @param attributeNames the attribute names, or <code>null</code> for all user attributes
+     *
+     * @return a future completed with the entries found
+     */
+    public CompletableFuture<List<LDAPEntry>> search(String searchBase, int searchScope,
+                                                     String searchFilter, String[] attributeNames) {
+
+        CompletableFuture<List<LDAPEntry>> future = new CompletableFuture<>();
+        LDAPConnection activeConnection = connection;
+
+        if (activeConnection == null) {
+            future.completeExceptionally(new DirectoryException(
+                DirectoryContext.getMessage("LDAPMGR_ERR_NO_CONN"))); //$NON-NLS-1$
+            return future;
+        }
+
+        try {
+            LDAPSearchQueue requestQueue = activeConnection.search(
+                searchBase, searchScope, searchFilter, attributeNames, false, (LDAPSearchQueue) null);
+            PendingSearch pending = new PendingSearch(future);
+            for (int messageID : requestQueue.getMessageIDs()) {
+                pendingSearches.put(messageID, pending);
+            }
+            enqueue(requestQueue);
+        } catch (LDAPException ldape) {
+            future.completeExceptionally(new DirectoryException(
+                DirectoryContext.getMessage("LDAPMGR_ERR_SEARCH", ldape.getMessage()), //$NON-NLS-1$
+                ldape));
+        }
+
+        return future;
+    }
+
+    /**
+     * Adds the queue of a new request to the shared queue watched by the dispatcher.
+     *
+     * @param requestQueue the queue returned when the request was sent
+     */
+    private void enqueue(LDAPSearchQueue requestQueue) {
+
+        lock.lock();
+        try {
+            if (searchQueue == null) {
+                searchQueue = requestQueue;
+            } else {
+                searchQueue.merge(requestQueue);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        workAvailable.release();
+    }
+
+    /**
+     * Dispatcher loop. Reads responses from the shared queue and completes the corresponding
+     * futures until the manager is closed.
+     */
+    private void dispatch() {
+
+        while (!closed) {
+            LDAPSearchQueue queue = searchQueue;
+            LDAPMessage message = null;
+
+            try {
+                if (queue != null) {
+                    message = queue.getResponse();
+                }
+            } catch (LDAPException ldape) {
+                if (!closed) {
+                    failPendingSearches(new DirectoryException(
+                        DirectoryContext.getMessage("LDAPMGR_ERR_SEARCH", ldape.getMessage()), //$NON-NLS-1$
+                        ldape));
+                }
+                continue;
+            }
+
+            if (message == null) {
+                workAvailable.acquireUninterruptibly();
+                workAvailable.drainPermits();
+                continue;
+            }
+
+            handleMessage(message);
+        }
+    }
+
+    /**
+     * Handles a message received from the directory.
+     *
+     * @param message the message
+     */
+    private void handleMessage(LDAPMessage message) {
+
+        Integer messageID = message.getMessageID();
+        PendingSearch pending = pendingSearches.get(messageID);
+
+        if (pending == null) {
+            return;
+        }
+
+        if (message instanceof LDAPSearchResult) {
+            pending.entries.add(((LDAPSearchResult) message).getEntry());
+        } else if (message instanceof LDAPResponse) {
+            pendingSearches.remove(messageID);
+            LDAPResponse response = (LDAPResponse) message;
+            int resultCode = response.getResultCode();
+            if (resultCode == LDAPException.SUCCESS) {
+                pending.future.complete(pending.entries);
+            } else {
+                LDAPException ldape = new LDAPException(
+                    LDAPException.resultCodeToString(resultCode), resultCode,
+                    response.getErrorMessage(), response.getMatchedDN());
+                pending.future.completeExceptionally(new DirectoryException(
+                    DirectoryContext.getMessage("LDAPMGR_ERR_SEARCH", ldape.getMessage()), //$NON-NLS-1$
+                    ldape));
+            }
+        }
+    }
+
+    /**
+     * Completes exceptionally all outstanding searches.
+     *
+     * @param error the exception
+     */
+    private void failPendingSearches(DirectoryException error) {
+
+        for (Integer messageID : new ArrayList<>(pendingSearches.keySet())) {
+            PendingSearch pending = pendingSearches.remove(messageID);
+            if (pending != null) {
+                pending.future.completeExceptionally(error);
+            }
+        }
+    }
+
+    /**
+     * An outstanding search.
+     */
+    private static final class PendingSearch {
+
+        /**
+         * The future completed when the search finishes.
+         */
+        private final CompletableFuture<List<LDAPEntry>> future;
+
+        /**
+         * The entries received so far.
+         */
+        private final List<LDAPEntry> entries = new ArrayList<>();
+
+        /**
+         * Constructor.
+         *
+         * @param future the future completed when the search finishes
+         */
+        PendingSearch(CompletableFuture<List<LDAPEntry>> future) {
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package deors.core.directory;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Maps a field or record component to a directory attribute.<br>
+ *
+ * Fields of classes are mapped only when annotated. Components of records are always mapped,
+ * to the attribute with the component name unless annotated with another name.
+ *
+ * @author deors
+ * @version 1.0
+ * @see DirectoryObjectMapper
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.RECORD_COMPONENT})
+public @interface DirectoryAttribute {
+
+    /**
+     * The attribute name, compared ignoring case. If empty, the name of the field or record
+     * component is used.
+     *
+     * @return the attribute name
+     */
+    String value() default "";
+}
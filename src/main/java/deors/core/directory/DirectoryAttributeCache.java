@@ -0,0 +1,589 @@
+package deors.core.directory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.novell.ldap.LDAPAttribute;
+
+/**
+ * Bounded cache of directory attributes keyed by object DN and attribute name.<br>
+ *
+ * Entries expire after a time-to-live and a least recently used entry is evicted when the
+ * cache is full. Lookups that found no value are cached as well, with their own time-to-live,
+ * so repeated queries for missing objects or attributes do not reach the directory.<br>
+ *
+ * Lookups do not lock: they only record the access time of the entry found. Eviction is
+ * approximate, as the victim is the least recently used of a sample of entries taken by a
+ * cursor that walks the cache; caches of up to 16 entries evict the least recently used one.<br>
+ *
+ * Object DNs and attribute names are compared ignoring case, and object DNs are normalized
+ * so the spacing between their components does not matter.<br>
+ *
+ * Lookups in flight while values are invalidated do not store their results: the cache counts
+ * invalidations and a result is stored only if no invalidation happened since the lookup
+ * started, so a change cannot be overwritten by a value read before it.<br>
+ *
+ * Default settings are read from the library configuration:
+ * <code>ldap.cache.maxSize</code>, <code>ldap.cache.timeToLive</code> and
+ * <code>ldap.cache.negativeTimeToLive</code>. A time-to-live of zero disables caching of the
+ * corresponding results. Caches created with these settings read them again when the
+ * configuration is reloaded, on the next value stored; a smaller size evicts the least
+ * recently used entries then.<br>
+ *
+ * The class is thread-safe and a single instance may be shared by many managers.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public class DirectoryAttributeCache {
+
+    /**
+     * Maximum number of entries.
+     */
+    private volatile int maxSize;
+
+    /**
+     * Time-to-live in milliseconds of entries holding a value.
+     */
+    private volatile long timeToLive;
+
+    /**
+     * Time-to-live in milliseconds of entries recording a value that was not found.
+     */
+    private volatile long negativeTimeToLive;
+
+    /**
+     * The configuration snapshot the settings were read from, or <code>null</code> if they were
+     * given to the constructor.
+     */
+    private volatile DirectoryConfiguration configuration;
+
+    /**
+     * Cache entries by key. Read without the lock and modified holding it.
+     */
+    private final Map<String, CacheEntry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Keys of the cache entries by object DN key, so the entries of an object are removed
+     * without scanning the whole cache.
+     */
+    private final Map<String, Set<String>> keysByObject = new HashMap<>();
+
+    /**
+     * Invalidation generation, increased by every invalidation. Changed holding the lock.
+     */
+    private volatile long generation;
+
+    /**
+     * Cursor over the entries from which eviction samples are taken, or <code>null</code>.
+     * Used holding the lock.
+     */
+    private Iterator<Map.Entry<String, CacheEntry>> evictionCursor;
+
+    /**
+     * Lock guarding the changes to the entries map and its index.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Number of lookups answered from the cache.
+     */
+    private final LongAdder hitCount = new LongAdder();
+
+    /**
+     * Number of lookups not answered from the cache.
+     */
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Number of entries evicted because the cache was full.
+     */
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Number of entries removed because their time-to-live elapsed.
+     */
+    private final LongAdder expirationCount = new LongAdder();
+
+    /**
+     * Separator between the object DN and the attribute name in cache keys.
+     */
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    /**
+     * Default maximum number of entries.
+     */
+    private static final int DEFAULT_MAX_SIZE = 10000;
+
+    /**
+     * Default time-to-live in milliseconds.
+     */
+    private static final int DEFAULT_TIME_TO_LIVE = 300000;
+
+    /**
+     * Default time-to-live in milliseconds for values not found.
+     */
+    private static final int DEFAULT_NEGATIVE_TIME_TO_LIVE = 60000;
+
+    /**
+     * Number of entries sampled to choose the entry evicted.
+     */
+    private static final int EVICTION_SAMPLE_SIZE = 16;
+
+    /**
+     * Default constructor. Uses the settings in the library configuration.
+     */
+    public DirectoryAttributeCache() {
+
+        this(DirectoryContext.getConfigurationProperty("ldap.cache.maxSize", DEFAULT_MAX_SIZE), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.cache.timeToLive", DEFAULT_TIME_TO_LIVE), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.cache.negativeTimeToLive", DEFAULT_NEGATIVE_TIME_TO_LIVE)); //$NON-NLS-1$
+
+        applyConfiguration(DirectoryContext.getConfiguration());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize maximum number of entries
+     * @param timeToLive time-to-live in milliseconds of entries holding a value
+     * @param negativeTimeToLive time-to-live in milliseconds of entries recording a value that
+     *                           was not found
+     */
+    public DirectoryAttributeCache(int maxSize, long timeToLive, long negativeTimeToLive) {
+
+        super();
+
+        if (maxSize <= 0 || timeToLive < 0 || negativeTimeToLive < 0) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPCACHE_ERR_ARG")); //$NON-NLS-1$
+        }
+
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.negativeTimeToLive = negativeTimeToLive;
+    }
+
+    /**
+     * Returns the cache entry for the given object DN and attribute name, or <code>null</code>
+     * if there is no entry or it has expired. A returned entry with a <code>null</code>
+     * attribute records that the value was not found in the directory.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     *
+     * @return the cache entry or <code>null</code> if not cached
+     */
+    CacheEntry lookup(String objectDN, String attributeName) {
+
+        String key = createKey(objectDN, attributeName);
+        long now = System.nanoTime();
+
+        CacheEntry entry = entries.get(key);
+        if (entry != null && now - entry.expiresAt >= 0) {
+            expire(key, entry);
+            entry = null;
+        }
+
+        if (entry == null) {
+            missCount.increment();
+        } else {
+            entry.lastAccess = now;
+            hitCount.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the invalidation generation, to be read before a directory lookup whose result
+     * is stored with <code>store(String, String, LDAPAttribute, long)</code>.
+     *
+     * @return the invalidation generation
+     */
+    long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Stores the result of a directory lookup. A <code>null</code> attribute records that the
+     * value was not found.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     * @param attribute the attribute or <code>null</code> if not found
+     */
+    void store(String objectDN, String attributeName, LDAPAttribute attribute) {
+
+        store(objectDN, attributeName, attribute, generation);
+    }
+
+    /**
+     * Stores the result of a directory lookup unless values were invalidated since the lookup
+     * started. A <code>null</code> attribute records that the value was not found.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     * @param attribute the attribute or <code>null</code> if not found
+     * @param expectedGeneration the invalidation generation read before the lookup
+     *
+     * @return whether the result was stored
+     */
+    boolean store(String objectDN, String attributeName, LDAPAttribute attribute, long expectedGeneration) {
+
+        DirectoryConfiguration applied = configuration;
+        if (applied != null) {
+            DirectoryConfiguration current = DirectoryContext.getConfiguration();
+            if (current != applied) {
+                applyConfiguration(current);
+            }
+        }
+
+        long ttl = attribute == null ? negativeTimeToLive : timeToLive;
+        if (ttl == 0) {
+            return false;
+        }
+
+        String key = createKey(objectDN, attributeName);
+        long now = System.nanoTime();
+        CacheEntry entry = new CacheEntry(attribute, now + TimeUnit.MILLISECONDS.toNanos(ttl), now);
+
+        lock.lock();
+        try {
+            if (generation != expectedGeneration) {
+                return false;
+            }
+            if (entries.put(key, entry) == null) {
+                index(key);
+            }
+            while (entries.size() > maxSize) {
+                evict();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the cached value of the given attribute of an object.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     */
+    public void invalidate(String objectDN, String attributeName) {
+
+        String key = createKey(objectDN, attributeName);
+
+        lock.lock();
+        try {
+            generation++;
+            if (entries.remove(key) != null) {
+                unindex(key);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all cached values of an object. The cost depends on the number of values cached
+     * for the object, not on the size of the cache.
+     *
+     * @param objectDN the object DN
+     */
+    public void invalidate(String objectDN) {
+
+        String objectKey = createObjectKey(objectDN);
+
+        lock.lock();
+        try {
+            generation++;
+            Set<String> keys = keysByObject.remove(objectKey);
+            if (keys != null) {
+                for (String key : keys) {
+                    entries.remove(key);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all cached values of the object affected by a change reported by a
+     * subscription, under its current DN and, if renamed, its previous DN. Invalidating from
+     * change events allows long time-to-live values without serving stale data.
+     *
+     * @param event the change event
+     */
+    public void invalidate(DirectoryChangeEvent event) {
+
+        invalidate(event.getObjectDN());
+
+        if (event.getPreviousDN() != null) {
+            invalidate(event.getPreviousDN());
+        }
+    }
+
+    /**
+     * Removes all cached values.
+     */
+    public void clear() {
+
+        lock.lock();
+        try {
+            generation++;
+            entries.clear();
+            keysByObject.clear();
+            evictionCursor = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of cached entries, including expired ones not yet removed.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the maximum number of entries.
+     *
+     * @return the maximum number of entries
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the time-to-live in milliseconds of entries holding a value.
+     *
+     * @return the time-to-live
+     */
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Returns the time-to-live in milliseconds of entries recording a value that was not found.
+     *
+     * @return the negative time-to-live
+     */
+    public long getNegativeTimeToLive() {
+        return negativeTimeToLive;
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of lookups not answered from the cache.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the number of entries evicted because the cache was full.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Returns the number of entries removed because their time-to-live elapsed.
+     *
+     * @return the expiration count
+     */
+    public long getExpirationCount() {
+        return expirationCount.sum();
+    }
+
+    /**
+     * Reads the settings from the given configuration snapshot, unless a newer one was already
+     * read. Invalid settings are ignored and the current ones are kept.
+     *
+     * @param current the configuration snapshot
+     */
+    private void applyConfiguration(DirectoryConfiguration current) {
+
+        lock.lock();
+        try {
+            if (configuration != null && configuration.getVersion() >= current.getVersion()) {
+                return;
+            }
+
+            int newMaxSize = current.getInt("ldap.cache.maxSize", DEFAULT_MAX_SIZE); //$NON-NLS-1$
+            long newTimeToLive = current.getInt("ldap.cache.timeToLive", DEFAULT_TIME_TO_LIVE); //$NON-NLS-1$
+            long newNegativeTimeToLive = current.getInt(
+                "ldap.cache.negativeTimeToLive", DEFAULT_NEGATIVE_TIME_TO_LIVE); //$NON-NLS-1$
+
+            if (newMaxSize > 0 && newTimeToLive >= 0 && newNegativeTimeToLive >= 0) {
+                maxSize = newMaxSize;
+                timeToLive = newTimeToLive;
+                negativeTimeToLive = newNegativeTimeToLive;
+            }
+
+            configuration = current;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes an expired entry, unless it was replaced in the meantime.
+     *
+     * @param key the cache key
+     * @param entry the expired entry
+     */
+    private void expire(String key, CacheEntry entry) {
+
+        lock.lock();
+        try {
+            if (entries.remove(key, entry)) {
+                unindex(key);
+                expirationCount.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Evicts the least recently used entry of a sample. Small caches are sampled whole, and
+     * larger ones from a cursor that continues where the previous sample ended, so every entry
+     * is eventually sampled. Must be called holding the lock.
+     */
+    private void evict() {
+
+        int sampleSize = entries.size();
+        if (sampleSize <= EVICTION_SAMPLE_SIZE) {
+            evictionCursor = null;
+        } else {
+            sampleSize = EVICTION_SAMPLE_SIZE;
+        }
+
+        Map.Entry<String, CacheEntry> victim = null;
+
+        for (int i = 0; i < sampleSize; i++) {
+            if (evictionCursor == null || !evictionCursor.hasNext()) {
+                evictionCursor = entries.entrySet().iterator();
+            }
+            Map.Entry<String, CacheEntry> candidate = evictionCursor.next();
+            if (victim == null || candidate.getValue().lastAccess - victim.getValue().lastAccess < 0) {
+                victim = candidate;
+            }
+        }
+
+        if (entries.remove(victim.getKey(), victim.getValue())) {
+            unindex(victim.getKey());
+            evictionCount.increment();
+        }
+    }
+
+    /**
+     * Creates the cache key for the given object DN and attribute name.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     *
+     * @return the cache key
+     */
+    private static String createKey(String objectDN, String attributeName) {
+
+        return createObjectKey(objectDN) + KEY_SEPARATOR + attributeName.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Creates the key of an object DN, the prefix of the cache keys of its attributes. DNs
+     * are normalized as the replica does, so equivalent DNs share their entries.
+     *
+     * @param objectDN the object DN
+     *
+     * @return the object key
+     */
+    private static String createObjectKey(String objectDN) {
+
+        return DirectoryReplica.toNormalizedKey(objectDN);
+    }
+
+    /**
+     * Adds a cache key to the index of its object. Must be called holding the lock.
+     *
+     * @param key the cache key
+     */
+    private void index(String key) {
+
+        keysByObject.computeIfAbsent(key.substring(0, key.indexOf(KEY_SEPARATOR)), k -> new HashSet<>()).add(key);
+    }
+
+    /**
+     * Removes a cache key from the index of its object. Must be called holding the lock.
+     *
+     * @param key the cache key
+     */
+    private void unindex(String key) {
+
+        String objectKey = key.substring(0, key.indexOf(KEY_SEPARATOR));
+        Set<String> keys = keysByObject.get(objectKey);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            keysByObject.remove(objectKey);
+        }
+    }
+
+    /**
+     * A cached lookup result.
+     */
+    static final class CacheEntry {
+
+        /**
+         * The cached attribute, or <code>null</code> if the value was not found.
+         */
+        final LDAPAttribute attribute;
+
+        /**
+         * The time, as given by <code>System.nanoTime()</code>, the entry expires.
+         */
+        final long expiresAt;
+
+        /**
+         * The time, as given by <code>System.nanoTime()</code>, the entry was last stored or
+         * found by a lookup.
+         */
+        volatile long lastAccess;
+
+        /**
+         * Constructor.
+         *
+         * @param attribute the cached attribute
+         * @param expiresAt the expiration time
+         * @param lastAccess the time the entry is stored
+         */
+        CacheEntry(LDAPAttribute attribute, long expiresAt, long lastAccess) {
+            this.attribute = attribute;
+            this.expiresAt = expiresAt;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package deors.core.directory;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import com.novell.ldap.LDAPAttribute;
+
+/**
+ * Read-only views of the binary values of an attribute, and lean decoding of its string
+ * values.<br>
+ *
+ * JLDAP returns a new copy of a value on every call to <code>getByteValue()</code> and of all
+ * values on every call to <code>getByteValueArray()</code>. The views created here wrap the
+ * arrays held by the attribute object instead, so reading a value allocates only the view.
+ * The arrays are reached through a method handle on the private <code>values</code> field of
+ * <code>LDAPAttribute</code>; if that field cannot be accessed, the views wrap copies made by
+ * JLDAP, which is slower but equally correct.<br>
+ *
+ * Views are read-only because attribute objects may be shared through the attribute cache.<br>
+ *
+ * String values are decoded from the same arrays, so no copy is made before decoding, and
+ * <code>visit()</code> decodes them into a buffer kept per thread, handing the visitor a view
+ * over it, so no string is created at all. ASCII values, the most common ones, are copied
+ * into the buffer with a plain loop, and other well-formed values are decoded in place; only
+ * malformed values go through a <code>CharsetDecoder</code>, which replaces the bytes in
+ * error. Buffers grown for values longer than <code>MAX_RETAINED_CHARS</code> are not kept.
+ *
+ * @author deors
+ * @version 1.0
+ */
+final class DirectoryAttributeValues {
+
+    /**
+     * Getter of the values of an attribute object, or <code>null</code> if not accessible.
+     */
+    private static final MethodHandle VALUES_GETTER = findValuesGetter();
+
+    /**
+     * Empty read-only buffer.
+     */
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    /**
+     * Decoders of string values, one per thread.
+     */
+    private static final ThreadLocal<ValueDecoder> DECODERS = ThreadLocal.withInitial(ValueDecoder::new);
+
+    /**
+     * Initial capacity in characters of the decoding buffers.
+     */
+    private static final int INITIAL_CHARS = 256;
+
+    /**
+     * Maximum capacity in characters of the decoding buffers kept between values.
+     */
+    private static final int MAX_RETAINED_CHARS = 8192;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private DirectoryAttributeValues() {
+        super();
+    }
+
+    /**
+     * Returns a read-only view of the first value of an attribute.
+     *
+     * @param attribute the attribute object, or <code>null</code>
+     *
+     * @return the view, which is empty if the attribute is <code>null</code> or has no values
+     */
+    static ByteBuffer getBuffer(LDAPAttribute attribute) {
+
+        Object[] values = getValues(attribute);
+
+        if (values.length == 0) {
+            return EMPTY_BUFFER.duplicate();
+        }
+
+        return ByteBuffer.wrap((byte[]) values[0]).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a stream of read-only views of the values of an attribute. Views are created as
+     * the stream is consumed.
+     *
+     * @param attribute the attribute object, or <code>null</code>
+     *
+     * @return the stream of views, which is empty if the attribute is <code>null</code>
+     */
+    static Stream<ByteBuffer> getBuffers(LDAPAttribute attribute) {
+
+        return Arrays.stream(getValues(attribute))
+            .map(value -> ByteBuffer.wrap((byte[]) value).asReadOnlyBuffer());
+    }
+
+    /**
+     * Returns an input stream reading the first value of an attribute.
+     *
+     * @param attribute the attribute object, or <code>null</code>
+     *
+     * @return the input stream, which is empty if the attribute is <code>null</code>
+     */
+    static InputStream getInputStream(LDAPAttribute attribute) {
+
+        Object[] values = getValues(attribute);
+
+        if (values.length == 0) {
+            return InputStream.nullInputStream();
+        }
+
+        return new ByteArrayInputStream((byte[]) values[0]);
+    }
+
+    /**
+     * Returns the first value of an attribute as a string.
+     *
+     * @param attribute the attribute object, or <code>null</code>
+     *
+     * @return the value, or <code>null</code> if the attribute is <code>null</code> or has no
+     *         values
+     */
+    static String getString(LDAPAttribute attribute) {
+
+        Object[] values = getValues(attribute);
+
+        if (values.length == 0) {
+            return null;
+        }
+
+        return new String((byte[]) values[0], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the values of an attribute as strings.
+     *
+     * @param attribute the attribute object, or <code>null</code>
+     *
+     * @return the values, which are empty if the attribute is <code>null</code>
+     */
+    static String[] getStrings(LDAPAttribute attribute) {
+
+        Object[] values = getValues(attribute);
+        String[] strings = new String[values.length];
+
+        for (int i = 0; i < values.length; i++) {
+            strings[i] = new String((byte[]) values[i], StandardCharsets.UTF_8);
+        }
+
+        return strings;
+    }
+
+    /**
+     * Passes the values of an attribute to a visitor as character sequences, without creating
+     * strings.
+     *
+     * @param attribute the attribute object, or <code>null</code>
+     * @param visitor the visitor
+     *
+     * @return the number of values visited
+     */
+    static int visit(LDAPAttribute attribute, DirectoryValueVisitor visitor) {
+
+        Object[] values = getValues(attribute);
+
+        if (values.length == 0) {
+            return 0;
+        }
+
+        ValueDecoder decoder = DECODERS.get();
+        if (decoder.inUse) {
+            // a visitor reading values itself gets a decoder of its own
+            decoder = new ValueDecoder();
+        }
+
+        decoder.inUse = true;
+        try {
+            int visited = 0;
+            for (Object value : values) {
+                visited++;
+                if (!visitor.visitValue(decoder.decode((byte[]) value))) {
+                    break;
+                }
+            }
+            return visited;
+        } finally {
+            decoder.release();
+            decoder.inUse = false;
+        }
+    }
+
+    /**
+     * Returns the values of an attribute object without copying them when possible. The
+     * returned arrays must not be modified.
+     *
+     * @param attribute the attribute object, or <code>null</code>
+     *
+     * @return the values, or an empty array
+     */
+    private static Object[] getValues(LDAPAttribute attribute) {
+
+        if (attribute == null) {
+            return new Object[0];
+        }
+
+        Object[] values;
+
+        if (VALUES_GETTER == null) {
+            values = attribute.getByteValueArray();
+        } else {
+            try {
+                values = (Object[]) VALUES_GETTER.invokeExact(attribute);
+            } catch (Throwable t) {
+                values = attribute.getByteValueArray();
+            }
+        }
+
+        return values == null ? new Object[0] : values;
+    }
+
+    /**
+     * Looks up the getter of the private values field of attribute objects.
+     *
+     * @return the getter, or <code>null</code> if the field is not accessible
+     */
+    private static MethodHandle findValuesGetter() {
+
+        try {
+            return MethodHandles.privateLookupIn(LDAPAttribute.class, MethodHandles.lookup())
+                .findGetter(LDAPAttribute.class, "values", Object[].class); //$NON-NLS-1$
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Decoder of UTF-8 values into a reusable buffer, which is also the character sequence
+     * handed to visitors.
+     */
+    static final class ValueDecoder implements CharSequence {
+
+        /**
+         * The decoding buffer.
+         */
+        private char[] chars = new char[INITIAL_CHARS];
+
+        /**
+         * The length of the value decoded.
+         */
+        private int length;
+
+        /**
+         * The decoder of non-ASCII values, created when first needed.
+         */
+        private CharsetDecoder utf8;
+
+        /**
+         * Whether a visit is using this decoder.
+         */
+        boolean inUse;
+
+        /**
+         * Decodes a value into the buffer.
+         *
+         * @param bytes the UTF-8 bytes of the value
+         *
+         * @return this decoder, as the sequence of the value
+         */
+        CharSequence decode(byte[] bytes) {
+
+            if (chars.length < bytes.length) {
+                chars = new char[Math.max(bytes.length, chars.length * 2)];
+            }
+
+            int position = 0;
+            while (position < bytes.length && bytes[position] >= 0) {
+                chars[position] = (char) bytes[position];
+                position++;
+            }
+
+            if (position == bytes.length) {
+                length = position;
+                return this;
+            }
+
+            int decoded = decodeUtf8(bytes, position);
+            if (decoded >= 0) {
+                length = decoded;
+                return this;
+            }
+
+            if (utf8 == null) {
+                utf8 = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+
+            // malformed values are decoded with the replacement character
+            // UTF-8 never decodes to more characters than bytes
+            CharBuffer output = CharBuffer.wrap(chars, position, chars.length - position);
+            utf8.reset();
+            utf8.decode(ByteBuffer.wrap(bytes, position, bytes.length - position), output, true);
+            utf8.flush(output);
+            length = output.position();
+            return this;
+        }
+
+        /**
+         * Decodes the rest of a well-formed UTF-8 value into the buffer, which must have room
+         * for as many characters as bytes.
+         *
+         * @param bytes the UTF-8 bytes of the value
+         * @param from the index of the first byte to decode, also the index of its character
+         *
+         * @return the length of the value, or -1 if it is malformed
+         */
+        private int decodeUtf8(byte[] bytes, int from) {
+
+            int position = from;
+            int count = from;
+
+            while (position < bytes.length) {
+                int first = bytes[position] & 0xff;
+                if (first < 0x80) {
+                    chars[count++] = (char) first;
+                    position++;
+                } else if (first >= 0xc2 && first < 0xe0) {
+                    if (!isContinuation(bytes, position + 1)) {
+                        return -1;
+                    }
+                    chars[count++] = (char) ((first & 0x1f) << 6 | bytes[position + 1] & 0x3f);
+                    position += 2;
+                } else if (first >= 0xe0 && first < 0xf0) {
+                    if (!isContinuation(bytes, position + 1) || !isContinuation(bytes, position + 2)) {
+                        return -1;
+                    }
+                    int c = (first & 0x0f) << 12 | (bytes[position + 1] & 0x3f) << 6 | bytes[position + 2] & 0x3f;
+                    if (c < 0x800 || Character.isSurrogate((char) c)) {
+                        return -1;
+                    }
+                    chars[count++] = (char) c;
+                    position += 3;
+                } else if (first >= 0xf0 && first < 0xf5) {
+                    if (!isContinuation(bytes, position + 1) || !isContinuation(bytes, position + 2)
+                        || !isContinuation(bytes, position + 3)) {
+                        return -1;
+                    }
+                    int c = (first & 0x07) << 18 | (bytes[position + 1] & 0x3f) << 12
+                        | (bytes[position + 2] & 0x3f) << 6 | bytes[position + 3] & 0x3f;
+                    if (c < 0x10000 || c > Character.MAX_CODE_POINT) {
+                        return -1;
+                    }
+                    chars[count++] = Character.highSurrogate(c);
+                    chars[count++] = Character.lowSurrogate(c);
+                    position += 4;
+                } else {
+                    return -1;
+                }
+            }
+
+            return count;
+        }
+
+        /**
+         * Returns whether a byte of a value is a UTF-8 continuation byte.
+         *
+         * @param bytes the bytes of the value
+         * @param index the index of the byte
+         *
+         * @return <code>true</code> if the byte exists and is a continuation byte
+         */
+        private static boolean isContinuation(byte[] bytes, int index) {
+
+            return index < bytes.length && (bytes[index] & 0xc0) == 0x80;
+        }
+
+        /**
+         * Drops a buffer grown too large after a visit.
+         */
+        void release() {
+
+            length = 0;
+            if (chars.length > MAX_RETAINED_CHARS) {
+                chars = new char[INITIAL_CHARS];
+            }
+        }
+
+        /**
+         * Returns the length of the value.
+         *
+         * @return the length in characters
+         */
+        @Override
+        public int length() {
+            return length;
+        }
+
+        /**
+         * Returns a character of the value.
+         *
+         * @param index the index of the character
+         *
+         * @return the character
+         */
+        @Override
+        public char charAt(int index) {
+
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return chars[index];
+        }
+
+        /**
+         * Returns part of the value, as a new string.
+         *
+         * @param start the start index, inclusive
+         * @param end the end index, exclusive
+         *
+         * @return the part of the value
+         */
+        @Override
+        public CharSequence subSequence(int start, int end) {
+
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException();
+            }
+            return new String(chars, start, end - start);
+        }
+
+        /**
+         * Returns the value as a new string.
+         *
+         * @return the value
+         */
+        @Override
+        public String toString() {
+
+            return new String(chars, 0, length);
+        }
+    }
+}
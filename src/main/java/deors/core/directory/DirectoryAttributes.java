@@ -0,0 +1,244 @@
+package deors.core.directory;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import com.novell.ldap.LDAPAttribute;
+
+/**
+ * Attributes of a directory object retrieved in a single lookup.<br>
+ *
+ * Values can be read as a string, as a string array for multi-valued attributes or as a byte
+ * array for binary attributes. Binary values can also be read without copying them as
+ * read-only buffers or input streams. Attribute names are compared ignoring case. Attributes that
+ * were requested but not found are reported as <code>null</code> or empty arrays, the same way
+ * <code>DirectoryManager</code> single-attribute methods do.<br>
+ *
+ * Instances are immutable.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectoryAttributes {
+
+    /**
+     * The object DN.
+     */
+    private final String objectDN;
+
+    /**
+     * The attributes found, keyed by attribute name.
+     */
+    private final Map<String, LDAPAttribute> attributes;
+
+    /**
+     * Constructor.
+     *
+     * @param objectDN the object DN
+     * @param attributes the attributes found, keyed by attribute name ignoring case
+     */
+    DirectoryAttributes(String objectDN, Map<String, LDAPAttribute> attributes) {
+
+        super();
+        this.objectDN = objectDN;
+        this.attributes = attributes;
+    }
+
+    /**
+     * Returns an empty attribute set for the given object DN.
+     *
+     * @param objectDN the object DN
+     *
+     * @return an empty attribute set
+     */
+    static DirectoryAttributes empty(String objectDN) {
+
+        return new DirectoryAttributes(objectDN, Collections.<String, LDAPAttribute>emptyMap());
+    }
+
+    /**
+     * Creates a new, case-insensitive map suitable to build an attribute set.
+     *
+     * @return a new empty map
+     */
+    static Map<String, LDAPAttribute> createAttributeMap() {
+
+        return new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    }
+
+    /**
+     * Returns the object DN.
+     *
+     * @return the object DN
+     */
+    public String getObjectDN() {
+        return objectDN;
+    }
+
+    /**
+     * Returns whether the given attribute was found and has at least one value.
+     *
+     * @param attributeName the attribute name
+     *
+     * @return <code>true</code> if the attribute was found
+     */
+    public boolean contains(String attributeName) {
+
+        return getAttribute(attributeName) != null;
+    }
+
+    /**
+     * Returns the names of the attributes found.
+     *
+     * @return the attribute names
+     */
+    public Set<String> getAttributeNames() {
+
+        return Collections.unmodifiableSet(attributes.keySet());
+    }
+
+    /**
+     * Returns the number of attributes found.
+     *
+     * @return the number of attributes
+     */
+    public int size() {
+
+        return attributes.size();
+    }
+
+    /**
+     * Returns whether no attribute was found, either because the object does not exist or
+     * because it has none of the requested attributes.
+     *
+     * @return <code>true</code> if no attribute was found
+     */
+    public boolean isEmpty() {
+
+        return attributes.isEmpty();
+    }
+
+    /**
+     * Returns the attribute object for the given attribute name.
+     *
+     * @param attributeName the attribute name
+     *
+     * @return the attribute object or <code>null</code> if not found
+     */
+    LDAPAttribute getAttribute(String attributeName) {
+
+        LDAPAttribute attribute = attributes.get(attributeName);
+
+        if (attribute == null || attribute.size() == 0) {
+            return null;
+        }
+
+        return attribute;
+    }
+
+    /**
+     * Returns the attribute value as a string.
+     *
+     * @param attributeName the attribute name
+     *
+     * @return the attribute value as a string or <code>null</code> if not found
+     */
+    public String getValue(String attributeName) {
+
+        LDAPAttribute attribute = getAttribute(attributeName);
+
+        if (attribute == null) {
+            return null;
+        }
+
+        return attribute.getStringValue();
+    }
+
+    /**
+     * Returns the attribute values as a string array.
+     *
+     * @param attributeName the attribute name
+     *
+     * @return the attribute values as a string array or an empty array if not found
+     */
+    public String[] getValues(String attributeName) {
+
+        LDAPAttribute attribute = getAttribute(attributeName);
+
+        if (attribute == null) {
+            return new String[0];
+        }
+
+        return attribute.getStringValueArray();
+    }
+
+    /**
+     * Returns the attribute value as a byte array.
+     *
+     * @param attributeName the attribute name
+     *
+     * @return the attribute value as a byte array or an empty array if not found
+     */
+    public byte[] getValueBytes(String attributeName) {
+
+        LDAPAttribute attribute = getAttribute(attributeName);
+
+        if (attribute == null) {
+            return new byte[0];
+        }
+
+        return attribute.getByteValue();
+    }
+
+    /**
+     * Returns a read-only view of the attribute value. The value is not copied.
+     *
+     * @param attributeName the attribute name
+     *
+     * @return a read-only view of the attribute value, which is empty if not found
+     */
+    public ByteBuffer getValueBuffer(String attributeName) {
+
+        return DirectoryAttributeValues.getBuffer(getAttribute(attributeName));
+    }
+
+    /**
+     * Returns read-only views of the attribute values. Values are not copied.
+     *
+     * @param attributeName the attribute name
+     *
+     * @return a stream of read-only views of the attribute values, which is empty if not found
+     */
+    public Stream<ByteBuffer> getValueBuffers(String attributeName) {
+
+        return DirectoryAttributeValues.getBuffers(getAttribute(attributeName));
+    }
+
+    /**
+     * Returns an input stream reading the attribute value. The value is not copied.
+     *
+     * @param attributeName the attribute name
+     *
+     * @return an input stream reading the attribute value, which is empty if not found
+     */
+    public InputStream getValueStream(String attributeName) {
+
+        return DirectoryAttributeValues.getInputStream(getAttribute(attributeName));
+    }
+
+    /**
+     * Returns a string representation of the attribute set.
+     *
+     * @return the string representation
+     */
+    @Override
+    public String toString() {
+
+        return objectDN + attributes.keySet();
+    }
+}
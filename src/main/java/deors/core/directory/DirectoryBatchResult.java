@@ -0,0 +1,96 @@
+package deors.core.directory;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Result of a batch lookup of many directory objects.<br>
+ *
+ * Each requested object DN is reported either in the results, with the attributes found, or in
+ * the errors, with the exception raised by its lookup. Object DNs are the ones given by the
+ * caller, so results can be retrieved with the same strings used in the request.<br>
+ *
+ * Instances are immutable.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectoryBatchResult {
+
+    /**
+     * The attributes found, keyed by object DN.
+     */
+    private final Map<String, DirectoryAttributes> results;
+
+    /**
+     * The lookup errors, keyed by object DN.
+     */
+    private final Map<String, DirectoryException> errors;
+
+    /**
+     * Constructor.
+     *
+     * @param results the attributes found, keyed by object DN
+     * @param errors the lookup errors, keyed by object DN
+     */
+    DirectoryBatchResult(Map<String, DirectoryAttributes> results,
+                         Map<String, DirectoryException> errors) {
+
+        super();
+        this.results = Collections.unmodifiableMap(results);
+        this.errors = Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * Returns the attributes found for the given object DN.
+     *
+     * @param objectDN the object DN
+     *
+     * @return the attributes found or <code>null</code> if the object DN was not requested or
+     *         its lookup failed
+     */
+    public DirectoryAttributes get(String objectDN) {
+
+        return results.get(objectDN);
+    }
+
+    /**
+     * Returns the error raised by the lookup of the given object DN.
+     *
+     * @param objectDN the object DN
+     *
+     * @return the error or <code>null</code> if the lookup succeeded
+     */
+    public DirectoryException getError(String objectDN) {
+
+        return errors.get(objectDN);
+    }
+
+    /**
+     * Returns the attributes found, keyed by object DN, in request order.
+     *
+     * @return the results
+     */
+    public Map<String, DirectoryAttributes> getResults() {
+        return results;
+    }
+
+    /**
+     * Returns the lookup errors, keyed by object DN, in request order.
+     *
+     * @return the errors
+     */
+    public Map<String, DirectoryException> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Returns whether any lookup failed.
+     *
+     * @return <code>true</code> if there are errors
+     */
+    public boolean hasErrors() {
+
+        return !errors.isEmpty();
+    }
+}
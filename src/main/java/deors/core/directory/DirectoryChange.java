@@ -0,0 +1,400 @@
+package deors.core.directory;
+
+import java.util.Arrays;
+
+import com.novell.ldap.LDAPAttributeSet;
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPDN;
+import com.novell.ldap.LDAPEntry;
+import com.novell.ldap.LDAPException;
+import com.novell.ldap.LDAPModification;
+import com.novell.ldap.LDAPResponseQueue;
+
+/**
+ * A change to be applied to a directory entry: the addition of a new entry, the modification
+ * of its attributes, its deletion or its renaming.<br>
+ *
+ * Changes are created with the <code>add()</code>, <code>modify()</code>, <code>delete()</code>
+ * and <code>rename()</code> factory methods, and applied one at a time with
+ * <code>DirectoryManager.applyChange()</code> or in bulk with
+ * <code>DirectoryManager.applyChanges()</code>.<br>
+ *
+ * Instances are immutable, provided the attribute set and modifications given to the factory
+ * methods are not modified afterwards.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectoryChange {
+
+    /**
+     * Change types.
+     */
+    public enum Type {
+
+        /**
+         * Addition of a new entry.
+         */
+        ADD,
+
+        /**
+         * Modification of the attributes of an entry.
+         */
+        MODIFY,
+
+        /**
+         * Deletion of an entry.
+         */
+        DELETE,
+
+        /**
+         * Renaming of an entry, optionally moving it under a new parent.
+         */
+        RENAME
+    }
+
+    /**
+     * The change type.
+     */
+    private final Type type;
+
+    /**
+     * The DN of the entry changed.
+     */
+    private final String objectDN;
+
+    /**
+     * The attributes of the new entry, or <code>null</code> if not an addition.
+     */
+    private final LDAPAttributeSet attributes;
+
+    /**
+     * The modifications, or <code>null</code> if not a modification.
+     */
+    private final LDAPModification[] modifications;
+
+    /**
+     * The new RDN, or <code>null</code> if not a renaming.
+     */
+    private final String newRDN;
+
+    /**
+     * The DN of the new parent, or <code>null</code> if the entry is not moved.
+     */
+    private final String newParentDN;
+
+    /**
+     * Whether the old RDN values are removed from the entry when renamed.
+     */
+    private final boolean deleteOldRDN;
+
+    /**
+     * Constructor.
+     *
+     * @param type the change type
+     * @param objectDN the DN of the entry changed
+     * @param attributes the attributes of the new entry, or <code>null</code>
+     * @param modifications the modifications, or <code>null</code>
+     * @param newRDN the new RDN, or <code>null</code>
+     * @param newParentDN the DN of the new parent, or <code>null</code>
+     * @param deleteOldRDN whether the old RDN values are removed
+     */
+    private DirectoryChange(Type type, String objectDN, LDAPAttributeSet attributes,
+                            LDAPModification[] modifications, String newRDN, String newParentDN,
+                            boolean deleteOldRDN) {
+
+        super();
+
+        if (objectDN == null || objectDN.length() == 0) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMGR_ERR_CHANGE_ARG")); //$NON-NLS-1$
+        }
+
+        this.type = type;
+        this.objectDN = objectDN;
+        this.attributes = attributes;
+        this.modifications = modifications;
+        this.newRDN = newRDN;
+        this.newParentDN = newParentDN;
+        this.deleteOldRDN = deleteOldRDN;
+    }
+
+    /**
+     * Creates the addition of a new entry.
+     *
+     * @param objectDN the DN of the new entry
+     * @param attributes the attributes of the new entry
+     *
+     * @return the change
+     */
+    public static DirectoryChange add(String objectDN, LDAPAttributeSet attributes) {
+
+        if (attributes == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMGR_ERR_CHANGE_ARG")); //$NON-NLS-1$
+        }
+
+        return new DirectoryChange(Type.ADD, objectDN, attributes, null, null, null, false);
+    }
+
+    /**
+     * Creates the modification of the attributes of an entry. All modifications are applied
+     * atomically by the directory.
+     *
+     * @param objectDN the DN of the entry
+     * @param modifications the modifications
+     *
+     * @return the change
+     */
+    public static DirectoryChange modify(String objectDN, LDAPModification... modifications) {
+
+        if (modifications == null || modifications.length == 0) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMGR_ERR_CHANGE_ARG")); //$NON-NLS-1$
+        }
+
+        for (LDAPModification modification : modifications) {
+            if (modification == null) {
+                throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMGR_ERR_CHANGE_ARG")); //$NON-NLS-1$
+            }
+        }
+
+        return new DirectoryChange(Type.MODIFY, objectDN, null, modifications.clone(), null, null, false);
+    }
+
+    /**
+     * Creates the deletion of an entry.
+     *
+     * @param objectDN the DN of the entry
+     *
+     * @return the change
+     */
+    public static DirectoryChange delete(String objectDN) {
+
+        return new DirectoryChange(Type.DELETE, objectDN, null, null, null, null, false);
+    }
+
+    /**
+     * Creates the renaming of an entry, optionally moving it under a new parent.
+     *
+     * @param objectDN the DN of the entry
+     * @param newRDN the new RDN
+     * @param newParentDN the DN of the new parent, or <code>null</code> to keep the entry under
+     *                    its current parent
+     * @param deleteOldRDN whether the old RDN values are removed from the entry
+     *
+     * @return the change
+     */
+    public static DirectoryChange rename(String objectDN, String newRDN, String newParentDN,
+                                         boolean deleteOldRDN) {
+
+        if (newRDN == null || newRDN.length() == 0) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMGR_ERR_CHANGE_ARG")); //$NON-NLS-1$
+        }
+
+        return new DirectoryChange(Type.RENAME, objectDN, null, null, newRDN, newParentDN, deleteOldRDN);
+    }
+
+    /**
+     * Returns the change type.
+     *
+     * @return the change type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the DN of the entry changed.
+     *
+     * @return the object DN
+     */
+    public String getObjectDN() {
+        return objectDN;
+    }
+
+    /**
+     * Returns the attributes of the new entry.
+     *
+     * @return the attributes, or <code>null</code> if the change is not an addition
+     */
+    public LDAPAttributeSet getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Returns the modifications.
+     *
+     * @return a copy of the modifications, or <code>null</code> if the change is not a
+     *         modification
+     */
+    public LDAPModification[] getModifications() {
+
+        return modifications == null ? null : modifications.clone();
+    }
+
+    /**
+     * Returns the new RDN.
+     *
+     * @return the new RDN, or <code>null</code> if the change is not a renaming
+     */
+    public String getNewRDN() {
+        return newRDN;
+    }
+
+    /**
+     * Returns the DN of the new parent.
+     *
+     * @return the new parent DN, or <code>null</code> if the entry is not moved
+     */
+    public String getNewParentDN() {
+        return newParentDN;
+    }
+
+    /**
+     * Returns whether the old RDN values are removed from the entry when renamed.
+     *
+     * @return <code>true</code> if the old RDN values are removed
+     */
+    public boolean isDeleteOldRDN() {
+        return deleteOldRDN;
+    }
+
+    /**
+     * Returns the DN of the entry once the change is applied.
+     *
+     * @return the new DN for a renaming, or the object DN otherwise
+     */
+    public String getResultDN() {
+
+        if (type != Type.RENAME) {
+            return objectDN;
+        }
+
+        String parentDN = newParentDN;
+
+        if (parentDN == null) {
+            String[] components = LDAPDN.explodeDN(objectDN, false);
+            parentDN = String.join(",", Arrays.copyOfRange(components, 1, components.length)); //$NON-NLS-1$
+        }
+
+        return parentDN.length() == 0 ? newRDN : newRDN + ',' + parentDN;
+    }
+
+    /**
+     * Returns a string representation of the change.
+     *
+     * @return the change type and object DN
+     */
+    @Override
+    public String toString() {
+
+        return type + " " + objectDN; //$NON-NLS-1$
+    }
+
+    /**
+     * Returns the operation reported to listeners when this change is applied on its own.
+     *
+     * @return the operation
+     */
+    DirectoryOperation getOperation() {
+
+        switch (type) {
+            case ADD:
+                return DirectoryOperation.ADD;
+            case MODIFY:
+                return DirectoryOperation.MODIFY;
+            case DELETE:
+                return DirectoryOperation.DELETE;
+            default:
+                return DirectoryOperation.RENAME;
+        }
+    }
+
+    /**
+     * Returns the key of the message used to report a failure of this change.
+     *
+     * @return the message key
+     */
+    String getErrorKey() {
+
+        switch (type) {
+            case ADD:
+                return "LDAPMGR_ERR_ADD"; //$NON-NLS-1$
+            case MODIFY:
+                return "LDAPMGR_ERR_MODIFY"; //$NON-NLS-1$
+            case DELETE:
+                return "LDAPMGR_ERR_DELETE"; //$NON-NLS-1$
+            default:
+                return "LDAPMGR_ERR_RENAME"; //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Wraps an error raised while applying this change.
+     *
+     * @param ldape the error
+     *
+     * @return the exception reporting the failure of this change
+     */
+    DirectoryException toDirectoryException(LDAPException ldape) {
+
+        return new DirectoryException(DirectoryContext.getMessage(getErrorKey(), ldape.getMessage()), ldape);
+    }
+
+    /**
+     * Applies this change, waiting for the response of the directory.
+     *
+     * @param connection the connection
+     *
+     * @throws LDAPException an error while applying the change
+     */
+    void apply(LDAPConnection connection)
+        throws LDAPException {
+
+        switch (type) {
+            case ADD:
+                connection.add(new LDAPEntry(objectDN, attributes));
+                break;
+            case MODIFY:
+                connection.modify(objectDN, modifications);
+                break;
+            case DELETE:
+                connection.delete(objectDN);
+                break;
+            default:
+                if (newParentDN == null) {
+                    connection.rename(objectDN, newRDN, deleteOldRDN);
+                } else {
+                    connection.rename(objectDN, newRDN, newParentDN, deleteOldRDN);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Sends this change without waiting for the response of the directory.
+     *
+     * @param connection the connection
+     * @param queue the queue where the response is collected, or <code>null</code> to create
+     *              a new one
+     *
+     * @return the queue where the response is collected
+     *
+     * @throws LDAPException an error while sending the change
+     */
+    LDAPResponseQueue send(LDAPConnection connection, LDAPResponseQueue queue)
+        throws LDAPException {
+
+        switch (type) {
+            case ADD:
+                return connection.add(new LDAPEntry(objectDN, attributes), queue);
+            case MODIFY:
+                return connection.modify(objectDN, modifications, queue);
+            case DELETE:
+                return connection.delete(objectDN, queue);
+            default:
+                if (newParentDN == null) {
+                    return connection.rename(objectDN, newRDN, deleteOldRDN, queue);
+                }
+                return connection.rename(objectDN, newRDN, newParentDN, deleteOldRDN, queue);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package deors.core.directory;
+
+import com.novell.ldap.LDAPEntry;
+
+/**
+ * A change made to a directory entry, as reported by a <code>DirectorySubscription</code>.<br>
+ *
+ * Depending on how changes are detected, the event may lack some details: the entry is not
+ * available for changes read from the changelog, the previous DN of renamed entries is only
+ * known with the persistent search control or the changelog, and the change number is only
+ * known when the server provides one.<br>
+ *
+ * Instances are immutable, provided the entry is not modified.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectoryChangeEvent {
+
+    /**
+     * The change type.
+     */
+    private final DirectoryChange.Type type;
+
+    /**
+     * The DN of the entry changed, after the change.
+     */
+    private final String objectDN;
+
+    /**
+     * The DN of the entry before it was renamed, or <code>null</code>.
+     */
+    private final String previousDN;
+
+    /**
+     * The entry after the change, or <code>null</code> if not available.
+     */
+    private final LDAPEntry entry;
+
+    /**
+     * The change number, or -1 if not available.
+     */
+    private final long changeNumber;
+
+    /**
+     * Constructor.
+     *
+     * @param type the change type
+     * @param objectDN the DN of the entry changed, after the change
+     * @param previousDN the DN of the entry before it was renamed, or <code>null</code>
+     * @param entry the entry after the change, or <code>null</code>
+     * @param changeNumber the change number, or -1
+     */
+    DirectoryChangeEvent(DirectoryChange.Type type, String objectDN, String previousDN, LDAPEntry entry,
+                         long changeNumber) {
+
+        super();
+        this.type = type;
+        this.objectDN = objectDN;
+        this.previousDN = previousDN;
+        this.entry = entry;
+        this.changeNumber = changeNumber;
+    }
+
+    /**
+     * Returns the change type.
+     *
+     * @return the change type
+     */
+    public DirectoryChange.Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the DN of the entry changed. For renamings, this is the new DN.
+     *
+     * @return the object DN
+     */
+    public String getObjectDN() {
+        return objectDN;
+    }
+
+    /**
+     * Returns the DN of the entry before it was renamed.
+     *
+     * @return the previous DN, or <code>null</code> if the change is not a renaming or the
+     *         previous DN is not known
+     */
+    public String getPreviousDN() {
+        return previousDN;
+    }
+
+    /**
+     * Returns the entry after the change, with the attributes requested by the subscription.
+     *
+     * @return the entry, or <code>null</code> if not available
+     */
+    public LDAPEntry getEntry() {
+        return entry;
+    }
+
+    /**
+     * Returns the change number assigned by the server.
+     *
+     * @return the change number, or -1 if not available
+     */
+    public long getChangeNumber() {
+        return changeNumber;
+    }
+
+    /**
+     * Returns a string representation of the event.
+     *
+     * @return the change type and object DN
+     */
+    @Override
+    public String toString() {
+
+        return previousDN == null ? type + " " + objectDN //$NON-NLS-1$
+            : type + " " + previousDN + " -> " + objectDN; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
@@ -0,0 +1,87 @@
+package deors.core.directory;
+
+import com.novell.ldap.LDAPException;
+
+/**
+ * Result of a change applied in bulk with <code>DirectoryManager.applyChanges()</code>.<br>
+ *
+ * Instances are immutable.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectoryChangeResult {
+
+    /**
+     * The change applied.
+     */
+    private final DirectoryChange change;
+
+    /**
+     * The error raised by the change, or <code>null</code> if it succeeded.
+     */
+    private final DirectoryException error;
+
+    /**
+     * Constructor.
+     *
+     * @param change the change applied
+     * @param error the error raised by the change, or <code>null</code> if it succeeded
+     */
+    DirectoryChangeResult(DirectoryChange change, DirectoryException error) {
+
+        super();
+        this.change = change;
+        this.error = error;
+    }
+
+    /**
+     * Returns the change applied.
+     *
+     * @return the change
+     */
+    public DirectoryChange getChange() {
+        return change;
+    }
+
+    /**
+     * Returns the error raised by the change.
+     *
+     * @return the error or <code>null</code> if the change succeeded
+     */
+    public DirectoryException getError() {
+        return error;
+    }
+
+    /**
+     * Returns whether the change succeeded.
+     *
+     * @return <code>true</code> if the change succeeded
+     */
+    public boolean isSuccess() {
+
+        return error == null;
+    }
+
+    /**
+     * Returns the LDAP result code of the change.
+     *
+     * @return <code>LDAPException.SUCCESS</code> if the change succeeded, or the result code
+     *         of the error
+     */
+    public int getResultCode() {
+
+        return error == null ? LDAPException.SUCCESS : DirectoryManager.getResultCode(error);
+    }
+
+    /**
+     * Returns a string representation of the result.
+     *
+     * @return the change and its outcome
+     */
+    @Override
+    public String toString() {
+
+        return error == null ? change + " ok" : change + " " + error.getMessage(); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
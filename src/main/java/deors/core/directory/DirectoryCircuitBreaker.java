@@ -0,0 +1,358 @@
+package deors.core.directory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Circuit breaker rejecting calls to a directory server while its error rate is too high.<br>
+ *
+ * The outcome of the last <code>windowSize</code> calls is kept. Once at least
+ * <code>minimumCalls</code> outcomes are known and the percentage of failures reaches
+ * <code>failureRateThreshold</code>, the breaker opens and calls are rejected without
+ * reaching the server. After <code>openDuration</code> milliseconds a single trial call is
+ * let through: if it succeeds the breaker closes, and if it fails the breaker opens again.<br>
+ *
+ * Only failures that reflect the health of the server, such as connection errors and
+ * timeouts, should be recorded as failures; errors like a missing entry are successful calls
+ * from the point of view of the breaker.<br>
+ *
+ * Default settings are read from the library configuration:
+ * <code>ldap.breaker.failureRateThreshold</code>, <code>ldap.breaker.minimumCalls</code>,
+ * <code>ldap.breaker.windowSize</code> and <code>ldap.breaker.openDuration</code>. A zero
+ * threshold disables the breaker.<br>
+ *
+ * The class is thread-safe. Outcomes are recorded without locking; the lock is only taken
+ * when the state changes.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectoryCircuitBreaker {
+
+    /**
+     * Circuit breaker states.
+     */
+    public enum State {
+
+        /**
+         * Calls are let through and their outcome recorded.
+         */
+        CLOSED,
+
+        /**
+         * Calls are rejected.
+         */
+        OPEN,
+
+        /**
+         * A trial call was let through and its outcome is awaited; other calls are rejected.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Percentage of failed calls that opens the breaker, or zero if disabled.
+     */
+    private final int failureRateThreshold;
+
+    /**
+     * Minimum number of outcomes known before the failure rate is evaluated.
+     */
+    private final int minimumCalls;
+
+    /**
+     * Time in nanoseconds the breaker stays open before a trial call is let through.
+     */
+    private final long openDurationNanos;
+
+    /**
+     * Current state.
+     */
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+    /**
+     * Time, as given by <code>System.nanoTime()</code>, the breaker was last opened.
+     */
+    private volatile long openedAt;
+
+    /**
+     * Number of recent outcomes kept.
+     */
+    private final int windowSize;
+
+    /**
+     * Outcomes of the last calls. Replaced by an empty window when the outcomes are forgotten,
+     * so outcomes recorded concurrently go to the discarded window.
+     */
+    private final AtomicReference<Window> window;
+
+    /**
+     * Lock serializing the state changes.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Default failure rate threshold.
+     */
+    private static final int DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+
+    /**
+     * Default minimum number of calls.
+     */
+    private static final int DEFAULT_MINIMUM_CALLS = 20;
+
+    /**
+     * Default window size.
+     */
+    private static final int DEFAULT_WINDOW_SIZE = 100;
+
+    /**
+     * Default open duration in milliseconds.
+     */
+    private static final int DEFAULT_OPEN_DURATION = 30000;
+
+    /**
+     * Percentage base.
+     */
+    private static final int PERCENT = 100;
+
+    /**
+     * Constructor that reads the settings from the library configuration.
+     */
+    public DirectoryCircuitBreaker() {
+
+        this(DirectoryContext.getConfigurationProperty(
+                "ldap.breaker.failureRateThreshold", DEFAULT_FAILURE_RATE_THRESHOLD), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.breaker.minimumCalls", DEFAULT_MINIMUM_CALLS), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.breaker.windowSize", DEFAULT_WINDOW_SIZE), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.breaker.openDuration", DEFAULT_OPEN_DURATION)); //$NON-NLS-1$
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param failureRateThreshold percentage of failed calls that opens the breaker, from 1 to
+     *                             100, or zero to disable the breaker
+     * @param minimumCalls minimum number of outcomes known before the failure rate is evaluated
+     * @param windowSize number of recent outcomes kept
+     * @param openDuration time in milliseconds the breaker stays open before a trial call
+     */
+    public DirectoryCircuitBreaker(int failureRateThreshold, int minimumCalls, int windowSize, long openDuration) {
+
+        super();
+
+        if (failureRateThreshold < 0 || failureRateThreshold > PERCENT || windowSize <= 0
+            || minimumCalls <= 0 || minimumCalls > windowSize || openDuration < 0) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPBRK_ERR_ARG")); //$NON-NLS-1$
+        }
+
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDuration);
+        this.windowSize = windowSize;
+        this.window = new AtomicReference<>(new Window(windowSize));
+    }
+
+    /**
+     * Asks permission for a call. When the breaker is open and the open duration has elapsed,
+     * the caller is given the trial call and must record its outcome.
+     *
+     * @return <code>true</code> if the call may proceed
+     */
+    public boolean allowRequest() {
+
+        State current = state.get();
+
+        if (current == State.CLOSED) {
+            return true;
+        }
+
+        return current == State.OPEN && System.nanoTime() - openedAt >= openDurationNanos
+            && state.compareAndSet(State.OPEN, State.HALF_OPEN);
+    }
+
+    /**
+     * Returns whether a call would be permitted now, without taking the trial call.
+     *
+     * @return <code>true</code> if the breaker is closed, or open with the open duration elapsed
+     */
+    public boolean isCallPermitted() {
+
+        State current = state.get();
+        return current == State.CLOSED
+            || current == State.OPEN && System.nanoTime() - openedAt >= openDurationNanos;
+    }
+
+    /**
+     * Records a successful call. A successful trial call closes the breaker. Calls completed
+     * while the breaker is open are ignored.
+     */
+    public void recordSuccess() {
+
+        if (failureRateThreshold == 0) {
+            return;
+        }
+
+        State current = state.get();
+
+        if (current == State.HALF_OPEN) {
+            lock.lock();
+            try {
+                if (state.get() == State.HALF_OPEN) {
+                    window.set(new Window(windowSize));
+                    state.set(State.CLOSED);
+                }
+            } finally {
+                lock.unlock();
+            }
+        } else if (current == State.CLOSED) {
+            // a success cannot raise the failure rate, so it is not evaluated
+            window.get().record(false);
+        }
+    }
+
+    /**
+     * Records a failed call. A failed trial call opens the breaker again. Calls completed while
+     * the breaker is open are ignored.
+     */
+    public void recordFailure() {
+
+        if (failureRateThreshold == 0) {
+            return;
+        }
+
+        State current = state.get();
+
+        if (current == State.HALF_OPEN) {
+            open(State.HALF_OPEN, null);
+        } else if (current == State.CLOSED) {
+            Window recorded = window.get();
+            recorded.record(true);
+            int outcomeCount = recorded.getOutcomeCount();
+            if (outcomeCount >= minimumCalls
+                && recorded.failureCount.get() * PERCENT >= failureRateThreshold * outcomeCount) {
+                open(State.CLOSED, recorded);
+            }
+        }
+    }
+
+    /**
+     * Closes the breaker and forgets the recorded outcomes.
+     */
+    public void reset() {
+
+        lock.lock();
+        try {
+            window.set(new Window(windowSize));
+            state.set(State.CLOSED);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the current state.
+     *
+     * @return the state
+     */
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * Returns the percentage of failures among the recorded outcomes.
+     *
+     * @return the failure rate, or zero if no outcome is recorded
+     */
+    public int getFailureRate() {
+
+        Window current = window.get();
+        int outcomeCount = current.getOutcomeCount();
+        return outcomeCount == 0 ? 0 : current.failureCount.get() * PERCENT / outcomeCount;
+    }
+
+    /**
+     * Opens the breaker if it is still in the expected state and, when the failure rate of a
+     * window opened it, that window was not discarded meanwhile. The outcomes are forgotten.
+     *
+     * @param expected the state the breaker is expected to be in
+     * @param evaluated the window whose failure rate reached the threshold, or
+     *                  <code>null</code> if opened by a failed trial call
+     */
+    private void open(State expected, Window evaluated) {
+
+        lock.lock();
+        try {
+            if (state.get() == expected && (evaluated == null || window.get() == evaluated)) {
+                window.set(new Window(windowSize));
+                openedAt = System.nanoTime();
+                state.set(State.OPEN);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Outcomes of the last calls, kept in a circular buffer updated without locking.
+     */
+    private static final class Window {
+
+        /**
+         * Outcomes in the circular buffer, where 1 is a failure.
+         */
+        private final AtomicIntegerArray outcomes;
+
+        /**
+         * Number of outcomes recorded, which gives the position of the next one.
+         */
+        private final AtomicLong callCount = new AtomicLong();
+
+        /**
+         * Number of failures in the circular buffer.
+         */
+        private final AtomicInteger failureCount = new AtomicInteger();
+
+        /**
+         * Constructor.
+         *
+         * @param size the number of outcomes kept
+         */
+        Window(int size) {
+
+            super();
+            this.outcomes = new AtomicIntegerArray(size);
+        }
+
+        /**
+         * Stores an outcome, replacing the oldest one once the buffer is full.
+         *
+         * @param failure whether the call failed
+         */
+        void record(boolean failure) {
+
+            int position = (int) (callCount.getAndIncrement() % outcomes.length());
+            int previous = outcomes.getAndSet(position, failure ? 1 : 0);
+
+            if (failure && previous == 0) {
+                failureCount.incrementAndGet();
+            } else if (!failure && previous == 1) {
+                failureCount.decrementAndGet();
+            }
+        }
+
+        /**
+         * Returns the number of outcomes in the circular buffer.
+         *
+         * @return the outcome count
+         */
+        int getOutcomeCount() {
+
+            return (int) Math.min(callCount.get(), outcomes.length());
+        }
+    }
+}
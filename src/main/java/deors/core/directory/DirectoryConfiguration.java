@@ -0,0 +1,336 @@
+package deors.core.directory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable snapshot of the library configuration.<br>
+ *
+ * A snapshot holds the configuration properties of the resource bundle and, if given, of an
+ * external properties file whose values take precedence. Values are trimmed and converted to
+ * integers and booleans once, when the snapshot is built, so reading a setting is a single map
+ * lookup and never parses text.<br>
+ *
+ * The current snapshot is returned by <code>DirectoryContext.getConfiguration()</code> and is
+ * replaced as a whole when the configuration is loaded again, so readers always see a
+ * consistent set of values. Classes reading their settings on hot paths keep them in fields
+ * and read them again only when the snapshot they were read from is no longer the current
+ * one.<br>
+ *
+ * The class is immutable and thread-safe.
+ *
+ * @author deors
+ * @version 1.0
+ * @see DirectoryContext#getConfiguration()
+ */
+public final class DirectoryConfiguration {
+
+    /**
+     * The configuration settings by property name.
+     */
+    private final Map<String, Setting> settings;
+
+    /**
+     * The external properties file, or <code>null</code> if only the resource bundle was read.
+     */
+    private final Path file;
+
+    /**
+     * The snapshot version, increasing with every snapshot built.
+     */
+    private final long version;
+
+    /**
+     * The time, in milliseconds since the epoch, the snapshot was built.
+     */
+    private final long loadTime;
+
+    /**
+     * Source of snapshot versions.
+     */
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param values the property values by name
+     * @param file the external properties file the values were read from, or <code>null</code>
+     */
+    DirectoryConfiguration(Map<String, String> values, Path file) {
+
+        super();
+
+        Map<String, Setting> parsed = new HashMap<>(values.size() * 2);
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            parsed.put(value.getKey(), new Setting(value.getValue().trim()));
+        }
+
+        this.settings = Collections.unmodifiableMap(parsed);
+        this.file = file;
+        this.version = VERSIONS.incrementAndGet();
+        this.loadTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Builds a snapshot from the given resource bundle and external properties file. A missing
+     * resource bundle yields no values, so the defaults of each setting apply.
+     *
+     * @param bundleName the resource bundle name
+     * @param file the external properties file, or <code>null</code> to read only the bundle
+     *
+     * @return the snapshot
+     *
+     * @throws DirectoryException an error while reading the external properties file
+     */
+    static DirectoryConfiguration load(String bundleName, Path file)
+        throws DirectoryException {
+
+        Map<String, String> values = readBundle(bundleName);
+
+        if (file != null) {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (IOException | IllegalArgumentException e) {
+                throw new DirectoryException(
+                    DirectoryContext.getMessage("LDAPCFG_ERR_LOAD", file.toString()), e); //$NON-NLS-1$
+            }
+            for (String name : properties.stringPropertyNames()) {
+                values.put(name, properties.getProperty(name));
+            }
+        }
+
+        return new DirectoryConfiguration(values, file);
+    }
+
+    /**
+     * Reads the values of the given resource bundle.
+     *
+     * @param bundleName the resource bundle name
+     *
+     * @return the values by property name, empty if the bundle could not be located
+     */
+    static Map<String, String> readBundle(String bundleName) {
+
+        Map<String, String> values = new HashMap<>();
+
+        try {
+            ResourceBundle bundle = ResourceBundle.getBundle(bundleName);
+            for (String name : bundle.keySet()) {
+                values.put(name, bundle.getString(name));
+            }
+        } catch (MissingResourceException mre) {
+            // the defaults of each setting apply
+        }
+
+        return values;
+    }
+
+    /**
+     * Returns a configuration property or the default value if the property is missing.
+     *
+     * @param propertyName the property name
+     * @param defaultValue the default value
+     *
+     * @return the property value or the default value if the property is missing
+     */
+    public String getString(String propertyName, String defaultValue) {
+
+        Setting setting = settings.get(propertyName);
+        return setting == null ? defaultValue : setting.text;
+    }
+
+    /**
+     * Returns a configuration property or the default value if the property is missing or its
+     * value is not in the given array of valid values.
+     *
+     * @param propertyName the property name
+     * @param defaultValue the default value
+     * @param validValues array with the valid values
+     *
+     * @return the property value or the default value if the property is missing or the value
+     *         is not a valid one
+     */
+    public String getString(String propertyName, String defaultValue, String[] validValues) {
+
+        Setting setting = settings.get(propertyName);
+        if (setting == null) {
+            return defaultValue;
+        }
+
+        for (String validValue : validValues) {
+            if (setting.text.equals(validValue)) {
+                return setting.text;
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Returns a configuration property as an integer value or the default value if the property
+     * is missing or its value is not an integer value.
+     *
+     * @param propertyName the property name
+     * @param defaultValue the default value
+     *
+     * @return the property value or the default value if the property is missing or the value
+     *         is not an integer value
+     */
+    public int getInt(String propertyName, int defaultValue) {
+
+        Setting setting = settings.get(propertyName);
+        return setting == null || !setting.numeric ? defaultValue : setting.intValue;
+    }
+
+    /**
+     * Returns the first character of a configuration property or the default value if the
+     * property is missing or empty.
+     *
+     * @param propertyName the property name
+     * @param defaultValue the default value
+     *
+     * @return the first character of the property value or the default value if the property
+     *         is missing or empty
+     */
+    public char getChar(String propertyName, char defaultValue) {
+
+        Setting setting = settings.get(propertyName);
+        return setting == null || setting.text.isEmpty() ? defaultValue : setting.text.charAt(0);
+    }
+
+    /**
+     * Returns a configuration property as a boolean value or the default value if the property
+     * is missing. Values other than <code>true</code>, ignoring case, are <code>false</code>.
+     *
+     * @param propertyName the property name
+     * @param defaultValue the default value
+     *
+     * @return the property value or the default value if the property is missing
+     */
+    public boolean getBoolean(String propertyName, boolean defaultValue) {
+
+        Setting setting = settings.get(propertyName);
+        return setting == null ? defaultValue : setting.booleanValue;
+    }
+
+    /**
+     * Returns the names of the configuration properties in the snapshot.
+     *
+     * @return the property names
+     */
+    public Set<String> getPropertyNames() {
+        return settings.keySet();
+    }
+
+    /**
+     * Returns the external properties file the snapshot was read from.
+     *
+     * @return the external properties file, or <code>null</code> if only the resource bundle
+     *         was read
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the snapshot version, which increases with every snapshot built.
+     *
+     * @return the snapshot version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the time, in milliseconds since the epoch, the snapshot was built.
+     *
+     * @return the load time
+     */
+    public long getLoadTime() {
+        return loadTime;
+    }
+
+    /**
+     * Returns whether this snapshot holds the same values, read from the same file, as the
+     * given one.
+     *
+     * @param other the other snapshot
+     *
+     * @return <code>true</code> if both snapshots hold the same values
+     */
+    boolean hasSameValues(DirectoryConfiguration other) {
+
+        if (other == null || !Objects.equals(file, other.file)
+            || settings.size() != other.settings.size()) {
+            return false;
+        }
+
+        for (Map.Entry<String, Setting> setting : settings.entrySet()) {
+            Setting otherSetting = other.settings.get(setting.getKey());
+            if (otherSetting == null || !setting.getValue().text.equals(otherSetting.text)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A configuration property value with its conversions.
+     */
+    private static final class Setting {
+
+        /**
+         * The trimmed value.
+         */
+        final String text;
+
+        /**
+         * Whether the value is an integer value.
+         */
+        final boolean numeric;
+
+        /**
+         * The value as an integer, or zero if not an integer value.
+         */
+        final int intValue;
+
+        /**
+         * The value as a boolean.
+         */
+        final boolean booleanValue;
+
+        /**
+         * Constructor.
+         *
+         * @param text the trimmed value
+         */
+        Setting(String text) {
+
+            this.text = text;
+            this.booleanValue = Boolean.parseBoolean(text);
+
+            int parsed = 0;
+            boolean isInteger = false;
+            try {
+                parsed = Integer.parseInt(text);
+                isInteger = true;
+            } catch (NumberFormatException nfe) {
+                // not an integer value; integer reads return their defaults
+            }
+            this.intValue = parsed;
+            this.numeric = isInteger;
+        }
+    }
+}
@@ -0,0 +1,1098 @@
+package deors.core.directory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPException;
+
+/**
+ * Bounded pool of connections to a directory server or to a set of equivalent servers.<br>
+ *
+ * The pool opens <code>minSize</code> connections when created and grows on demand up to
+ * <code>maxSize</code> connections. Callers borrow a connection, use it and give it back with
+ * <code>returnConnection()</code>, or discard it with <code>invalidateConnection()</code> when
+ * the connection is known to be broken.<br>
+ *
+ * Idle connections are validated when borrowed and periodically by a background evictor,
+ * which also closes connections idle for longer than <code>idleTimeout</code> milliseconds while
+ * the pool is above its minimum size.<br>
+ *
+ * Connections beyond the minimum size can be opened ahead of demand with
+ * <code>warmUp()</code>, which opens, secures and binds them in parallel, so the first
+ * requests after startup do not pay for opening them one by one.<br>
+ *
+ * Default settings are read from the library configuration:
+ * <code>ldap.pool.minSize</code>, <code>ldap.pool.maxSize</code>,
+ * <code>ldap.pool.idleTimeout</code>, <code>ldap.pool.maxWait</code>,
+ * <code>ldap.pool.validateOnBorrow</code> and <code>ldap.pool.evictionInterval</code>. Pools
+ * created with these settings read them again when the configuration is reloaded, on the next
+ * borrow or evictor run, except the eviction interval. Any pool can also be resized with
+ * <code>resize()</code>; when shrunk, idle connections above the new maximum size are closed
+ * at once and borrowed ones as they are given back.<br>
+ *
+ * When bind credentials are given, every connection is bound with them as soon as it is
+ * opened, and that is the identity connections must have when returned to the pool.
+ * Otherwise connections are anonymous.<br>
+ *
+ * When backed by a <code>DirectoryServerSet</code>, each borrow asks the set which server to
+ * use, reusing an idle connection to that server if there is one. A server that cannot be
+ * connected to is marked as unavailable and the next server is tried, so callers only see an
+ * error when no server can be reached. Borrowed connections count as operations running on
+ * their server, and connections invalidated after an error mark their server as unavailable.
+ * The time a connection is borrowed is not taken as the latency of its server, as it includes
+ * the work of the caller; latencies are measured by the health probes of the set.<br>
+ *
+ * Connections are opened with the limits of a <code>DirectoryTimeouts</code>, read from the
+ * library configuration unless set with <code>setTimeouts()</code>, and with the transport
+ * security of a <code>DirectoryTls</code>, the shared one unless set with
+ * <code>setTls()</code>, so reconnections resume TLS sessions. Returned and invalidated
+ * connections are recorded as successful and failed calls in the circuit breaker of their
+ * server, and borrows fail fast when the breakers of all servers reject calls.<br>
+ *
+ * The class is thread-safe.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectoryConnectionPool implements AutoCloseable {
+
+    /**
+     * The directory servers connections are opened to.
+     */
+    private final DirectoryServerSet servers;
+
+    /**
+     * The DN connections are bound as, or <code>null</code> for anonymous connections.
+     */
+    private final String bindDN;
+
+    /**
+     * The password connections are bound with, or <code>null</code> for anonymous connections.
+     */
+    private final byte[] bindPassword;
+
+    /**
+     * Minimum number of open connections.
+     */
+    private volatile int minSize;
+
+    /**
+     * Maximum number of open connections.
+     */
+    private volatile int maxSize;
+
+    /**
+     * Time in milliseconds after which an idle connection may be closed.
+     */
+    private volatile long idleTimeout;
+
+    /**
+     * Maximum time in milliseconds to wait for a connection when the pool is exhausted.
+     */
+    private volatile long maxWait;
+
+    /**
+     * Whether idle connections are validated before being handed out.
+     */
+    private volatile boolean validateOnBorrow;
+
+    /**
+     * The configuration snapshot the settings were read from, or <code>null</code> if they were
+     * given to the constructor.
+     */
+    private volatile DirectoryConfiguration configuration;
+
+    /**
+     * Limits applied to the connections opened from now on.
+     */
+    private volatile DirectoryTimeouts timeouts = new DirectoryTimeouts();
+
+    /**
+     * Transport security applied to the connections opened from now on.
+     */
+    private volatile DirectoryTls tls = DirectoryTls.getDefault();
+
+    /**
+     * Permits limiting the number of connections in use plus the ones being opened.
+     */
+    private final ResizableSemaphore permits;
+
+    /**
+     * Idle connections, most recently used first.
+     */
+    private final BlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+
+    /**
+     * Connections currently borrowed by callers, with the time they were borrowed.
+     */
+    private final Map<LDAPConnection, PooledConnection> borrowedConnections = new ConcurrentHashMap<>();
+
+    /**
+     * Number of connections currently open, either idle or borrowed.
+     */
+    private final AtomicInteger openConnections = new AtomicInteger();
+
+    /**
+     * Background executor running the idle connection evictor, or <code>null</code> if disabled.
+     */
+    private final ScheduledExecutorService evictor;
+
+    /**
+     * Flag that is <code>true</code> once the pool is closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Default minimum pool size.
+     */
+    private static final int DEFAULT_MIN_SIZE = 2;
+
+    /**
+     * Default maximum pool size.
+     */
+    private static final int DEFAULT_MAX_SIZE = 10;
+
+    /**
+     * Default idle timeout in milliseconds.
+     */
+    private static final int DEFAULT_IDLE_TIMEOUT = 300000;
+
+    /**
+     * Default maximum wait time in milliseconds.
+     */
+    private static final int DEFAULT_MAX_WAIT = 5000;
+
+    /**
+     * Default eviction interval in milliseconds.
+     */
+    private static final int DEFAULT_EVICTION_INTERVAL = 60000;
+
+    /**
+     * Constructor that creates a pool of connections to the given directory host and port using
+     * the settings in the library configuration.
+     *
+     * @param directoryHost the directory host name or IP address
+     * @param directoryPort the directory service port
+     *
+     * @throws DirectoryException an error while opening the initial connections
+     */
+    public DirectoryConnectionPool(String directoryHost, int directoryPort)
+        throws DirectoryException {
+
+        this(directoryHost, directoryPort, null, null);
+    }
+
+    /**
+     * Constructor that creates a pool of connections to the given directory host and port,
+     * bound with the given credentials, using the settings in the library configuration.
+     *
+     * @param directoryHost the directory host name or IP address
+     * @param directoryPort the directory service port
+     * @param bindDN the DN connections are bound as, or <code>null</code> for anonymous connections
+     * @param bindPassword the password connections are bound with
+     *
+     * @throws DirectoryException an error while opening the initial connections
+     */
+    public DirectoryConnectionPool(String directoryHost, int directoryPort, String bindDN, String bindPassword)
+        throws DirectoryException {
+
+        this(directoryHost, directoryPort, bindDN, bindPassword,
+            DirectoryContext.getConfigurationProperty("ldap.pool.minSize", DEFAULT_MIN_SIZE), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.pool.maxSize", DEFAULT_MAX_SIZE), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.pool.idleTimeout", DEFAULT_IDLE_TIMEOUT), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.pool.maxWait", DEFAULT_MAX_WAIT), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.pool.validateOnBorrow", true), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.pool.evictionInterval", DEFAULT_EVICTION_INTERVAL)); //$NON-NLS-1$
+
+        applyConfiguration(DirectoryContext.getConfiguration());
+    }
+
+    /**
+     * Constructor that creates a pool of connections to the given directory host and port.
+     *
+     * @param directoryHost the directory host name or IP address
+     * @param directoryPort the directory service port
+     * @param minSize minimum number of open connections
+     * @param maxSize maximum number of open connections
+     * @param idleTimeout time in milliseconds after which an idle connection may be closed
+     * @param maxWait maximum time in milliseconds to wait for a connection
+     * @param validateOnBorrow whether idle connections are validated before being handed out
+     * @param evictionInterval time in milliseconds between evictor runs, or zero to disable it
+     *
+     * @throws DirectoryException an error while opening the initial connections
+     */
+    public DirectoryConnectionPool(String directoryHost, int directoryPort, int minSize, int maxSize,
+                                   long idleTimeout, long maxWait, boolean validateOnBorrow,
+                                   long evictionInterval)
+        throws DirectoryException {
+
+        this(directoryHost, directoryPort, null, null, minSize, maxSize,
+            idleTimeout, maxWait, validateOnBorrow, evictionInterval);
+    }
+
+    /**
+     * Constructor that creates a pool of connections to the given directory host and port,
+     * bound with the given credentials.
+     *
+     * @param directoryHost the directory host name or IP address
+     * @param directoryPort the directory service port
+     * @param bindDN the DN connections are bound as, or <code>null</code> for anonymous connections
+     * @param bindPassword the password connections are bound with
+     * @param minSize minimum number of open connections
+     * @param maxSize maximum number of open connections
+     * @param idleTimeout time in milliseconds after which an idle connection may be closed
+     * @param maxWait maximum time in milliseconds to wait for a connection
+     * @param validateOnBorrow whether idle connections are validated before being handed out
+     * @param evictionInterval time in milliseconds between evictor runs, or zero to disable it
+     *
+     * @throws DirectoryException an error while opening or binding the initial connections
+     */
+    public DirectoryConnectionPool(String directoryHost, int directoryPort, String bindDN, String bindPassword,
+                                   int minSize, int maxSize, long idleTimeout, long maxWait,
+                                   boolean validateOnBorrow, long evictionInterval)
+        throws DirectoryException {
+
+        this(DirectoryServerSet.of(directoryHost, directoryPort), bindDN, bindPassword, minSize, maxSize,
+            idleTimeout, maxWait, validateOnBorrow, evictionInterval);
+    }
+
+    /**
+     * Constructor that creates a pool of connections to the given directory servers, bound
+     * with the given credentials, using the settings in the library configuration.
+     *
+     * @param servers the directory servers
+     * @param bindDN the DN connections are bound as, or <code>null</code> for anonymous connections
+     * @param bindPassword the password connections are bound with
+     *
+     * @throws DirectoryException an error while opening the initial connections
+     */
+    public DirectoryConnectionPool(DirectoryServerSet servers, String bindDN, String bindPassword)
+        throws DirectoryException {
+
+        this(servers, bindDN, bindPassword,
+            DirectoryContext.getConfigurationProperty("ldap.pool.minSize", DEFAULT_MIN_SIZE), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.pool.maxSize", DEFAULT_MAX_SIZE), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.pool.idleTimeout", DEFAULT_IDLE_TIMEOUT), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.pool.maxWait", DEFAULT_MAX_WAIT), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.pool.validateOnBorrow", true), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.pool.evictionInterval", DEFAULT_EVICTION_INTERVAL)); //$NON-NLS-1$
+
+        applyConfiguration(DirectoryContext.getConfiguration());
+    }
+
+    /**
+     * Constructor that creates a pool of connections to the given directory servers, bound
+     * with the given credentials. The pool does not own the server set: closing the pool leaves
+     * the health probes of the set running.
+     *
+     * @param servers the directory servers
+     * @param bindDN the DN connections are bound as, or <code>null</code> for anonymous connections
+     * @param bindPassword the password connections are bound with
+     * @param minSize minimum number of open connections
+     * @param maxSize maximum number of open connections
+     * @param idleTimeout time in milliseconds after which an idle connection may be closed
+     * @param maxWait maximum time in milliseconds to wait for a connection
+     * @param validateOnBorrow whether idle connections are validated before being handed out
+     * @param evictionInterval time in milliseconds between evictor runs, or zero to disable it
+     *
+     * @throws DirectoryException an error while opening or binding the initial connections
+     */
+    public DirectoryConnectionPool(DirectoryServerSet servers, String bindDN, String bindPassword,
+                                   int minSize, int maxSize, long idleTimeout, long maxWait,
+                                   boolean validateOnBorrow, long evictionInterval)
+        throws DirectoryException {
+
+        super();
+
+        if (servers == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPSRV_ERR_SERVERS_ARG")); //$NON-NLS-1$
+        }
+
+        if (minSize < 0 || maxSize <= 0 || minSize > maxSize) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPPOOL_ERR_SIZE_ARG")); //$NON-NLS-1$
+        }
+
+        this.servers = servers;
+        this.bindDN = bindDN;
+        this.bindPassword = bindDN == null ? null : DirectoryManager.toPasswordBytes(bindPassword);
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeout = idleTimeout;
+        this.maxWait = maxWait;
+        this.validateOnBorrow = validateOnBorrow;
+        this.permits = new ResizableSemaphore(maxSize);
+
+        try {
+            ensureMinimumSize();
+        } catch (DirectoryException de) {
+            closeIdleConnections();
+            throw de;
+        }
+
+        if (evictionInterval > 0) {
+            evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "directory-pool-evictor"); //$NON-NLS-1$
+                thread.setDaemon(true);
+                return thread;
+            });
+            evictor.scheduleWithFixedDelay(
+                this::evictIdleConnections, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+        } else {
+            evictor = null;
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if no idle connection is available
+     * and the pool is below its maximum size. If the pool is exhausted, the call waits up to
+     * <code>maxWait</code> milliseconds for a connection to be returned.
+     *
+     * @return a connected directory connection
+     *
+     * @throws DirectoryException the pool is closed or exhausted, or a new connection could not
+     *                            be opened
+     */
+    public LDAPConnection borrowConnection()
+        throws DirectoryException {
+
+        if (closed) {
+            throw new DirectoryException(DirectoryContext.getMessage("LDAPPOOL_ERR_CLOSED")); //$NON-NLS-1$
+        }
+
+        refreshConfiguration();
+
+        try {
+            if (!permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+                throw new DirectoryException(DirectoryContext.getMessage("LDAPPOOL_ERR_EXHAUSTED")); //$NON-NLS-1$
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new DirectoryException(DirectoryContext.getMessage("LDAPPOOL_ERR_EXHAUSTED"), ie); //$NON-NLS-1$
+        }
+
+        try {
+            PooledConnection pooled = takeConnection(true);
+            pooled.status.operationStarted();
+            borrowedConnections.put(pooled.connection, new PooledConnection(
+                pooled.connection, pooled.status, System.nanoTime()));
+            return pooled.connection;
+        } catch (DirectoryException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives back a borrowed connection to the pool so it can be reused by other callers.
+     * Connections not borrowed from this pool are ignored.
+     *
+     * @param connection the borrowed connection
+     */
+    public void returnConnection(LDAPConnection connection) {
+
+        PooledConnection borrowed = connection == null ? null : borrowedConnections.remove(connection);
+        if (borrowed == null) {
+            return;
+        }
+
+        borrowed.status.operationCompleted();
+        borrowed.status.getCircuitBreaker().recordSuccess();
+
+        if (closed || openConnections.get() > maxSize) {
+            destroyConnection(connection);
+        } else {
+            idleConnections.offerFirst(new PooledConnection(connection, borrowed.status, System.nanoTime()));
+        }
+
+        permits.release();
+    }
+
+    /**
+     * Discards a borrowed connection that is known to be broken. The connection is closed, its
+     * server is marked as unavailable and a new connection will be opened on demand.
+     * Connections not borrowed from this pool are ignored.
+     *
+     * @param connection the borrowed connection
+     */
+    public void invalidateConnection(LDAPConnection connection) {
+
+        PooledConnection borrowed = connection == null ? null : borrowedConnections.remove(connection);
+        if (borrowed == null) {
+            return;
+        }
+
+        borrowed.status.operationFailed();
+        borrowed.status.getCircuitBreaker().recordFailure();
+        destroyConnection(connection);
+        permits.release();
+    }
+
+    /**
+     * Validates idle connections, closes the broken ones and those idle for longer than the
+     * idle timeout while the pool is above its minimum size, and opens new connections to keep
+     * the pool at its minimum size. This method is run periodically by the evictor, if enabled.
+     */
+    public void evictIdleConnections() {
+
+        if (closed) {
+            return;
+        }
+
+        refreshConfiguration();
+
+        long now = System.nanoTime();
+        long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+        int candidates = idleConnections.size();
+
+        for (int i = 0; i < candidates; i++) {
+            PooledConnection pooled = idleConnections.pollLast();
+            if (pooled == null) {
+                break;
+            }
+            boolean expired = idleTimeout > 0 && now - pooled.lastUsed > idleTimeoutNanos
+                && openConnections.get() > minSize;
+            boolean excess = openConnections.get() > maxSize;
+            if (expired || excess || !isValid(pooled.connection)) {
+                destroyConnection(pooled.connection);
+            } else {
+                idleConnections.offerFirst(pooled);
+            }
+        }
+
+        try {
+            ensureMinimumSize();
+        } catch (DirectoryException de) {
+            // the server may be temporarily unavailable; next run will try again
+        }
+    }
+
+    /**
+     * Opens idle connections in parallel, binding them if the pool has credentials, until the
+     * pool holds the given number of open connections or its maximum size. Each connection is
+     * opened on its own virtual thread, except one, which is opened on the calling thread.
+     *
+     * @param connections the number of open connections wanted
+     *
+     * @return the number of connections opened
+     *
+     * @throws DirectoryException the pool is closed, or an error while opening a connection,
+     *                            which is raised once all the others are opened
+     */
+    public int warmUp(int connections)
+        throws DirectoryException {
+
+        if (closed) {
+            throw new DirectoryException(DirectoryContext.getMessage("LDAPPOOL_ERR_CLOSED")); //$NON-NLS-1$
+        }
+
+        int missing = Math.min(connections, maxSize) - openConnections.get();
+        int opened = 0;
+        DirectoryException error = null;
+
+        if (missing <= 0) {
+            return 0;
+        }
+
+        List<Future<PooledConnection>> openers = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 1; i < missing; i++) {
+                openers.add(executor.submit(this::openIdleConnection));
+            }
+
+            try {
+                if (openIdleConnection() != null) {
+                    opened++;
+                }
+            } catch (DirectoryException de) {
+                error = de;
+            }
+        }
+
+        for (Future<PooledConnection> opener : openers) {
+            try {
+                if (opener.get() != null) {
+                    opened++;
+                }
+            } catch (ExecutionException ee) {
+                if (!(ee.getCause() instanceof DirectoryException)) {
+                    throw (RuntimeException) ee.getCause();
+                }
+                if (error == null) {
+                    error = (DirectoryException) ee.getCause();
+                }
+            } catch (InterruptedException ie) {
+                // the executor is closed, so every opener is done and no wait happens
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (error != null) {
+            throw error;
+        }
+
+        return opened;
+    }
+
+    /**
+     * Opens a connection and adds it to the idle connections, if the pool is not closed and
+     * has room for it.
+     *
+     * @return the connection, or <code>null</code> if the pool is closed or full
+     *
+     * @throws DirectoryException an error while opening the connection
+     */
+    private PooledConnection openIdleConnection()
+        throws DirectoryException {
+
+        if (closed || !permits.tryAcquire()) {
+            return null;
+        }
+
+        try {
+            PooledConnection pooled = takeConnection(false);
+            if (closed) {
+                destroyConnection(pooled.connection);
+                return null;
+            }
+            idleConnections.offerLast(pooled);
+            return pooled;
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes the pool. Idle connections are closed immediately and borrowed connections are
+     * closed when returned.
+     */
+    @Override
+    public void close() {
+
+        closed = true;
+
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+
+        closeIdleConnections();
+    }
+
+    /**
+     * Returns whether the given exception signals that the connection it was raised on is no
+     * longer usable and should be invalidated instead of returned to the pool. Timeouts are
+     * connection errors, as the connection may still be waiting for a response.
+     *
+     * @param ldape the exception raised by a directory operation
+     *
+     * @return <code>true</code> if the connection should be discarded
+     */
+    public static boolean isConnectionError(LDAPException ldape) {
+
+        int resultCode = ldape.getResultCode();
+        return resultCode == LDAPException.SERVER_DOWN
+            || resultCode == LDAPException.CONNECT_ERROR
+            || resultCode == LDAPException.UNAVAILABLE
+            || resultCode == LDAPException.LDAP_TIMEOUT;
+    }
+
+    /**
+     * Returns the directory host name or IP address. When the pool is backed by several
+     * servers, the first one is returned.
+     *
+     * @return the directory host
+     */
+    public String getDirectoryHost() {
+        return servers.getStatuses().get(0).getServer().getHost();
+    }
+
+    /**
+     * Returns the directory service port. When the pool is backed by several servers, the
+     * first one is returned.
+     *
+     * @return the directory port
+     */
+    public int getDirectoryPort() {
+        return servers.getStatuses().get(0).getServer().getPort();
+    }
+
+    /**
+     * Returns the directory servers connections are opened to.
+     *
+     * @return the server set
+     */
+    public DirectoryServerSet getServers() {
+        return servers;
+    }
+
+    /**
+     * Returns the DN connections are bound as.
+     *
+     * @return the bind DN, or <code>null</code> for anonymous connections
+     */
+    public String getBindDN() {
+        return bindDN;
+    }
+
+    /**
+     * Returns the limits applied to the connections opened from now on.
+     *
+     * @return the timeouts
+     */
+    public DirectoryTimeouts getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * Sets the limits applied to the connections opened from now on. Connections already open
+     * keep their limits until they are closed.
+     *
+     * @param timeouts the timeouts
+     */
+    public void setTimeouts(DirectoryTimeouts timeouts) {
+
+        if (timeouts == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMGR_ERR_TIMEOUT_ARG")); //$NON-NLS-1$
+        }
+
+        this.timeouts = timeouts;
+    }
+
+    /**
+     * Returns the transport security applied to the connections opened from now on.
+     *
+     * @return the transport security
+     */
+    public DirectoryTls getTls() {
+        return tls;
+    }
+
+    /**
+     * Sets the transport security applied to the connections opened from now on. Connections
+     * already open keep theirs until they are closed; connections opened by the constructor
+     * use the shared instance returned by <code>DirectoryTls.getDefault()</code>.
+     *
+     * @param tls the transport security
+     */
+    public void setTls(DirectoryTls tls) {
+
+        if (tls == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPTLS_ERR_ARG")); //$NON-NLS-1$
+        }
+
+        this.tls = tls;
+    }
+
+    /**
+     * Changes the minimum and maximum number of open connections. Callers waiting for a
+     * connection are served at once if the pool grows. If it shrinks, idle connections above
+     * the new maximum size are closed, borrowed ones are closed as they are given back, and
+     * new borrows wait until the pool is below its new maximum size. Connections up to the new minimum size are opened by the evictor, or by
+     * <code>warmUp()</code>.
+     *
+     * @param minSize minimum number of open connections
+     * @param maxSize maximum number of open connections
+     */
+    public synchronized void resize(int minSize, int maxSize) {
+
+        if (minSize < 0 || maxSize <= 0 || minSize > maxSize) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPPOOL_ERR_SIZE_ARG")); //$NON-NLS-1$
+        }
+
+        int growth = maxSize - this.maxSize;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+
+        if (growth > 0) {
+            permits.release(growth);
+        } else if (growth < 0) {
+            permits.reducePermits(-growth);
+            PooledConnection pooled;
+            while (openConnections.get() > maxSize && (pooled = idleConnections.pollLast()) != null) {
+                destroyConnection(pooled.connection);
+            }
+        }
+    }
+
+    /**
+     * Returns the minimum number of open connections.
+     *
+     * @return the minimum pool size
+     */
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * Returns the maximum number of open connections.
+     *
+     * @return the maximum pool size
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of connections currently borrowed.
+     *
+     * @return the number of borrowed connections
+     */
+    public int getActiveCount() {
+        return borrowedConnections.size();
+    }
+
+    /**
+     * Returns the number of idle connections.
+     *
+     * @return the number of idle connections
+     */
+    public int getIdleCount() {
+        return idleConnections.size();
+    }
+
+    /**
+     * Returns whether the pool is closed.
+     *
+     * @return <code>true</code> if the pool is closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Reads the settings again if they were read from the library configuration and it was
+     * reloaded since.
+     */
+    private void refreshConfiguration() {
+
+        DirectoryConfiguration applied = configuration;
+        if (applied != null) {
+            DirectoryConfiguration current = DirectoryContext.getConfiguration();
+            if (current != applied) {
+                applyConfiguration(current);
+            }
+        }
+    }
+
+    /**
+     * Reads the settings from the given configuration snapshot, unless a newer one was already
+     * read. Invalid sizes are ignored and the current ones are kept.
+     *
+     * @param current the configuration snapshot
+     */
+    private synchronized void applyConfiguration(DirectoryConfiguration current) {
+
+        if (configuration != null && configuration.getVersion() >= current.getVersion()) {
+            return;
+        }
+
+        int newMinSize = current.getInt("ldap.pool.minSize", DEFAULT_MIN_SIZE); //$NON-NLS-1$
+        int newMaxSize = current.getInt("ldap.pool.maxSize", DEFAULT_MAX_SIZE); //$NON-NLS-1$
+        if (newMinSize >= 0 && newMaxSize > 0 && newMinSize <= newMaxSize) {
+            resize(newMinSize, newMaxSize);
+        }
+
+        idleTimeout = current.getInt("ldap.pool.idleTimeout", DEFAULT_IDLE_TIMEOUT); //$NON-NLS-1$
+        maxWait = current.getInt("ldap.pool.maxWait", DEFAULT_MAX_WAIT); //$NON-NLS-1$
+        validateOnBorrow = current.getBoolean("ldap.pool.validateOnBorrow", true); //$NON-NLS-1$
+        configuration = current;
+    }
+
+    /**
+     * Opens idle connections until the pool reaches its minimum size.
+     *
+     * @throws DirectoryException an error while opening a connection
+     */
+    private void ensureMinimumSize()
+        throws DirectoryException {
+
+        while (!closed && openConnections.get() < minSize && permits.tryAcquire()) {
+            try {
+                idleConnections.offerLast(takeConnection(false));
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Takes a connection to the server chosen by the server set, reusing an idle connection to
+     * it if allowed and available, or opening a new one otherwise. Servers that cannot be
+     * connected to are marked as unavailable and the next server chosen by the set is tried,
+     * and so are servers whose circuit breaker rejects the call.
+     *
+     * @param reuseIdle whether an idle connection may be reused
+     *
+     * @return the connection, with the time it was taken
+     *
+     * @throws DirectoryException an error while opening the connection on every server, or the
+     *                            circuit breakers of all servers reject calls
+     */
+    private PooledConnection takeConnection(boolean reuseIdle)
+        throws DirectoryException {
+
+        Set<DirectoryServer> excluded = new HashSet<>();
+        DirectoryServerStatus status = servers.select(excluded);
+        DirectoryException lastError = null;
+
+        while (true) {
+            if (status == null) {
+                if (lastError != null) {
+                    throw lastError;
+                }
+                throw new DirectoryException(DirectoryContext.getMessage("LDAPPOOL_ERR_CIRCUIT_OPEN")); //$NON-NLS-1$
+            }
+
+            DirectoryCircuitBreaker circuitBreaker = status.getCircuitBreaker();
+            if (!circuitBreaker.allowRequest()) {
+                excluded.add(status.getServer());
+                status = servers.select(excluded);
+                continue;
+            }
+
+            if (reuseIdle) {
+                PooledConnection pooled = takeIdleConnection(status);
+                if (pooled != null) {
+                    return pooled;
+                }
+                if (openConnections.get() >= maxSize) {
+                    PooledConnection leastRecentlyUsed = idleConnections.pollLast();
+                    if (leastRecentlyUsed != null) {
+                        destroyConnection(leastRecentlyUsed.connection);
+                    }
+                }
+            }
+
+            try {
+                PooledConnection opened = new PooledConnection(openConnection(status), status, System.nanoTime());
+                circuitBreaker.recordSuccess();
+                return opened;
+            } catch (DirectoryException de) {
+                if (!(de.getCause() instanceof LDAPException)
+                    || !isConnectionError((LDAPException) de.getCause())) {
+                    circuitBreaker.recordSuccess();
+                    throw de;
+                }
+                status.markFailed();
+                circuitBreaker.recordFailure();
+                lastError = de;
+                excluded.add(status.getServer());
+                status = servers.select(excluded);
+            }
+        }
+    }
+
+    /**
+     * Takes the most recently used idle connection to the given server, closing the broken
+     * ones found if idle connections are validated.
+     *
+     * @param status the server status
+     *
+     * @return the idle connection, or <code>null</code> if there is none
+     */
+    private PooledConnection takeIdleConnection(DirectoryServerStatus status) {
+
+        Iterator<PooledConnection> idle = idleConnections.iterator();
+        while (idle.hasNext()) {
+            PooledConnection pooled = idle.next();
+            if (pooled.status != status || !idleConnections.removeFirstOccurrence(pooled)) {
+                continue;
+            }
+            if (validateOnBorrow && !isValid(pooled.connection)) {
+                destroyConnection(pooled.connection);
+                continue;
+            }
+            return pooled;
+        }
+        return null;
+    }
+
+    /**
+     * Opens a new connection to a directory server.
+     *
+     * @param status the server status
+     *
+     * @return the new connection
+     *
+     * @throws DirectoryException an error while opening the connection
+     */
+    private LDAPConnection openConnection(DirectoryServerStatus status)
+        throws DirectoryException {
+
+        LDAPConnection connection = timeouts.newConnection(tls);
+        try {
+            connection.connect(status.getServer().getHost(), status.getServer().getPort());
+        } catch (LDAPException ldape) {
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPMGR_ERR_OPEN_CONN", ldape.getMessage()), //$NON-NLS-1$
+                ldape);
+        }
+
+        try {
+            tls.secure(connection);
+        } catch (LDAPException ldape) {
+            try {
+                connection.disconnect();
+            } catch (LDAPException disconnectError) {
+                // the connection is being discarded anyway
+            }
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPMGR_ERR_OPEN_CONN", ldape.getMessage()), //$NON-NLS-1$
+                ldape);
+        }
+
+        if (bindDN != null) {
+            try {
+                connection.bind(LDAPConnection.LDAP_V3, bindDN, bindPassword.clone());
+            } catch (LDAPException ldape) {
+                try {
+                    connection.disconnect();
+                } catch (LDAPException disconnectError) {
+                    // the connection is being discarded anyway
+                }
+                throw new DirectoryException(
+                    DirectoryContext.getMessage("LDAPMGR_ERR_BIND", ldape.getMessage()), //$NON-NLS-1$
+                    ldape);
+            }
+        }
+
+        status.markAvailable();
+        openConnections.incrementAndGet();
+        return connection;
+    }
+
+    /**
+     * Binds a borrowed connection again with the pool identity, after it was bound with other
+     * credentials. Anonymous pools bind the connection anonymously.
+     *
+     * @param connection the connection
+     *
+     * @throws LDAPException an error while binding
+     */
+    void restoreIdentity(LDAPConnection connection)
+        throws LDAPException {
+
+        connection.bind(LDAPConnection.LDAP_V3, bindDN, bindPassword == null ? null : bindPassword.clone());
+    }
+
+    /**
+     * Closes a connection that is no longer tracked by the pool.
+     *
+     * @param connection the connection
+     */
+    private void destroyConnection(LDAPConnection connection) {
+
+        openConnections.decrementAndGet();
+        try {
+            connection.disconnect();
+        } catch (LDAPException ldape) {
+            // the connection is being discarded anyway
+        }
+    }
+
+    /**
+     * Closes all idle connections.
+     */
+    private void closeIdleConnections() {
+
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            destroyConnection(pooled.connection);
+        }
+    }
+
+    /**
+     * Returns whether the given connection is still usable.
+     *
+     * @param connection the connection
+     *
+     * @return <code>true</code> if the connection is alive
+     */
+    private static boolean isValid(LDAPConnection connection) {
+
+        return connection.isConnectionAlive();
+    }
+
+    /**
+     * A pooled connection, the server it is connected to and the time it was last returned to
+     * the pool or, while borrowed, the time it was borrowed.
+     */
+    private static final class PooledConnection {
+
+        /**
+         * The connection.
+         */
+        private final LDAPConnection connection;
+
+        /**
+         * The status of the server the connection is connected to.
+         */
+        private final DirectoryServerStatus status;
+
+        /**
+         * The time, as given by <code>System.nanoTime()</code>, the connection was last used.
+         */
+        private final long lastUsed;
+
+        /**
+         * Constructor.
+         *
+         * @param connection the connection
+         * @param status the status of the server the connection is connected to
+         * @param lastUsed the time the connection was last used
+         */
+        PooledConnection(LDAPConnection connection, DirectoryServerStatus status, long lastUsed) {
+            this.connection = connection;
+            this.status = status;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /**
+     * A fair semaphore whose number of permits can be reduced, so the pool can be shrunk while
+     * connections are borrowed.
+     */
+    private static final class ResizableSemaphore extends Semaphore {
+
+        /**
+         * Serialization ID.
+         */
+        private static final long serialVersionUID = 2952187364160734721L;
+
+        /**
+         * Constructor.
+         *
+         * @param permits the initial number of permits
+         */
+        ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        /**
+         * Shrinks the number of available permits, which may become negative until enough
+         * permits are released.
+         *
+         * @param reduction the number of permits to remove
+         */
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
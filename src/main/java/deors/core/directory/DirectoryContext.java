@@ -1,5 +1,13 @@
 package deors.core.directory;
 
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
 import deors.core.commons.AbstractContext;
 import deors.core.commons.CommonsContext;
 
@@ -13,6 +21,15 @@ import deors.core.commons.CommonsContext;
  * The system property <code>deors.core.directory.configuration</code> can be used to inject
  * an alternate properties file.<br>
  *
+ * Configuration properties are read from an immutable snapshot, built once from the resource
+ * bundle and returned by <code>getConfiguration()</code>. An external properties file, whose
+ * values take precedence over the bundle ones, can be loaded with
+ * <code>loadConfiguration()</code>, or loaded and watched with
+ * <code>watchConfiguration()</code>, which builds a new snapshot and replaces the current one
+ * each time the file changes. Connection pools and attribute caches created with the settings
+ * in the library configuration apply the new sizes and times on their next operation, so they
+ * can be tuned without restarting the application. Messages are not reloaded.<br>
+ *
  * The class is a singleton.<br>
  *
  * @author deors
@@ -35,12 +52,35 @@ public final class DirectoryContext extends AbstractContext {
      */
     public static final String BLANK = ""; //$NON-NLS-1$
 
+    /**
+     * Default time in milliseconds waited after a change of the watched file before reading it.
+     */
+    private static final int DEFAULT_RELOAD_DELAY = 100;
+
+    /**
+     * The resource bundle the configuration is read from.
+     */
+    private final String bundleName;
+
+    /**
+     * The current configuration snapshot.
+     */
+    private volatile DirectoryConfiguration configuration;
+
+    /**
+     * The service watching the external properties file, or <code>null</code> if not watching.
+     */
+    private WatchService configurationWatcher;
+
     /**
      * Default constructor.
      */
     private DirectoryContext() {
 
         super(System.getProperty(BUNDLE_NAME, BUNDLE_NAME), CommonsContext.getContext());
+
+        bundleName = System.getProperty(BUNDLE_NAME, BUNDLE_NAME);
+        configuration = new DirectoryConfiguration(DirectoryConfiguration.readBundle(bundleName), null);
     }
 
     /**
@@ -64,7 +104,7 @@ public final class DirectoryContext extends AbstractContext {
      */
     public static String getConfigurationProperty(String propertyName, String defaultValue) {
 
-        return contextInstance.getIConfigurationProperty(propertyName, defaultValue);
+        return contextInstance.configuration.getString(propertyName, defaultValue);
     }
 
     /**
@@ -82,8 +122,7 @@ public final class DirectoryContext extends AbstractContext {
     public static String getConfigurationProperty(String propertyName, String defaultValue,
                                                   String[] validValues) {
 
-        return contextInstance.getIConfigurationProperty(
-            propertyName, defaultValue, validValues);
+        return contextInstance.configuration.getString(propertyName, defaultValue, validValues);
     }
 
     /**
@@ -99,7 +138,7 @@ public final class DirectoryContext extends AbstractContext {
      */
     public static int getConfigurationProperty(String propertyName, int defaultValue) {
 
-        return contextInstance.getIConfigurationProperty(propertyName, defaultValue);
+        return contextInstance.configuration.getInt(propertyName, defaultValue);
     }
 
     /**
@@ -115,7 +154,7 @@ public final class DirectoryContext extends AbstractContext {
      */
     public static char getConfigurationProperty(String propertyName, char defaultValue) {
 
-        return contextInstance.getIConfigurationProperty(propertyName, defaultValue);
+        return contextInstance.configuration.getChar(propertyName, defaultValue);
     }
 
     /**
@@ -130,7 +169,180 @@ public final class DirectoryContext extends AbstractContext {
      */
     public static boolean getConfigurationProperty(String propertyName, boolean defaultValue) {
 
-        return contextInstance.getIConfigurationProperty(propertyName, defaultValue);
+        return contextInstance.configuration.getBoolean(propertyName, defaultValue);
+    }
+
+    /**
+     * Returns the current configuration snapshot. The snapshot never changes; a new one replaces
+     * it when the configuration is loaded again.
+     *
+     * @return the current configuration snapshot
+     */
+    public static DirectoryConfiguration getConfiguration() {
+        return contextInstance.configuration;
+    }
+
+    /**
+     * Builds a new configuration snapshot from the resource bundle and the given external
+     * properties file, whose values take precedence, and makes it the current one. If the
+     * values are the same as those of the current snapshot, the current snapshot is kept.
+     *
+     * @param file the external properties file, or <code>null</code> to read only the resource
+     *             bundle
+     *
+     * @return the current configuration snapshot
+     *
+     * @throws DirectoryException an error while reading the external properties file
+     */
+    public static synchronized DirectoryConfiguration loadConfiguration(Path file)
+        throws DirectoryException {
+
+        DirectoryConfiguration loaded = DirectoryConfiguration.load(contextInstance.bundleName, file);
+
+        if (!loaded.hasSameValues(contextInstance.configuration)) {
+            contextInstance.configuration = loaded;
+        }
+
+        return contextInstance.configuration;
+    }
+
+    /**
+     * Loads the configuration from the resource bundle and the given external properties file,
+     * as <code>loadConfiguration()</code> does, and loads it again each time the file is
+     * created or modified, until <code>stopWatchingConfiguration()</code> is called or another
+     * file is watched. The file is read <code>ldap.configuration.reloadDelay</code>
+     * milliseconds after a change is seen, so all the changes saved together are read at once.
+     * If the file cannot be read after a change, the current snapshot is kept.
+     *
+     * @param file the external properties file
+     *
+     * @return the current configuration snapshot
+     *
+     * @throws DirectoryException an error while reading the file or watching its directory
+     */
+    public static synchronized DirectoryConfiguration watchConfiguration(Path file)
+        throws DirectoryException {
+
+        if (file == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPCFG_ERR_FILE_ARG")); //$NON-NLS-1$
+        }
+
+        Path watchedFile = file.toAbsolutePath();
+        DirectoryConfiguration loaded = loadConfiguration(watchedFile);
+
+        stopWatchingConfiguration();
+
+        WatchService watcher = null;
+        try {
+            watcher = watchedFile.getFileSystem().newWatchService();
+            watchedFile.getParent().register(watcher,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException ioe) {
+            closeWatcher(watcher);
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPCFG_ERR_WATCH", watchedFile.toString()), ioe); //$NON-NLS-1$
+        }
+
+        WatchService startedWatcher = watcher;
+        contextInstance.configurationWatcher = startedWatcher;
+        Thread.ofVirtual().name("directory-configuration-watcher").start( //$NON-NLS-1$
+            () -> watchFile(startedWatcher, watchedFile));
+
+        return loaded;
+    }
+
+    /**
+     * Stops watching the external properties file. The current snapshot is kept.
+     */
+    public static synchronized void stopWatchingConfiguration() {
+
+        closeWatcher(contextInstance.configurationWatcher);
+        contextInstance.configurationWatcher = null;
+    }
+
+    /**
+     * Returns whether an external properties file is being watched.
+     *
+     * @return <code>true</code> if an external properties file is being watched
+     */
+    public static synchronized boolean isWatchingConfiguration() {
+        return contextInstance.configurationWatcher != null;
+    }
+
+    /**
+     * Waits for changes of the watched file and loads the configuration again after each one,
+     * until the watch service is closed.
+     *
+     * @param watcher the watch service
+     * @param file the watched file
+     */
+    private static void watchFile(WatchService watcher, Path file) {
+
+        Path fileName = file.getFileName();
+
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context());
+                }
+                key.reset();
+
+                if (changed) {
+                    Thread.sleep(
+                        getConfigurationProperty("ldap.configuration.reloadDelay", DEFAULT_RELOAD_DELAY)); //$NON-NLS-1$
+                    WatchKey pending;
+                    while ((pending = watcher.poll()) != null) {
+                        pending.pollEvents();
+                        pending.reset();
+                    }
+                    reloadWatchedConfiguration(watcher, file);
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException cwse) {
+            // watching stopped
+        }
+    }
+
+    /**
+     * Loads the configuration again from the watched file, unless watching stopped meanwhile.
+     * If the file cannot be read, the current snapshot is kept until the next change.
+     *
+     * @param watcher the watch service
+     * @param file the watched file
+     */
+    private static synchronized void reloadWatchedConfiguration(WatchService watcher, Path file) {
+
+        if (contextInstance.configurationWatcher != watcher) {
+            return;
+        }
+
+        try {
+            loadConfiguration(file);
+        } catch (DirectoryException de) {
+            // the file may be in the middle of being written; next change will load it
+        }
+    }
+
+    /**
+     * Closes a watch service, ignoring errors.
+     *
+     * @param watcher the watch service, or <code>null</code>
+     */
+    private static void closeWatcher(WatchService watcher) {
+
+        if (watcher == null) {
+            return;
+        }
+
+        try {
+            watcher.close();
+        } catch (IOException ioe) {
+            // the watch service is being discarded anyway
+        }
     }
 
     /**
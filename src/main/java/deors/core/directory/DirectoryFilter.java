@@ -0,0 +1,720 @@
+package deors.core.directory;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+import com.novell.ldap.LDAPAttribute;
+import com.novell.ldap.LDAPEntry;
+
+/**
+ * Search filter (RFC 4515), parsed so it can be evaluated over entries held in memory.<br>
+ *
+ * All filter types are parsed. Values are compared ignoring case, as with the
+ * <code>caseIgnoreMatch</code> rule used by most string attributes; ordering matches compare
+ * values as integers when both are integers and as strings otherwise, and approximate matches
+ * are evaluated as equality matches. Extensible matches cannot be evaluated locally and are
+ * undefined, with the three-valued logic of RFC 4511, so they never match.<br>
+ *
+ * A filter without enclosing parentheses, like <code>uid=jdoe</code>, is accepted as a single
+ * item.<br>
+ *
+ * Instances are immutable and thread-safe.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectoryFilter {
+
+    /**
+     * Filter types.
+     */
+    public enum Type {
+
+        /**
+         * All of the nested filters match.
+         */
+        AND,
+
+        /**
+         * Any of the nested filters matches.
+         */
+        OR,
+
+        /**
+         * The nested filter does not match.
+         */
+        NOT,
+
+        /**
+         * A value equals the assertion value.
+         */
+        EQUALITY,
+
+        /**
+         * A value contains the substrings of the assertion.
+         */
+        SUBSTRINGS,
+
+        /**
+         * A value is greater than or equal to the assertion value.
+         */
+        GREATER_OR_EQUAL,
+
+        /**
+         * A value is less than or equal to the assertion value.
+         */
+        LESS_OR_EQUAL,
+
+        /**
+         * The attribute has a value.
+         */
+        PRESENT,
+
+        /**
+         * A value approximately equals the assertion value.
+         */
+        APPROXIMATE,
+
+        /**
+         * A value matches the assertion value with a given matching rule.
+         */
+        EXTENSIBLE
+    }
+
+    /**
+     * The filter type.
+     */
+    private final Type type;
+
+    /**
+     * The attribute name, or <code>null</code> for <code>AND</code>, <code>OR</code> and
+     * <code>NOT</code> filters.
+     */
+    private final String attributeName;
+
+    /**
+     * The assertion value, or the initial substring for <code>SUBSTRINGS</code> filters.
+     */
+    private final String value;
+
+    /**
+     * The middle substrings of <code>SUBSTRINGS</code> filters, or <code>null</code>.
+     */
+    private final List<String> anySubstrings;
+
+    /**
+     * The final substring of <code>SUBSTRINGS</code> filters, or <code>null</code>.
+     */
+    private final String finalSubstring;
+
+    /**
+     * The nested filters of <code>AND</code>, <code>OR</code> and <code>NOT</code> filters, or
+     * <code>null</code>.
+     */
+    private final List<DirectoryFilter> children;
+
+    /**
+     * The filter text, in normalized form.
+     */
+    private final String text;
+
+    /**
+     * Evaluation result for a matching entry.
+     */
+    private static final int TRUE = 1;
+
+    /**
+     * Evaluation result for a non-matching entry.
+     */
+    private static final int FALSE = 0;
+
+    /**
+     * Evaluation result for an entry that cannot be evaluated.
+     */
+    private static final int UNDEFINED = -1;
+
+    /**
+     * The object class attribute, present in every entry.
+     */
+    private static final String OBJECT_CLASS = "objectClass"; //$NON-NLS-1$
+
+    /**
+     * Constructor.
+     *
+     * @param type the filter type
+     * @param attributeName the attribute name, or <code>null</code>
+     * @param value the assertion value or initial substring, or <code>null</code>
+     * @param anySubstrings the middle substrings, or <code>null</code>
+     * @param finalSubstring the final substring, or <code>null</code>
+     * @param children the nested filters, or <code>null</code>
+     * @param text the filter text
+     */
+    private DirectoryFilter(Type type, String attributeName, String value, List<String> anySubstrings,
+                            String finalSubstring, List<DirectoryFilter> children, String text) {
+
+        super();
+        this.type = type;
+        this.attributeName = attributeName;
+        this.value = value;
+        this.anySubstrings = anySubstrings;
+        this.finalSubstring = finalSubstring;
+        this.children = children;
+        this.text = text;
+    }
+
+    /**
+     * Parses a filter.
+     *
+     * @param filter the filter text
+     *
+     * @return the parsed filter
+     *
+     * @throws IllegalArgumentException the filter is not valid
+     */
+    public static DirectoryFilter parse(String filter) {
+
+        if (filter == null || filter.trim().length() == 0) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPFILTER_ERR_PARSE", filter)); //$NON-NLS-1$
+        }
+
+        String trimmed = filter.trim();
+        if (trimmed.charAt(0) != '(') {
+            trimmed = '(' + trimmed + ')';
+        }
+
+        Parser parser = new Parser(trimmed, filter);
+        DirectoryFilter parsed = parser.parseFilter();
+
+        if (parser.position != trimmed.length()) {
+            throw parser.error();
+        }
+
+        return parsed;
+    }
+
+    /**
+     * Returns the filter type.
+     *
+     * @return the filter type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the attribute name of an item.
+     *
+     * @return the attribute name, or <code>null</code> for <code>AND</code>, <code>OR</code>
+     *         and <code>NOT</code> filters
+     */
+    public String getAttributeName() {
+        return attributeName;
+    }
+
+    /**
+     * Returns the assertion value of an item, or the initial substring of a substrings item.
+     *
+     * @return the value, or <code>null</code> if there is none
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the nested filters.
+     *
+     * @return the nested filters, or an empty list for items
+     */
+    public List<DirectoryFilter> getChildren() {
+
+        return children == null ? Collections.emptyList() : children;
+    }
+
+    /**
+     * Returns the names of all the attributes used by the filter, in lower case.
+     *
+     * @return the attribute names
+     */
+    public Set<String> getAttributeNames() {
+
+        Set<String> names = new TreeSet<>();
+        collectAttributeNames(names);
+        return names;
+    }
+
+    /**
+     * Adds the names of the attributes used by the filter to a set.
+     *
+     * @param names the set
+     */
+    private void collectAttributeNames(Set<String> names) {
+
+        if (attributeName != null) {
+            names.add(attributeName.toLowerCase(Locale.ROOT));
+        }
+        for (DirectoryFilter child : getChildren()) {
+            child.collectAttributeNames(names);
+        }
+    }
+
+    /**
+     * Returns whether the filter can be evaluated locally, which is the case unless it uses
+     * extensible matches.
+     *
+     * @return <code>true</code> if the filter can be evaluated locally
+     */
+    public boolean isLocallyEvaluable() {
+
+        if (type == Type.EXTENSIBLE) {
+            return false;
+        }
+        for (DirectoryFilter child : getChildren()) {
+            if (!child.isLocallyEvaluable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether an entry matches the filter.
+     *
+     * @param entry the entry
+     *
+     * @return <code>true</code> if the entry matches
+     */
+    public boolean matches(LDAPEntry entry) {
+
+        return evaluate(attribute -> {
+            LDAPAttribute values = entry.getAttribute(attribute);
+            return values == null ? null : values.getStringValueArray();
+        }) == TRUE;
+    }
+
+    /**
+     * Returns whether an entry matches the filter.
+     *
+     * @param values function returning the values of an attribute of the entry, as a string,
+     *               an array of strings, or <code>null</code> if the attribute is not present
+     *
+     * @return <code>true</code> if the entry matches
+     */
+    boolean matches(Function<String, Object> values) {
+
+        return evaluate(values) == TRUE;
+    }
+
+    /**
+     * Evaluates the filter with the three-valued logic of RFC 4511.
+     *
+     * @param values function returning the values of an attribute of the entry
+     *
+     * @return <code>TRUE</code>, <code>FALSE</code> or <code>UNDEFINED</code>
+     */
+    private int evaluate(Function<String, Object> values) {
+
+        switch (type) {
+            case AND: {
+                int result = TRUE;
+                for (DirectoryFilter child : children) {
+                    int childResult = child.evaluate(values);
+                    if (childResult == FALSE) {
+                        return FALSE;
+                    } else if (childResult == UNDEFINED) {
+                        result = UNDEFINED;
+                    }
+                }
+                return result;
+            }
+            case OR: {
+                int result = FALSE;
+                for (DirectoryFilter child : children) {
+                    int childResult = child.evaluate(values);
+                    if (childResult == TRUE) {
+                        return TRUE;
+                    } else if (childResult == UNDEFINED) {
+                        result = UNDEFINED;
+                    }
+                }
+                return result;
+            }
+            case NOT: {
+                int result = children.get(0).evaluate(values);
+                return result == UNDEFINED ? UNDEFINED : TRUE - result;
+            }
+            case EXTENSIBLE:
+                return UNDEFINED;
+            case PRESENT:
+                return values.apply(attributeName) != null || OBJECT_CLASS.equalsIgnoreCase(attributeName)
+                    ? TRUE : FALSE;
+            default:
+                return evaluateItem(values.apply(attributeName));
+        }
+    }
+
+    /**
+     * Evaluates an item over the values of its attribute.
+     *
+     * @param attributeValues the values, as a string, an array of strings, or <code>null</code>
+     *
+     * @return <code>TRUE</code> or <code>FALSE</code>
+     */
+    private int evaluateItem(Object attributeValues) {
+
+        if (attributeValues == null) {
+            return FALSE;
+        }
+
+        if (attributeValues instanceof String) {
+            return matchesValue((String) attributeValues) ? TRUE : FALSE;
+        }
+
+        for (String attributeValue : (String[]) attributeValues) {
+            if (matchesValue(attributeValue)) {
+                return TRUE;
+            }
+        }
+        return FALSE;
+    }
+
+    /**
+     * Returns whether a value matches the assertion of an item.
+     *
+     * @param attributeValue the value
+     *
+     * @return <code>true</code> if the value matches
+     */
+    private boolean matchesValue(String attributeValue) {
+
+        switch (type) {
+            case EQUALITY:
+            case APPROXIMATE:
+                return attributeValue.equalsIgnoreCase(value);
+            case GREATER_OR_EQUAL:
+                return compareValues(attributeValue, value) >= 0;
+            case LESS_OR_EQUAL:
+                return compareValues(attributeValue, value) <= 0;
+            default:
+                return matchesSubstrings(attributeValue.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Returns whether a value, in lower case, contains the substrings of the assertion.
+     *
+     * @param attributeValue the value in lower case
+     *
+     * @return <code>true</code> if the value matches
+     */
+    private boolean matchesSubstrings(String attributeValue) {
+
+        int position = 0;
+
+        if (value != null) {
+            if (!attributeValue.startsWith(value.toLowerCase(Locale.ROOT))) {
+                return false;
+            }
+            position = value.length();
+        }
+
+        for (String any : anySubstrings) {
+            int found = attributeValue.indexOf(any.toLowerCase(Locale.ROOT), position);
+            if (found < 0) {
+                return false;
+            }
+            position = found + any.length();
+        }
+
+        if (finalSubstring != null) {
+            return attributeValue.length() - finalSubstring.length() >= position
+                && attributeValue.endsWith(finalSubstring.toLowerCase(Locale.ROOT));
+        }
+
+        return true;
+    }
+
+    /**
+     * Compares two values, as integers if both are integers and as strings ignoring case
+     * otherwise.
+     *
+     * @param first the first value
+     * @param second the second value
+     *
+     * @return a negative number, zero or a positive number as the first value is less than,
+     *         equal to or greater than the second
+     */
+    static int compareValues(String first, String second) {
+
+        try {
+            return Long.compare(Long.parseLong(first.trim()), Long.parseLong(second.trim()));
+        } catch (NumberFormatException nfe) {
+            return first.compareToIgnoreCase(second);
+        }
+    }
+
+    /**
+     * Returns the middle substrings of a substrings item.
+     *
+     * @return the middle substrings, or an empty list
+     */
+    List<String> getAnySubstrings() {
+
+        return anySubstrings == null ? Collections.emptyList() : anySubstrings;
+    }
+
+    /**
+     * Returns the final substring of a substrings item.
+     *
+     * @return the final substring, or <code>null</code> if there is none
+     */
+    String getFinalSubstring() {
+        return finalSubstring;
+    }
+
+    /**
+     * Returns the filter text in normalized form, with enclosing parentheses.
+     *
+     * @return the filter text
+     */
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    /**
+     * Recursive descent parser of filters.
+     */
+    private static final class Parser {
+
+        /**
+         * The filter text, with enclosing parentheses.
+         */
+        private final String filter;
+
+        /**
+         * The filter text as given, for error messages.
+         */
+        private final String original;
+
+        /**
+         * The position of the next character.
+         */
+        private int position;
+
+        /**
+         * Constructor.
+         *
+         * @param filter the filter text, with enclosing parentheses
+         * @param original the filter text as given
+         */
+        Parser(String filter, String original) {
+
+            super();
+            this.filter = filter;
+            this.original = original;
+        }
+
+        /**
+         * Returns the error reporting that the filter is not valid.
+         *
+         * @return the error
+         */
+        IllegalArgumentException error() {
+
+            return new IllegalArgumentException(
+                DirectoryContext.getMessage("LDAPFILTER_ERR_PARSE", original)); //$NON-NLS-1$
+        }
+
+        /**
+         * Consumes a character, which must be the expected one.
+         *
+         * @param expected the expected character
+         */
+        private void expect(char expected) {
+
+            if (position >= filter.length() || filter.charAt(position) != expected) {
+                throw error();
+            }
+            position++;
+        }
+
+        /**
+         * Parses a parenthesized filter.
+         *
+         * @return the filter
+         */
+        DirectoryFilter parseFilter() {
+
+            expect('(');
+
+            if (position >= filter.length()) {
+                throw error();
+            }
+
+            DirectoryFilter parsed;
+            char next = filter.charAt(position);
+
+            if (next == '&' || next == '|') {
+                position++;
+                List<DirectoryFilter> children = new ArrayList<>();
+                StringBuilder text = new StringBuilder().append('(').append(next);
+                while (position < filter.length() && filter.charAt(position) == '(') {
+                    DirectoryFilter child = parseFilter();
+                    children.add(child);
+                    text.append(child.text);
+                }
+                text.append(')');
+                parsed = new DirectoryFilter(next == '&' ? Type.AND : Type.OR, null, null, null, null,
+                    Collections.unmodifiableList(children), text.toString());
+            } else if (next == '!') {
+                position++;
+                DirectoryFilter child = parseFilter();
+                parsed = new DirectoryFilter(Type.NOT, null, null, null, null,
+                    Collections.singletonList(child), "(!" + child.text + ')'); //$NON-NLS-1$
+            } else {
+                parsed = parseItem();
+            }
+
+            expect(')');
+            return parsed;
+        }
+
+        /**
+         * Parses an item, up to the closing parenthesis.
+         *
+         * @return the item
+         */
+        private DirectoryFilter parseItem() {
+
+            int end = filter.indexOf(')', position);
+            int equals = filter.indexOf('=', position);
+
+            if (end < 0 || equals < 0 || equals > end || equals == position) {
+                throw error();
+            }
+
+            String assertion = filter.substring(equals + 1, end);
+            char operator = filter.charAt(equals - 1);
+            String attribute;
+            Type itemType;
+
+            if (operator == '>' || operator == '<' || operator == '~' || operator == ':') {
+                attribute = filter.substring(position, equals - 1).trim();
+                itemType = operator == '>' ? Type.GREATER_OR_EQUAL
+                    : operator == '<' ? Type.LESS_OR_EQUAL
+                    : operator == '~' ? Type.APPROXIMATE : Type.EXTENSIBLE;
+            } else {
+                attribute = filter.substring(position, equals).trim();
+                itemType = Type.EQUALITY;
+            }
+
+            if (itemType != Type.EXTENSIBLE && !isAttributeDescription(attribute)) {
+                throw error();
+            }
+
+            String text = filter.substring(position - 1, end + 1);
+            position = end;
+
+            if (itemType == Type.EXTENSIBLE) {
+                return new DirectoryFilter(itemType, attribute.length() == 0 ? null : attribute,
+                    unescape(assertion), null, null, null, text);
+            }
+
+            if (itemType != Type.EQUALITY || assertion.indexOf('*') < 0) {
+                return new DirectoryFilter(itemType, attribute, unescape(assertion), null, null, null, text);
+            }
+
+            if ("*".equals(assertion)) { //$NON-NLS-1$
+                return new DirectoryFilter(Type.PRESENT, attribute, null, null, null, null, text);
+            }
+
+            String[] parts = assertion.split("\\*", -1); //$NON-NLS-1$
+            List<String> any = new ArrayList<>();
+            for (int i = 1; i < parts.length - 1; i++) {
+                if (parts[i].length() > 0) {
+                    any.add(unescape(parts[i]));
+                }
+            }
+
+            String initial = parts[0].length() == 0 ? null : unescape(parts[0]);
+            String last = parts[parts.length - 1];
+
+            return new DirectoryFilter(Type.SUBSTRINGS, attribute, initial, Collections.unmodifiableList(any),
+                last.length() == 0 ? null : unescape(last), null, text);
+        }
+
+        /**
+         * Returns whether a string is a valid attribute description: a name or OID, optionally
+         * followed by options.
+         *
+         * @param attribute the attribute description
+         *
+         * @return <code>true</code> if valid
+         */
+        private static boolean isAttributeDescription(String attribute) {
+
+            if (attribute.length() == 0) {
+                return false;
+            }
+
+            for (int i = 0; i < attribute.length(); i++) {
+                char c = attribute.charAt(i);
+                if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                    || c == '-' || c == '.' || c == ';')) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Decodes the escaped characters of an assertion value, written as a backslash and two
+         * hexadecimal digits of their UTF-8 encoding.
+         *
+         * @param escaped the value as written in the filter
+         *
+         * @return the value
+         */
+        private String unescape(String escaped) {
+
+            if (escaped.indexOf('\\') < 0) {
+                return escaped;
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(escaped.length());
+
+            int i = 0;
+            while (i < escaped.length()) {
+                // runs between escapes are encoded whole so surrogate pairs are kept
+                int escape = escaped.indexOf('\\', i);
+                int end = escape < 0 ? escaped.length() : escape;
+                if (end > i) {
+                    byte[] encoded = escaped.substring(i, end).getBytes(StandardCharsets.UTF_8);
+                    bytes.write(encoded, 0, encoded.length);
+                }
+                if (escape < 0) {
+                    break;
+                }
+                if (escape + 2 >= escaped.length()) {
+                    throw error();
+                }
+                int high = Character.digit(escaped.charAt(escape + 1), 16);
+                int low = Character.digit(escaped.charAt(escape + 2), 16);
+                if (high < 0 || low < 0) {
+                    throw error();
+                }
+                bytes.write(high << 4 | low);
+                i = escape + 3;
+            }
+
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,628 @@
+package deors.core.directory;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.novell.ldap.LDAPException;
+
+/**
+ * Resolver of nested group membership.<br>
+ *
+ * Groups are expanded breadth-first: the member attributes of all the groups found at one
+ * level of nesting are read with a single batch lookup of <code>DirectoryManager</code>,
+ * which pipelines them, so expanding a group costs one batch per level of nesting instead of
+ * one round trip per group. Each group is expanded once per expansion, so membership cycles
+ * and groups reached through several paths do not cause further lookups.<br>
+ *
+ * Member DNs under the group base are looked up as possible groups; member DNs outside it are
+ * taken as plain members without reading them. Setting the group base to the branch holding
+ * the groups therefore keeps users out of the lookups. With an empty group base every member
+ * DN is looked up. Member DNs that do not exist are taken as plain members; any other error
+ * reading a group fails the expansion, which is not memoized, instead of returning a partial
+ * membership.<br>
+ *
+ * Expanded groups are memoized with a time-to-live and the least recently used group is
+ * evicted when the maximum number of groups is reached. The transitive members of a group are
+ * kept in a bit set indexed by member DNs interned to integers, so membership checks take a
+ * hash lookup and a bit test, and groups nested in a group being expanded are merged from the
+ * memo when already expanded. The interned DNs are discarded with all the expanded groups
+ * once their number exceeds <code>ldap.groups.maxInternedDNs</code>. A group expanded while
+ * the memo is invalidated is not memoized, so a change is not overwritten by members read
+ * before it.<br>
+ *
+ * Member DNs are compared ignoring case and, if they contain spaces, once normalized.<br>
+ *
+ * Default settings are read from the library configuration: <code>ldap.groups.base</code>,
+ * <code>ldap.groups.memberAttributes</code>, <code>ldap.groups.maxSize</code>,
+ * <code>ldap.groups.timeToLive</code> and <code>ldap.groups.maxInternedDNs</code>.<br>
+ *
+ * The class is thread-safe.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectoryGroupResolver {
+
+    /**
+     * The manager used to read the groups.
+     */
+    private final DirectoryManager manager;
+
+    /**
+     * The group base DN.
+     */
+    private final String groupBase;
+
+    /**
+     * The key of the group base DN, empty if any DN may be a group.
+     */
+    private final String groupBaseKey;
+
+    /**
+     * The attributes holding the member DNs of a group.
+     */
+    private final String[] memberAttributes;
+
+    /**
+     * Maximum number of expanded groups memoized.
+     */
+    private final int maxSize;
+
+    /**
+     * Time-to-live in milliseconds of the expanded groups.
+     */
+    private final long timeToLive;
+
+    /**
+     * Number of interned member DNs above which the memo is discarded.
+     */
+    private final int maxInternedDNs;
+
+    /**
+     * The interned member DNs and the expanded groups, guarded by the lock.
+     */
+    private Memo memo = new Memo();
+
+    /**
+     * Invalidation generation, increased by every invalidation, guarded by the lock. A group
+     * is memoized only if no invalidation happened while it was expanded.
+     */
+    private long generation;
+
+    /**
+     * Lock guarding the memo.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Number of queries answered from the memo.
+     */
+    private final LongAdder hitCount = new LongAdder();
+
+    /**
+     * Number of groups expanded from the directory.
+     */
+    private final LongAdder expansionCount = new LongAdder();
+
+    /**
+     * Number of objects read from the directory.
+     */
+    private final LongAdder lookupCount = new LongAdder();
+
+    /**
+     * Default member attributes.
+     */
+    private static final String DEFAULT_MEMBER_ATTRIBUTES = "member,uniqueMember"; //$NON-NLS-1$
+
+    /**
+     * Default maximum number of expanded groups.
+     */
+    private static final int DEFAULT_MAX_SIZE = 1000;
+
+    /**
+     * Default time-to-live in milliseconds.
+     */
+    private static final int DEFAULT_TIME_TO_LIVE = 300000;
+
+    /**
+     * Default number of interned member DNs above which the memo is discarded.
+     */
+    private static final int DEFAULT_MAX_INTERNED_DNS = 1000000;
+
+    /**
+     * Constructor that reads the settings from the library configuration.
+     *
+     * @param manager the manager used to read the groups
+     */
+    public DirectoryGroupResolver(DirectoryManager manager) {
+
+        this(manager,
+            DirectoryContext.getConfigurationProperty("ldap.groups.base", DirectoryContext.BLANK), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.groups.maxSize", DEFAULT_MAX_SIZE), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.groups.timeToLive", DEFAULT_TIME_TO_LIVE), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty(
+                "ldap.groups.memberAttributes", DEFAULT_MEMBER_ATTRIBUTES).split(",")); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param manager the manager used to read the groups
+     * @param groupBase the DN of the branch holding the groups, or empty if any DN may be a
+     *                  group
+     * @param maxSize maximum number of expanded groups memoized
+     * @param timeToLive time-to-live in milliseconds of the expanded groups, or zero to expand
+     *                   groups on every query
+     * @param memberAttributes the attributes holding the member DNs of a group
+     */
+    public DirectoryGroupResolver(DirectoryManager manager, String groupBase, int maxSize, long timeToLive,
+                                  String... memberAttributes) {
+
+        super();
+
+        List<String> names = new ArrayList<>();
+        if (memberAttributes != null) {
+            for (String memberAttribute : memberAttributes) {
+                String name = memberAttribute == null ? DirectoryContext.BLANK : memberAttribute.trim();
+                if (name.length() > 0 && !names.contains(name)) {
+                    names.add(name);
+                }
+            }
+        }
+
+        if (manager == null || groupBase == null || maxSize <= 0 || timeToLive < 0 || names.isEmpty()) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPGROUP_ERR_ARG")); //$NON-NLS-1$
+        }
+
+        this.manager = manager;
+        this.groupBase = groupBase;
+        this.groupBaseKey = groupBase.length() == 0 ? DirectoryContext.BLANK : DirectoryReplica.toNormalizedKey(groupBase);
+        this.memberAttributes = names.toArray(new String[names.size()]);
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.maxInternedDNs = DirectoryContext.getConfigurationProperty(
+            "ldap.groups.maxInternedDNs", DEFAULT_MAX_INTERNED_DNS); //$NON-NLS-1$
+    }
+
+    /**
+     * Returns whether an object is a member of a group, directly or through nested groups.
+     *
+     * @param groupDN the group DN
+     * @param memberDN the DN of the object checked
+     *
+     * @return <code>true</code> if the object is a transitive member of the group
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    public boolean isMember(String groupDN, String memberDN)
+        throws DirectoryException {
+
+        if (memberDN == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPGROUP_ERR_DN_ARG")); //$NON-NLS-1$
+        }
+
+        ExpandedGroup group = resolve(groupDN);
+        String memberKey = DirectoryReplica.toNormalizedKey(memberDN);
+
+        Integer id;
+        lock.lock();
+        try {
+            id = group.memo.ids.get(memberKey);
+        } finally {
+            lock.unlock();
+        }
+
+        return id != null && group.members.get(id);
+    }
+
+    /**
+     * Returns the transitive members of a group, including the nested groups. Each member is
+     * reported with the DN as first found in a member attribute.
+     *
+     * @param groupDN the group DN
+     *
+     * @return the member DNs
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    public Set<String> getMembers(String groupDN)
+        throws DirectoryException {
+
+        ExpandedGroup group = resolve(groupDN);
+        Set<String> members = new LinkedHashSet<>();
+
+        lock.lock();
+        try {
+            for (int id = group.members.nextSetBit(0); id >= 0; id = group.members.nextSetBit(id + 1)) {
+                members.add(group.memo.names.get(id));
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return Collections.unmodifiableSet(members);
+    }
+
+    /**
+     * Returns the number of transitive members of a group, including the nested groups.
+     *
+     * @param groupDN the group DN
+     *
+     * @return the member count
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    public int getMemberCount(String groupDN)
+        throws DirectoryException {
+
+        return resolve(groupDN).members.cardinality();
+    }
+
+    /**
+     * Removes from the memo the given group and every expanded group it is nested in, so they
+     * are expanded again on the next query.
+     *
+     * @param groupDN the group DN
+     */
+    public void invalidate(String groupDN) {
+
+        String key = DirectoryReplica.toNormalizedKey(groupDN);
+
+        lock.lock();
+        try {
+            generation++;
+            Integer id = memo.ids.get(key);
+            if (id != null) {
+                memo.groups.values().removeIf(group -> group.groups.get(id));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes from the memo the groups affected by a change reported by a subscription, under
+     * the current DN of the object changed and, if renamed, its previous DN.
+     *
+     * @param event the change event
+     */
+    public void invalidate(DirectoryChangeEvent event) {
+
+        invalidate(event.getObjectDN());
+
+        if (event.getPreviousDN() != null) {
+            invalidate(event.getPreviousDN());
+        }
+    }
+
+    /**
+     * Removes all the expanded groups and interned member DNs.
+     */
+    public void clear() {
+
+        lock.lock();
+        try {
+            generation++;
+            memo = new Memo();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of expanded groups memoized, including expired ones not yet removed.
+     *
+     * @return the number of groups
+     */
+    public int size() {
+
+        lock.lock();
+        try {
+            return memo.groups.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the DN of the branch holding the groups.
+     *
+     * @return the group base DN, empty if any DN may be a group
+     */
+    public String getGroupBase() {
+        return groupBase;
+    }
+
+    /**
+     * Returns the number of queries answered from the memo.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of groups expanded from the directory, not counting the nested
+     * groups read while expanding them.
+     *
+     * @return the expansion count
+     */
+    public long getExpansionCount() {
+        return expansionCount.sum();
+    }
+
+    /**
+     * Returns the number of objects read from the directory while expanding groups.
+     *
+     * @return the lookup count
+     */
+    public long getLookupCount() {
+        return lookupCount.sum();
+    }
+
+    /**
+     * Returns the expanded group with the given DN, from the memo or expanding it.
+     *
+     * @param groupDN the group DN
+     *
+     * @return the expanded group
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    private ExpandedGroup resolve(String groupDN)
+        throws DirectoryException {
+
+        if (groupDN == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPGROUP_ERR_DN_ARG")); //$NON-NLS-1$
+        }
+
+        String key = DirectoryReplica.toNormalizedKey(groupDN);
+        Memo current;
+        long expectedGeneration;
+
+        lock.lock();
+        try {
+            ExpandedGroup group = lookup(memo, key);
+            if (group != null) {
+                hitCount.increment();
+                return group;
+            }
+            if (memo.names.size() > maxInternedDNs) {
+                memo = new Memo();
+            }
+            current = memo;
+            expectedGeneration = generation;
+        } finally {
+            lock.unlock();
+        }
+
+        ExpandedGroup group = expand(current, groupDN, key);
+
+        if (timeToLive > 0) {
+            lock.lock();
+            try {
+                if (current == memo && generation == expectedGeneration) {
+                    memo.groups.put(key, group);
+                    if (memo.groups.size() > maxSize) {
+                        Iterator<ExpandedGroup> eldest = memo.groups.values().iterator();
+                        eldest.next();
+                        eldest.remove();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        return group;
+    }
+
+    /**
+     * Expands a group breadth-first, reading all the groups of each level of nesting with one
+     * batch lookup. Groups already in the memo are merged instead of read.
+     *
+     * @param current the memo the member DNs are interned in
+     * @param groupDN the group DN
+     * @param key the key of the group DN
+     *
+     * @return the expanded group
+     *
+     * @throws DirectoryException an error while accessing the directory or reading a group
+     */
+    private ExpandedGroup expand(Memo current, String groupDN, String key)
+        throws DirectoryException {
+
+        BitSet members = new BitSet();
+        BitSet groups = new BitSet();
+        Set<String> visited = new HashSet<>();
+        List<String> level = List.of(groupDN);
+
+        visited.add(key);
+        groups.set(intern(current, key, groupDN));
+        expansionCount.increment();
+
+        while (!level.isEmpty()) {
+            DirectoryBatchResult batch = manager.getAttributes(level, memberAttributes);
+            lookupCount.add(level.size());
+            List<String> nextLevel = new ArrayList<>();
+
+            for (String objectDN : level) {
+                DirectoryAttributes attributes = batch.get(objectDN);
+                if (attributes == null) {
+                    DirectoryException error = batch.getError(objectDN);
+                    if (error != null && DirectoryManager.getResultCode(error) != LDAPException.NO_SUCH_OBJECT) {
+                        throw error;
+                    }
+                    continue;
+                }
+                for (String memberAttribute : memberAttributes) {
+                    String[] values = attributes.getValues(memberAttribute);
+                    if (values == null) {
+                        continue;
+                    }
+                    for (String memberDN : values) {
+                        String memberKey = DirectoryReplica.toNormalizedKey(memberDN);
+                        int id = intern(current, memberKey, memberDN);
+                        members.set(id);
+                        if (!visited.add(memberKey) || !isGroupCandidate(memberKey)) {
+                            continue;
+                        }
+                        ExpandedGroup nested = lookup(current, memberKey);
+                        if (nested != null) {
+                            members.or(nested.members);
+                            groups.or(nested.groups);
+                        } else {
+                            groups.set(id);
+                            nextLevel.add(memberDN);
+                        }
+                    }
+                }
+            }
+
+            level = nextLevel;
+        }
+
+        return new ExpandedGroup(current, members, groups,
+            System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeToLive));
+    }
+
+    /**
+     * Returns the expanded group memoized with the given key, or <code>null</code> if there is
+     * none or it has expired.
+     *
+     * @param current the memo
+     * @param key the key of the group DN
+     *
+     * @return the expanded group or <code>null</code>
+     */
+    private ExpandedGroup lookup(Memo current, String key) {
+
+        lock.lock();
+        try {
+            ExpandedGroup group = current.groups.get(key);
+            if (group != null && System.nanoTime() - group.expiresAt >= 0) {
+                current.groups.remove(key);
+                group = null;
+            }
+            return group;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the integer a member DN is interned to, interning it if not done yet.
+     *
+     * @param current the memo
+     * @param key the key of the member DN
+     * @param memberDN the member DN
+     *
+     * @return the interned integer
+     */
+    private int intern(Memo current, String key, String memberDN) {
+
+        lock.lock();
+        try {
+            Integer id = current.ids.get(key);
+            if (id == null) {
+                id = current.names.size();
+                current.ids.put(key, id);
+                current.names.add(memberDN);
+            }
+            return id;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns whether a member DN may be a group, that is, whether it is under the group base.
+     *
+     * @param memberKey the key of the member DN
+     *
+     * @return <code>true</code> if the member DN is to be looked up
+     */
+    private boolean isGroupCandidate(String memberKey) {
+
+        return groupBaseKey.length() == 0
+            || memberKey.endsWith(groupBaseKey)
+                && (memberKey.length() == groupBaseKey.length()
+                    || memberKey.charAt(memberKey.length() - groupBaseKey.length() - 1) == ',');
+    }
+
+    /**
+     * The interned member DNs and the expanded groups using them.
+     */
+    private static final class Memo {
+
+        /**
+         * Interned integers keyed by member DN key.
+         */
+        final Map<String, Integer> ids = new HashMap<>();
+
+        /**
+         * Member DNs, as first found, indexed by interned integer.
+         */
+        final List<String> names = new ArrayList<>();
+
+        /**
+         * Expanded groups keyed by group DN key, least recently used first.
+         */
+        final Map<String, ExpandedGroup> groups = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * An expanded group. Instances are not modified once built.
+     */
+    private static final class ExpandedGroup {
+
+        /**
+         * The memo the member DNs are interned in.
+         */
+        final Memo memo;
+
+        /**
+         * The interned DNs of the transitive members.
+         */
+        final BitSet members;
+
+        /**
+         * The interned DNs of the group and of the nested groups read to expand it.
+         */
+        final BitSet groups;
+
+        /**
+         * Time, as given by <code>System.nanoTime()</code>, the group expires at.
+         */
+        final long expiresAt;
+
+        /**
+         * Constructor.
+         *
+         * @param memo the memo the member DNs are interned in
+         * @param members the interned DNs of the transitive members
+         * @param groups the interned DNs of the group and of the nested groups read
+         * @param expiresAt time the group expires at
+         */
+        ExpandedGroup(Memo memo, BitSet members, BitSet groups, long expiresAt) {
+
+            this.memo = memo;
+            this.members = members;
+            this.groups = groups;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package deors.core.directory;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with logarithmic buckets.<br>
+ *
+ * Values, in nanoseconds, are counted in buckets laid out as in HDR histograms: every power of
+ * two is split in 32 linear sub-buckets, so any recorded value is reported with a relative
+ * error below 3.2%. Values up to about 73 minutes are tracked; longer ones are counted in the
+ * last bucket.<br>
+ *
+ * Recording a value takes a few atomic increments and allocates nothing, so the histogram can
+ * be updated on every operation. Reads walk the buckets and are meant for monitoring, not for
+ * the hot path.<br>
+ *
+ * The class is thread-safe.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectoryLatencyHistogram {
+
+    /**
+     * Number of bits selecting the sub-bucket within a power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * Number of sub-buckets per power of two.
+     */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Highest power of two tracked.
+     */
+    private static final int MAX_EXPONENT = 42;
+
+    /**
+     * Total number of buckets.
+     */
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT * (MAX_EXPONENT - SUB_BUCKET_BITS + 2);
+
+    /**
+     * Bucket counters.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Number of values recorded.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Sum of the values recorded.
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Highest value recorded.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Default constructor.
+     */
+    public DirectoryLatencyHistogram() {
+        super();
+    }
+
+    /**
+     * Records a value. Negative values are recorded as zero.
+     *
+     * @param nanos the value in nanoseconds
+     */
+    public void record(long nanos) {
+
+        long value = Math.max(0L, nanos);
+
+        buckets.incrementAndGet(getBucketIndex(value));
+        count.increment();
+        sum.add(value);
+
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Returns the number of values recorded.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the mean of the values recorded.
+     *
+     * @return the mean in nanoseconds, or zero if no value was recorded
+     */
+    public double getMean() {
+
+        long n = count.sum();
+        return n == 0 ? 0.0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Returns the highest value recorded.
+     *
+     * @return the maximum in nanoseconds, or zero if no value was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value below which the given percentage of the recorded values fall. The
+     * result is the upper bound of the bucket holding that value, capped to the maximum.
+     *
+     * @param percentile the percentile, between 0 and 100
+     *
+     * @return the value in nanoseconds, or zero if no value was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+
+        if (total == 0) {
+            return 0L;
+        }
+
+        double bounded = Math.min(100.0, Math.max(0.0, percentile));
+        long rank = Math.max(1L, (long) Math.ceil(bounded / 100.0 * total));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(getBucketUpperBound(i), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    /**
+     * Discards all recorded values.
+     */
+    public void reset() {
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0L);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0L);
+    }
+
+    /**
+     * Returns the index of the bucket counting the given value.
+     *
+     * @param value the value, not negative
+     *
+     * @return the bucket index
+     */
+    static int getBucketIndex(long value) {
+
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+
+        return SUB_BUCKET_COUNT * (shift + 1) + subBucket;
+    }
+
+    /**
+     * Returns the highest value counted by the given bucket.
+     *
+     * @param index the bucket index
+     *
+     * @return the bucket upper bound
+     */
+    static long getBucketUpperBound(int index) {
+
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_COUNT;
+        long lowerBound = (SUB_BUCKET_COUNT + subBucket) << shift;
+
+        return lowerBound + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,451 @@
+package deors.core.directory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.novell.ldap.LDAPAddRequest;
+import com.novell.ldap.LDAPDeleteRequest;
+import com.novell.ldap.LDAPEntry;
+import com.novell.ldap.LDAPException;
+import com.novell.ldap.LDAPMessage;
+import com.novell.ldap.LDAPModifyDNRequest;
+import com.novell.ldap.LDAPModifyRequest;
+import com.novell.ldap.LDAPSearchResult;
+import com.novell.ldap.util.LDIFReader;
+
+/**
+ * Reader of LDIF files (RFC 2849) from a byte channel, one record at a time.<br>
+ *
+ * Records are parsed with the LDIF reader of JLDAP and returned as changes: content records,
+ * as written by an export, are returned as additions, and change records keep their change
+ * type. As required by RFC 2849, a file holds either content records or change records, as
+ * decided by its first record. The <code>version: 1</code> line is optional.<br>
+ *
+ * Only the record being parsed is held in memory, so files of any size can be read with
+ * constant memory. The channel is read through a buffer of <code>ldap.ldif.bufferSize</code>
+ * bytes.<br>
+ *
+ * Instances are not thread-safe.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectoryLdifReader implements AutoCloseable {
+
+    /**
+     * The channel read.
+     */
+    private final ReadableByteChannel channel;
+
+    /**
+     * The counter of the bytes read from the channel.
+     */
+    private final CountingInputStream input;
+
+    /**
+     * The JLDAP LDIF reader.
+     */
+    private final LDIFReader reader;
+
+    /**
+     * Number of records read.
+     */
+    private long recordCount;
+
+    /**
+     * Default buffer size in bytes.
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 65536;
+
+    /**
+     * Maximum number of bytes looked ahead for the version line.
+     */
+    private static final int VERSION_LOOKAHEAD = 8192;
+
+    /**
+     * The version line prefix.
+     */
+    private static final String VERSION_PREFIX = "version:"; //$NON-NLS-1$
+
+    /**
+     * The version line added to files without one.
+     */
+    private static final String VERSION_LINE = "version: 1\n"; //$NON-NLS-1$
+
+    /**
+     * Constructor. The first record is looked ahead to find the file type.
+     *
+     * @param channel the channel read
+     *
+     * @throws DirectoryException an error while reading the channel or the file is not valid
+     *                            LDIF
+     */
+    public DirectoryLdifReader(ReadableByteChannel channel)
+        throws DirectoryException {
+
+        super();
+
+        if (channel == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPLDIF_ERR_CHANNEL_ARG")); //$NON-NLS-1$
+        }
+
+        this.channel = channel;
+        this.input = new CountingInputStream(new BufferedInputStream(Channels.newInputStream(channel),
+            DirectoryContext.getConfigurationProperty("ldap.ldif.bufferSize", DEFAULT_BUFFER_SIZE))); //$NON-NLS-1$
+
+        try {
+            this.reader = new LDIFReader(withVersionLine(input));
+        } catch (IOException ioe) {
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPLDIF_ERR_READ", ioe.getMessage()), ioe); //$NON-NLS-1$
+        } catch (LDAPException ldape) {
+            throw toDirectoryException(ldape);
+        }
+    }
+
+    /**
+     * Returns whether the file holds change records.
+     *
+     * @return <code>true</code> for change records, <code>false</code> for content records
+     */
+    public boolean isChangeFile() {
+
+        return reader.isRequest();
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return the change described by the record, or <code>null</code> at the end of the file
+     *
+     * @throws DirectoryException an error while reading the channel or the record is not valid
+     */
+    public DirectoryChange readChange()
+        throws DirectoryException {
+
+        LDAPMessage message;
+
+        try {
+            message = reader.readMessage();
+        } catch (IOException ioe) {
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPLDIF_ERR_READ", ioe.getMessage()), ioe); //$NON-NLS-1$
+        } catch (LDAPException ldape) {
+            throw toDirectoryException(ldape);
+        }
+
+        if (message == null) {
+            return null;
+        }
+
+        recordCount++;
+        return toChange(message);
+    }
+
+    /**
+     * Returns a lazily evaluated stream of the changes not yet read. Errors while reading are
+     * reported with <code>UncheckedDirectoryException</code>.
+     *
+     * @return the stream of changes
+     */
+    public Stream<DirectoryChange> changes() {
+
+        Iterator<DirectoryChange> iterator = new ChangeIterator();
+
+        return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Returns the number of records read.
+     *
+     * @return the record count
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the number of bytes read from the channel. As the channel is read ahead, the
+     * count may exceed the bytes of the records read.
+     *
+     * @return the byte count
+     */
+    public long getByteCount() {
+
+        return input.count;
+    }
+
+    /**
+     * Closes the channel.
+     *
+     * @throws DirectoryException an error while closing the channel
+     */
+    @Override
+    public void close()
+        throws DirectoryException {
+
+        try {
+            channel.close();
+        } catch (IOException ioe) {
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPLDIF_ERR_READ", ioe.getMessage()), ioe); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Wraps a parse error raised by JLDAP, whose message only tells the result code, so the
+     * full description with the line number is reported instead.
+     *
+     * @param ldape the parse error
+     *
+     * @return the directory exception
+     */
+    private static DirectoryException toDirectoryException(LDAPException ldape) {
+
+        return new DirectoryException(
+            DirectoryContext.getMessage("LDAPLDIF_ERR_READ", ldape.toString()), ldape); //$NON-NLS-1$
+    }
+
+    /**
+     * Converts a record parsed by JLDAP into a change.
+     *
+     * @param message the record
+     *
+     * @return the change
+     *
+     * @throws DirectoryException the record type is not supported
+     */
+    private static DirectoryChange toChange(LDAPMessage message)
+        throws DirectoryException {
+
+        if (message instanceof LDAPSearchResult) {
+            LDAPEntry entry = ((LDAPSearchResult) message).getEntry();
+            return DirectoryChange.add(entry.getDN(), entry.getAttributeSet());
+        } else if (message instanceof LDAPAddRequest) {
+            LDAPEntry entry = ((LDAPAddRequest) message).getEntry();
+            return DirectoryChange.add(entry.getDN(), entry.getAttributeSet());
+        } else if (message instanceof LDAPModifyRequest) {
+            LDAPModifyRequest request = (LDAPModifyRequest) message;
+            return DirectoryChange.modify(request.getDN(), request.getModifications());
+        } else if (message instanceof LDAPDeleteRequest) {
+            return DirectoryChange.delete(((LDAPDeleteRequest) message).getDN());
+        } else if (message instanceof LDAPModifyDNRequest) {
+            LDAPModifyDNRequest request = (LDAPModifyDNRequest) message;
+            return DirectoryChange.rename(request.getDN(), request.getNewRDN(),
+                request.getParentDN(), request.getDeleteOldRDN());
+        }
+
+        throw new DirectoryException(DirectoryContext.getMessage(
+            "LDAPLDIF_ERR_RECORD", message.getClass().getSimpleName())); //$NON-NLS-1$
+    }
+
+    /**
+     * Returns the given stream, preceded by a version line if the file has none, as JLDAP
+     * requires one.
+     *
+     * @param in the stream, which must support mark and reset
+     *
+     * @return the stream with a version line
+     *
+     * @throws IOException an error while reading the stream
+     */
+    private static InputStream withVersionLine(InputStream in)
+        throws IOException {
+
+        in.mark(VERSION_LOOKAHEAD);
+
+        StringBuilder line = new StringBuilder();
+        int read = 0;
+
+        for (int next = in.read(); next != -1 && read < VERSION_LOOKAHEAD; next = in.read()) {
+            read++;
+            if (next != '\n') {
+                if (next != '\r') {
+                    line.append((char) next);
+                }
+                continue;
+            }
+            if (line.length() > 0 && line.charAt(0) != '#' && line.charAt(0) != ' ') {
+                break;
+            }
+            line.setLength(0);
+        }
+
+        boolean hasVersion = line.toString().startsWith(VERSION_PREFIX);
+        in.reset();
+
+        if (hasVersion) {
+            return in;
+        }
+
+        return new SequenceInputStream(
+            new ByteArrayInputStream(VERSION_LINE.getBytes(StandardCharsets.US_ASCII)), in);
+    }
+
+    /**
+     * Input stream counting the bytes read.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        /**
+         * Number of bytes read.
+         */
+        private volatile long count;
+
+        /**
+         * Number of bytes read when the stream was marked.
+         */
+        private long markedCount;
+
+        /**
+         * Constructor.
+         *
+         * @param in the stream read
+         */
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        /**
+         * Reads a byte.
+         *
+         * @return the byte, or -1 at the end of the stream
+         *
+         * @throws IOException an error while reading
+         */
+        @Override
+        public int read()
+            throws IOException {
+
+            int next = super.read();
+            if (next != -1) {
+                count++;
+            }
+            return next;
+        }
+
+        /**
+         * Reads bytes into an array.
+         *
+         * @param b the array
+         * @param off the offset in the array
+         * @param len the maximum number of bytes read
+         *
+         * @return the number of bytes read, or -1 at the end of the stream
+         *
+         * @throws IOException an error while reading
+         */
+        @Override
+        public int read(byte[] b, int off, int len)
+            throws IOException {
+
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        /**
+         * Marks the current position, remembering the count.
+         *
+         * @param readlimit the maximum number of bytes read before the mark is invalid
+         */
+        @Override
+        public synchronized void mark(int readlimit) {
+
+            super.mark(readlimit);
+            markedCount = count;
+        }
+
+        /**
+         * Returns to the marked position, restoring the count.
+         *
+         * @throws IOException the mark is not valid
+         */
+        @Override
+        public synchronized void reset()
+            throws IOException {
+
+            super.reset();
+            count = markedCount;
+        }
+
+        /**
+         * Skips bytes.
+         *
+         * @param n the number of bytes to skip
+         *
+         * @return the number of bytes skipped
+         *
+         * @throws IOException an error while reading
+         */
+        @Override
+        public long skip(long n)
+            throws IOException {
+
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Iterator over the changes not yet read.
+     */
+    private final class ChangeIterator implements Iterator<DirectoryChange> {
+
+        /**
+         * The change read ahead, or <code>null</code>.
+         */
+        private DirectoryChange next;
+
+        /**
+         * Returns whether there are more changes, reading the next one ahead.
+         *
+         * @return <code>true</code> if there are more changes
+         */
+        @Override
+        public boolean hasNext() {
+
+            if (next == null) {
+                try {
+                    next = readChange();
+                } catch (DirectoryException de) {
+                    throw new UncheckedDirectoryException(de);
+                }
+            }
+            return next != null;
+        }
+
+        /**
+         * Returns the next change.
+         *
+         * @return the next change
+         */
+        @Override
+        public DirectoryChange next() {
+
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            DirectoryChange change = next;
+            next = null;
+            return change;
+        }
+    }
+}
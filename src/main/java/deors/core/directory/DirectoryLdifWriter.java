@@ -0,0 +1,224 @@
+package deors.core.directory;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import com.novell.ldap.LDAPEntry;
+import com.novell.ldap.util.LDIFWriter;
+
+/**
+ * Writer of LDIF files (RFC 2849) to a byte channel, one entry at a time.<br>
+ *
+ * Entries are written as content records with the LDIF writer of JLDAP, which encodes
+ * binary and non-ASCII values in base64 and folds long lines. Entries are not held once
+ * written, so files of any size can be written with constant memory. The channel is written
+ * through a buffer of <code>ldap.ldif.bufferSize</code> bytes.<br>
+ *
+ * Instances are not thread-safe.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectoryLdifWriter implements AutoCloseable {
+
+    /**
+     * The channel written.
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * The counter of the bytes written to the channel.
+     */
+    private final CountingOutputStream output;
+
+    /**
+     * The JLDAP LDIF writer.
+     */
+    private final LDIFWriter writer;
+
+    /**
+     * Number of entries written.
+     */
+    private long entryCount;
+
+    /**
+     * Flag that is <code>true</code> once the writer is closed.
+     */
+    private boolean closed;
+
+    /**
+     * Default buffer size in bytes.
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 65536;
+
+    /**
+     * The LDIF version written.
+     */
+    private static final String LDIF_VERSION = "1"; //$NON-NLS-1$
+
+    /**
+     * Constructor. The version line is written.
+     *
+     * @param channel the channel written
+     *
+     * @throws DirectoryException an error while writing to the channel
+     */
+    public DirectoryLdifWriter(WritableByteChannel channel)
+        throws DirectoryException {
+
+        super();
+
+        if (channel == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPLDIF_ERR_CHANNEL_ARG")); //$NON-NLS-1$
+        }
+
+        this.channel = channel;
+        this.output = new CountingOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel),
+            DirectoryContext.getConfigurationProperty("ldap.ldif.bufferSize", DEFAULT_BUFFER_SIZE))); //$NON-NLS-1$
+
+        try {
+            this.writer = new LDIFWriter(output, LDIF_VERSION, false);
+        } catch (IOException ioe) {
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPLDIF_ERR_WRITE", ioe.getMessage()), ioe); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Writes an entry.
+     *
+     * @param entry the entry
+     *
+     * @throws DirectoryException an error while writing to the channel
+     */
+    public void writeEntry(LDAPEntry entry)
+        throws DirectoryException {
+
+        try {
+            writer.writeEntry(entry);
+        } catch (IOException ioe) {
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPLDIF_ERR_WRITE", ioe.getMessage()), ioe); //$NON-NLS-1$
+        }
+
+        entryCount++;
+    }
+
+    /**
+     * Writes the buffered content to the channel.
+     *
+     * @throws DirectoryException an error while writing to the channel
+     */
+    public void flush()
+        throws DirectoryException {
+
+        try {
+            writer.finish();
+        } catch (IOException ioe) {
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPLDIF_ERR_WRITE", ioe.getMessage()), ioe); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Returns the number of entries written.
+     *
+     * @return the entry count
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Returns the number of bytes written. Entries are encoded through a buffer of JLDAP, so
+     * the count is exact only after <code>flush()</code>.
+     *
+     * @return the byte count
+     */
+    public long getByteCount() {
+
+        return output.count;
+    }
+
+    /**
+     * Writes the buffered content and closes the channel.
+     *
+     * @throws DirectoryException an error while writing to or closing the channel
+     */
+    @Override
+    public void close()
+        throws DirectoryException {
+
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            flush();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ioe) {
+                throw new DirectoryException(
+                    DirectoryContext.getMessage("LDAPLDIF_ERR_WRITE", ioe.getMessage()), ioe); //$NON-NLS-1$
+            }
+        }
+    }
+
+    /**
+     * Output stream counting the bytes written.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        /**
+         * Number of bytes written.
+         */
+        private volatile long count;
+
+        /**
+         * Constructor.
+         *
+         * @param out the stream written
+         */
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        /**
+         * Writes a byte.
+         *
+         * @param b the byte
+         *
+         * @throws IOException an error while writing
+         */
+        @Override
+        public void write(int b)
+            throws IOException {
+
+            out.write(b);
+            count++;
+        }
+
+        /**
+         * Writes bytes from an array.
+         *
+         * @param b the array
+         * @param off the offset in the array
+         * @param len the number of bytes written
+         *
+         * @throws IOException an error while writing
+         */
+        @Override
+        public void write(byte[] b, int off, int len)
+            throws IOException {
+
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
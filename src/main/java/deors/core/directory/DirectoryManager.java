@@ -1,16 +1,134 @@
 package deors.core.directory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.security.auth.callback.CallbackHandler;
 
 import com.novell.ldap.LDAPAttribute;
 import com.novell.ldap.LDAPAttributeSet;
 import com.novell.ldap.LDAPConnection;
 import com.novell.ldap.LDAPEntry;
 import com.novell.ldap.LDAPException;
+import com.novell.ldap.LDAPMessage;
+import com.novell.ldap.LDAPModification;
+import com.novell.ldap.LDAPResponse;
+import com.novell.ldap.LDAPResponseQueue;
+import com.novell.ldap.LDAPSearchQueue;
+import com.novell.ldap.LDAPSearchResult;
 import com.novell.ldap.LDAPSearchResults;
 
 /**
- * Class for managing Directory services using LDAP protocol.
+ * Class for managing Directory services using LDAP protocol.<br>
+ *
+ * A manager either owns a single connection, created with <code>createConnection()</code>, or
+ * is backed by a <code>DirectoryConnectionPool</code>, in which case every operation borrows a
+ * connection from the pool and returns it once finished. Pooled managers do not own the pool:
+ * closing the manager leaves the pool open.<br>
+ *
+ * Instances are safe for concurrent use by any number of threads, including virtual threads.
+ * Connection state changes (<code>createConnection()</code>, <code>closeConnection()</code>)
+ * are atomic compare-and-set transitions: when several threads race, exactly one of them
+ * succeeds and the others fail as if the transition had already happened. Operations may run
+ * concurrently with each other: on an owned connection their requests are multiplexed over the
+ * same socket, and on a pooled manager each one uses its own borrowed connection. An operation
+ * racing with <code>closeConnection()</code> on an owned connection may fail with a
+ * <code>DirectoryException</code>.<br>
+ *
+ * The manager holds no monitor while waiting for the directory; blocking happens inside the
+ * JLDAP message queues, which on Java 24 and later do not pin the carrier of a virtual
+ * thread.<br>
+ *
+ * Services taking traffic right after startup should call <code>warmUp()</code> first, and
+ * report themselves ready only once <code>isReady()</code> returns <code>true</code>. The
+ * warm-up opens and binds pooled connections in parallel and reads a canary entry through
+ * them, so connections, binds and the lookup path are all in place before the first
+ * request.<br>
+ *
+ * Owned connections are anonymous until bound with <code>bind()</code> or
+ * <code>saslBind()</code>; the identity of pooled connections is set in the pool. User
+ * passwords are checked with <code>verifyCredentials()</code>, which never binds the owned
+ * connection as the user: pooled managers bind a borrowed connection and restore its identity,
+ * so no socket is opened per check, and other managers open a short-lived connection.<br>
+ *
+ * Managers can use a <code>DirectoryServerSet</code> instead of a single server. An owned
+ * connection is opened to the first server of the set that answers; a pooled manager spreads
+ * its operations among the servers of the pool and retries lookups failing with a connection
+ * error on another server, up to once per server. Only reads are retried.<br>
+ *
+ * Owned connections are opened with the connect timeout, response timeout and search limits
+ * of a <code>DirectoryTimeouts</code>, read from the library configuration unless set with
+ * <code>setTimeouts()</code>; pooled connections use the limits of the pool. Calls on an
+ * owned connection fail fast while the circuit breaker of its server is open, that is, after
+ * too many of them failed with connection errors or timeouts.<br>
+ *
+ * Connections are plain, LDAPS or upgraded with StartTLS as set in a <code>DirectoryTls</code>,
+ * by default the one shared by the whole application, read from the library configuration
+ * and set with <code>setTls()</code> for owned connections. Connections sharing it resume
+ * TLS sessions instead of running a full handshake each.<br>
+ *
+ * Entries are changed with <code>addEntry()</code>, <code>modifyEntry()</code>,
+ * <code>deleteEntry()</code> and <code>renameEntry()</code>, or with
+ * <code>applyChange()</code> given a <code>DirectoryChange</code>. Large sets of changes are
+ * applied with <code>applyChanges()</code>, which pipelines them without waiting for each
+ * response and reports the result of every change.<br>
+ *
+ * Subtrees are dumped to LDIF with <code>exportLdif()</code>, which streams a paged search to
+ * the file, and loaded with <code>importLdif()</code>, which streams the records of the file
+ * to <code>applyChanges()</code>. Both use constant memory and report their progress and
+ * throughput.<br>
+ *
+ * Binary values, like photos or certificates, can be read without copying them with
+ * <code>getAttributeValueBuffer()</code>, <code>getAttributeValueBuffers()</code> and
+ * <code>getAttributeValueStream()</code>, or written straight to a buffer or channel with
+ * <code>writeAttributeValue()</code>. String values can be consumed without creating strings
+ * with <code>visitAttributeValues()</code>, which decodes them into a buffer reused by the
+ * calling thread.<br>
+ *
+ * Entries can be read as records or annotated objects with <code>getObject()</code> and
+ * <code>searchObjects()</code>, which request only the mapped attributes and map them with
+ * a <code>DirectoryObjectMapper</code>.<br>
+ *
+ * Concurrent reads of the same attribute of the same object are coalesced: while a lookup is
+ * in flight, identical reads wait for it instead of sending their own, and all of them get
+ * its result or its error. This is set with <code>ldap.search.coalesce</code>.<br>
+ *
+ * Operations can be timed and counted by setting a <code>DirectoryOperationListener</code>,
+ * like <code>DirectoryStatistics</code>. Without a listener no timing is taken.<br>
  *
  * @author deors
  * @version 1.0
@@ -18,18 +136,110 @@ import com.novell.ldap.LDAPSearchResults;
 public class DirectoryManager implements AutoCloseable {
 
     /**
-     * Flag that is <code>true</code> when there is an active directory connection.
+     * Connection state, one of the <code>STATE_*</code> constants. Changed only with
+     * compare-and-set operations.
      *
      * @see DirectoryManager#isConnected()
-     * @see DirectoryManager#CONNECTION_ACTIVE
-     * @see DirectoryManager#CONNECTION_INACTIVE
      */
-    private boolean connected;
+    private final AtomicInteger state = new AtomicInteger(STATE_INACTIVE);
 
     /**
      * Connection object where the active connection is stored.
      */
-    private LDAPConnection connection;
+    private volatile LDAPConnection connection;
+
+    /**
+     * Status of the server the owned connection is connected to, or <code>null</code> if there
+     * is no owned connection.
+     */
+    private volatile DirectoryServerStatus connectedServer;
+
+    /**
+     * Limits applied to the owned connections opened from now on.
+     */
+    private volatile DirectoryTimeouts timeouts = new DirectoryTimeouts();
+
+    /**
+     * Transport security applied to the owned connections opened from now on.
+     */
+    private volatile DirectoryTls tls = DirectoryTls.getDefault();
+
+    /**
+     * Connection pool backing this manager, or <code>null</code> if the manager owns
+     * its connection.
+     */
+    private final DirectoryConnectionPool connectionPool;
+
+    /**
+     * Cache of attribute values, or <code>null</code> if values are not cached.
+     */
+    private volatile DirectoryAttributeCache attributeCache;
+
+    /**
+     * In-memory mirror answering attribute reads, or <code>null</code> if reads always go to
+     * the directory.
+     */
+    private volatile DirectoryReplica replica;
+
+    /**
+     * Attribute lookups in flight by object DN and attribute name, shared by concurrent
+     * identical reads.
+     */
+    private final Map<String, CompletableFuture<LDAPAttribute>> inFlightLookups = new ConcurrentHashMap<>();
+
+    /**
+     * Whether concurrent identical attribute reads share one lookup.
+     */
+    private final boolean coalescing =
+        DirectoryContext.getConfigurationProperty("ldap.search.coalesce", true); //$NON-NLS-1$
+
+    /**
+     * Number of attribute reads that waited for a lookup in flight instead of sending their own.
+     */
+    private final LongAdder coalescedReads = new LongAdder();
+
+    /**
+     * Listener notified of every operation, or <code>null</code> if operations are not
+     * instrumented.
+     */
+    private volatile DirectoryOperationListener operationListener;
+
+    /**
+     * Binds the owned connection with its current identity, or <code>null</code> if the
+     * connection is anonymous.
+     */
+    private volatile IdentityBinder identity;
+
+    /**
+     * Flag that is <code>true</code> once <code>warmUp()</code> succeeded on the current
+     * connection.
+     */
+    private volatile boolean ready;
+
+    /**
+     * Lock serializing identity changes of the owned connection.
+     */
+    private final ReentrantLock bindLock = new ReentrantLock();
+
+    /**
+     * State of a manager with no active connection.
+     */
+    private static final int STATE_INACTIVE = 0;
+
+    /**
+     * State of a manager whose connection is being created.
+     */
+    private static final int STATE_CONNECTING = 1;
+
+    /**
+     * State of a manager with an active connection.
+     */
+    private static final int STATE_ACTIVE = 2;
+
+    /**
+     * State of a manager whose connection is being closed.
+     */
+    private static final int STATE_CLOSING = 3;
 
     /**
      * Constant for an active connection.
@@ -41,11 +251,42 @@ public class DirectoryManager implements AutoCloseable {
      */
     public static final boolean CONNECTION_INACTIVE = false;
 
+    /**
+     * Default maximum number of outstanding searches in batch lookups.
+     */
+    private static final int DEFAULT_BATCH_MAX_OUTSTANDING = 100;
+
+    /**
+     * Default maximum number of connections used to apply changes in bulk.
+     */
+    private static final int DEFAULT_BATCH_CONNECTIONS = 4;
+
+    /**
+     * The attribute read from the canary entry, present in every entry.
+     */
+    private static final String CANARY_ATTRIBUTE = "objectClass"; //$NON-NLS-1$
+
+    /**
+     * Default number of pooled connections opened by a warm-up.
+     */
+    private static final int DEFAULT_WARMUP_CONNECTIONS = 4;
+
+    /**
+     * Default number of entries or changes between progress reports of LDIF transfers.
+     */
+    private static final int DEFAULT_LDIF_PROGRESS_INTERVAL = 10000;
+
+    /**
+     * Default number of entries per page in searches.
+     */
+    private static final int DEFAULT_SEARCH_PAGE_SIZE = 500;
+
     /**
      * Default constructor.
      */
     public DirectoryManager() {
         super();
+        connectionPool = null;
     }
 
     /**
@@ -64,28 +305,75 @@ public class DirectoryManager implements AutoCloseable {
     }
 
     /**
-     * Closes the actual directory connection.
+     * Constructor that creates a connection to one of the given directory servers.
+     *
+     * @param servers the directory servers
      *
      * @throws DirectoryException an error while accessing the directory
      */
-    public void closeConnection()
+    public DirectoryManager(DirectoryServerSet servers)
         throws DirectoryException {
 
-        if (!connected) {
-            throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_CLOSE_CONN_NO")); //$NON-NLS-1$
+        this();
+        createConnection(servers);
+    }
+
+    /**
+     * Constructor that creates a manager backed by the given connection pool.
+     *
+     * @param connectionPool the connection pool
+     */
+    public DirectoryManager(DirectoryConnectionPool connectionPool) {
+
+        super();
+
+        if (connectionPool == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMGR_ERR_POOL_ARG")); //$NON-NLS-1$
         }
 
-        if (connection != null) {
-            try {
-                connection.disconnect();
-            } catch (LDAPException ldape) {
-                throw new DirectoryException(
-                    DirectoryContext.getMessage("LDAPMGR_ERR_CLOSE_CONN", ldape.getMessage()), //$NON-NLS-1$
-                    ldape);
+        this.connectionPool = connectionPool;
+        state.set(STATE_ACTIVE);
+    }
+
+    /**
+     * Closes the actual directory connection. For pooled managers, the manager is
+     * marked as disconnected and the pool is left open.
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    public void closeConnection()
+        throws DirectoryException {
+
+        DirectoryOperationListener listener = operationListener;
+        long started = operationStarted(listener, DirectoryOperation.CLOSE);
+        int resultCode = LDAPException.SUCCESS;
+
+        try {
+            if (!state.compareAndSet(STATE_ACTIVE, STATE_CLOSING)) {
+                throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_CLOSE_CONN_NO")); //$NON-NLS-1$
+            }
+
+            LDAPConnection activeConnection = connection;
+
+            if (connectionPool == null && activeConnection != null) {
+                try {
+                    activeConnection.disconnect();
+                } catch (LDAPException ldape) {
+                    state.set(STATE_ACTIVE);
+                    throw new DirectoryException(
+                        DirectoryContext.getMessage("LDAPMGR_ERR_CLOSE_CONN", ldape.getMessage()), //$NON-NLS-1$
+                        ldape);
+                }
             }
-        }
 
-        connected = false;
+            ready = false;
+            state.set(STATE_INACTIVE);
+        } catch (DirectoryException | RuntimeException e) {
+            resultCode = getResultCode(e);
+            throw e;
+        } finally {
+            operationCompleted(listener, DirectoryOperation.CLOSE, started, resultCode);
+        }
     }
 
     /**
@@ -98,8 +386,15 @@ public class DirectoryManager implements AutoCloseable {
     public void close()
         throws DirectoryException {
 
-        if (connected) {
-            closeConnection();
+        if (isConnected()) {
+            try {
+                closeConnection();
+            } catch (DirectoryException de) {
+                if (isConnected()) {
+                    throw de;
+                }
+                // another thread closed the connection first
+            }
         }
     }
 
@@ -114,180 +409,2721 @@ public class DirectoryManager implements AutoCloseable {
     public final void createConnection(String directoryHost, int directoryPort)
         throws DirectoryException {
 
-        if (connected) {
-            throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_OPEN_CONN_EXISTS")); //$NON-NLS-1$
+        DirectoryOperationListener listener = operationListener;
+        long started = operationStarted(listener, DirectoryOperation.CONNECT);
+        int resultCode = LDAPException.SUCCESS;
+
+        try {
+            if (!state.compareAndSet(STATE_INACTIVE, STATE_CONNECTING)) {
+                throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_OPEN_CONN_EXISTS")); //$NON-NLS-1$
+            }
+
+            if (directoryHost == null || directoryHost.length() == 0 || directoryPort <= 0) {
+                state.set(STATE_INACTIVE);
+                throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMGR_ERR_OPEN_CONN_ARG")); //$NON-NLS-1$
+            }
+
+            openConnection(DirectoryServerSet.of(directoryHost, directoryPort));
+        } catch (DirectoryException | RuntimeException e) {
+            resultCode = getResultCode(e);
+            throw e;
+        } finally {
+            operationCompleted(listener, DirectoryOperation.CONNECT, started, resultCode);
         }
+    }
 
-        if (directoryHost == null || directoryHost.length() == 0 || directoryPort <= 0) {
-            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMGR_ERR_OPEN_CONN_ARG")); //$NON-NLS-1$
+    /**
+     * Creates a connection to one of the given directory servers. Servers are tried in the
+     * order chosen by the server set until one of them can be connected to.
+     *
+     * @param servers the directory servers
+     *
+     * @throws DirectoryException an error while accessing the directory on every server
+     */
+    public final void createConnection(DirectoryServerSet servers)
+        throws DirectoryException {
+
+        DirectoryOperationListener listener = operationListener;
+        long started = operationStarted(listener, DirectoryOperation.CONNECT);
+        int resultCode = LDAPException.SUCCESS;
+
+        try {
+            if (!state.compareAndSet(STATE_INACTIVE, STATE_CONNECTING)) {
+                throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_OPEN_CONN_EXISTS")); //$NON-NLS-1$
+            }
+
+            if (servers == null) {
+                state.set(STATE_INACTIVE);
+                throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPSRV_ERR_SERVERS_ARG")); //$NON-NLS-1$
+            }
+
+            openConnection(servers);
+        } catch (DirectoryException | RuntimeException e) {
+            resultCode = getResultCode(e);
+            throw e;
+        } finally {
+            operationCompleted(listener, DirectoryOperation.CONNECT, started, resultCode);
         }
+    }
+
+    /**
+     * Opens the owned connection to the first server of the set that can be connected to and
+     * activates the manager. Servers that cannot be connected to are marked as unavailable.
+     * On error, the manager is left inactive.
+     *
+     * @param servers the directory servers
+     *
+     * @throws DirectoryException an error while accessing the directory on every server
+     */
+    private void openConnection(DirectoryServerSet servers)
+        throws DirectoryException {
+
+        Set<DirectoryServer> excluded = new HashSet<>();
+        DirectoryServerStatus status = servers.select(excluded);
 
         try {
-            connection = new LDAPConnection();
-            connection.connect(directoryHost, directoryPort);
-        } catch (LDAPException ldape) {
-            throw new DirectoryException(
-                DirectoryContext.getMessage("LDAPMGR_ERR_OPEN_CONN", ldape.getMessage()), //$NON-NLS-1$
-                ldape);
+            while (true) {
+                LDAPConnection newConnection = timeouts.newConnection(tls);
+                try {
+                    newConnection.connect(status.getServer().getHost(), status.getServer().getPort());
+                    secureConnection(newConnection);
+                    status.markAvailable();
+                    identity = null;
+                    connection = newConnection;
+                    connectedServer = status;
+                    break;
+                } catch (LDAPException ldape) {
+                    DirectoryException de = new DirectoryException(
+                        DirectoryContext.getMessage("LDAPMGR_ERR_OPEN_CONN", ldape.getMessage()), //$NON-NLS-1$
+                        ldape);
+                    if (!DirectoryConnectionPool.isConnectionError(ldape)) {
+                        throw de;
+                    }
+                    status.markFailed();
+                    excluded.add(status.getServer());
+                    status = servers.select(excluded);
+                    if (status == null) {
+                        throw de;
+                    }
+                }
+            }
+        } catch (DirectoryException | RuntimeException e) {
+            state.set(STATE_INACTIVE);
+            throw e;
         }
 
-        connected = true;
+        state.set(STATE_ACTIVE);
     }
 
     /**
-     * Returns the connection object.
+     * Upgrades an owned connection just opened to TLS, if set in the transport security. On
+     * error, the connection is closed.
      *
-     * @return the connection object
+     * @param newConnection the connection
+     *
+     * @throws LDAPException an error while running StartTLS or in the handshake
      */
-    public LDAPConnection getConnection() {
+    private void secureConnection(LDAPConnection newConnection)
+        throws LDAPException {
 
-        return connection;
+        try {
+            tls.secure(newConnection);
+        } catch (LDAPException ldape) {
+            try {
+                newConnection.disconnect();
+            } catch (LDAPException disconnectError) {
+                // the connection is being discarded anyway
+            }
+            throw ldape;
+        }
     }
 
     /**
-     * Returns the attribute object for the given object DN and attribute name, or
-     * <code>null</code> if the attribute or object was not found.
-     *
-     * @param objectDN the object DN
-     * @param attributeName the attribute name
+     * Binds the owned connection with the given DN and password, replacing its current
+     * identity. A <code>null</code> DN binds anonymously.
      *
-     * @return the attribute object or <code>null</code> if not found
+     * @param bindDN the DN to bind as, or <code>null</code> to bind anonymously
+     * @param password the password
      *
-     * @throws DirectoryException an error while accessing the directory
+     * @throws DirectoryException an error while accessing the directory, including invalid
+     *                            credentials
      */
-    private LDAPAttribute getAttribute(String objectDN, String attributeName)
+    public void bind(String bindDN, String password)
         throws DirectoryException {
 
-            try {
-            LDAPSearchResults res = connection.search(
-                objectDN, LDAPConnection.SCOPE_BASE,
-                DirectoryContext.BLANK, new String[] {attributeName}, false);
+        byte[] passwordBytes = bindDN == null ? null : toPasswordBytes(password);
 
-            LDAPEntry nextEntry = null;
-            LDAPAttributeSet attributeSet = null;
-            LDAPAttribute attribute = null;
-            @SuppressWarnings("rawtypes")
-            Iterator allAttributes = null;
+        bind(bindDN == null ? null
+            : bindConnection -> bindConnection.bind(LDAPConnection.LDAP_V3, bindDN, passwordBytes.clone()));
+    }
 
-            if (res.hasMore()) {
-                nextEntry = res.next();
-                attributeSet = nextEntry.getAttributeSet();
-                if (attributeSet.size() == 0) {
-                    return null;
-                }
+    /**
+     * Binds the owned connection using SASL, replacing its current identity. The mechanisms
+     * available are the ones supported by the JLDAP SASL client factories installed.
+     *
+     * @param authorizationID the authorization identity, or <code>null</code>
+     * @param mechanisms the SASL mechanisms to try, in order of preference
+     * @param properties the SASL client properties, or <code>null</code>
+     * @param callbackHandler the handler providing the credentials to the mechanism
+     *
+     * @throws DirectoryException an error while accessing the directory, including invalid
+     *                            credentials
+     */
+    public void saslBind(String authorizationID, String[] mechanisms, Map<String, ?> properties,
+                         CallbackHandler callbackHandler)
+        throws DirectoryException {
 
-                allAttributes = attributeSet.iterator();
-                if (allAttributes.hasNext()) {
-                    attribute = (LDAPAttribute) allAttributes.next();
-                    if (attribute.size() == 0) {
-                        return null;
-                    }
+        String[] requestedMechanisms = mechanisms.clone();
 
-                    return attribute;
-                } else {
-                    return null;
-                }
-            } else {
-                return null;
-            }
-        } catch (LDAPException ldape) {
-            throw new DirectoryException(
-                DirectoryContext.getMessage("LDAPMGR_ERR_SEARCH", ldape.getMessage()), //$NON-NLS-1$
-                ldape);
-        }
+        bind(bindConnection -> bindConnection.bind(
+            null, authorizationID, requestedMechanisms, properties, callbackHandler));
     }
 
     /**
-     * Returns the attribute value as a string for the given object DN and attribute name,
-     * or <code>null</code> if the attribute or object was not found.
+     * Binds the owned connection with the given identity and remembers it.
      *
-     * @param objectDN the object DN
-     * @param attributeName the attribute name
-     *
-     * @return the attribute value as a string or <code>null</code> if not found
+     * @param binder the identity, or <code>null</code> for anonymous
      *
      * @throws DirectoryException an error while accessing the directory
      */
-    public String getAttributeValue(String objectDN, String attributeName)
+    private void bind(IdentityBinder binder)
         throws DirectoryException {
 
-        if (!connected) {
-            throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_NO_CONN")); //$NON-NLS-1$
-        }
+        DirectoryOperationListener listener = operationListener;
+        long started = operationStarted(listener, DirectoryOperation.BIND);
+        int resultCode = LDAPException.SUCCESS;
 
-        LDAPAttribute attribute = getAttribute(objectDN, attributeName);
+        try {
+            if (!isConnected()) {
+                throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_NO_CONN")); //$NON-NLS-1$
+            }
 
-        if (attribute == null) {
-            return null;
-        }
+            if (connectionPool != null) {
+                throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_BIND_POOL")); //$NON-NLS-1$
+            }
 
-        return attribute.getStringValue();
+            bindLock.lock();
+            try {
+                bindIdentity(connection, binder);
+                identity = binder;
+            } catch (LDAPException ldape) {
+                throw new DirectoryException(
+                    DirectoryContext.getMessage("LDAPMGR_ERR_BIND", ldape.getMessage()), //$NON-NLS-1$
+                    ldape);
+            } finally {
+                bindLock.unlock();
+            }
+        } catch (DirectoryException | RuntimeException e) {
+            resultCode = getResultCode(e);
+            throw e;
+        } finally {
+            operationCompleted(listener, DirectoryOperation.BIND, started, resultCode);
+        }
     }
 
     /**
-     * Returns the attribute values as a string array for the given object DN and
-     * attribute name, or an empty array if the attribute or object was not found.
+     * Checks the password of a directory user. On pooled managers, the check binds a
+     * connection borrowed from the pool as the user and then binds it again with the pool
+     * identity; if that bind fails, the connection is closed instead of being given back.
+     * Otherwise, the check opens a new connection to the server of the owned connection, binds
+     * it as the user and closes it, so the owned connection, shared by concurrent operations
+     * and subscriptions, always keeps its identity.<br>
      *
-     * @param objectDN the object DN
-     * @param attributeName the attribute name
+     * Empty passwords are rejected without contacting the directory, as the directory would
+     * take them as an unauthenticated bind and report success. Rejected credentials are
+     * reported to the operation listener with the <code>INVALID_CREDENTIALS</code> result code.
      *
-     * @return the attribute value as a string array or an empty array if not found
+     * @param userDN the user DN
+     * @param password the password
+     *
+     * @return <code>true</code> if the credentials are valid
      *
      * @throws DirectoryException an error while accessing the directory
      */
-    public String[] getAttributeValues(String objectDN, String attributeName)
+    public boolean verifyCredentials(String userDN, String password)
         throws DirectoryException {
 
-        if (!connected) {
-            throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_NO_CONN")); //$NON-NLS-1$
-        }
+        DirectoryOperationListener listener = operationListener;
+        long started = operationStarted(listener, DirectoryOperation.VERIFY_CREDENTIALS);
+        int resultCode = LDAPException.SUCCESS;
 
-        LDAPAttribute attribute = getAttribute(objectDN, attributeName);
+        try {
+            if (!isConnected()) {
+                throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_NO_CONN")); //$NON-NLS-1$
+            }
 
-        if (attribute == null) {
-            return new String[0];
-        }
+            boolean verified;
+
+            if (userDN == null || userDN.length() == 0 || password == null || password.length() == 0) {
+                verified = false;
+            } else if (connectionPool != null) {
+                verified = checkCredentials(userDN, password);
+            } else {
+                verified = checkCredentialsOnNewConnection(userDN, password);
+            }
+
+            if (!verified) {
+                resultCode = LDAPException.INVALID_CREDENTIALS;
+            }
 
-        return attribute.getStringValueArray();
+            return verified;
+        } catch (DirectoryException | RuntimeException e) {
+            resultCode = getResultCode(e);
+            throw e;
+        } finally {
+            operationCompleted(listener, DirectoryOperation.VERIFY_CREDENTIALS, started, resultCode);
+        }
     }
 
     /**
-     * Returns the attribute value as a byte array for the given object DN and attribute
-     * name, or an empty array if the attribute or object was not found.
+     * Binds a pooled connection as the given user and then restores the pool identity. The
+     * connection is discarded if its identity cannot be restored.
      *
-     * @param objectDN the object DN
-     * @param attributeName the attribute name
+     * @param userDN the user DN
+     * @param password the password
      *
-     * @return the attribute value as a byte array or an empty array if not found
+     * @return <code>true</code> if the credentials are valid
      *
      * @throws DirectoryException an error while accessing the directory
      */
-    public byte[] getAttributeValueBytes(String objectDN, String attributeName)
+    private boolean checkCredentials(String userDN, String password)
         throws DirectoryException {
 
-        if (!connected) {
-            throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_NO_CONN")); //$NON-NLS-1$
+        LDAPConnection operationConnection = connectionPool.borrowConnection();
+        LDAPException error = null;
+        LDAPException restoreError = null;
+        boolean verified = false;
+
+        try {
+            operationConnection.bind(LDAPConnection.LDAP_V3, userDN, toPasswordBytes(password));
+            verified = true;
+        } catch (LDAPException ldape) {
+            if (ldape.getResultCode() != LDAPException.INVALID_CREDENTIALS) {
+                error = ldape;
+            }
+        }
+
+        if (error == null || !DirectoryConnectionPool.isConnectionError(error)) {
+            try {
+                connectionPool.restoreIdentity(operationConnection);
+            } catch (LDAPException ldape) {
+                restoreError = ldape;
+            }
         }
 
-        LDAPAttribute attribute = getAttribute(objectDN, attributeName);
+        if (restoreError != null) {
+            connectionPool.invalidateConnection(operationConnection);
+        } else {
+            releaseConnection(operationConnection, error);
+        }
 
-        if (attribute == null) {
-            return new byte[0];
+        if (error != null || restoreError != null) {
+            LDAPException cause = error == null ? restoreError : error;
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPMGR_ERR_BIND", cause.getMessage()), //$NON-NLS-1$
+                cause);
         }
 
-        return attribute.getByteValue();
+        return verified;
     }
 
     /**
-     * Returns the <code>connected</code> property value.
+     * Opens a connection to the server of the owned connection, with its limits and transport
+     * security, binds it as the given user and closes it. The outcome is recorded in the
+     * circuit breaker of the server.
      *
-     * @return the property value
+     * @param userDN the user DN
+     * @param password the password
+     *
+     * @return <code>true</code> if the credentials are valid
+     *
+     * @throws DirectoryException an error while accessing the directory, or the circuit
+     *                            breaker is open
+     */
+    private boolean checkCredentialsOnNewConnection(String userDN, String password)
+        throws DirectoryException {
+
+        DirectoryServerStatus server = connectedServer;
+        if (server == null) {
+            throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_NO_CONN")); //$NON-NLS-1$
+        }
+
+        if (!server.getCircuitBreaker().allowRequest()) {
+            throw new DirectoryException(DirectoryContext.getMessage(
+                "LDAPMGR_ERR_CIRCUIT_OPEN", server.getServer().toString())); //$NON-NLS-1$
+        }
+
+        LDAPConnection checkConnection = timeouts.newConnection(tls);
+        try {
+            checkConnection.connect(server.getServer().getHost(), server.getServer().getPort());
+            secureConnection(checkConnection);
+        } catch (LDAPException ldape) {
+            releaseConnection(null, ldape);
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPMGR_ERR_OPEN_CONN", ldape.getMessage()), //$NON-NLS-1$
+                ldape);
+        }
+
+        LDAPException error = null;
+        boolean verified = false;
+
+        try {
+            checkConnection.bind(LDAPConnection.LDAP_V3, userDN, toPasswordBytes(password));
+            verified = true;
+        } catch (LDAPException ldape) {
+            if (ldape.getResultCode() != LDAPException.INVALID_CREDENTIALS) {
+                error = ldape;
+            }
+        } finally {
+            try {
+                checkConnection.disconnect();
+            } catch (LDAPException disconnectError) {
+                // the connection is being discarded anyway
+            }
+        }
+
+        releaseConnection(null, error);
+
+        if (error != null) {
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPMGR_ERR_BIND", error.getMessage()), //$NON-NLS-1$
+                error);
+        }
+
+        return verified;
+    }
+
+    /**
+     * Binds a connection with the given identity.
+     *
+     * @param bindConnection the connection
+     * @param binder the identity, or <code>null</code> for anonymous
+     *
+     * @throws LDAPException an error while binding
+     */
+    private static void bindIdentity(LDAPConnection bindConnection, IdentityBinder binder)
+        throws LDAPException {
+
+        if (binder == null) {
+            bindConnection.bind(LDAPConnection.LDAP_V3, null, (byte[]) null);
+        } else {
+            binder.bind(bindConnection);
+        }
+    }
+
+    /**
+     * Encodes a password for a simple bind.
+     *
+     * @param password the password, or <code>null</code>
+     *
+     * @return the password bytes in UTF-8, or an empty array if the password is <code>null</code>
+     */
+    static byte[] toPasswordBytes(String password) {
+
+        return password == null ? new byte[0] : password.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the connection object. Pooled managers return <code>null</code>.
+     *
+     * @return the connection object
+     */
+    public LDAPConnection getConnection() {
+
+        return connection;
+    }
+
+    /**
+     * Returns the connection pool backing this manager.
+     *
+     * @return the connection pool or <code>null</code> if the manager owns its connection
+     */
+    public DirectoryConnectionPool getConnectionPool() {
+
+        return connectionPool;
+    }
+
+    /**
+     * Returns the attribute cache used by this manager.
+     *
+     * @return the attribute cache or <code>null</code> if values are not cached
+     */
+    public DirectoryAttributeCache getAttributeCache() {
+
+        return attributeCache;
+    }
+
+    /**
+     * Sets the attribute cache used by this manager. Attribute reads are served from the
+     * cache when possible and the cache is filled with the results of directory lookups.
+     * A <code>null</code> value disables caching.
+     *
+     * @param attributeCache the attribute cache or <code>null</code>
+     */
+    public void setAttributeCache(DirectoryAttributeCache attributeCache) {
+
+        this.attributeCache = attributeCache;
+    }
+
+    /**
+     * Returns the replica answering attribute reads.
+     *
+     * @return the replica or <code>null</code> if reads always go to the directory
+     */
+    public DirectoryReplica getReplica() {
+        return replica;
+    }
+
+    /**
+     * Sets the in-memory mirror answering <code>getAttributeValue()</code>,
+     * <code>getAttributeValues()</code> and the searches within the mirrored subtree. Reads of
+     * objects or attributes not in the replica, searches it cannot answer, and everything done
+     * while it is not loaded, go to the attribute cache and the directory as usual. A
+     * <code>null</code> value sends all reads to the directory.
+     *
+     * @param replica the replica or <code>null</code>
+     */
+    public void setReplica(DirectoryReplica replica) {
+        this.replica = replica;
+    }
+
+    /**
+     * Returns the operation listener.
+     *
+     * @return the operation listener, or <code>null</code> if operations are not instrumented
+     */
+    public DirectoryOperationListener getOperationListener() {
+        return operationListener;
+    }
+
+    /**
+     * Sets the listener notified of every operation run by this manager, like a
+     * <code>DirectoryStatistics</code> instance. A <code>null</code> listener disables
+     * instrumentation, which is the default. Connections created by the constructors are
+     * opened before a listener can be set and are therefore not reported.
+     *
+     * @param operationListener the operation listener, or <code>null</code>
+     */
+    public void setOperationListener(DirectoryOperationListener operationListener) {
+        this.operationListener = operationListener;
+    }
+
+    /**
+     * Returns the limits applied to the owned connections opened from now on.
+     *
+     * @return the timeouts
+     */
+    public DirectoryTimeouts getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * Sets the limits applied to the owned connections opened from now on. Connections created
+     * by the constructors are opened before the limits can be set and use the limits in the
+     * library configuration. Pooled managers use the limits of the pool.
+     *
+     * @param timeouts the timeouts
+     */
+    public void setTimeouts(DirectoryTimeouts timeouts) {
+
+        if (timeouts == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMGR_ERR_TIMEOUT_ARG")); //$NON-NLS-1$
+        }
+
+        this.timeouts = timeouts;
+    }
+
+    /**
+     * Returns the transport security applied to the owned connections opened from now on.
+     *
+     * @return the transport security
+     */
+    public DirectoryTls getTls() {
+        return tls;
+    }
+
+    /**
+     * Sets the transport security applied to the owned connections opened from now on.
+     * Connections created by the constructors are opened before it can be set and use the
+     * shared instance returned by <code>DirectoryTls.getDefault()</code>. Pooled managers use
+     * the transport security of the pool.
+     *
+     * @param tls the transport security
+     */
+    public void setTls(DirectoryTls tls) {
+
+        if (tls == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPTLS_ERR_ARG")); //$NON-NLS-1$
+        }
+
+        this.tls = tls;
+    }
+
+    /**
+     * Returns the connection to be used by an operation: the owned connection or
+     * one borrowed from the pool. Owned connections are refused while the circuit breaker of
+     * their server rejects calls.
+     *
+     * @return the connection
+     *
+     * @throws DirectoryException an error while borrowing a connection from the pool, or the
+     *                            circuit breaker is open
+     */
+    private LDAPConnection acquireConnection()
+        throws DirectoryException {
+
+        if (connectionPool == null) {
+            DirectoryServerStatus server = connectedServer;
+            if (server != null && !server.getCircuitBreaker().allowRequest()) {
+                throw new DirectoryException(DirectoryContext.getMessage(
+                    "LDAPMGR_ERR_CIRCUIT_OPEN", server.getServer().toString())); //$NON-NLS-1$
+            }
+            return connection;
+        }
+
+        return connectionPool.borrowConnection();
+    }
+
+    /**
+     * Releases a connection obtained from <code>acquireConnection()</code>. Pooled
+     * connections are returned to the pool, or invalidated if the operation failed with a
+     * connection error. For owned connections, the outcome is recorded in the circuit breaker
+     * of their server.
+     *
+     * @param operationConnection the connection
+     * @param error the exception raised by the operation, or <code>null</code>
+     */
+    private void releaseConnection(LDAPConnection operationConnection, LDAPException error) {
+
+        boolean connectionError = error != null && DirectoryConnectionPool.isConnectionError(error);
+
+        if (connectionPool == null) {
+            DirectoryServerStatus server = connectedServer;
+            if (server != null) {
+                if (connectionError) {
+                    server.getCircuitBreaker().recordFailure();
+                } else {
+                    server.getCircuitBreaker().recordSuccess();
+                }
+            }
+            return;
+        }
+
+        if (connectionError) {
+            connectionPool.invalidateConnection(operationConnection);
+        } else {
+            connectionPool.returnConnection(operationConnection);
+        }
+    }
+
+    /**
+     * Returns the number of times a read is attempted: once per server for pooled managers,
+     * as a failed connection marks its server as unavailable and the retry goes elsewhere,
+     * and once for owned connections.
+     *
+     * @return the maximum number of attempts
+     */
+    private int getMaxAttempts() {
+
+        return connectionPool == null ? 1 : connectionPool.getServers().size();
+    }
+
+    /**
+     * Returns whether a failed read may be retried on another connection.
+     *
+     * @param error the error raised by the read
+     *
+     * @return <code>true</code> if the read failed with a connection error
+     */
+    private static boolean isRetryable(DirectoryException error) {
+
+        return error.getCause() instanceof LDAPException
+            && DirectoryConnectionPool.isConnectionError((LDAPException) error.getCause());
+    }
+
+    /**
+     * Returns the attribute object for the given object DN and attribute name, or
+     * <code>null</code> if the attribute or object was not found. The attribute cache,
+     * if any, is checked first and filled with the directory lookup result, which is shared
+     * with concurrent identical reads.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     *
+     * @return the attribute object or <code>null</code> if not found
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    private LDAPAttribute getAttribute(String objectDN, String attributeName)
+        throws DirectoryException {
+
+        DirectoryAttributeCache cache = attributeCache;
+
+        if (cache != null) {
+            DirectoryAttributeCache.CacheEntry cached = cache.lookup(objectDN, attributeName);
+            if (cached != null) {
+                return cached.attribute;
+            }
+        }
+
+        if (!coalescing) {
+            return lookupAttribute(cache, objectDN, attributeName);
+        }
+
+        String key = objectDN.toLowerCase(Locale.ROOT) + '\0' + attributeName.toLowerCase(Locale.ROOT);
+        CompletableFuture<LDAPAttribute> lookup = new CompletableFuture<>();
+        CompletableFuture<LDAPAttribute> inFlight = inFlightLookups.putIfAbsent(key, lookup);
+
+        if (inFlight != null) {
+            coalescedReads.increment();
+            try {
+                return inFlight.join();
+            } catch (CompletionException ce) {
+                if (ce.getCause() instanceof DirectoryException) {
+                    throw (DirectoryException) ce.getCause();
+                }
+                throw (RuntimeException) ce.getCause();
+            }
+        }
+
+        try {
+            LDAPAttribute attribute = lookupAttribute(cache, objectDN, attributeName);
+            lookup.complete(attribute);
+            return attribute;
+        } catch (DirectoryException | RuntimeException e) {
+            lookup.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLookups.remove(key, lookup);
+        }
+    }
+
+    /**
+     * Searches the directory for the attribute object for the given object DN and attribute
+     * name, storing the result in the attribute cache, if any.
+     *
+     * @param cache the attribute cache, or <code>null</code>
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     *
+     * @return the attribute object or <code>null</code> if not found
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    private LDAPAttribute lookupAttribute(DirectoryAttributeCache cache, String objectDN, String attributeName)
+        throws DirectoryException {
+
+        long generation = cache == null ? 0 : cache.getGeneration();
+        LDAPAttribute attribute = searchAttribute(objectDN, attributeName);
+        if (cache != null) {
+            cache.store(objectDN, attributeName, attribute, generation);
+        }
+        return attribute;
+    }
+
+    /**
+     * Returns the number of attribute reads that waited for an identical lookup in flight
+     * instead of sending their own.
+     *
+     * @return the coalesced read count
+     */
+    public long getCoalescedReadCount() {
+
+        return coalescedReads.sum();
+    }
+
+    /**
+     * Searches the directory for the attribute object for the given object DN and attribute
+     * name.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     *
+     * @return the attribute object or <code>null</code> if not found
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    private LDAPAttribute searchAttribute(String objectDN, String attributeName)
+        throws DirectoryException {
+
+        LDAPEntry nextEntry = searchEntry(objectDN, new String[] {attributeName});
+
+        if (nextEntry == null) {
+            return null;
+        }
+
+        // only the requested attribute is returned, so it is the first one; it is not looked up
+        // by name, which would allocate its name in upper case and miss it if returned under
+        // another of its names
+        Iterator<?> returned = nextEntry.getAttributeSet().iterator();
+        if (!returned.hasNext()) {
+            return null;
+        }
+
+        LDAPAttribute attribute = (LDAPAttribute) returned.next();
+        return attribute.size() == 0 ? null : attribute;
+    }
+
+    /**
+     * Searches the directory for the entry with the given object DN, retrieving only the
+     * given attributes.
+     *
+     * @param objectDN the object DN
+     * @param attributeNames the attribute names, or <code>null</code> for all user attributes
+     *
+     * @return the entry or <code>null</code> if not found
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    private LDAPEntry searchEntry(String objectDN, String[] attributeNames)
+        throws DirectoryException {
+
+        int attempts = getMaxAttempts();
+
+        for (int attempt = 1;; attempt++) {
+            try {
+                return searchEntryOnce(objectDN, attributeNames);
+            } catch (DirectoryException de) {
+                if (attempt >= attempts || !isRetryable(de)) {
+                    throw de;
+                }
+            }
+        }
+    }
+
+    /**
+     * Searches the directory for the entry with the given object DN, retrieving only the
+     * given attributes, without retrying on error.
+     *
+     * @param objectDN the object DN
+     * @param attributeNames the attribute names, or <code>null</code> for all user attributes
+     *
+     * @return the entry or <code>null</code> if not found
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    private LDAPEntry searchEntryOnce(String objectDN, String[] attributeNames)
+        throws DirectoryException {
+
+        LDAPConnection operationConnection = acquireConnection();
+        LDAPException error = null;
+
+        try {
+            LDAPSearchResults res = operationConnection.search(
+                objectDN, LDAPConnection.SCOPE_BASE,
+                DirectoryContext.BLANK, attributeNames, false);
+
+            if (res.hasMore()) {
+                return res.next();
+            } else {
+                return null;
+            }
+        } catch (LDAPException ldape) {
+            error = ldape;
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPMGR_ERR_SEARCH", ldape.getMessage()), //$NON-NLS-1$
+                ldape);
+        } finally {
+            releaseConnection(operationConnection, error);
+        }
+    }
+
+    /**
+     * Returns the given attributes of an object, retrieved with a single directory lookup.
+     * If no attribute name is given, all user attributes are retrieved. Attributes or objects
+     * not found are reported through an empty result.<br>
+     *
+     * When an attribute cache is set, the attributes are served from the cache if all of them
+     * are cached, and otherwise the cache is filled with the lookup result.
+     *
+     * @param objectDN the object DN
+     * @param attributeNames the attribute names
+     *
+     * @return the attributes found
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    public DirectoryAttributes getAttributes(String objectDN, String... attributeNames)
+        throws DirectoryException {
+
+        DirectoryOperationListener listener = operationListener;
+        long started = operationStarted(listener, DirectoryOperation.GET_ATTRIBUTES);
+        int resultCode = LDAPException.SUCCESS;
+
+        try {
+            if (!isConnected()) {
+                throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_NO_CONN")); //$NON-NLS-1$
+            }
+
+            boolean allAttributes = attributeNames == null || attributeNames.length == 0;
+            DirectoryAttributeCache cache = allAttributes ? null : attributeCache;
+
+            if (cache != null) {
+                DirectoryAttributes cached = getCachedAttributes(cache, objectDN, attributeNames);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+
+            long generation = cache == null ? 0 : cache.getGeneration();
+            LDAPEntry entry = searchEntry(objectDN, allAttributes ? null : attributeNames.clone());
+            DirectoryAttributes result = toDirectoryAttributes(objectDN, entry);
+
+            if (cache != null) {
+                for (String attributeName : attributeNames) {
+                    cache.store(objectDN, attributeName, result.getAttribute(attributeName), generation);
+                }
+            }
+
+            return result;
+        } catch (DirectoryException | RuntimeException e) {
+            resultCode = getResultCode(e);
+            throw e;
+        } finally {
+            operationCompleted(listener, DirectoryOperation.GET_ATTRIBUTES, started, resultCode);
+        }
+    }
+
+    /**
+     * Returns an object mapped from a directory entry by <code>DirectoryObjectMapper</code>.
+     * Only the attributes mapped by the type are retrieved, with a single directory lookup
+     * that uses the attribute cache as <code>getAttributes()</code> does.
+     *
+     * @param <T> the mapped type
+     * @param objectDN the object DN
+     * @param type the mapped type, a record or a class with annotated fields
+     *
+     * @return the object, or <code>null</code> if the object was not found or has none of the
+     *         mapped attributes
+     *
+     * @throws DirectoryException an error while accessing the directory or mapping the entry
+     */
+    public <T> T getObject(String objectDN, Class<T> type)
+        throws DirectoryException {
+
+        DirectoryObjectMapper<T> mapper = DirectoryObjectMapper.forType(type);
+        DirectoryAttributes attributes = getAttributes(objectDN, mapper.attributeNames());
+
+        return attributes.isEmpty() ? null : mapper.map(attributes);
+    }
+
+    /**
+     * Returns the given attributes of many objects. Lookups are pipelined over a single
+     * connection: up to <code>ldap.batch.maxOutstanding</code> searches are sent without
+     * waiting for their responses, which are collected as they arrive. If no attribute name is
+     * given, all user attributes are retrieved.<br>
+     *
+     * Errors affecting a single object, like a DN that does not exist, are reported per object
+     * in the batch result. Errors affecting the connection abort the whole batch.<br>
+     *
+     * When an attribute cache is set, objects with all requested attributes cached are not
+     * looked up and the cache is filled with the lookup results.
+     *
+     * @param objectDNs the object DNs
+     * @param attributeNames the attribute names
+     *
+     * @return the batch result
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    public DirectoryBatchResult getAttributes(Collection<String> objectDNs, String... attributeNames)
+        throws DirectoryException {
+
+        DirectoryOperationListener listener = operationListener;
+        long started = operationStarted(listener, DirectoryOperation.GET_ATTRIBUTES_BATCH);
+        int resultCode = LDAPException.SUCCESS;
+
+        try {
+            if (!isConnected()) {
+                throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_NO_CONN")); //$NON-NLS-1$
+            }
+
+            if (objectDNs == null) {
+                throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMGR_ERR_BATCH_ARG")); //$NON-NLS-1$
+            }
+
+            boolean allAttributes = attributeNames == null || attributeNames.length == 0;
+            String[] requestedAttributes = allAttributes ? null : attributeNames.clone();
+            DirectoryAttributeCache cache = allAttributes ? null : attributeCache;
+
+            Map<String, DirectoryAttributes> found = new HashMap<>();
+            Map<String, DirectoryException> failed = new HashMap<>();
+            Set<String> toSearch = new LinkedHashSet<>();
+
+            for (String objectDN : objectDNs) {
+                DirectoryAttributes cached = cache == null ? null
+                    : getCachedAttributes(cache, objectDN, requestedAttributes);
+                if (cached == null) {
+                    toSearch.add(objectDN);
+                } else {
+                    found.put(objectDN, cached);
+                }
+            }
+
+            long generation = cache == null ? 0 : cache.getGeneration();
+
+            if (!toSearch.isEmpty()) {
+                searchEntries(toSearch, requestedAttributes, found, failed);
+            }
+
+            if (cache != null) {
+                for (String objectDN : toSearch) {
+                    DirectoryAttributes result = found.get(objectDN);
+                    if (result != null) {
+                        for (String attributeName : requestedAttributes) {
+                            cache.store(objectDN, attributeName, result.getAttribute(attributeName), generation);
+                        }
+                    }
+                }
+            }
+
+            Map<String, DirectoryAttributes> results = new LinkedHashMap<>();
+            Map<String, DirectoryException> errors = new LinkedHashMap<>();
+
+            for (String objectDN : objectDNs) {
+                if (found.containsKey(objectDN)) {
+                    results.put(objectDN, found.get(objectDN));
+                } else if (failed.containsKey(objectDN)) {
+                    errors.put(objectDN, failed.get(objectDN));
+                }
+            }
+
+            return new DirectoryBatchResult(results, errors);
+        } catch (DirectoryException | RuntimeException e) {
+            resultCode = getResultCode(e);
+            throw e;
+        } finally {
+            operationCompleted(listener, DirectoryOperation.GET_ATTRIBUTES_BATCH, started, resultCode);
+        }
+    }
+
+    /**
+     * Searches the directory for many entries, pipelining the searches over one connection.
+     * If the connection fails, or stops delivering responses, the entries not yet resolved
+     * are searched again on another connection.
+     *
+     * @param objectDNs the object DNs, without duplicates
+     * @param attributeNames the attribute names, or <code>null</code> for all user attributes
+     * @param found map where the attributes found are stored
+     * @param failed map where the per-object errors are stored
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    private void searchEntries(Set<String> objectDNs, String[] attributeNames,
+                               Map<String, DirectoryAttributes> found,
+                               Map<String, DirectoryException> failed)
+        throws DirectoryException {
+
+        int attempts = getMaxAttempts();
+        Set<String> pending = objectDNs;
+
+        for (int attempt = 1;; attempt++) {
+            try {
+                searchEntriesOnce(pending, attributeNames, found, failed);
+                return;
+            } catch (DirectoryException de) {
+                if (attempt >= attempts || !isRetryable(de)) {
+                    throw de;
+                }
+                Set<String> unresolved = new LinkedHashSet<>();
+                for (String objectDN : pending) {
+                    if (!found.containsKey(objectDN) && !failed.containsKey(objectDN)) {
+                        unresolved.add(objectDN);
+                    }
+                }
+                pending = unresolved;
+            }
+        }
+    }
+
+    /**
+     * Searches the directory for many entries, pipelining the searches over one connection,
+     * without retrying on error.
+     *
+     * @param objectDNs the object DNs, without duplicates
+     * @param attributeNames the attribute names, or <code>null</code> for all user attributes
+     * @param found map where the attributes found are stored
+     * @param failed map where the per-object errors are stored
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    private void searchEntriesOnce(Set<String> objectDNs, String[] attributeNames,
+                                   Map<String, DirectoryAttributes> found,
+                                   Map<String, DirectoryException> failed)
+        throws DirectoryException {
+
+        int maxOutstanding = Math.max(1, DirectoryContext.getConfigurationProperty(
+            "ldap.batch.maxOutstanding", DEFAULT_BATCH_MAX_OUTSTANDING)); //$NON-NLS-1$
+
+        LDAPConnection operationConnection = acquireConnection();
+        LDAPException error = null;
+
+        try {
+            Iterator<String> remaining = objectDNs.iterator();
+            Map<Integer, String> outstanding = new HashMap<>();
+            Map<Integer, LDAPEntry> entries = new HashMap<>();
+            LDAPSearchQueue queue = null;
+
+            while (remaining.hasNext() || !outstanding.isEmpty()) {
+                while (remaining.hasNext() && outstanding.size() < maxOutstanding) {
+                    String objectDN = remaining.next();
+                    queue = operationConnection.search(
+                        objectDN, LDAPConnection.SCOPE_BASE,
+                        DirectoryContext.BLANK, attributeNames, false, queue);
+                    for (int messageID : queue.getMessageIDs()) {
+                        if (!outstanding.containsKey(messageID)) {
+                            outstanding.put(messageID, objectDN);
+                        }
+                    }
+                }
+
+                LDAPMessage message = queue.getResponse();
+                if (message == null) {
+                    throw new LDAPException(DirectoryContext.getMessage("LDAPMGR_ERR_NO_RESPONSE"), //$NON-NLS-1$
+                        LDAPException.SERVER_DOWN, null);
+                }
+
+                Integer messageID = message.getMessageID();
+                String objectDN = outstanding.get(messageID);
+
+                if (message instanceof LDAPSearchResult) {
+                    entries.put(messageID, ((LDAPSearchResult) message).getEntry());
+                } else if (message instanceof LDAPResponse) {
+                    outstanding.remove(messageID);
+                    LDAPResponse response = (LDAPResponse) message;
+                    int resultCode = response.getResultCode();
+                    if (resultCode == LDAPException.SUCCESS) {
+                        found.put(objectDN, toDirectoryAttributes(objectDN, entries.remove(messageID)));
+                    } else {
+                        entries.remove(messageID);
+                        LDAPException ldape = new LDAPException(
+                            LDAPException.resultCodeToString(resultCode), resultCode,
+                            response.getErrorMessage(), response.getMatchedDN());
+                        failed.put(objectDN, new DirectoryException(
+                            DirectoryContext.getMessage("LDAPMGR_ERR_SEARCH", ldape.getMessage()), //$NON-NLS-1$
+                            ldape));
+                    }
+                }
+            }
+        } catch (LDAPException ldape) {
+            error = ldape;
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPMGR_ERR_SEARCH", ldape.getMessage()), //$NON-NLS-1$
+                ldape);
+        } finally {
+            releaseConnection(operationConnection, error);
+        }
+    }
+
+    /**
+     * Searches the directory, returning a lazily evaluated stream of the entries found.
+     * Results are requested in pages of <code>ldap.search.pageSize</code> entries using the
+     * paged results control.
+     *
+     * @param searchBase the search base DN
+     * @param searchScope the search scope, one of the <code>LDAPConnection.SCOPE_*</code> values
+     * @param searchFilter the search filter
+     * @param attributeNames the attribute names, or none for all user attributes
+     *
+     * @return the stream of entries found, which must be closed once consumed
+     *
+     * @throws DirectoryException an error while accessing the directory
+     *
+     * @see DirectoryManager#search(String, int, String, int, String...)
+     */
+    public Stream<LDAPEntry> search(String searchBase, int searchScope, String searchFilter,
+                                    String... attributeNames)
+        throws DirectoryException {
+
+        return search(searchBase, searchScope, searchFilter,
+            DirectoryContext.getConfigurationProperty("ldap.search.pageSize", DEFAULT_SEARCH_PAGE_SIZE), //$NON-NLS-1$
+            attributeNames);
+    }
+
+    /**
+     * Searches the directory, returning a lazily evaluated stream of the entries found.
+     * Results are requested in pages of the given size using the paged results control
+     * (RFC 2696), and a page is requested only when the consumer advances past the previous
+     * one, so directories of any size can be walked with constant memory. The size limit set
+     * in <code>ldap.search.sizeLimit</code> does not apply: every entry found is returned, so
+     * the consumer should stop reading, and close the stream, once it has enough.<br>
+     *
+     * The stream holds a connection until it is closed, which also abandons the search if it
+     * is still running, so it should be used in a try-with-resources statement. Errors while
+     * reading the results are reported with <code>UncheckedDirectoryException</code>.<br>
+     *
+     * When a replica is set and every entry the search may return is mirrored, the search is
+     * answered from the replica without reaching the directory.
+     *
+     * @param searchBase the search base DN
+     * @param searchScope the search scope, one of the <code>LDAPConnection.SCOPE_*</code> values
+     * @param searchFilter the search filter
+     * @param pageSize the number of entries per page
+     * @param attributeNames the attribute names, or none for all user attributes
+     *
+     * @return the stream of entries found, which must be closed once consumed
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    public Stream<LDAPEntry> search(String searchBase, int searchScope, String searchFilter,
+                                    int pageSize, String... attributeNames)
+        throws DirectoryException {
+
+        DirectoryReplica mirror = replica;
+
+        if (mirror != null && isConnected() && pageSize > 0) {
+            // the listener is notified only once the replica answers, as searches it cannot
+            // answer are notified by searchDirectory()
+            long started = System.nanoTime();
+            List<LDAPEntry> mirrored = mirror.search(searchBase, searchScope, searchFilter, attributeNames);
+            if (mirrored != null) {
+                DirectoryOperationListener listener = operationListener;
+                if (listener != null) {
+                    listener.operationStarted(DirectoryOperation.SEARCH);
+                    operationCompleted(listener, DirectoryOperation.SEARCH, started, LDAPException.SUCCESS);
+                }
+                return mirrored.stream();
+            }
+        }
+
+        return searchDirectory(searchBase, searchScope, searchFilter, pageSize, attributeNames);
+    }
+
+    /**
+     * Searches the directory, returning a lazily evaluated stream of the objects mapped from
+     * the entries found by <code>DirectoryObjectMapper</code>. Only the attributes mapped by
+     * the type are retrieved. Results are paged as in <code>search()</code>, so the stream
+     * must be closed once consumed, and errors while reading or mapping the entries are
+     * reported with <code>UncheckedDirectoryException</code>.
+     *
+     * @param <T> the mapped type
+     * @param searchBase the search base DN
+     * @param searchScope the search scope, one of the <code>LDAPConnection.SCOPE_*</code> values
+     * @param searchFilter the search filter
+     * @param type the mapped type, a record or a class with annotated fields
+     *
+     * @return the stream of objects, which must be closed once consumed
+     *
+     * @throws DirectoryException an error while accessing the directory
+     *
+     * @see DirectoryManager#search(String, int, String, String...)
+     */
+    public <T> Stream<T> searchObjects(String searchBase, int searchScope, String searchFilter, Class<T> type)
+        throws DirectoryException {
+
+        DirectoryObjectMapper<T> mapper = DirectoryObjectMapper.forType(type);
+
+        return search(searchBase, searchScope, searchFilter, mapper.getAttributeNames()).map(mapper::mapUnchecked);
+    }
+
+    /**
+     * Searches the directory, bypassing the replica. Used by the replica to load entries.
+     *
+     * @param searchBase the search base DN
+     * @param searchScope the search scope, one of the <code>LDAPConnection.SCOPE_*</code> values
+     * @param searchFilter the search filter
+     * @param pageSize the number of entries per page
+     * @param attributeNames the attribute names, or none for all user attributes
+     *
+     * @return the stream of entries found, which must be closed once consumed
+     *
+     * @throws DirectoryException an error while accessing the directory
+     *
+     * @see DirectoryManager#search(String, int, String, int, String...)
+     */
+    Stream<LDAPEntry> searchDirectory(String searchBase, int searchScope, String searchFilter,
+                                      int pageSize, String... attributeNames)
+        throws DirectoryException {
+
+        DirectoryOperationListener listener = operationListener;
+        long started = operationStarted(listener, DirectoryOperation.SEARCH);
+        LDAPConnection operationConnection;
+
+        try {
+            if (!isConnected()) {
+                throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_NO_CONN")); //$NON-NLS-1$
+            }
+
+            if (pageSize <= 0) {
+                throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMGR_ERR_PAGE_SIZE_ARG")); //$NON-NLS-1$
+            }
+
+            operationConnection = acquireConnection();
+        } catch (DirectoryException | RuntimeException e) {
+            operationCompleted(listener, DirectoryOperation.SEARCH, started, getResultCode(e));
+            throw e;
+        }
+
+        String[] requestedAttributes = attributeNames == null || attributeNames.length == 0
+            ? null : attributeNames.clone();
+
+        BiConsumer<LDAPConnection, LDAPException> release = this::releaseConnection;
+        if (listener != null) {
+            release = (searchConnection, error) -> {
+                releaseConnection(searchConnection, error);
+                operationCompleted(listener, DirectoryOperation.SEARCH, started,
+                    error == null ? LDAPException.SUCCESS : error.getResultCode());
+            };
+        }
+
+        DirectorySearchIterator iterator = new DirectorySearchIterator(
+            operationConnection, release,
+            searchBase, searchScope, searchFilter, requestedAttributes, pageSize);
+
+        return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(iterator::close);
+    }
+
+    /**
+     * Notifies the start of an operation.
+     *
+     * @param listener the operation listener, or <code>null</code>
+     * @param operation the operation
+     *
+     * @return the start time as given by <code>System.nanoTime()</code>, or zero if there is no
+     *         listener
+     */
+    private static long operationStarted(DirectoryOperationListener listener, DirectoryOperation operation) {
+
+        if (listener == null) {
+            return 0L;
+        }
+
+        listener.operationStarted(operation);
+        return System.nanoTime();
+    }
+
+    /**
+     * Notifies the completion of an operation.
+     *
+     * @param listener the operation listener, or <code>null</code>
+     * @param operation the operation
+     * @param started the start time returned by <code>operationStarted()</code>
+     * @param resultCode the LDAP result code
+     */
+    private static void operationCompleted(DirectoryOperationListener listener, DirectoryOperation operation,
+                                           long started, int resultCode) {
+
+        if (listener != null) {
+            listener.operationCompleted(operation, System.nanoTime() - started, resultCode);
+        }
+    }
+
+    /**
+     * Returns the LDAP result code reported for a failed operation.
+     *
+     * @param error the exception raised by the operation
+     *
+     * @return the result code of the underlying <code>LDAPException</code>, or
+     *         <code>LDAPException.OTHER</code> if there is none
+     */
+    static int getResultCode(Exception error) {
+
+        if (error.getCause() instanceof LDAPException) {
+            return ((LDAPException) error.getCause()).getResultCode();
+        }
+
+        return LDAPException.OTHER;
+    }
+
+    /**
+     * Returns the given attributes of an object from the cache, or <code>null</code> if any of
+     * them is not cached.
+     *
+     * @param cache the attribute cache
+     * @param objectDN the object DN
+     * @param attributeNames the attribute names
+     *
+     * @return the cached attributes or <code>null</code>
+     */
+    private static DirectoryAttributes getCachedAttributes(DirectoryAttributeCache cache,
+                                                           String objectDN, String[] attributeNames) {
+
+        Map<String, LDAPAttribute> attributes = DirectoryAttributes.createAttributeMap();
+
+        for (String attributeName : attributeNames) {
+            DirectoryAttributeCache.CacheEntry cached = cache.lookup(objectDN, attributeName);
+            if (cached == null) {
+                return null;
+            }
+            if (cached.attribute != null) {
+                attributes.put(attributeName, cached.attribute);
+            }
+        }
+
+        return new DirectoryAttributes(objectDN, attributes);
+    }
+
+    /**
+     * Converts a directory entry into an attribute set.
+     *
+     * @param objectDN the object DN
+     * @param entry the entry, or <code>null</code> if not found
+     *
+     * @return the attribute set
+     */
+    static DirectoryAttributes toDirectoryAttributes(String objectDN, LDAPEntry entry) {
+
+        if (entry == null) {
+            return DirectoryAttributes.empty(objectDN);
+        }
+
+        Map<String, LDAPAttribute> attributes = DirectoryAttributes.createAttributeMap();
+
+        for (Object next : entry.getAttributeSet()) {
+            LDAPAttribute attribute = (LDAPAttribute) next;
+            if (attribute.size() > 0) {
+                attributes.put(attribute.getName(), attribute);
+            }
+        }
+
+        return new DirectoryAttributes(objectDN, attributes);
+    }
+
+    /**
+     * Returns the attribute value as a string for the given object DN and attribute name,
+     * or <code>null</code> if the attribute or object was not found.
+     * When a replica is set, the value is read from it if mirrored.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     *
+     * @return the attribute value as a string or <code>null</code> if not found
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    public String getAttributeValue(String objectDN, String attributeName)
+        throws DirectoryException {
+
+        DirectoryOperationListener listener = operationListener;
+        long started = operationStarted(listener, DirectoryOperation.GET_ATTRIBUTE_VALUE);
+        int resultCode = LDAPException.SUCCESS;
+
+        try {
+            if (!isConnected()) {
+                throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_NO_CONN")); //$NON-NLS-1$
+            }
+
+            DirectoryReplica mirror = replica;
+            if (mirror != null) {
+                String value = mirror.getValue(objectDN, attributeName);
+                if (value != null) {
+                    return value;
+                }
+            }
+
+            return DirectoryAttributeValues.getString(getAttribute(objectDN, attributeName));
+        } catch (DirectoryException | RuntimeException e) {
+            resultCode = getResultCode(e);
+            throw e;
+        } finally {
+            operationCompleted(listener, DirectoryOperation.GET_ATTRIBUTE_VALUE, started, resultCode);
+        }
+    }
+
+    /**
+     * Returns the attribute values as a string array for the given object DN and
+     * attribute name, or an empty array if the attribute or object was not found.
+     * When a replica is set, the value is read from it if mirrored.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     *
+     * @return the attribute value as a string array or an empty array if not found
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    public String[] getAttributeValues(String objectDN, String attributeName)
+        throws DirectoryException {
+
+        DirectoryOperationListener listener = operationListener;
+        long started = operationStarted(listener, DirectoryOperation.GET_ATTRIBUTE_VALUES);
+        int resultCode = LDAPException.SUCCESS;
+
+        try {
+            if (!isConnected()) {
+                throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_NO_CONN")); //$NON-NLS-1$
+            }
+
+            DirectoryReplica mirror = replica;
+            if (mirror != null) {
+                String[] values = mirror.getValues(objectDN, attributeName);
+                if (values != null) {
+                    return values;
+                }
+            }
+
+            return DirectoryAttributeValues.getStrings(getAttribute(objectDN, attributeName));
+        } catch (DirectoryException | RuntimeException e) {
+            resultCode = getResultCode(e);
+            throw e;
+        } finally {
+            operationCompleted(listener, DirectoryOperation.GET_ATTRIBUTE_VALUES, started, resultCode);
+        }
+    }
+
+    /**
+     * Passes the attribute values for the given object DN and attribute name to a visitor,
+     * as character sequences decoded into a buffer reused by the calling thread, so no
+     * string is created unless the visitor creates it. Nothing is visited if the attribute or
+     * object was not found. When a replica is set, the values are read from it if mirrored.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     * @param visitor the visitor, called once per value until it returns <code>false</code>
+     *
+     * @return the number of values visited
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    public int visitAttributeValues(String objectDN, String attributeName, DirectoryValueVisitor visitor)
+        throws DirectoryException {
+
+        if (visitor == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMGR_ERR_VISITOR_ARG")); //$NON-NLS-1$
+        }
+
+        DirectoryOperationListener listener = operationListener;
+        long started = operationStarted(listener, DirectoryOperation.GET_ATTRIBUTE_VALUES);
+        int resultCode = LDAPException.SUCCESS;
+
+        try {
+            if (!isConnected()) {
+                throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_NO_CONN")); //$NON-NLS-1$
+            }
+
+            DirectoryReplica mirror = replica;
+            if (mirror != null) {
+                int visited = mirror.visitValues(objectDN, attributeName, visitor);
+                if (visited >= 0) {
+                    return visited;
+                }
+            }
+
+            return DirectoryAttributeValues.visit(getAttribute(objectDN, attributeName), visitor);
+        } catch (DirectoryException | RuntimeException e) {
+            resultCode = getResultCode(e);
+            throw e;
+        } finally {
+            operationCompleted(listener, DirectoryOperation.GET_ATTRIBUTE_VALUES, started, resultCode);
+        }
+    }
+
+    /**
+     * Returns the attribute value as a byte array for the given object DN and attribute
+     * name, or an empty array if the attribute or object was not found.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     *
+     * @return the attribute value as a byte array or an empty array if not found
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    public byte[] getAttributeValueBytes(String objectDN, String attributeName)
+        throws DirectoryException {
+
+        LDAPAttribute attribute = getBinaryAttribute(objectDN, attributeName);
+
+        if (attribute == null) {
+            return new byte[0];
+        }
+
+        return attribute.getByteValue();
+    }
+
+    /**
+     * Returns a read-only view of the attribute value for the given object DN and attribute
+     * name, or an empty buffer if the attribute or object was not found. Unlike
+     * <code>getAttributeValueBytes()</code>, the value is not copied.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     *
+     * @return a read-only view of the attribute value
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    public ByteBuffer getAttributeValueBuffer(String objectDN, String attributeName)
+        throws DirectoryException {
+
+        return DirectoryAttributeValues.getBuffer(getBinaryAttribute(objectDN, attributeName));
+    }
+
+    /**
+     * Returns read-only views of the values of a multi-valued attribute for the given object
+     * DN and attribute name, or an empty stream if the attribute or object was not found.
+     * Values are not copied, and each view is created only when the stream reaches it.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     *
+     * @return a stream of read-only views of the attribute values
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    public Stream<ByteBuffer> getAttributeValueBuffers(String objectDN, String attributeName)
+        throws DirectoryException {
+
+        return DirectoryAttributeValues.getBuffers(getBinaryAttribute(objectDN, attributeName));
+    }
+
+    /**
+     * Returns an input stream reading the attribute value for the given object DN and
+     * attribute name, or an empty stream if the attribute or object was not found. The value
+     * is not copied.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     *
+     * @return an input stream reading the attribute value
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    public InputStream getAttributeValueStream(String objectDN, String attributeName)
+        throws DirectoryException {
+
+        return DirectoryAttributeValues.getInputStream(getBinaryAttribute(objectDN, attributeName));
+    }
+
+    /**
+     * Copies the attribute value for the given object DN and attribute name into the given
+     * buffer, starting at its position, which is advanced by the number of bytes copied.
+     * Nothing is copied if the attribute or object was not found.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     * @param target the buffer where the value is copied
+     *
+     * @return the number of bytes copied
+     *
+     * @throws DirectoryException an error while accessing the directory
+     * @throws java.nio.BufferOverflowException the value does not fit in the remaining space
+     *                                          of the buffer, which is left unchanged
+     */
+    public int writeAttributeValue(String objectDN, String attributeName, ByteBuffer target)
+        throws DirectoryException {
+
+        ByteBuffer value = getAttributeValueBuffer(objectDN, attributeName);
+        int length = value.remaining();
+        target.put(value);
+        return length;
+    }
+
+    /**
+     * Writes the attribute value for the given object DN and attribute name to the given
+     * channel. Nothing is written if the attribute or object was not found.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     * @param channel the channel where the value is written
+     *
+     * @return the number of bytes written
+     *
+     * @throws DirectoryException an error while accessing the directory or writing to the
+     *                            channel
+     */
+    public int writeAttributeValue(String objectDN, String attributeName, WritableByteChannel channel)
+        throws DirectoryException {
+
+        ByteBuffer value = getAttributeValueBuffer(objectDN, attributeName);
+        int length = value.remaining();
+
+        try {
+            while (value.hasRemaining()) {
+                channel.write(value);
+            }
+        } catch (IOException ioe) {
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPMGR_ERR_WRITE_VALUE", ioe.getMessage()), //$NON-NLS-1$
+                ioe);
+        }
+
+        return length;
+    }
+
+    /**
+     * Returns the attribute object for the given object DN and attribute name, reporting the
+     * lookup as a binary value lookup.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     *
+     * @return the attribute object or <code>null</code> if not found
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    private LDAPAttribute getBinaryAttribute(String objectDN, String attributeName)
+        throws DirectoryException {
+
+        DirectoryOperationListener listener = operationListener;
+        long started = operationStarted(listener, DirectoryOperation.GET_ATTRIBUTE_VALUE_BYTES);
+        int resultCode = LDAPException.SUCCESS;
+
+        try {
+            if (!isConnected()) {
+                throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_NO_CONN")); //$NON-NLS-1$
+            }
+
+            return getAttribute(objectDN, attributeName);
+        } catch (DirectoryException | RuntimeException e) {
+            resultCode = getResultCode(e);
+            throw e;
+        } finally {
+            operationCompleted(listener, DirectoryOperation.GET_ATTRIBUTE_VALUE_BYTES, started, resultCode);
+        }
+    }
+
+    /**
+     * Adds a new entry to the directory.
+     *
+     * @param objectDN the DN of the new entry
+     * @param attributes the attributes of the new entry
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    public void addEntry(String objectDN, LDAPAttributeSet attributes)
+        throws DirectoryException {
+
+        applyChange(DirectoryChange.add(objectDN, attributes));
+    }
+
+    /**
+     * Modifies the attributes of an entry. All modifications are applied atomically by the
+     * directory.
+     *
+     * @param objectDN the DN of the entry
+     * @param modifications the modifications
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    public void modifyEntry(String objectDN, LDAPModification... modifications)
+        throws DirectoryException {
+
+        applyChange(DirectoryChange.modify(objectDN, modifications));
+    }
+
+    /**
+     * Deletes an entry from the directory.
+     *
+     * @param objectDN the DN of the entry
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    public void deleteEntry(String objectDN)
+        throws DirectoryException {
+
+        applyChange(DirectoryChange.delete(objectDN));
+    }
+
+    /**
+     * Renames an entry, optionally moving it under a new parent.
+     *
+     * @param objectDN the DN of the entry
+     * @param newRDN the new RDN
+     * @param newParentDN the DN of the new parent, or <code>null</code> to keep the entry under
+     *                    its current parent
+     * @param deleteOldRDN whether the old RDN values are removed from the entry
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    public void renameEntry(String objectDN, String newRDN, String newParentDN, boolean deleteOldRDN)
+        throws DirectoryException {
+
+        applyChange(DirectoryChange.rename(objectDN, newRDN, newParentDN, deleteOldRDN));
+    }
+
+    /**
+     * Applies a change to the directory, waiting for its response. Changes are never retried,
+     * as the directory may have applied a change whose response was lost. When an attribute
+     * cache is set, the cached values of the entry changed are invalidated.
+     *
+     * @param change the change
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    public void applyChange(DirectoryChange change)
+        throws DirectoryException {
+
+        if (change == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMGR_ERR_CHANGE_ARG")); //$NON-NLS-1$
+        }
+
+        DirectoryOperationListener listener = operationListener;
+        DirectoryOperation operation = change.getOperation();
+        long started = operationStarted(listener, operation);
+        int resultCode = LDAPException.SUCCESS;
+
+        try {
+            if (!isConnected()) {
+                throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_NO_CONN")); //$NON-NLS-1$
+            }
+
+            LDAPConnection operationConnection = acquireConnection();
+            LDAPException error = null;
+
+            try {
+                change.apply(operationConnection);
+            } catch (LDAPException ldape) {
+                error = ldape;
+                throw change.toDirectoryException(ldape);
+            } finally {
+                releaseConnection(operationConnection, error);
+                invalidateCache(change);
+            }
+        } catch (DirectoryException | RuntimeException e) {
+            resultCode = getResultCode(e);
+            throw e;
+        } finally {
+            operationCompleted(listener, operation, started, resultCode);
+        }
+    }
+
+    /**
+     * Applies many changes to the directory. Changes are pipelined: up to
+     * <code>ldap.batch.maxOutstanding</code> changes per connection are sent without waiting
+     * for their responses, which are collected as they arrive. Pooled managers spread the
+     * changes over up to <code>ldap.batch.connections</code> connections borrowed from the
+     * pool; managers owning their connection use only that one.<br>
+     *
+     * A change is not sent while an earlier change to the same entry, to its parent or to one
+     * of its children is waiting for its response; the changes after it wait as well, so
+     * entries are added before their children, changed after they are added and deleted
+     * after their children, in the order given, while changes to unrelated entries are still
+     * pipelined. Renamings are ordered by both their old and new DNs.<br>
+     *
+     * The result of every change sent is given to the result handler, including changes
+     * rejected by the directory, like the addition of an entry that already exists. The
+     * handler is never called concurrently, but may be called from threads other than the
+     * caller's, and in an order different from the order of the changes. Changes are never
+     * retried.<br>
+     *
+     * Errors affecting a connection, including a connection that stops delivering responses,
+     * abort the whole bulk: no more changes are sent, and the changes waiting for their
+     * responses are reported as failed with the connection error, although the directory may
+     * have applied them. An exception raised by the result handler
+     * also aborts the bulk and is rethrown once the outstanding changes are resolved.<br>
+     *
+     * When an attribute cache is set, the cached values of the entries changed are
+     * invalidated.
+     *
+     * @param changes the changes, which are consumed lazily
+     * @param resultHandler the handler receiving the result of every change
+     *
+     * @return the number of changes that failed
+     *
+     * @throws DirectoryException an error while accessing the directory
+     */
+    public long applyChanges(Stream<DirectoryChange> changes, Consumer<? super DirectoryChangeResult> resultHandler)
+        throws DirectoryException {
+
+        DirectoryOperationListener listener = operationListener;
+        long started = operationStarted(listener, DirectoryOperation.APPLY_CHANGES);
+        int resultCode = LDAPException.SUCCESS;
+
+        try {
+            if (!isConnected()) {
+                throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_NO_CONN")); //$NON-NLS-1$
+            }
+
+            if (changes == null || resultHandler == null) {
+                throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMGR_ERR_CHANGE_ARG")); //$NON-NLS-1$
+            }
+
+            ChangeFeed feed = new ChangeFeed(changes.iterator(), resultHandler);
+            List<LDAPConnection> operationConnections = acquireBulkConnections();
+            List<Thread> workers = new ArrayList<>();
+
+            for (int i = 1; i < operationConnections.size(); i++) {
+                LDAPConnection workerConnection = operationConnections.get(i);
+                workers.add(Thread.ofVirtual().name("directory-bulk-" + i).start( //$NON-NLS-1$
+                    () -> pipelineChanges(workerConnection, feed)));
+            }
+
+            pipelineChanges(operationConnections.get(0), feed);
+
+            boolean interrupted = false;
+            for (Thread worker : workers) {
+                while (worker.isAlive()) {
+                    try {
+                        worker.join();
+                    } catch (InterruptedException ie) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            return feed.complete();
+        } catch (DirectoryException | RuntimeException e) {
+            resultCode = getResultCode(e);
+            throw e;
+        } finally {
+            operationCompleted(listener, DirectoryOperation.APPLY_CHANGES, started, resultCode);
+        }
+    }
+
+    /**
+     * Returns the connections used to apply changes in bulk: the owned connection, or up to
+     * <code>ldap.batch.connections</code> connections borrowed from the pool. Only the first
+     * connection is required; further connections are borrowed while the pool has room for
+     * them.
+     *
+     * @return the connections
+     *
+     * @throws DirectoryException an error while borrowing the first connection
+     */
+    private List<LDAPConnection> acquireBulkConnections()
+        throws DirectoryException {
+
+        List<LDAPConnection> operationConnections = new ArrayList<>();
+        operationConnections.add(acquireConnection());
+
+        if (connectionPool != null) {
+            int wanted = Math.min(
+                DirectoryContext.getConfigurationProperty("ldap.batch.connections", DEFAULT_BATCH_CONNECTIONS), //$NON-NLS-1$
+                connectionPool.getMaxSize());
+            while (operationConnections.size() < wanted
+                && connectionPool.getActiveCount() < connectionPool.getMaxSize()) {
+                try {
+                    operationConnections.add(acquireConnection());
+                } catch (DirectoryException de) {
+                    break;
+                }
+            }
+        }
+
+        return operationConnections;
+    }
+
+    /**
+     * Sends the changes taken from the feed over one connection, keeping up to
+     * <code>ldap.batch.maxOutstanding</code> of them waiting for their responses, until the
+     * feed is exhausted or aborted. The connection is released when finished.
+     *
+     * @param operationConnection the connection
+     * @param feed the shared feed of changes
+     */
+    private void pipelineChanges(LDAPConnection operationConnection, ChangeFeed feed) {
+
+        int maxOutstanding = Math.max(1, DirectoryContext.getConfigurationProperty(
+            "ldap.batch.maxOutstanding", DEFAULT_BATCH_MAX_OUTSTANDING)); //$NON-NLS-1$
+
+        Map<Integer, DirectoryChange> outstanding = new HashMap<>();
+        DirectoryChange sending = null;
+        LDAPException error = null;
+
+        try {
+            LDAPResponseQueue queue = null;
+            boolean exhausted = false;
+
+            while (true) {
+                while (!exhausted && outstanding.size() < maxOutstanding) {
+                    sending = feed.next(outstanding.isEmpty());
+                    if (sending == null) {
+                        exhausted = feed.isExhausted();
+                        break;
+                    }
+                    queue = sending.send(operationConnection, queue);
+                    for (int messageID : queue.getMessageIDs()) {
+                        if (!outstanding.containsKey(messageID)) {
+                            outstanding.put(messageID, sending);
+                        }
+                    }
+                    sending = null;
+                }
+
+                if (outstanding.isEmpty()) {
+                    if (exhausted) {
+                        break;
+                    }
+                    continue;
+                }
+
+                LDAPMessage message = queue.getResponse();
+                if (message == null) {
+                    throw new LDAPException(DirectoryContext.getMessage("LDAPMGR_ERR_NO_RESPONSE"), //$NON-NLS-1$
+                        LDAPException.SERVER_DOWN, null);
+                }
+
+                DirectoryChange change = outstanding.remove(message.getMessageID());
+                if (change == null || !(message instanceof LDAPResponse)) {
+                    continue;
+                }
+
+                LDAPResponse response = (LDAPResponse) message;
+                int resultCode = response.getResultCode();
+                if (resultCode == LDAPException.SUCCESS) {
+                    feed.report(change, null);
+                } else {
+                    feed.report(change, change.toDirectoryException(new LDAPException(
+                        LDAPException.resultCodeToString(resultCode), resultCode,
+                        response.getErrorMessage(), response.getMatchedDN())));
+                }
+            }
+        } catch (LDAPException ldape) {
+            error = ldape;
+            feed.abort(ldape);
+            if (sending != null) {
+                feed.report(sending, sending.toDirectoryException(ldape));
+            }
+            for (DirectoryChange change : outstanding.values()) {
+                feed.report(change, change.toDirectoryException(ldape));
+            }
+            outstanding.clear();
+        } finally {
+            feed.release(outstanding.values());
+            releaseConnection(operationConnection, error);
+        }
+    }
+
+    /**
+     * Exports the entries found by a search to an LDIF file, which is created or replaced.
+     *
+     * @param file the LDIF file
+     * @param searchBase the search base DN
+     * @param searchScope the search scope, one of the <code>LDAPConnection.SCOPE_*</code> values
+     * @param searchFilter the search filter
+     * @param progressHandler the handler receiving the progress, or <code>null</code>
+     * @param attributeNames the attribute names, or none for all user attributes
+     *
+     * @return the final progress
+     *
+     * @throws DirectoryException an error while accessing the directory or writing the file
+     *
+     * @see DirectoryManager#exportLdif(DirectoryLdifWriter, String, int, String, Consumer, String...)
+     */
+    public DirectoryTransferProgress exportLdif(Path file, String searchBase, int searchScope, String searchFilter,
+                                                Consumer<? super DirectoryTransferProgress> progressHandler,
+                                                String... attributeNames)
+        throws DirectoryException {
+
+        try (DirectoryLdifWriter writer = new DirectoryLdifWriter(FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+            return exportLdif(writer, searchBase, searchScope, searchFilter, progressHandler, attributeNames);
+        } catch (IOException ioe) {
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPLDIF_ERR_WRITE", ioe.getMessage()), ioe); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Exports the entries found by a search as LDIF. The search is paged, and each entry is
+     * written as soon as it is received, so trees of any size are exported with constant
+     * memory. The progress is reported every <code>ldap.ldif.progressInterval</code> entries
+     * and once finished. The writer is flushed but not closed.
+     *
+     * @param writer the LDIF writer
+     * @param searchBase the search base DN
+     * @param searchScope the search scope, one of the <code>LDAPConnection.SCOPE_*</code> values
+     * @param searchFilter the search filter
+     * @param progressHandler the handler receiving the progress, or <code>null</code>
+     * @param attributeNames the attribute names, or none for all user attributes
+     *
+     * @return the final progress
+     *
+     * @throws DirectoryException an error while accessing the directory or writing the LDIF
+     */
+    public DirectoryTransferProgress exportLdif(DirectoryLdifWriter writer, String searchBase, int searchScope,
+                                                String searchFilter,
+                                                Consumer<? super DirectoryTransferProgress> progressHandler,
+                                                String... attributeNames)
+        throws DirectoryException {
+
+        if (writer == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPLDIF_ERR_CHANNEL_ARG")); //$NON-NLS-1$
+        }
+
+        int progressInterval = Math.max(1, DirectoryContext.getConfigurationProperty(
+            "ldap.ldif.progressInterval", DEFAULT_LDIF_PROGRESS_INTERVAL)); //$NON-NLS-1$
+        long started = System.nanoTime();
+        long entryCount = 0;
+        long startCount = writer.getByteCount();
+
+        try (Stream<LDAPEntry> entries = search(searchBase, searchScope, searchFilter, attributeNames)) {
+            Iterator<LDAPEntry> iterator = entries.iterator();
+            while (iterator.hasNext()) {
+                writer.writeEntry(iterator.next());
+                entryCount++;
+                if (progressHandler != null && entryCount % progressInterval == 0) {
+                    progressHandler.accept(new DirectoryTransferProgress(entryCount, 0,
+                        writer.getByteCount() - startCount, System.nanoTime() - started, false));
+                }
+            }
+        } catch (UncheckedDirectoryException ude) {
+            throw ude.getCause();
+        }
+
+        writer.flush();
+
+        DirectoryTransferProgress progress = new DirectoryTransferProgress(entryCount, 0,
+            writer.getByteCount() - startCount, System.nanoTime() - started, true);
+        if (progressHandler != null) {
+            progressHandler.accept(progress);
+        }
+        return progress;
+    }
+
+    /**
+     * Imports the records of an LDIF file.
+     *
+     * @param file the LDIF file
+     * @param resultHandler the handler receiving the result of every change, or
+     *                      <code>null</code>
+     * @param progressHandler the handler receiving the progress, or <code>null</code>
+     *
+     * @return the final progress
+     *
+     * @throws DirectoryException an error while accessing the directory or reading the file
+     *
+     * @see DirectoryManager#importLdif(DirectoryLdifReader, Consumer, Consumer)
+     */
+    public DirectoryTransferProgress importLdif(Path file, Consumer<? super DirectoryChangeResult> resultHandler,
+                                                Consumer<? super DirectoryTransferProgress> progressHandler)
+        throws DirectoryException {
+
+        try (DirectoryLdifReader reader = new DirectoryLdifReader(FileChannel.open(file, StandardOpenOption.READ))) {
+            return importLdif(reader, resultHandler, progressHandler);
+        } catch (IOException ioe) {
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPLDIF_ERR_READ", ioe.getMessage()), ioe); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Imports the records of an LDIF file. Content records are added as new entries and change
+     * records are applied as given. Records are read as they are sent and applied with
+     * <code>applyChanges()</code>, so files of any size are imported with constant memory and
+     * without waiting for each response, except for records depending on earlier ones, like
+     * the entries of a subtree, which are sent once the records of their parents are applied.
+     * The progress is reported every <code>ldap.ldif.progressInterval</code> changes and once
+     * finished. The reader is not closed.
+     *
+     * @param reader the LDIF reader
+     * @param resultHandler the handler receiving the result of every change, or
+     *                      <code>null</code>
+     * @param progressHandler the handler receiving the progress, or <code>null</code>
+     *
+     * @return the final progress
+     *
+     * @throws DirectoryException an error while accessing the directory or reading the LDIF
+     */
+    public DirectoryTransferProgress importLdif(DirectoryLdifReader reader,
+                                                Consumer<? super DirectoryChangeResult> resultHandler,
+                                                Consumer<? super DirectoryTransferProgress> progressHandler)
+        throws DirectoryException {
+
+        if (reader == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPLDIF_ERR_CHANNEL_ARG")); //$NON-NLS-1$
+        }
+
+        int progressInterval = Math.max(1, DirectoryContext.getConfigurationProperty(
+            "ldap.ldif.progressInterval", DEFAULT_LDIF_PROGRESS_INTERVAL)); //$NON-NLS-1$
+        long started = System.nanoTime();
+        long startCount = reader.getByteCount();
+        long[] counts = new long[2];
+
+        long failureCount;
+
+        try {
+            failureCount = applyChanges(reader.changes(), result -> {
+                counts[0]++;
+                if (!result.isSuccess()) {
+                    counts[1]++;
+                }
+                if (resultHandler != null) {
+                    resultHandler.accept(result);
+                }
+                if (progressHandler != null && counts[0] % progressInterval == 0) {
+                    progressHandler.accept(new DirectoryTransferProgress(counts[0], counts[1],
+                        reader.getByteCount() - startCount, System.nanoTime() - started, false));
+                }
+            });
+        } catch (UncheckedDirectoryException ude) {
+            throw ude.getCause();
+        }
+
+        DirectoryTransferProgress progress = new DirectoryTransferProgress(counts[0], failureCount,
+            reader.getByteCount() - startCount, System.nanoTime() - started, true);
+        if (progressHandler != null) {
+            progressHandler.accept(progress);
+        }
+        return progress;
+    }
+
+    /**
+     * Subscribes to the changes made to the entries of a subtree, detecting them as set in
+     * <code>ldap.subscription.mode</code>.
+     *
+     * @param searchBase the search base DN
+     * @param searchScope the search scope, one of the <code>LDAPConnection.SCOPE_*</code> values
+     * @param searchFilter the search filter
+     * @param eventHandler the handler receiving the events, or <code>null</code> to only
+     *                     invalidate the attribute cache
+     * @param attributeNames the attribute names in the entries of the events, or none for all
+     *                       user attributes
+     *
+     * @return the subscription, which must be closed once no longer needed
+     *
+     * @throws DirectoryException there is no active connection
+     *
+     * @see DirectoryManager#subscribe(String, int, String, DirectorySubscription.Mode, Consumer, String...)
+     */
+    public DirectorySubscription subscribe(String searchBase, int searchScope, String searchFilter,
+                                           Consumer<? super DirectoryChangeEvent> eventHandler,
+                                           String... attributeNames)
+        throws DirectoryException {
+
+        return subscribe(searchBase, searchScope, searchFilter,
+            DirectorySubscription.modeForName(DirectoryContext.getConfigurationProperty(
+                "ldap.subscription.mode", DirectorySubscription.Mode.AUTO.name())), //$NON-NLS-1$
+            eventHandler, attributeNames);
+    }
+
+    /**
+     * Subscribes to the changes made to the entries of a subtree. Changes are detected in a
+     * virtual thread, as described in <code>DirectorySubscription</code>, until the
+     * subscription is closed.<br>
+     *
+     * Before the handler is called, the values of the entry changed are removed from the
+     * attribute cache of this manager, under its current and previous DNs, and the whole cache
+     * is cleared whenever changes may have been missed after a connection error. Subscribing to
+     * the subtrees of the cached entries therefore allows long time-to-live values in the cache
+     * while changes are still seen within a poll interval, or at once with a persistent
+     * search.<br>
+     *
+     * The subscription holds a connection: pooled managers borrow one from the pool until the
+     * subscription is closed, and managers with an owned connection share it.
+     *
+     * @param searchBase the search base DN
+     * @param searchScope the search scope, one of the <code>LDAPConnection.SCOPE_*</code> values
+     * @param searchFilter the search filter
+     * @param mode the way changes are detected
+     * @param eventHandler the handler receiving the events, or <code>null</code> to only
+     *                     invalidate the attribute cache
+     * @param attributeNames the attribute names in the entries of the events, or none for all
+     *                       user attributes
+     *
+     * @return the subscription, which must be closed once no longer needed
+     *
+     * @throws DirectoryException there is no active connection
+     */
+    public DirectorySubscription subscribe(String searchBase, int searchScope, String searchFilter,
+                                           DirectorySubscription.Mode mode,
+                                           Consumer<? super DirectoryChangeEvent> eventHandler,
+                                           String... attributeNames)
+        throws DirectoryException {
+
+        return subscribe(searchBase, searchScope, searchFilter, mode, eventHandler, null, attributeNames);
+    }
+
+    /**
+     * Subscribes to the changes made to the entries of a subtree, notifying a handler
+     * whenever changes may have been missed, after the attribute cache is cleared.
+     *
+     * @param searchBase the search base DN
+     * @param searchScope the search scope, one of the <code>LDAPConnection.SCOPE_*</code> values
+     * @param searchFilter the search filter
+     * @param mode the way changes are detected
+     * @param eventHandler the handler receiving the events, or <code>null</code>
+     * @param resyncHandler the handler called when changes may have been missed, or
+     *                      <code>null</code>
+     * @param attributeNames the attribute names in the entries of the events, or none for all
+     *                       user attributes
+     *
+     * @return the subscription
+     *
+     * @throws DirectoryException there is no active connection
+     */
+    DirectorySubscription subscribe(String searchBase, int searchScope, String searchFilter,
+                                    DirectorySubscription.Mode mode,
+                                    Consumer<? super DirectoryChangeEvent> eventHandler,
+                                    Runnable resyncHandler, String... attributeNames)
+        throws DirectoryException {
+
+        if (searchBase == null || mode == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPSUB_ERR_ARG")); //$NON-NLS-1$
+        }
+
+        if (!isConnected()) {
+            throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_NO_CONN")); //$NON-NLS-1$
+        }
+
+        String[] requestedAttributes = attributeNames == null || attributeNames.length == 0
+            ? null : attributeNames.clone();
+
+        DirectorySubscription subscription = new DirectorySubscription(
+            () -> {
+                if (!isConnected()) {
+                    throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_NO_CONN")); //$NON-NLS-1$
+                }
+                return acquireConnection();
+            },
+            this::releaseConnection,
+            searchBase, searchScope, searchFilter, requestedAttributes, mode,
+            event -> {
+                DirectoryAttributeCache cache = attributeCache;
+                if (cache != null) {
+                    cache.invalidate(event);
+                }
+                if (eventHandler != null) {
+                    eventHandler.accept(event);
+                }
+            },
+            () -> {
+                DirectoryAttributeCache cache = attributeCache;
+                if (cache != null) {
+                    cache.clear();
+                }
+                if (resyncHandler != null) {
+                    resyncHandler.run();
+                }
+            });
+
+        subscription.start();
+        return subscription;
+    }
+
+    /**
+     * Removes the cached values of the entries affected by a change.
+     *
+     * @param change the change
+     */
+    private void invalidateCache(DirectoryChange change) {
+
+        DirectoryAttributeCache cache = attributeCache;
+
+        if (cache != null) {
+            cache.invalidate(change.getObjectDN());
+            if (change.getType() == DirectoryChange.Type.RENAME) {
+                cache.invalidate(change.getResultDN());
+            }
+        }
+    }
+
+    /**
+     * Warms up the manager with the settings in the library configuration:
+     * <code>ldap.warmup.connections</code> pooled connections and the canary entry
+     * <code>ldap.warmup.canaryDN</code>, the root DSE by default.
+     *
+     * @throws DirectoryException an error while opening connections or reading the canary
+     *                            entry
+     *
+     * @see DirectoryManager#warmUp(int, String)
+     */
+    public void warmUp()
+        throws DirectoryException {
+
+        warmUp(DirectoryContext.getConfigurationProperty("ldap.warmup.connections", DEFAULT_WARMUP_CONNECTIONS), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.warmup.canaryDN", DirectoryContext.BLANK)); //$NON-NLS-1$
+    }
+
+    /**
+     * Warms up the manager so the first operations do not pay for opening connections. A
+     * pooled manager opens and binds connections in parallel until the pool holds the given
+     * number, or its maximum size, and then reads the canary entry concurrently once per
+     * connection, so every connection has answered a lookup; an owned connection reads it
+     * once. The manager is ready, as reported by <code>isReady()</code>, once the warm-up
+     * succeeds.
+     *
+     * @param connections the number of pooled connections wanted, ignored for owned
+     *                    connections
+     * @param canaryDN the DN of the entry read, which must exist; the empty DN reads the
+     *                 root DSE
+     *
+     * @throws DirectoryException an error while opening connections or reading the canary
+     *                            entry
+     */
+    public void warmUp(int connections, String canaryDN)
+        throws DirectoryException {
+
+        if (canaryDN == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMGR_ERR_WARMUP_ARG")); //$NON-NLS-1$
+        }
+
+        if (!isConnected()) {
+            throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_NO_CONN")); //$NON-NLS-1$
+        }
+
+        ready = false;
+        int lookups = 1;
+
+        if (connectionPool != null) {
+            connectionPool.warmUp(connections);
+            lookups = Math.max(1, Math.min(connections, connectionPool.getMaxSize()));
+        }
+
+        List<Future<LDAPEntry>> canaries = new ArrayList<>();
+        LDAPEntry canary;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 1; i < lookups; i++) {
+                canaries.add(executor.submit(() -> searchEntry(canaryDN, new String[] {CANARY_ATTRIBUTE})));
+            }
+            canary = searchEntry(canaryDN, new String[] {CANARY_ATTRIBUTE});
+        }
+
+        try {
+            for (Future<LDAPEntry> lookup : canaries) {
+                if (lookup.get() == null) {
+                    canary = null;
+                }
+            }
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof DirectoryException) {
+                throw (DirectoryException) ee.getCause();
+            }
+            throw (RuntimeException) ee.getCause();
+        } catch (InterruptedException ie) {
+            // the executor is closed, so every lookup is done and no wait happens
+            Thread.currentThread().interrupt();
+        }
+
+        if (canary == null) {
+            throw new DirectoryException(DirectoryContext.getMessage("LDAPMGR_ERR_WARMUP", canaryDN)); //$NON-NLS-1$
+        }
+
+        ready = isConnected();
+    }
+
+    /**
+     * Returns whether the manager was warmed up with <code>warmUp()</code> and its connection
+     * is still active.
+     *
+     * @return <code>true</code> if the manager is ready for traffic
+     */
+    public boolean isReady() {
+
+        return ready && isConnected() && (connectionPool == null || !connectionPool.isClosed());
+    }
+
+    /**
+     * Returns whether there is an active directory connection.
+     *
+     * @return the property value
      *
-     * @see DirectoryManager#connected
      * @see DirectoryManager#CONNECTION_ACTIVE
      * @see DirectoryManager#CONNECTION_INACTIVE
      */
     public boolean isConnected() {
-        return connected;
+        return state.get() == STATE_ACTIVE;
+    }
+
+    /**
+     * Binds a connection with a given identity, so the identity can be restored after the
+     * connection was bound with other credentials.
+     */
+    @FunctionalInterface
+    private interface IdentityBinder {
+
+        /**
+         * Binds the connection.
+         *
+         * @param bindConnection the connection
+         *
+         * @throws LDAPException an error while binding
+         */
+        void bind(LDAPConnection bindConnection)
+            throws LDAPException;
+    }
+
+    /**
+     * Feed of changes shared by the connections applying them in bulk. Changes are taken and
+     * results reported under a lock, so the source iterator and the result handler need not be
+     * thread-safe.<br>
+     *
+     * The feed keeps the normalized DNs of the changes taken and not yet resolved, and holds
+     * back the next change while it depends on one of them: while a change to the same entry,
+     * to its parent or to one of its children is pending.
+     */
+    private final class ChangeFeed {
+
+        /**
+         * The changes not yet taken.
+         */
+        private final Iterator<DirectoryChange> changes;
+
+        /**
+         * The handler receiving the result of every change.
+         */
+        private final Consumer<? super DirectoryChangeResult> resultHandler;
+
+        /**
+         * Lock serializing access to the iterator and the handler.
+         */
+        private final ReentrantLock feedLock = new ReentrantLock();
+
+        /**
+         * Signalled when pending changes are resolved or the bulk is aborted.
+         */
+        private final Condition resolved = feedLock.newCondition();
+
+        /**
+         * Number of pending changes by normalized DN of the entries they change.
+         */
+        private final Map<String, Integer> pendingDNs = new HashMap<>();
+
+        /**
+         * Number of pending changes by normalized DN of the parents of the entries they change.
+         */
+        private final Map<String, Integer> pendingParentDNs = new HashMap<>();
+
+        /**
+         * The next change, taken from the iterator and held back until the pending changes it
+         * depends on are resolved, or <code>null</code>.
+         */
+        private DirectoryChange heldBack;
+
+        /**
+         * Number of changes that failed.
+         */
+        private long failureCount;
+
+        /**
+         * Connection error that aborted the bulk, or <code>null</code>.
+         */
+        private LDAPException connectionError;
+
+        /**
+         * Exception raised by the iterator or the handler that aborted the bulk, or
+         * <code>null</code>.
+         */
+        private RuntimeException callerError;
+
+        /**
+         * Constructor.
+         *
+         * @param changes the changes
+         * @param resultHandler the handler receiving the result of every change
+         */
+        ChangeFeed(Iterator<DirectoryChange> changes, Consumer<? super DirectoryChangeResult> resultHandler) {
+            this.changes = changes;
+            this.resultHandler = resultHandler;
+        }
+
+        /**
+         * Takes the next change, which becomes pending until its result is reported.
+         *
+         * @param wait whether to wait while the next change depends on pending changes, which
+         *             callers with no pending changes of their own do
+         *
+         * @return the next change, or <code>null</code> if there are no more changes, the bulk
+         *         was aborted, or the next change depends on pending changes and
+         *         <code>wait</code> is <code>false</code>
+         */
+        DirectoryChange next(boolean wait) {
+
+            feedLock.lock();
+            try {
+                while (true) {
+                    if (connectionError != null || callerError != null) {
+                        return null;
+                    }
+
+                    if (heldBack == null) {
+                        if (!changes.hasNext()) {
+                            return null;
+                        }
+                        heldBack = changes.next();
+                        if (heldBack == null) {
+                            throw new IllegalArgumentException(
+                                DirectoryContext.getMessage("LDAPMGR_ERR_CHANGE_ARG")); //$NON-NLS-1$
+                        }
+                    }
+
+                    String[] keys = dependencyKeys(heldBack);
+                    if (!dependsOnPending(keys)) {
+                        DirectoryChange change = heldBack;
+                        heldBack = null;
+                        for (String key : keys) {
+                            pendingDNs.merge(key, 1, Integer::sum);
+                            pendingParentDNs.merge(DirectoryReplica.parentKey(key), 1, Integer::sum);
+                        }
+                        return change;
+                    }
+
+                    if (!wait) {
+                        return null;
+                    }
+                    resolved.awaitUninterruptibly();
+                }
+            } catch (RuntimeException re) {
+                callerError = re;
+                resolved.signalAll();
+                return null;
+            } finally {
+                feedLock.unlock();
+            }
+        }
+
+        /**
+         * Returns whether no more changes will be given by <code>next()</code>.
+         *
+         * @return <code>true</code> if there are no more changes or the bulk was aborted
+         */
+        boolean isExhausted() {
+
+            feedLock.lock();
+            try {
+                return connectionError != null || callerError != null
+                    || (heldBack == null && !changes.hasNext());
+            } catch (RuntimeException re) {
+                callerError = re;
+                resolved.signalAll();
+                return true;
+            } finally {
+                feedLock.unlock();
+            }
+        }
+
+        /**
+         * Returns the normalized DNs a change is ordered by: the DN of the entry and, for a
+         * renaming, its new DN.
+         *
+         * @param change the change
+         *
+         * @return the normalized DNs
+         */
+        private String[] dependencyKeys(DirectoryChange change) {
+
+            String key = DirectoryReplica.toNormalizedKey(change.getObjectDN());
+
+            if (change.getType() != DirectoryChange.Type.RENAME) {
+                return new String[] {key};
+            }
+
+            String resultKey = DirectoryReplica.toNormalizedKey(change.getResultDN());
+            return resultKey.equals(key) ? new String[] {key} : new String[] {key, resultKey};
+        }
+
+        /**
+         * Returns whether a change with the given normalized DNs depends on pending changes:
+         * changes to the same entries, to their parents or to their children.
+         *
+         * @param keys the normalized DNs of the change
+         *
+         * @return <code>true</code> if the change must wait
+         */
+        private boolean dependsOnPending(String[] keys) {
+
+            for (String key : keys) {
+                if (pendingDNs.containsKey(key) || pendingParentDNs.containsKey(key)
+                    || pendingDNs.containsKey(DirectoryReplica.parentKey(key))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Removes a change from the pending ones. Must be called holding the feed lock.
+         *
+         * @param change the change
+         */
+        private void resolve(DirectoryChange change) {
+
+            for (String key : dependencyKeys(change)) {
+                pendingDNs.computeIfPresent(key, (k, count) -> count == 1 ? null : count - 1);
+                pendingParentDNs.computeIfPresent(
+                    DirectoryReplica.parentKey(key), (k, count) -> count == 1 ? null : count - 1);
+            }
+            resolved.signalAll();
+        }
+
+        /**
+         * Removes changes whose result will not be reported from the pending ones, so the
+         * changes depending on them are not held back forever.
+         *
+         * @param unresolved the changes
+         */
+        void release(Collection<DirectoryChange> unresolved) {
+
+            if (unresolved.isEmpty()) {
+                return;
+            }
+
+            feedLock.lock();
+            try {
+                for (DirectoryChange change : unresolved) {
+                    resolve(change);
+                }
+            } finally {
+                feedLock.unlock();
+            }
+        }
+
+        /**
+         * Reports the result of a change to the handler. Once the handler failed, results are
+         * only counted.
+         *
+         * @param change the change
+         * @param error the error raised by the change, or <code>null</code> if it succeeded
+         */
+        void report(DirectoryChange change, DirectoryException error) {
+
+            invalidateCache(change);
+
+            feedLock.lock();
+            try {
+                resolve(change);
+                if (error != null) {
+                    failureCount++;
+                }
+                if (callerError == null) {
+                    resultHandler.accept(new DirectoryChangeResult(change, error));
+                }
+            } catch (RuntimeException re) {
+                callerError = re;
+            } finally {
+                feedLock.unlock();
+            }
+        }
+
+        /**
+         * Aborts the bulk after a connection error.
+         *
+         * @param error the connection error
+         */
+        void abort(LDAPException error) {
+
+            feedLock.lock();
+            try {
+                if (connectionError == null) {
+                    connectionError = error;
+                }
+                resolved.signalAll();
+            } finally {
+                feedLock.unlock();
+            }
+        }
+
+        /**
+         * Returns the outcome of the bulk once all connections finished.
+         *
+         * @return the number of changes that failed
+         *
+         * @throws DirectoryException the bulk was aborted by a connection error
+         */
+        long complete()
+            throws DirectoryException {
+
+            feedLock.lock();
+            try {
+                if (callerError != null) {
+                    throw callerError;
+                }
+                if (connectionError != null) {
+                    throw new DirectoryException(
+                        DirectoryContext.getMessage("LDAPMGR_ERR_APPLY_CHANGES", connectionError.getMessage()), //$NON-NLS-1$
+                        connectionError);
+                }
+                return failureCount;
+            } finally {
+                feedLock.unlock();
+            }
+        }
     }
 }
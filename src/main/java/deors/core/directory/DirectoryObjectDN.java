@@ -0,0 +1,20 @@
+package deors.core.directory;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Maps a <code>String</code> field or record component to the DN of the entry.
+ *
+ * @author deors
+ * @version 1.0
+ * @see DirectoryObjectMapper
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.RECORD_COMPONENT})
+public @interface DirectoryObjectDN {
+}
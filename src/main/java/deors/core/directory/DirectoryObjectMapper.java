@@ -0,0 +1,484 @@
+package deors.core.directory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.novell.ldap.LDAPAttribute;
+import com.novell.ldap.LDAPEntry;
+
+/**
+ * Maps directory entries to records or plain objects.<br>
+ *
+ * Records are built with their canonical constructor, mapping every component to the
+ * attribute named by its <code>DirectoryAttribute</code> annotation or, if not annotated, to
+ * the attribute with the component name. Other classes need a constructor without arguments
+ * and are filled by setting the fields annotated with <code>DirectoryAttribute</code>,
+ * including those inherited; final and static fields cannot be mapped. A field or component
+ * annotated with <code>DirectoryObjectDN</code> receives the DN of the entry.<br>
+ *
+ * Values are converted to the type of the field or component, which can be
+ * <code>String</code> (the first value), <code>String[]</code>, <code>List</code> of strings,
+ * <code>byte[]</code> (the first value), <code>int</code>, <code>long</code>,
+ * <code>boolean</code> (the LDAP <code>TRUE</code> and <code>FALSE</code> values) or their
+ * wrappers. Missing attributes map to <code>null</code>, to an empty list, or to zero or
+ * <code>false</code> for primitive types.<br>
+ *
+ * The type is inspected once, when its mapper is first requested with
+ * <code>forType()</code>: the attribute names to request are computed, and the constructor
+ * and fields are bound to method handles and the values to precomputed converters. Mapping an
+ * entry then walks its attributes once and takes no reflective call, so mapping large result
+ * sets costs little next to reading them from the directory. The attribute names are passed
+ * to the searches run by <code>DirectoryManager.getObject()</code> and
+ * <code>searchObjects()</code>, so only the mapped attributes are transferred.<br>
+ *
+ * Instances are thread-safe. Their only state beyond the type inspection is a bounded
+ * memo of the attribute name spellings seen in entries.
+ *
+ * @param <T> the mapped type
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectoryObjectMapper<T> {
+
+    /**
+     * The mappers of the types already inspected.
+     */
+    private static final ClassValue<DirectoryObjectMapper<?>> MAPPERS = new ClassValue<>() {
+
+        /**
+         * Inspects a type and creates its mapper.
+         *
+         * @param type the type
+         *
+         * @return the mapper
+         */
+        @Override
+        protected DirectoryObjectMapper<?> computeValue(Class<?> type) {
+            return new DirectoryObjectMapper<>(type);
+        }
+    };
+
+    /**
+     * Slot of the properties receiving the DN of the entry.
+     */
+    private static final int DN_SLOT = -1;
+
+    /**
+     * Position of the attribute names not mapped.
+     */
+    private static final Integer UNMAPPED = Integer.valueOf(-1);
+
+    /**
+     * Maximum number of attribute name spellings remembered.
+     */
+    private static final int MAX_SPELLINGS = 256;
+
+    /**
+     * Method type of the field setters once adapted.
+     */
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    /**
+     * The mapped type.
+     */
+    private final Class<T> type;
+
+    /**
+     * The names of the attributes mapped, each one once.
+     */
+    private final String[] attributeNames;
+
+    /**
+     * Position in <code>attributeNames</code> of each attribute name, ignoring case.
+     */
+    private final Map<String, Integer> slots;
+
+    /**
+     * Position in <code>attributeNames</code>, or <code>UNMAPPED</code>, of each attribute name
+     * as spelled in the entries mapped so far, so the case-insensitive lookup is done once per
+     * spelling.
+     */
+    private final Map<String, Integer> spellings = new ConcurrentHashMap<>();
+
+    /**
+     * For each property, the position of its attribute, or <code>DN_SLOT</code>.
+     */
+    private final int[] propertySlots;
+
+    /**
+     * For each property, the converter of its values.
+     */
+    private final ValueConverter[] converters;
+
+    /**
+     * For records, the canonical constructor taking an array of arguments; for other classes,
+     * the constructor without arguments.
+     */
+    private final MethodHandle constructor;
+
+    /**
+     * For other classes than records, the setter of each property; <code>null</code> for
+     * records.
+     */
+    private final MethodHandle[] setters;
+
+    /**
+     * Constructor. Inspects the type.
+     *
+     * @param type the type
+     *
+     * @throws IllegalArgumentException the type cannot be mapped
+     */
+    private DirectoryObjectMapper(Class<T> type) {
+
+        super();
+
+        this.type = type;
+
+        List<String> names = new ArrayList<>();
+        Map<String, Integer> slotsByName = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        List<AnnotatedElement> properties = new ArrayList<>();
+        List<Class<?>> propertyTypes = new ArrayList<>();
+        List<String> propertyNames = new ArrayList<>();
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+
+            if (type.isRecord()) {
+                RecordComponent[] components = type.getRecordComponents();
+                Class<?>[] componentTypes = new Class<?>[components.length];
+                for (int i = 0; i < components.length; i++) {
+                    properties.add(components[i]);
+                    propertyTypes.add(components[i].getType());
+                    propertyNames.add(components[i].getName());
+                    componentTypes[i] = components[i].getType();
+                }
+                this.constructor = lookup.findConstructor(type, MethodType.methodType(void.class, componentTypes))
+                    .asSpreader(Object[].class, components.length)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+                this.setters = null;
+            } else {
+                List<MethodHandle> fieldSetters = new ArrayList<>();
+                for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                    for (Field field : current.getDeclaredFields()) {
+                        if (!field.isAnnotationPresent(DirectoryAttribute.class)
+                            && !field.isAnnotationPresent(DirectoryObjectDN.class)
+                            || Modifier.isStatic(field.getModifiers())) {
+                            continue;
+                        }
+                        properties.add(field);
+                        propertyTypes.add(field.getType());
+                        propertyNames.add(field.getName());
+                        fieldSetters.add(MethodHandles.privateLookupIn(current, MethodHandles.lookup())
+                            .unreflectSetter(field).asType(SETTER_TYPE));
+                    }
+                }
+                this.constructor = lookup.findConstructor(type, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+                this.setters = fieldSetters.toArray(new MethodHandle[fieldSetters.size()]);
+            }
+        } catch (ReflectiveOperationException | IllegalArgumentException | SecurityException e) {
+            throw new IllegalArgumentException(
+                DirectoryContext.getMessage("LDAPMAP_ERR_TYPE", type.getName(), e.getMessage()), e); //$NON-NLS-1$
+        }
+
+        if (properties.isEmpty()) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage(
+                "LDAPMAP_ERR_EMPTY", type.getName())); //$NON-NLS-1$
+        }
+
+        this.propertySlots = new int[properties.size()];
+        this.converters = new ValueConverter[properties.size()];
+
+        for (int i = 0; i < properties.size(); i++) {
+            AnnotatedElement property = properties.get(i);
+            Class<?> propertyType = propertyTypes.get(i);
+
+            if (property.isAnnotationPresent(DirectoryObjectDN.class)) {
+                if (propertyType != String.class) {
+                    throw new IllegalArgumentException(DirectoryContext.getMessage(
+                        "LDAPMAP_ERR_PROPERTY", type.getName(), propertyNames.get(i))); //$NON-NLS-1$
+                }
+                propertySlots[i] = DN_SLOT;
+                continue;
+            }
+
+            DirectoryAttribute annotation = property.getAnnotation(DirectoryAttribute.class);
+            String name = annotation == null || annotation.value().isEmpty() ? propertyNames.get(i) : annotation.value();
+
+            Integer slot = slotsByName.get(name);
+            if (slot == null) {
+                slot = names.size();
+                slotsByName.put(name, slot);
+                names.add(name);
+            }
+            propertySlots[i] = slot;
+
+            converters[i] = converterFor(propertyType);
+            if (converters[i] == null) {
+                throw new IllegalArgumentException(DirectoryContext.getMessage(
+                    "LDAPMAP_ERR_PROPERTY", type.getName(), propertyNames.get(i))); //$NON-NLS-1$
+            }
+        }
+
+        this.attributeNames = names.toArray(new String[names.size()]);
+        this.slots = slotsByName;
+    }
+
+    /**
+     * Returns the mapper of the given type, inspecting the type the first time.
+     *
+     * @param <T> the mapped type
+     * @param type the type
+     *
+     * @return the mapper
+     *
+     * @throws IllegalArgumentException the type cannot be mapped
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> DirectoryObjectMapper<T> forType(Class<T> type) {
+
+        if (type == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMAP_ERR_ARG")); //$NON-NLS-1$
+        }
+
+        return (DirectoryObjectMapper<T>) MAPPERS.get(type);
+    }
+
+    /**
+     * Returns the mapped type.
+     *
+     * @return the type
+     */
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Returns the names of the attributes mapped, to be requested from the directory.
+     *
+     * @return the attribute names
+     */
+    public String[] getAttributeNames() {
+        return attributeNames.clone();
+    }
+
+    /**
+     * Returns the names of the attributes mapped without copying them. The array must not be
+     * modified.
+     *
+     * @return the attribute names
+     */
+    String[] attributeNames() {
+        return attributeNames;
+    }
+
+    /**
+     * Maps a directory entry.
+     *
+     * @param entry the entry
+     *
+     * @return the object
+     *
+     * @throws DirectoryException a value cannot be converted to the type of its property, or an
+     *                            error while building the object
+     */
+    public T map(LDAPEntry entry)
+        throws DirectoryException {
+
+        LDAPAttribute[] found = new LDAPAttribute[attributeNames.length];
+
+        Iterator<?> attributes = entry.getAttributeSet().iterator();
+        while (attributes.hasNext()) {
+            LDAPAttribute attribute = (LDAPAttribute) attributes.next();
+            int slot = slotOf(attribute.getName());
+            if (slot >= 0) {
+                found[slot] = attribute;
+            }
+        }
+
+        return create(entry.getDN(), found);
+    }
+
+    /**
+     * Maps the attributes of an object returned by <code>DirectoryManager</code>.
+     *
+     * @param attributes the attributes
+     *
+     * @return the object
+     *
+     * @throws DirectoryException a value cannot be converted to the type of its property, or an
+     *                            error while building the object
+     */
+    public T map(DirectoryAttributes attributes)
+        throws DirectoryException {
+
+        LDAPAttribute[] found = new LDAPAttribute[attributeNames.length];
+
+        for (int i = 0; i < attributeNames.length; i++) {
+            found[i] = attributes.getAttribute(attributeNames[i]);
+        }
+
+        return create(attributes.getObjectDN(), found);
+    }
+
+    /**
+     * Maps a directory entry, reporting errors with an unchecked exception, for use in streams.
+     *
+     * @param entry the entry
+     *
+     * @return the object
+     *
+     * @throws UncheckedDirectoryException a value cannot be converted to the type of its
+     *                                     property, or an error while building the object
+     */
+    T mapUnchecked(LDAPEntry entry) {
+
+        try {
+            return map(entry);
+        } catch (DirectoryException de) {
+            throw new UncheckedDirectoryException(de);
+        }
+    }
+
+    /**
+     * Returns the position in <code>attributeNames</code> of an attribute name, comparing it
+     * ignoring case the first time each spelling is seen.
+     *
+     * @param attributeName the attribute name as spelled in an entry
+     *
+     * @return the position, or a negative value if the attribute is not mapped
+     */
+    private int slotOf(String attributeName) {
+
+        Integer slot = spellings.get(attributeName);
+
+        if (slot == null) {
+            slot = slots.getOrDefault(attributeName, UNMAPPED);
+            if (spellings.size() < MAX_SPELLINGS) {
+                spellings.put(attributeName, slot);
+            }
+        }
+
+        return slot;
+    }
+
+    /**
+     * Builds an object from the attributes found.
+     *
+     * @param objectDN the DN of the entry
+     * @param found the attributes found, by position in <code>attributeNames</code>
+     *
+     * @return the object
+     *
+     * @throws DirectoryException a value cannot be converted to the type of its property, or an
+     *                            error while building the object
+     */
+    @SuppressWarnings("unchecked")
+    private T create(String objectDN, LDAPAttribute[] found)
+        throws DirectoryException {
+
+        int property = 0;
+
+        try {
+            if (setters == null) {
+                Object[] values = new Object[propertySlots.length];
+                for (; property < propertySlots.length; property++) {
+                    values[property] = convert(property, objectDN, found);
+                }
+                return (T) constructor.invokeExact(values);
+            }
+
+            Object object = constructor.invokeExact();
+            for (; property < propertySlots.length; property++) {
+                setters[property].invokeExact(object, convert(property, objectDN, found));
+            }
+            return (T) object;
+        } catch (NumberFormatException nfe) {
+            throw new DirectoryException(DirectoryContext.getMessage("LDAPMAP_ERR_VALUE", //$NON-NLS-1$
+                objectDN, attributeNames[propertySlots[property]]), nfe);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new DirectoryException(DirectoryContext.getMessage("LDAPMAP_ERR_CREATE", //$NON-NLS-1$
+                objectDN, t.getMessage()), (Exception) t);
+        }
+    }
+
+    /**
+     * Converts the value of a property.
+     *
+     * @param property the property position
+     * @param objectDN the DN of the entry
+     * @param found the attributes found
+     *
+     * @return the value
+     */
+    private Object convert(int property, String objectDN, LDAPAttribute[] found) {
+
+        int slot = propertySlots[property];
+        return slot == DN_SLOT ? objectDN : converters[property].convert(found[slot]);
+    }
+
+    /**
+     * Returns the converter of the values of an attribute to a type.
+     *
+     * @param propertyType the type
+     *
+     * @return the converter, or <code>null</code> if the type is not supported
+     */
+    private static ValueConverter converterFor(Class<?> propertyType) {
+
+        if (propertyType == String.class) {
+            return DirectoryAttributeValues::getString;
+        } else if (propertyType == String[].class) {
+            return attribute -> attribute == null ? null : DirectoryAttributeValues.getStrings(attribute);
+        } else if (propertyType == List.class) {
+            return attribute -> List.of(DirectoryAttributeValues.getStrings(attribute));
+        } else if (propertyType == byte[].class) {
+            return attribute -> attribute == null ? null : attribute.getByteValue();
+        } else if (propertyType == int.class || propertyType == Integer.class) {
+            Integer missing = propertyType == int.class ? Integer.valueOf(0) : null;
+            return attribute -> attribute == null ? missing : Integer.valueOf(DirectoryAttributeValues.getString(attribute));
+        } else if (propertyType == long.class || propertyType == Long.class) {
+            Long missing = propertyType == long.class ? Long.valueOf(0) : null;
+            return attribute -> attribute == null ? missing : Long.valueOf(DirectoryAttributeValues.getString(attribute));
+        } else if (propertyType == boolean.class || propertyType == Boolean.class) {
+            Boolean missing = propertyType == boolean.class ? Boolean.FALSE : null;
+            return attribute -> attribute == null ? missing
+                : Boolean.valueOf("TRUE".equalsIgnoreCase(DirectoryAttributeValues.getString(attribute))); //$NON-NLS-1$
+        }
+
+        return null;
+    }
+
+    /**
+     * Converter of the values of an attribute to the type of a property.
+     */
+    @FunctionalInterface
+    private interface ValueConverter {
+
+        /**
+         * Converts the values of an attribute.
+         *
+         * @param attribute the attribute, or <code>null</code> if not found
+         *
+         * @return the value of the property
+         *
+         * @throws NumberFormatException the value cannot be converted
+         */
+        Object convert(LDAPAttribute attribute);
+    }
+}
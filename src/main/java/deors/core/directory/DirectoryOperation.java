@@ -0,0 +1,86 @@
+package deors.core.directory;
+
+/**
+ * Operations of <code>DirectoryManager</code> reported to a
+ * <code>DirectoryOperationListener</code>.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public enum DirectoryOperation {
+
+    /**
+     * Creation of a directory connection.
+     */
+    CONNECT,
+
+    /**
+     * Closing of a directory connection.
+     */
+    CLOSE,
+
+    /**
+     * Authentication of a directory connection.
+     */
+    BIND,
+
+    /**
+     * Verification of the credentials of a directory user.
+     */
+    VERIFY_CREDENTIALS,
+
+    /**
+     * Lookup of an attribute value as a string.
+     */
+    GET_ATTRIBUTE_VALUE,
+
+    /**
+     * Lookup of the values of an attribute as a string array.
+     */
+    GET_ATTRIBUTE_VALUES,
+
+    /**
+     * Lookup of binary attribute values, as a byte array or as read-only views.
+     */
+    GET_ATTRIBUTE_VALUE_BYTES,
+
+    /**
+     * Lookup of many attributes of an object.
+     */
+    GET_ATTRIBUTES,
+
+    /**
+     * Batch lookup of many objects.
+     */
+    GET_ATTRIBUTES_BATCH,
+
+    /**
+     * Paged search, from the call until the stream of results is exhausted or closed.
+     */
+    SEARCH,
+
+    /**
+     * Addition of an entry.
+     */
+    ADD,
+
+    /**
+     * Modification of the attributes of an entry.
+     */
+    MODIFY,
+
+    /**
+     * Deletion of an entry.
+     */
+    DELETE,
+
+    /**
+     * Renaming of an entry.
+     */
+    RENAME,
+
+    /**
+     * Bulk application of many changes.
+     */
+    APPLY_CHANGES
+}
@@ -0,0 +1,34 @@
+package deors.core.directory;
+
+/**
+ * Listener notified of every operation run by a <code>DirectoryManager</code>.<br>
+ *
+ * Notifications are delivered synchronously on the thread running the operation, so
+ * implementations must be thread-safe and should return quickly. Operation failures are
+ * reported with the LDAP result code of the underlying <code>LDAPException</code>, or
+ * <code>LDAPException.OTHER</code> when the failure was not raised by the directory.
+ *
+ * @author deors
+ * @version 1.0
+ * @see DirectoryManager#setOperationListener(DirectoryOperationListener)
+ * @see DirectoryStatistics
+ */
+public interface DirectoryOperationListener {
+
+    /**
+     * Called when an operation starts.
+     *
+     * @param operation the operation
+     */
+    void operationStarted(DirectoryOperation operation);
+
+    /**
+     * Called when an operation completes, successfully or not.
+     *
+     * @param operation the operation
+     * @param durationNanos the operation duration in nanoseconds
+     * @param resultCode the LDAP result code, <code>LDAPException.SUCCESS</code> if the
+     *                   operation succeeded
+     */
+    void operationCompleted(DirectoryOperation operation, long durationNanos, int resultCode);
+}
@@ -0,0 +1,1575 @@
+package deors.core.directory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import com.novell.ldap.LDAPAttribute;
+import com.novell.ldap.LDAPAttributeSet;
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPDN;
+import com.novell.ldap.LDAPEntry;
+
+/**
+ * In-memory mirror of a directory subtree, serving attribute reads without reaching the
+ * directory.<br>
+ *
+ * The subtree is loaded with a paged search when the replica is started and kept current with
+ * a <code>DirectorySubscription</code>, which applies every change reported to the mirror and
+ * triggers a full reload whenever changes may have been missed. Changes reported while a load
+ * is running are applied once it finishes, so no change is lost. Entries that changes do not
+ * carry are read from the directory before the replica is locked, so reads and other changes
+ * do not wait for the directory. Renaming an entry moves its mirrored descendants with it, and
+ * a subtree moved into the mirror is read from the directory.<br>
+ *
+ * Entries are stored compactly: attribute names are interned, the lists of attribute names
+ * are shared by all entries with the same attributes, and equal values are stored once. A
+ * single-valued attribute takes a reference to its value and nothing else. Values are held
+ * as strings, so binary attributes should be left out of the attributes mirrored.<br>
+ *
+ * Once set in a manager with <code>DirectoryManager.setReplica()</code>,
+ * <code>getAttributeValue()</code> and <code>getAttributeValues()</code> are answered from
+ * the replica. Objects outside the mirror and attributes not mirrored fall back to the
+ * directory, as do reads made while the replica is not loaded. Object DNs are compared
+ * ignoring case and, if they do not match as given, in their normalized form.<br>
+ *
+ * Searches made with <code>DirectoryManager.search()</code> are answered from the replica too
+ * when every entry they may return is mirrored, that is, when their base and scope fall within
+ * the subtree, their filter implies the filter of the replica, and both their filter and the
+ * attributes requested use mirrored attributes only; requests for all user attributes are
+ * answered only by replicas mirroring all of them. The filter is evaluated with
+ * <code>DirectoryFilter</code>, and equality matches and initial substrings on the attributes
+ * set in <code>ldap.replica.indexes</code> are resolved with an index instead of a scan of the
+ * subtree. When all user attributes are mirrored, operational attributes are not, so searches
+ * using them should be run on a replica that lists them.<br>
+ *
+ * The class is thread-safe.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectoryReplica implements AutoCloseable {
+
+    /**
+     * The manager used to load the replica and subscribe to changes.
+     */
+    private final DirectoryManager manager;
+
+    /**
+     * The search base DN.
+     */
+    private final String searchBase;
+
+    /**
+     * The search scope.
+     */
+    private final int searchScope;
+
+    /**
+     * The search filter.
+     */
+    private final String searchFilter;
+
+    /**
+     * The attribute names, or <code>null</code> for all user attributes.
+     */
+    private final String[] attributeNames;
+
+    /**
+     * The entries by object DN in lower case, or <code>null</code> if not loaded.
+     */
+    private volatile Map<String, ReplicaEntry> entries;
+
+    /**
+     * The indexes by attribute name in lower case, built over the current entries.
+     */
+    private volatile Map<String, ReplicaIndex> indexes = Collections.emptyMap();
+
+    /**
+     * The names of the attributes indexed, in lower case.
+     */
+    private volatile String[] indexedAttributes;
+
+    /**
+     * The search base DN in lower case, normalized.
+     */
+    private final String baseKey;
+
+    /**
+     * The search filter, parsed.
+     */
+    private final DirectoryFilter parsedFilter;
+
+    /**
+     * The names of the attributes mirrored in lower case, or <code>null</code> for all user
+     * attributes.
+     */
+    private final Set<String> mirroredAttributes;
+
+    /**
+     * Pool of interned attribute names, attribute name lists and values.
+     */
+    private volatile ValuePool pool = new ValuePool();
+
+    /**
+     * The changes reported while a load is running, or <code>null</code> if no load is running.
+     */
+    private List<ReplicaChange> pendingEvents;
+
+    /**
+     * Lock guarding the application of changes and the swap of loaded entries.
+     */
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    /**
+     * The subscription keeping the replica current, or <code>null</code> if not started.
+     */
+    private volatile DirectorySubscription subscription;
+
+    /**
+     * Number of reads answered from the replica.
+     */
+    private final LongAdder hitCount = new LongAdder();
+
+    /**
+     * Number of reads sent to the directory.
+     */
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Number of searches answered from the replica.
+     */
+    private final LongAdder searchCount = new LongAdder();
+
+    /**
+     * Number of full loads completed.
+     */
+    private volatile long loadCount;
+
+    /**
+     * Duration of the last full load in nanoseconds.
+     */
+    private volatile long lastLoadNanos;
+
+    /**
+     * Number of changes applied.
+     */
+    private volatile long changeCount;
+
+    /**
+     * The filter used when none is given.
+     */
+    private static final String DEFAULT_FILTER = "(objectClass=*)"; //$NON-NLS-1$
+
+    /**
+     * Default number of entries per page of the load.
+     */
+    private static final int DEFAULT_PAGE_SIZE = 500;
+
+    /**
+     * Default attribute names indexed.
+     */
+    private static final String DEFAULT_INDEXES = "uid"; //$NON-NLS-1$
+
+    /**
+     * The attribute name requesting all user attributes.
+     */
+    private static final String ALL_USER_ATTRIBUTES = "*"; //$NON-NLS-1$
+
+    /**
+     * The attribute name requesting all operational attributes.
+     */
+    private static final String ALL_OPERATIONAL_ATTRIBUTES = "+"; //$NON-NLS-1$
+
+    /**
+     * The attribute name requesting no attributes.
+     */
+    private static final String NO_ATTRIBUTES = "1.1"; //$NON-NLS-1$
+
+    /**
+     * Constructor. The replica is loaded with <code>start()</code>.
+     *
+     * @param manager the manager used to load the replica and subscribe to changes
+     * @param searchBase the DN of the subtree mirrored
+     * @param searchScope the search scope, one of the <code>LDAPConnection.SCOPE_*</code> values
+     * @param searchFilter the filter of the entries mirrored, or <code>null</code> for all
+     * @param attributeNames the attribute names mirrored, or none for all user attributes
+     *
+     * @throws IllegalArgumentException the manager or search base are <code>null</code>, or the
+     *                                  filter is not valid
+     */
+    public DirectoryReplica(DirectoryManager manager, String searchBase, int searchScope, String searchFilter,
+                            String... attributeNames) {
+
+        super();
+
+        if (manager == null || searchBase == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPREPL_ERR_ARG")); //$NON-NLS-1$
+        }
+
+        this.manager = manager;
+        this.searchBase = searchBase;
+        this.searchScope = searchScope;
+        this.searchFilter = searchFilter == null || searchFilter.length() == 0 ? DEFAULT_FILTER : searchFilter;
+        this.attributeNames = attributeNames == null || attributeNames.length == 0 ? null : attributeNames.clone();
+        this.baseKey = toNormalizedKey(searchBase);
+        this.parsedFilter = DirectoryFilter.parse(this.searchFilter);
+
+        if (this.attributeNames == null) {
+            this.mirroredAttributes = null;
+        } else {
+            this.mirroredAttributes = new HashSet<>();
+            for (String attributeName : this.attributeNames) {
+                this.mirroredAttributes.add(attributeName.toLowerCase(Locale.ROOT));
+            }
+        }
+
+        setIndexedAttributes(DirectoryContext.getConfigurationProperty(
+            "ldap.replica.indexes", DEFAULT_INDEXES).split(",")); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Sets the attributes indexed for local searches, rebuilding the indexes if the replica
+     * is loaded. The attributes set in <code>ldap.replica.indexes</code> are indexed by
+     * default.
+     *
+     * @param attributeNames the attribute names, or none to disable indexing
+     */
+    public void setIndexedAttributes(String... attributeNames) {
+
+        List<String> names = new ArrayList<>();
+        if (attributeNames != null) {
+            for (String attributeName : attributeNames) {
+                String name = attributeName == null ? "" : attributeName.trim().toLowerCase(Locale.ROOT); //$NON-NLS-1$
+                if (name.length() > 0 && !names.contains(name)) {
+                    names.add(name);
+                }
+            }
+        }
+
+        syncLock.lock();
+        try {
+            indexedAttributes = names.toArray(new String[0]);
+            Map<String, ReplicaEntry> current = entries;
+            indexes = current == null ? Collections.emptyMap() : buildIndexes(current);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the names of the attributes indexed for local searches.
+     *
+     * @return the attribute names in lower case
+     */
+    public String[] getIndexedAttributes() {
+
+        return indexedAttributes.clone();
+    }
+
+    /**
+     * Builds the indexes over a set of entries.
+     *
+     * @param source the entries
+     *
+     * @return the indexes by attribute name
+     */
+    private Map<String, ReplicaIndex> buildIndexes(Map<String, ReplicaEntry> source) {
+
+        Map<String, ReplicaIndex> built = new HashMap<>();
+
+        for (String attributeName : indexedAttributes) {
+            ReplicaIndex index = new ReplicaIndex(attributeName, source);
+            for (Map.Entry<String, ReplicaEntry> entry : source.entrySet()) {
+                index.add(entry.getKey(), entry.getValue());
+            }
+            built.put(attributeName, index);
+        }
+
+        return built;
+    }
+
+    /**
+     * Subscribes to the changes of the subtree, as set in <code>ldap.subscription.mode</code>,
+     * and loads it. Changes made during the load are applied once it finishes.
+     *
+     * @throws DirectoryException an error while subscribing or loading the subtree
+     */
+    public void start()
+        throws DirectoryException {
+
+        syncLock.lock();
+        try {
+            if (subscription != null) {
+                return;
+            }
+            pendingEvents = new ArrayList<>();
+        } finally {
+            syncLock.unlock();
+        }
+
+        DirectorySubscription.Mode mode = DirectorySubscription.modeForName(DirectoryContext.getConfigurationProperty(
+            "ldap.subscription.mode", DirectorySubscription.Mode.AUTO.name())); //$NON-NLS-1$
+
+        try {
+            subscription = manager.subscribe(searchBase, searchScope, searchFilter, mode,
+                this::onChange, this::onResync, attributeNames);
+            load();
+        } catch (DirectoryException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Loads the subtree again, replacing all entries once the load finishes. Reads are answered
+     * from the previous entries meanwhile.
+     *
+     * @throws DirectoryException an error while loading the subtree
+     */
+    public void reload()
+        throws DirectoryException {
+
+        syncLock.lock();
+        try {
+            if (pendingEvents == null) {
+                pendingEvents = new ArrayList<>();
+            }
+        } finally {
+            syncLock.unlock();
+        }
+
+        load();
+    }
+
+    /**
+     * Loads the subtree into new entries and swaps them for the current ones, then applies
+     * the changes reported meanwhile.
+     *
+     * @throws DirectoryException an error while loading the subtree
+     */
+    private void load()
+        throws DirectoryException {
+
+        long started = System.nanoTime();
+        ValuePool loadPool = new ValuePool();
+        Map<String, ReplicaEntry> loaded = new ConcurrentHashMap<>();
+
+        try (Stream<LDAPEntry> results = manager.searchDirectory(searchBase, searchScope, searchFilter,
+                DirectoryContext.getConfigurationProperty("ldap.search.pageSize", DEFAULT_PAGE_SIZE), //$NON-NLS-1$
+                attributeNames == null ? new String[0] : attributeNames)) {
+            results.forEach(entry -> loaded.put(toKey(entry.getDN()), ReplicaEntry.of(entry, loadPool)));
+        } catch (UncheckedDirectoryException ude) {
+            abortLoad();
+            throw ude.getCause();
+        } catch (DirectoryException | RuntimeException e) {
+            abortLoad();
+            throw e;
+        }
+
+        loadPool.releaseValues();
+
+        syncLock.lock();
+        try {
+            indexes = buildIndexes(loaded);
+            entries = loaded;
+            pool = loadPool;
+            List<ReplicaChange> pending = pendingEvents;
+            pendingEvents = null;
+            if (pending != null) {
+                for (ReplicaChange change : pending) {
+                    apply(change);
+                }
+            }
+            loadCount++;
+            lastLoadNanos = System.nanoTime() - started;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Applies the changes reported during a failed load to the current entries.
+     */
+    private void abortLoad() {
+
+        syncLock.lock();
+        try {
+            List<ReplicaChange> pending = pendingEvents;
+            pendingEvents = null;
+            if (pending != null && entries != null) {
+                for (ReplicaChange change : pending) {
+                    apply(change);
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Receives a change reported by the subscription, applying it at once or after the load
+     * that is running. The entries the change needs are read from the directory before
+     * locking the replica.
+     *
+     * @param event the change event
+     */
+    private void onChange(DirectoryChangeEvent event) {
+
+        syncLock.lock();
+        try {
+            if (pendingEvents == null && entries == null) {
+                return;
+            }
+        } finally {
+            syncLock.unlock();
+        }
+
+        ReplicaChange change = fetch(event);
+
+        syncLock.lock();
+        try {
+            if (pendingEvents != null) {
+                pendingEvents.add(change);
+            } else if (entries != null) {
+                apply(change);
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Reloads the subtree after changes may have been missed. The entries are dropped if the
+     * reload fails, so reads go to the directory until the next reload.
+     */
+    private void onResync() {
+
+        try {
+            reload();
+        } catch (DirectoryException de) {
+            syncLock.lock();
+            try {
+                entries = null;
+                indexes = Collections.emptyMap();
+            } finally {
+                syncLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Reads from the directory the entries a change needs and it does not carry: the entry
+     * itself, for changes read from the changelog, and the descendants of an entry moved into
+     * the mirrored subtree from outside it. Called without holding the lock.
+     *
+     * @param event the change event
+     *
+     * @return the change with the entries it needs
+     */
+    private ReplicaChange fetch(DirectoryChangeEvent event) {
+
+        if (event.getType() == DirectoryChange.Type.DELETE) {
+            return new ReplicaChange(event, null, Collections.emptyList());
+        }
+
+        String key = toKey(event.getObjectDN());
+        boolean movedIn = event.getPreviousDN() != null && searchScope == LDAPConnection.SCOPE_SUB
+            && isWithin(key, baseKey) && !isWithin(toKey(event.getPreviousDN()), baseKey);
+
+        if (event.getEntry() != null && !movedIn) {
+            return new ReplicaChange(event, event.getEntry(), Collections.emptyList());
+        }
+
+        LDAPEntry entry = event.getEntry();
+        List<LDAPEntry> descendants = new ArrayList<>();
+
+        try (Stream<LDAPEntry> results = manager.searchDirectory(event.getObjectDN(),
+                movedIn ? LDAPConnection.SCOPE_SUB : LDAPConnection.SCOPE_BASE, searchFilter,
+                DirectoryContext.getConfigurationProperty("ldap.search.pageSize", DEFAULT_PAGE_SIZE), //$NON-NLS-1$
+                attributeNames == null ? new String[0] : attributeNames)) {
+            Iterator<LDAPEntry> found = results.iterator();
+            while (found.hasNext()) {
+                LDAPEntry result = found.next();
+                if (!toKey(result.getDN()).equals(key)) {
+                    descendants.add(result);
+                } else if (entry == null) {
+                    entry = result;
+                }
+            }
+        } catch (DirectoryException | RuntimeException e) {
+            // the entries are read from the directory until the next reload
+            return new ReplicaChange(event, null, Collections.emptyList());
+        }
+
+        return new ReplicaChange(event, entry, descendants);
+    }
+
+    /**
+     * Applies a change to the current entries. Must be called holding the lock.
+     *
+     * @param change the change with the entries it needs
+     */
+    private void apply(ReplicaChange change) {
+
+        Map<String, ReplicaEntry> current = entries;
+        if (current == null) {
+            return;
+        }
+
+        changeCount++;
+
+        DirectoryChangeEvent event = change.event;
+        String key = toKey(event.getObjectDN());
+
+        if (event.getPreviousDN() != null) {
+            String previousKey = toKey(event.getPreviousDN());
+            remove(current, previousKey);
+            moveDescendants(current, previousKey, event.getObjectDN(), key);
+        }
+
+        if (event.getType() == DirectoryChange.Type.DELETE) {
+            remove(current, key);
+            return;
+        }
+
+        if (change.entry == null || !covers(key, LDAPConnection.SCOPE_BASE)) {
+            remove(current, key);
+        } else {
+            put(current, key, ReplicaEntry.of(change.entry, pool));
+        }
+
+        for (LDAPEntry descendant : change.descendants) {
+            put(current, toKey(descendant.getDN()), ReplicaEntry.of(descendant, pool));
+        }
+    }
+
+    /**
+     * Moves the mirrored descendants of a renamed entry under its new DN, or drops them if
+     * the entry was moved out of the mirrored subtree.
+     *
+     * @param current the entries
+     * @param previousKey the previous key of the renamed entry
+     * @param objectDN the new DN of the renamed entry
+     * @param key the new key of the renamed entry
+     */
+    private void moveDescendants(Map<String, ReplicaEntry> current, String previousKey, String objectDN, String key) {
+
+        if (searchScope != LDAPConnection.SCOPE_SUB) {
+            return;
+        }
+
+        List<String> descendantKeys = new ArrayList<>();
+        for (String descendantKey : current.keySet()) {
+            if (!descendantKey.equals(previousKey) && isWithin(descendantKey, previousKey)) {
+                descendantKeys.add(descendantKey);
+            }
+        }
+
+        boolean mirrored = isWithin(key, baseKey);
+
+        for (String descendantKey : descendantKeys) {
+            ReplicaEntry descendant = current.get(descendantKey);
+            remove(current, descendantKey);
+            int length = descendantKey.length() - previousKey.length();
+            if (mirrored && descendant.objectDN.length() == descendantKey.length()) {
+                put(current, descendantKey.substring(0, length) + key,
+                    descendant.renamed(descendant.objectDN.substring(0, length) + objectDN));
+            }
+        }
+    }
+
+    /**
+     * Adds or replaces an entry and its index keys.
+     *
+     * @param current the entries
+     * @param key the entry key
+     * @param added the entry
+     */
+    private void put(Map<String, ReplicaEntry> current, String key, ReplicaEntry added) {
+
+        ReplicaEntry replaced = current.put(key, added);
+        for (ReplicaIndex index : indexes.values()) {
+            if (replaced != null) {
+                index.remove(key, replaced);
+            }
+            index.add(key, added);
+        }
+    }
+
+    /**
+     * Removes an entry and its index keys.
+     *
+     * @param current the entries
+     * @param key the entry key
+     */
+    private void remove(Map<String, ReplicaEntry> current, String key) {
+
+        ReplicaEntry removed = current.remove(key);
+        if (removed != null) {
+            for (ReplicaIndex index : indexes.values()) {
+                index.remove(key, removed);
+            }
+        }
+    }
+
+    /**
+     * Answers a search from the replica, if every entry the search may return is mirrored.
+     *
+     * @param base the search base DN
+     * @param scope the search scope, one of the <code>LDAPConnection.SCOPE_*</code> values
+     * @param filter the search filter
+     * @param requestedAttributes the attribute names, or none for all user attributes
+     *
+     * @return the entries found, or <code>null</code> if the search must be sent to the
+     *         directory
+     */
+    List<LDAPEntry> search(String base, int scope, String filter, String... requestedAttributes) {
+
+        Map<String, ReplicaEntry> current = entries;
+
+        if (current == null || base == null || filter == null || !isMirrored(requestedAttributes)) {
+            return null;
+        }
+
+        DirectoryFilter parsed;
+        try {
+            parsed = DirectoryFilter.parse(filter);
+        } catch (IllegalArgumentException iae) {
+            // the directory reports the error
+            return null;
+        }
+
+        if (!parsed.isLocallyEvaluable() || !isMirrored(parsed) || !implies(parsed, parsedFilter)) {
+            return null;
+        }
+
+        String key = toNormalizedKey(base);
+
+        if (!covers(key, scope)) {
+            return null;
+        }
+
+        List<LDAPEntry> found = new ArrayList<>();
+
+        if (scope == LDAPConnection.SCOPE_BASE) {
+            ReplicaEntry entry = current.get(key);
+            if (entry != null && parsed.matches(entry::get)) {
+                found.add(entry.toEntry(requestedAttributes));
+            }
+        } else {
+            Collection<String> candidates = candidates(parsed, indexes, current);
+            Iterable<String> keys = candidates == null ? current.keySet() : candidates;
+            for (String candidate : keys) {
+                if (scope == LDAPConnection.SCOPE_ONE
+                    ? !key.equals(parentKey(candidate)) : !isWithin(candidate, key)) {
+                    continue;
+                }
+                ReplicaEntry entry = current.get(candidate);
+                if (entry != null && parsed.matches(entry::get)) {
+                    found.add(entry.toEntry(requestedAttributes));
+                }
+            }
+        }
+
+        searchCount.increment();
+        return found;
+    }
+
+    /**
+     * Returns whether every entry in a search region is mirrored.
+     *
+     * @param key the search base key
+     * @param scope the search scope
+     *
+     * @return <code>true</code> if the region is mirrored
+     */
+    private boolean covers(String key, int scope) {
+
+        if (scope != LDAPConnection.SCOPE_BASE && scope != LDAPConnection.SCOPE_ONE
+            && scope != LDAPConnection.SCOPE_SUB) {
+            return false;
+        }
+
+        switch (searchScope) {
+            case LDAPConnection.SCOPE_SUB:
+                return isWithin(key, baseKey);
+            case LDAPConnection.SCOPE_ONE:
+                return scope == LDAPConnection.SCOPE_ONE ? key.equals(baseKey)
+                    : scope == LDAPConnection.SCOPE_BASE && baseKey.equals(parentKey(key));
+            case LDAPConnection.SCOPE_BASE:
+                return scope == LDAPConnection.SCOPE_BASE && key.equals(baseKey);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns whether the attributes requested by a search are mirrored.
+     *
+     * @param requestedAttributes the attribute names, or none for all user attributes
+     *
+     * @return <code>true</code> if all are mirrored
+     */
+    private boolean isMirrored(String... requestedAttributes) {
+
+        if (requestedAttributes == null || requestedAttributes.length == 0) {
+            return mirroredAttributes == null;
+        }
+
+        for (String requested : requestedAttributes) {
+            if (ALL_OPERATIONAL_ATTRIBUTES.equals(requested)) {
+                return false;
+            }
+            if (ALL_USER_ATTRIBUTES.equals(requested)) {
+                if (mirroredAttributes != null) {
+                    return false;
+                }
+            } else if (mirroredAttributes != null && !NO_ATTRIBUTES.equals(requested)
+                && !mirroredAttributes.contains(requested.toLowerCase(Locale.ROOT))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the attributes used by a filter are mirrored. The presence of
+     * <code>objectClass</code> is always known.
+     *
+     * @param filter the filter
+     *
+     * @return <code>true</code> if all are mirrored
+     */
+    private boolean isMirrored(DirectoryFilter filter) {
+
+        if (mirroredAttributes == null) {
+            return true;
+        }
+
+        if (filter.getAttributeName() != null) {
+            return filter.getType() == DirectoryFilter.Type.PRESENT
+                && "objectClass".equalsIgnoreCase(filter.getAttributeName()) //$NON-NLS-1$
+                || mirroredAttributes.contains(filter.getAttributeName().toLowerCase(Locale.ROOT));
+        }
+
+        for (DirectoryFilter child : filter.getChildren()) {
+            if (!isMirrored(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether a filter implies another, that is, whether every entry matching the
+     * first one matches the second one too. Only the obvious cases are detected: the second
+     * filter matches every entry, equals the first one, or is part of it when it is an
+     * <code>AND</code> filter.
+     *
+     * @param filter the filter
+     * @param implied the filter that may be implied
+     *
+     * @return <code>true</code> if the filter is known to imply the other one
+     */
+    private static boolean implies(DirectoryFilter filter, DirectoryFilter implied) {
+
+        if (implied.getType() == DirectoryFilter.Type.PRESENT
+            && "objectClass".equalsIgnoreCase(implied.getAttributeName()) //$NON-NLS-1$
+            || filter.toString().equalsIgnoreCase(implied.toString())) {
+            return true;
+        }
+
+        if (filter.getType() == DirectoryFilter.Type.AND) {
+            for (DirectoryFilter child : filter.getChildren()) {
+                if (implies(child, implied)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the keys of the entries that may match a filter, looked up in the indexes.
+     *
+     * @param filter the filter
+     * @param currentIndexes the indexes
+     * @param current the entries the indexes must be built over
+     *
+     * @return the candidate keys, or <code>null</code> if all entries must be scanned
+     */
+    private static Collection<String> candidates(DirectoryFilter filter, Map<String, ReplicaIndex> currentIndexes,
+                                                 Map<String, ReplicaEntry> current) {
+
+        switch (filter.getType()) {
+            case EQUALITY:
+            case APPROXIMATE:
+            case SUBSTRINGS: {
+                ReplicaIndex index = currentIndexes.get(filter.getAttributeName().toLowerCase(Locale.ROOT));
+                if (index == null || index.source != current || filter.getValue() == null) {
+                    return null;
+                }
+                return filter.getType() == DirectoryFilter.Type.SUBSTRINGS
+                    ? index.withPrefix(filter.getValue()) : index.withValue(filter.getValue());
+            }
+            case AND: {
+                Collection<String> best = null;
+                for (DirectoryFilter child : filter.getChildren()) {
+                    Collection<String> childCandidates = candidates(child, currentIndexes, current);
+                    if (childCandidates != null && (best == null || childCandidates.size() < best.size())) {
+                        best = childCandidates;
+                    }
+                }
+                return best;
+            }
+            case OR: {
+                Set<String> union = new HashSet<>();
+                for (DirectoryFilter child : filter.getChildren()) {
+                    Collection<String> childCandidates = candidates(child, currentIndexes, current);
+                    if (childCandidates == null) {
+                        return null;
+                    }
+                    union.addAll(childCandidates);
+                }
+                return union;
+            }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns whether a DN key is that of an entry or one of its descendants.
+     *
+     * @param key the DN key
+     * @param ancestorKey the DN key of the entry
+     *
+     * @return <code>true</code> if within the subtree of the entry
+     */
+    private static boolean isWithin(String key, String ancestorKey) {
+
+        if (ancestorKey.length() == 0 || key.equals(ancestorKey)) {
+            return true;
+        }
+
+        int separator = key.length() - ancestorKey.length() - 1;
+
+        return separator > 0 && key.endsWith(ancestorKey) && key.charAt(separator) == ','
+            && key.charAt(separator - 1) != '\\';
+    }
+
+    /**
+     * Returns the key of the parent of a DN key.
+     *
+     * @param key the DN key
+     *
+     * @return the parent key, which is empty for top level entries
+     */
+    static String parentKey(String key) {
+
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == ',') {
+                return key.substring(i + 1);
+            }
+        }
+        return ""; //$NON-NLS-1$
+    }
+
+    /**
+     * Returns the first value of an attribute of an object.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     *
+     * @return the value, or <code>null</code> if the object or attribute is not mirrored
+     */
+    public String getValue(String objectDN, String attributeName) {
+
+        Object values = lookup(objectDN, attributeName);
+
+        if (values instanceof String[]) {
+            return ((String[]) values)[0];
+        }
+        return (String) values;
+    }
+
+    /**
+     * Returns the values of an attribute of an object.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     *
+     * @return a copy of the values, or <code>null</code> if the object or attribute is not
+     *         mirrored
+     */
+    public String[] getValues(String objectDN, String attributeName) {
+
+        Object values = lookup(objectDN, attributeName);
+
+        if (values == null) {
+            return null;
+        } else if (values instanceof String[]) {
+            return ((String[]) values).clone();
+        }
+        return new String[] {(String) values};
+    }
+
+    /**
+     * Passes the values of an attribute of an object to a visitor.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     * @param visitor the visitor
+     *
+     * @return the number of values visited, or -1 if the object or attribute is not mirrored
+     */
+    int visitValues(String objectDN, String attributeName, DirectoryValueVisitor visitor) {
+
+        Object values = lookup(objectDN, attributeName);
+
+        if (values == null) {
+            return -1;
+        } else if (values instanceof String) {
+            visitor.visitValue((String) values);
+            return 1;
+        }
+
+        int visited = 0;
+        for (String value : (String[]) values) {
+            visited++;
+            if (!visitor.visitValue(value)) {
+                break;
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Returns whether an object is mirrored.
+     *
+     * @param objectDN the object DN
+     *
+     * @return <code>true</code> if the object is in the replica
+     */
+    public boolean contains(String objectDN) {
+
+        Map<String, ReplicaEntry> current = entries;
+
+        return current != null && findEntry(current, objectDN) != null;
+    }
+
+    /**
+     * Looks up the values of an attribute, counting the read as a hit or a miss.
+     *
+     * @param objectDN the object DN
+     * @param attributeName the attribute name
+     *
+     * @return the value, the array of values, or <code>null</code> if not mirrored
+     */
+    private Object lookup(String objectDN, String attributeName) {
+
+        Map<String, ReplicaEntry> current = entries;
+        Object values = null;
+
+        if (current != null && objectDN != null && attributeName != null) {
+            ReplicaEntry entry = findEntry(current, objectDN);
+            if (entry != null) {
+                values = entry.get(attributeName);
+            }
+        }
+
+        if (values == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return values;
+    }
+
+    /**
+     * Finds an entry by its DN as given or, failing that, in its normalized form.
+     *
+     * @param current the entries
+     * @param objectDN the object DN
+     *
+     * @return the entry or <code>null</code> if not mirrored
+     */
+    private static ReplicaEntry findEntry(Map<String, ReplicaEntry> current, String objectDN) {
+
+        ReplicaEntry entry = current.get(toKey(objectDN));
+
+        if (entry == null && objectDN.indexOf(' ') >= 0) {
+            try {
+                entry = current.get(toKey(LDAPDN.normalize(objectDN)));
+            } catch (IllegalArgumentException iae) {
+                return null;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the key of an object DN.
+     *
+     * @param objectDN the object DN
+     *
+     * @return the DN in lower case
+     */
+    private static String toKey(String objectDN) {
+
+        return objectDN.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the key of an object DN, normalized if it contains spaces.
+     *
+     * @param objectDN the object DN
+     *
+     * @return the DN in lower case
+     */
+    static String toNormalizedKey(String objectDN) {
+
+        if (objectDN.indexOf(' ') >= 0) {
+            try {
+                return toKey(LDAPDN.normalize(objectDN));
+            } catch (IllegalArgumentException iae) {
+                return toKey(objectDN);
+            }
+        }
+        return toKey(objectDN);
+    }
+
+    /**
+     * Returns whether the replica is loaded and answering reads.
+     *
+     * @return <code>true</code> if loaded
+     */
+    public boolean isLoaded() {
+
+        return entries != null;
+    }
+
+    /**
+     * Returns the number of entries mirrored.
+     *
+     * @return the entry count
+     */
+    public int size() {
+
+        Map<String, ReplicaEntry> current = entries;
+        return current == null ? 0 : current.size();
+    }
+
+    /**
+     * Returns the number of reads answered from the replica.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of reads that fell back to the directory.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the number of searches answered from the replica.
+     *
+     * @return the search count
+     */
+    public long getSearchCount() {
+
+        return searchCount.sum();
+    }
+
+    /**
+     * Returns the number of full loads completed.
+     *
+     * @return the load count
+     */
+    public long getLoadCount() {
+        return loadCount;
+    }
+
+    /**
+     * Returns the duration of the last full load.
+     *
+     * @return the load time in milliseconds
+     */
+    public long getLastLoadTime() {
+
+        return TimeUnit.NANOSECONDS.toMillis(lastLoadNanos);
+    }
+
+    /**
+     * Returns the number of changes applied since the replica was started.
+     *
+     * @return the change count
+     */
+    public long getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Returns the subscription keeping the replica current.
+     *
+     * @return the subscription, or <code>null</code> if not started
+     */
+    public DirectorySubscription getSubscription() {
+        return subscription;
+    }
+
+    /**
+     * Closes the subscription and drops all entries, so reads go to the directory.
+     */
+    @Override
+    public void close() {
+
+        DirectorySubscription current = subscription;
+        if (current != null) {
+            current.close();
+        }
+
+        syncLock.lock();
+        try {
+            subscription = null;
+            pendingEvents = null;
+            entries = null;
+            indexes = Collections.emptyMap();
+            pool = new ValuePool();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * A change reported by the subscription with the entries read from the directory to apply
+     * it.
+     */
+    private static final class ReplicaChange {
+
+        /**
+         * The change event.
+         */
+        final DirectoryChangeEvent event;
+
+        /**
+         * The changed entry, or <code>null</code> if deleted, not found or not readable.
+         */
+        final LDAPEntry entry;
+
+        /**
+         * The descendants of an entry moved into the mirrored subtree.
+         */
+        final List<LDAPEntry> descendants;
+
+        /**
+         * Constructor.
+         *
+         * @param event the change event
+         * @param entry the changed entry, or <code>null</code>
+         * @param descendants the descendants of an entry moved into the mirrored subtree
+         */
+        ReplicaChange(DirectoryChangeEvent event, LDAPEntry entry, List<LDAPEntry> descendants) {
+
+            this.event = event;
+            this.entry = entry;
+            this.descendants = descendants;
+        }
+    }
+
+    /**
+     * A mirrored entry: its DN, the attribute names, shared with other entries, and the values
+     * of each attribute, either a string or an array of strings.
+     */
+    static final class ReplicaEntry {
+
+        /**
+         * The object DN.
+         */
+        private final String objectDN;
+
+        /**
+         * The attribute names, interned.
+         */
+        private final String[] names;
+
+        /**
+         * The values of each attribute, a string or an array of strings.
+         */
+        private final Object[] values;
+
+        /**
+         * Constructor.
+         *
+         * @param objectDN the object DN
+         * @param names the attribute names
+         * @param values the values of each attribute
+         */
+        private ReplicaEntry(String objectDN, String[] names, Object[] values) {
+
+            super();
+            this.objectDN = objectDN;
+            this.names = names;
+            this.values = values;
+        }
+
+        /**
+         * Creates an entry from a directory entry, sharing names and values with the pool.
+         *
+         * @param entry the directory entry
+         * @param pool the pool
+         *
+         * @return the mirrored entry
+         */
+        static ReplicaEntry of(LDAPEntry entry, ValuePool pool) {
+
+            List<String> entryNames = new ArrayList<>();
+            List<Object> entryValues = new ArrayList<>();
+
+            @SuppressWarnings("unchecked")
+            Iterator<LDAPAttribute> attributes = entry.getAttributeSet().iterator();
+            while (attributes.hasNext()) {
+                LDAPAttribute attribute = attributes.next();
+                String[] attributeValues = attribute.getStringValueArray();
+                if (attributeValues.length == 0) {
+                    continue;
+                }
+                entryNames.add(attribute.getName());
+                if (attributeValues.length == 1) {
+                    entryValues.add(pool.value(attributeValues[0]));
+                } else {
+                    for (int i = 0; i < attributeValues.length; i++) {
+                        attributeValues[i] = pool.value(attributeValues[i]);
+                    }
+                    entryValues.add(attributeValues);
+                }
+            }
+
+            return new ReplicaEntry(entry.getDN(), pool.names(entryNames), entryValues.toArray());
+        }
+
+        /**
+         * Creates a copy of this entry with another DN, sharing its names and values.
+         *
+         * @param renamedDN the new object DN
+         *
+         * @return the renamed entry
+         */
+        ReplicaEntry renamed(String renamedDN) {
+
+            return new ReplicaEntry(renamedDN, names, values);
+        }
+
+        /**
+         * Returns the values of an attribute.
+         *
+         * @param attributeName the attribute name, compared ignoring case
+         *
+         * @return the value, the array of values, or <code>null</code> if not present
+         */
+        Object get(String attributeName) {
+
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equalsIgnoreCase(attributeName)) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Creates a directory entry with the requested attributes of this entry.
+         *
+         * @param requestedAttributes the attribute names, or none for all
+         *
+         * @return the directory entry
+         */
+        LDAPEntry toEntry(String... requestedAttributes) {
+
+            LDAPAttributeSet attributes = new LDAPAttributeSet();
+
+            for (int i = 0; i < names.length; i++) {
+                if (isRequested(names[i], requestedAttributes)) {
+                    attributes.add(values[i] instanceof String
+                        ? new LDAPAttribute(names[i], (String) values[i])
+                        : new LDAPAttribute(names[i], (String[]) values[i]));
+                }
+            }
+
+            return new LDAPEntry(objectDN, attributes);
+        }
+
+        /**
+         * Returns whether an attribute is requested.
+         *
+         * @param attributeName the attribute name
+         * @param requestedAttributes the attribute names, or none for all
+         *
+         * @return <code>true</code> if requested
+         */
+        private static boolean isRequested(String attributeName, String... requestedAttributes) {
+
+            if (requestedAttributes == null || requestedAttributes.length == 0) {
+                return true;
+            }
+
+            for (String requested : requestedAttributes) {
+                if (ALL_USER_ATTRIBUTES.equals(requested) || attributeName.equalsIgnoreCase(requested)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Index of the values of an attribute, in lower case, to the keys of the entries holding
+     * them. A value held by a single entry maps to its key, and a value held by several maps to
+     * a set of keys. The index is sorted, so initial substrings are resolved with a range.
+     * Changes are made under the lock of the replica.
+     */
+    static final class ReplicaIndex {
+
+        /**
+         * The attribute name.
+         */
+        private final String attributeName;
+
+        /**
+         * The entries indexed.
+         */
+        private final Map<String, ReplicaEntry> source;
+
+        /**
+         * The entry keys by value, a string or a set of strings.
+         */
+        private final ConcurrentSkipListMap<String, Object> keys = new ConcurrentSkipListMap<>();
+
+        /**
+         * Constructor.
+         *
+         * @param attributeName the attribute name
+         * @param source the entries indexed
+         */
+        ReplicaIndex(String attributeName, Map<String, ReplicaEntry> source) {
+
+            super();
+            this.attributeName = attributeName;
+            this.source = source;
+        }
+
+        /**
+         * Adds the values of an entry.
+         *
+         * @param key the entry key
+         * @param entry the entry
+         */
+        void add(String key, ReplicaEntry entry) {
+
+            for (String value : valuesOf(entry)) {
+                keys.merge(value, key, (indexed, added) -> {
+                    if (indexed instanceof String) {
+                        if (indexed.equals(added)) {
+                            return indexed;
+                        }
+                        Set<String> set = ConcurrentHashMap.newKeySet();
+                        set.add((String) indexed);
+                        set.add((String) added);
+                        return set;
+                    }
+                    @SuppressWarnings("unchecked")
+                    Set<String> set = (Set<String>) indexed;
+                    set.add((String) added);
+                    return set;
+                });
+            }
+        }
+
+        /**
+         * Removes the values of an entry.
+         *
+         * @param key the entry key
+         * @param entry the entry
+         */
+        void remove(String key, ReplicaEntry entry) {
+
+            for (String value : valuesOf(entry)) {
+                keys.computeIfPresent(value, (indexed, current) -> {
+                    if (current instanceof String) {
+                        return current.equals(key) ? null : current;
+                    }
+                    @SuppressWarnings("unchecked")
+                    Set<String> set = (Set<String>) current;
+                    set.remove(key);
+                    if (set.size() == 1) {
+                        return set.iterator().next();
+                    }
+                    return set.isEmpty() ? null : set;
+                });
+            }
+        }
+
+        /**
+         * Returns the keys of the entries holding a value.
+         *
+         * @param value the value, compared ignoring case
+         *
+         * @return the entry keys
+         */
+        Collection<String> withValue(String value) {
+
+            return toKeys(keys.get(value.toLowerCase(Locale.ROOT)));
+        }
+
+        /**
+         * Returns the keys of the entries holding a value starting with a prefix.
+         *
+         * @param prefix the prefix, compared ignoring case
+         *
+         * @return the entry keys
+         */
+        Collection<String> withPrefix(String prefix) {
+
+            String lower = prefix.toLowerCase(Locale.ROOT);
+            List<String> found = new ArrayList<>();
+
+            for (Object indexed : keys.subMap(lower, true, lower + Character.MAX_VALUE, false).values()) {
+                found.addAll(toKeys(indexed));
+            }
+            return found;
+        }
+
+        /**
+         * Returns the keys held by an index value.
+         *
+         * @param indexed the index value, a string, a set of strings or <code>null</code>
+         *
+         * @return the entry keys
+         */
+        @SuppressWarnings("unchecked")
+        private static Collection<String> toKeys(Object indexed) {
+
+            if (indexed == null) {
+                return Collections.emptySet();
+            } else if (indexed instanceof String) {
+                return Collections.singleton((String) indexed);
+            }
+            return (Set<String>) indexed;
+        }
+
+        /**
+         * Returns the values of the indexed attribute of an entry, in lower case.
+         *
+         * @param entry the entry
+         *
+         * @return the values
+         */
+        private List<String> valuesOf(ReplicaEntry entry) {
+
+            Object values = entry.get(attributeName);
+
+            if (values == null) {
+                return Collections.emptyList();
+            } else if (values instanceof String) {
+                return Collections.singletonList(((String) values).toLowerCase(Locale.ROOT));
+            }
+
+            List<String> lower = new ArrayList<>();
+            for (String value : (String[]) values) {
+                lower.add(value.toLowerCase(Locale.ROOT));
+            }
+            return lower;
+        }
+    }
+
+    /**
+     * Pool of the attribute name lists and values of the entries loaded together, so equal
+     * ones are stored once. Values are only pooled during a full load, as the pool would
+     * otherwise outgrow the savings; attribute name lists are kept for the changes applied
+     * afterwards. A new pool is used for every full load.
+     */
+    static final class ValuePool {
+
+        /**
+         * The attribute name lists.
+         */
+        private final Map<List<String>, String[]> nameLists = new HashMap<>();
+
+        /**
+         * The values, or <code>null</code> once released.
+         */
+        private Map<String, String> values = new HashMap<>();
+
+        /**
+         * Returns the shared list of attribute names equal to the given one.
+         *
+         * @param entryNames the attribute names
+         *
+         * @return the shared list
+         */
+        synchronized String[] names(List<String> entryNames) {
+
+            String[] shared = nameLists.get(entryNames);
+            if (shared == null) {
+                shared = new String[entryNames.size()];
+                for (int i = 0; i < shared.length; i++) {
+                    shared[i] = entryNames.get(i).intern();
+                }
+                nameLists.put(Arrays.asList(shared), shared);
+            }
+            return shared;
+        }
+
+        /**
+         * Returns the shared value equal to the given one.
+         *
+         * @param value the value
+         *
+         * @return the shared value
+         */
+        synchronized String value(String value) {
+
+            if (values == null) {
+                return value;
+            }
+
+            String shared = values.putIfAbsent(value, value);
+            return shared == null ? value : shared;
+        }
+
+        /**
+         * Stops pooling values, releasing the values pooled so far.
+         */
+        synchronized void releaseValues() {
+
+            values = null;
+        }
+    }
+}
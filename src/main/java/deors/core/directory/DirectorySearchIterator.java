@@ -0,0 +1,249 @@
+package deors.core.directory;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPControl;
+import com.novell.ldap.LDAPEntry;
+import com.novell.ldap.LDAPException;
+import com.novell.ldap.LDAPReferralException;
+import com.novell.ldap.LDAPSearchConstraints;
+import com.novell.ldap.LDAPSearchResults;
+import com.novell.ldap.controls.LDAPPagedResultsControl;
+import com.novell.ldap.controls.LDAPPagedResultsResponse;
+
+/**
+ * Lazily evaluated iterator over the results of a directory search.<br>
+ *
+ * Results are requested one page at a time using the paged results control (RFC 2696), and
+ * the next page is only requested once the consumer has read all entries of the current one,
+ * so memory use is bounded by the page size regardless of the number of entries found. The
+ * size limit of the connection is not applied, so every entry found is returned.<br>
+ *
+ * The iterator holds a connection until it is exhausted or closed. Errors are reported with
+ * <code>UncheckedDirectoryException</code>. The class is not thread-safe.
+ *
+ * @author deors
+ * @version 1.0
+ */
+class DirectorySearchIterator implements Iterator<LDAPEntry>, AutoCloseable {
+
+    /**
+     * The connection used by the search.
+     */
+    private final LDAPConnection connection;
+
+    /**
+     * Callback releasing the connection, receiving the error raised, if any.
+     */
+    private final BiConsumer<LDAPConnection, LDAPException> release;
+
+    /**
+     * The search base DN.
+     */
+    private final String searchBase;
+
+    /**
+     * The search scope.
+     */
+    private final int searchScope;
+
+    /**
+     * The search filter.
+     */
+    private final String searchFilter;
+
+    /**
+     * The attribute names, or <code>null</code> for all user attributes.
+     */
+    private final String[] attributeNames;
+
+    /**
+     * The page size.
+     */
+    private final int pageSize;
+
+    /**
+     * Results of the current page, or <code>null</code> if the next page must be requested.
+     */
+    private LDAPSearchResults results;
+
+    /**
+     * Cookie sent by the server to request the next page.
+     */
+    private byte[] cookie;
+
+    /**
+     * The next entry, already read from the current page.
+     */
+    private LDAPEntry nextEntry;
+
+    /**
+     * Flag that is <code>true</code> once the search is exhausted or closed.
+     */
+    private boolean finished;
+
+    /**
+     * Constructor.
+     *
+     * @param connection the connection used by the search
+     * @param release callback releasing the connection once finished
+     * @param searchBase the search base DN
+     * @param searchScope the search scope
+     * @param searchFilter the search filter
+     * @param attributeNames the attribute names, or <code>null</code> for all user attributes
+     * @param pageSize the page size
+     */
+    DirectorySearchIterator(LDAPConnection connection, BiConsumer<LDAPConnection, LDAPException> release,
+                            String searchBase, int searchScope, String searchFilter,
+                            String[] attributeNames, int pageSize) {
+
+        super();
+        this.connection = connection;
+        this.release = release;
+        this.searchBase = searchBase;
+        this.searchScope = searchScope;
+        this.searchFilter = searchFilter;
+        this.attributeNames = attributeNames;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Returns whether there are more entries, requesting the next page if needed.
+     *
+     * @return <code>true</code> if there are more entries
+     *
+     * @throws UncheckedDirectoryException an error while accessing the directory
+     */
+    @Override
+    public boolean hasNext() {
+
+        try {
+            while (nextEntry == null && !finished) {
+                if (results == null) {
+                    results = requestPage();
+                }
+
+                if (results.hasMore()) {
+                    try {
+                        nextEntry = results.next();
+                    } catch (LDAPReferralException ldapre) {
+                        // referrals are not followed
+                        continue;
+                    }
+                } else {
+                    cookie = getNextPageCookie(results);
+                    results = null;
+                    if (cookie == null || cookie.length == 0) {
+                        finish(null);
+                    }
+                }
+            }
+        } catch (LDAPException ldape) {
+            finish(ldape);
+            throw new UncheckedDirectoryException(new DirectoryException(
+                DirectoryContext.getMessage("LDAPMGR_ERR_SEARCH", ldape.getMessage()), //$NON-NLS-1$
+                ldape));
+        }
+
+        return nextEntry != null;
+    }
+
+    /**
+     * Returns the next entry.
+     *
+     * @return the next entry
+     *
+     * @throws NoSuchElementException there are no more entries
+     * @throws UncheckedDirectoryException an error while accessing the directory
+     */
+    @Override
+    public LDAPEntry next() {
+
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        LDAPEntry entry = nextEntry;
+        nextEntry = null;
+        return entry;
+    }
+
+    /**
+     * Stops the search, abandoning it in the server if it is still running, and releases the
+     * connection.
+     */
+    @Override
+    public void close() {
+
+        if (finished) {
+            return;
+        }
+
+        if (results != null) {
+            try {
+                connection.abandon(results);
+            } catch (LDAPException ldape) {
+                finish(ldape);
+                return;
+            }
+        }
+
+        finish(null);
+    }
+
+    /**
+     * Requests the next page of results. The size limit is cleared, as the server would
+     * otherwise end the search once the entries of all pages reach it.
+     *
+     * @return the results of the page
+     *
+     * @throws LDAPException an error while accessing the directory
+     */
+    private LDAPSearchResults requestPage()
+        throws LDAPException {
+
+        LDAPSearchConstraints constraints = (LDAPSearchConstraints) connection.getSearchConstraints().clone();
+        constraints.setMaxResults(0);
+        constraints.setBatchSize(1);
+        constraints.setControls(new LDAPPagedResultsControl(pageSize, cookie, true));
+
+        return connection.search(searchBase, searchScope, searchFilter, attributeNames, false, constraints);
+    }
+
+    /**
+     * Returns the cookie to request the next page, or <code>null</code> if it was the last one.
+     *
+     * @param pageResults the results of the page
+     *
+     * @return the cookie or <code>null</code>
+     */
+    private static byte[] getNextPageCookie(LDAPSearchResults pageResults) {
+
+        LDAPControl[] controls = pageResults.getResponseControls();
+
+        if (controls != null) {
+            for (LDAPControl control : controls) {
+                if (control instanceof LDAPPagedResultsResponse) {
+                    return ((LDAPPagedResultsResponse) control).getCookie();
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Marks the search as finished and releases the connection.
+     *
+     * @param error the error that finished the search, or <code>null</code>
+     */
+    private void finish(LDAPException error) {
+
+        finished = true;
+        results = null;
+        release.accept(connection, error);
+    }
+}
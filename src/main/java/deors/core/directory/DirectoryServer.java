@@ -0,0 +1,171 @@
+package deors.core.directory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Address of a directory server.<br>
+ *
+ * Instances are immutable.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectoryServer {
+
+    /**
+     * The directory host name or IP address.
+     */
+    private final String host;
+
+    /**
+     * The directory service port.
+     */
+    private final int port;
+
+    /**
+     * Default directory service port.
+     */
+    private static final int DEFAULT_PORT = 389;
+
+    /**
+     * Separator between host and port.
+     */
+    private static final char PORT_SEPARATOR = ':';
+
+    /**
+     * Separator between servers in a server list.
+     */
+    private static final String LIST_SEPARATOR = ","; //$NON-NLS-1$
+
+    /**
+     * Constructor.
+     *
+     * @param host the directory host name or IP address
+     * @param port the directory service port
+     */
+    public DirectoryServer(String host, int port) {
+
+        super();
+
+        if (host == null || host.length() == 0 || port <= 0) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMGR_ERR_OPEN_CONN_ARG")); //$NON-NLS-1$
+        }
+
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Parses a server address in the form <code>host[:port]</code>. The default port is 389.
+     *
+     * @param address the server address
+     *
+     * @return the server
+     */
+    public static DirectoryServer parse(String address) {
+
+        if (address == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPSRV_ERR_PARSE", address)); //$NON-NLS-1$
+        }
+
+        String trimmed = address.trim();
+        int separator = trimmed.lastIndexOf(PORT_SEPARATOR);
+
+        if (separator < 0) {
+            return new DirectoryServer(trimmed, DEFAULT_PORT);
+        }
+
+        try {
+            return new DirectoryServer(trimmed.substring(0, separator),
+                Integer.parseInt(trimmed.substring(separator + 1)));
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPSRV_ERR_PARSE", address), nfe); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Parses a comma-separated list of server addresses in the form <code>host[:port]</code>.
+     *
+     * @param addresses the server addresses
+     *
+     * @return the servers, in the given order
+     */
+    public static List<DirectoryServer> parseList(String addresses) {
+
+        if (addresses == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPSRV_ERR_PARSE", addresses)); //$NON-NLS-1$
+        }
+
+        List<DirectoryServer> servers = new ArrayList<>();
+        for (String address : addresses.split(LIST_SEPARATOR)) {
+            if (address.trim().length() != 0) {
+                servers.add(parse(address));
+            }
+        }
+        return servers;
+    }
+
+    /**
+     * Returns the directory host name or IP address.
+     *
+     * @return the host
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Returns the directory service port.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Compares this server with another object.
+     *
+     * @param obj the other object
+     *
+     * @return <code>true</code> if the other object is a server with the same host and port
+     */
+    @Override
+    public boolean equals(Object obj) {
+
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof DirectoryServer)) {
+            return false;
+        }
+
+        DirectoryServer other = (DirectoryServer) obj;
+        return port == other.port && host.equalsIgnoreCase(other.host);
+    }
+
+    /**
+     * Returns a hash code for this server.
+     *
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+
+        return 31 * host.toLowerCase(Locale.ROOT).hashCode() + port;
+    }
+
+    /**
+     * Returns the server address in the form <code>host:port</code>.
+     *
+     * @return the server address
+     */
+    @Override
+    public String toString() {
+
+        return host + PORT_SEPARATOR + port;
+    }
+}
@@ -0,0 +1,25 @@
+package deors.core.directory;
+
+import java.util.List;
+
+/**
+ * Strategy choosing the directory server where the next operation runs.<br>
+ *
+ * Built-in strategies are created with the <code>DirectoryServerSelectors</code> factory
+ * methods. Implementations must be thread-safe.
+ *
+ * @author deors
+ * @version 1.0
+ * @see DirectoryServerSelectors
+ */
+public interface DirectoryServerSelector {
+
+    /**
+     * Chooses a server among the candidates.
+     *
+     * @param candidates the candidate servers in configured order, never empty
+     *
+     * @return the chosen server, which must be one of the candidates
+     */
+    DirectoryServerStatus select(List<DirectoryServerStatus> candidates);
+}
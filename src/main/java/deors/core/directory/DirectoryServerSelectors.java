@@ -0,0 +1,216 @@
+package deors.core.directory;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory of the built-in directory server selection strategies.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectoryServerSelectors {
+
+    /**
+     * Name of the round-robin strategy in the library configuration.
+     */
+    public static final String ROUND_ROBIN = "roundRobin"; //$NON-NLS-1$
+
+    /**
+     * Name of the fewest-outstanding-operations strategy in the library configuration.
+     */
+    public static final String FEWEST_OUTSTANDING = "fewestOutstanding"; //$NON-NLS-1$
+
+    /**
+     * Name of the latency-weighted strategy in the library configuration.
+     */
+    public static final String LATENCY_WEIGHTED = "latencyWeighted"; //$NON-NLS-1$
+
+    /**
+     * Name of the failover-only strategy in the library configuration.
+     */
+    public static final String FAILOVER = "failover"; //$NON-NLS-1$
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private DirectoryServerSelectors() {
+        super();
+    }
+
+    /**
+     * Returns the strategy with the given configuration name.
+     *
+     * @param name the strategy name, one of the constants of this class
+     *
+     * @return a new strategy instance
+     */
+    public static DirectoryServerSelector forName(String name) {
+
+        if (ROUND_ROBIN.equals(name)) {
+            return roundRobin();
+        } else if (FEWEST_OUTSTANDING.equals(name)) {
+            return fewestOutstanding();
+        } else if (LATENCY_WEIGHTED.equals(name)) {
+            return latencyWeighted();
+        } else if (FAILOVER.equals(name)) {
+            return failover();
+        }
+
+        throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPSRV_ERR_STRATEGY", name)); //$NON-NLS-1$
+    }
+
+    /**
+     * Returns a strategy that takes the candidates in turn.
+     *
+     * @return a new strategy instance
+     */
+    public static DirectoryServerSelector roundRobin() {
+
+        return new RoundRobinSelector();
+    }
+
+    /**
+     * Returns a strategy that chooses the candidate with the fewest operations running.
+     * Ties are broken in turn, so idle servers share the load.
+     *
+     * @return a new strategy instance
+     */
+    public static DirectoryServerSelector fewestOutstanding() {
+
+        return new FewestOutstandingSelector();
+    }
+
+    /**
+     * Returns a strategy that chooses candidates at random, with a probability inversely
+     * proportional to their average latency. Servers with no latency recorded yet are given
+     * the weight of the fastest known server.
+     *
+     * @return a new strategy instance
+     */
+    public static DirectoryServerSelector latencyWeighted() {
+
+        return new LatencyWeightedSelector();
+    }
+
+    /**
+     * Returns a strategy that always chooses the first candidate, so operations run on the
+     * first available server in configured order and the others are used only as a fallback.
+     *
+     * @return a new strategy instance
+     */
+    public static DirectoryServerSelector failover() {
+
+        return candidates -> candidates.get(0);
+    }
+
+    /**
+     * Round-robin strategy.
+     */
+    private static final class RoundRobinSelector implements DirectoryServerSelector {
+
+        /**
+         * Counter of the selections made.
+         */
+        private final AtomicInteger next = new AtomicInteger();
+
+        /**
+         * Chooses the next candidate in turn.
+         *
+         * @param candidates the candidate servers
+         *
+         * @return the chosen server
+         */
+        @Override
+        public DirectoryServerStatus select(List<DirectoryServerStatus> candidates) {
+
+            return candidates.get(Math.floorMod(next.getAndIncrement(), candidates.size()));
+        }
+    }
+
+    /**
+     * Fewest-outstanding-operations strategy.
+     */
+    private static final class FewestOutstandingSelector implements DirectoryServerSelector {
+
+        /**
+         * Counter rotating the candidate examined first.
+         */
+        private final AtomicInteger next = new AtomicInteger();
+
+        /**
+         * Chooses the candidate with the fewest operations running.
+         *
+         * @param candidates the candidate servers
+         *
+         * @return the chosen server
+         */
+        @Override
+        public DirectoryServerStatus select(List<DirectoryServerStatus> candidates) {
+
+            int size = candidates.size();
+            int start = Math.floorMod(next.getAndIncrement(), size);
+            DirectoryServerStatus best = null;
+
+            for (int i = 0; i < size; i++) {
+                DirectoryServerStatus candidate = candidates.get((start + i) % size);
+                if (best == null || candidate.getOutstandingCount() < best.getOutstandingCount()) {
+                    best = candidate;
+                }
+            }
+
+            return best;
+        }
+    }
+
+    /**
+     * Latency-weighted strategy.
+     */
+    private static final class LatencyWeightedSelector implements DirectoryServerSelector {
+
+        /**
+         * Chooses a candidate at random, weighted by the inverse of its latency.
+         *
+         * @param candidates the candidate servers
+         *
+         * @return the chosen server
+         */
+        @Override
+        public DirectoryServerStatus select(List<DirectoryServerStatus> candidates) {
+
+            int size = candidates.size();
+            long fastest = Long.MAX_VALUE;
+
+            for (int i = 0; i < size; i++) {
+                long latency = candidates.get(i).getAverageLatency();
+                if (latency > 0 && latency < fastest) {
+                    fastest = latency;
+                }
+            }
+
+            if (fastest == Long.MAX_VALUE) {
+                return candidates.get(ThreadLocalRandom.current().nextInt(size));
+            }
+
+            double[] weights = new double[size];
+            double total = 0.0;
+
+            for (int i = 0; i < size; i++) {
+                long latency = candidates.get(i).getAverageLatency();
+                weights[i] = 1.0 / (latency > 0 ? latency : fastest);
+                total += weights[i];
+            }
+
+            double point = ThreadLocalRandom.current().nextDouble(total);
+            for (int i = 0; i < size; i++) {
+                point -= weights[i];
+                if (point < 0) {
+                    return candidates.get(i);
+                }
+            }
+
+            return candidates.get(size - 1);
+        }
+    }
+}
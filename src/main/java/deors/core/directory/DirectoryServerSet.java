@@ -0,0 +1,362 @@
+package deors.core.directory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPException;
+
+/**
+ * Set of equivalent directory servers, such as the replicas of a directory, with a strategy
+ * choosing where each operation runs.<br>
+ *
+ * Operations are spread among the servers believed to be available by a pluggable
+ * <code>DirectoryServerSelector</code>. A server is marked as unavailable when a connection to
+ * it fails, and as available again when a later connection succeeds. If every server is marked
+ * as unavailable, all of them are tried in configured order, so a recovered server is found
+ * even without health probing. Servers whose circuit breaker rejects calls are never chosen.<br>
+ *
+ * When a probe interval is set, a background task periodically opens and closes a connection to
+ * each server, marking it as available or unavailable and recording the connection latency.
+ * Probes open connections as operations do, with the limits of a <code>DirectoryTimeouts</code>
+ * and the transport security of a <code>DirectoryTls</code>, set with <code>setTimeouts()</code>
+ * and <code>setTls()</code>, and the latency includes the TLS handshake.
+ * Each probe runs in its own virtual thread, so a server that does not answer delays neither
+ * the probes of the other servers nor the callers.<br>
+ *
+ * Default settings are read from the library configuration:
+ * <code>ldap.servers.strategy</code> and <code>ldap.servers.probeInterval</code>.<br>
+ *
+ * The class is thread-safe.
+ *
+ * @author deors
+ * @version 1.0
+ * @see DirectoryServerSelectors
+ */
+public final class DirectoryServerSet implements AutoCloseable {
+
+    /**
+     * Status of the servers, in configured order.
+     */
+    private final List<DirectoryServerStatus> statuses;
+
+    /**
+     * The strategy choosing among the available servers.
+     */
+    private final DirectoryServerSelector selector;
+
+    /**
+     * Background executor scheduling the health probes, or <code>null</code> if disabled.
+     */
+    private final ScheduledExecutorService prober;
+
+    /**
+     * Servers whose health probe is still running.
+     */
+    private final Set<DirectoryServer> probing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Limits applied to the connections opened by the health probes.
+     */
+    private volatile DirectoryTimeouts timeouts = new DirectoryTimeouts();
+
+    /**
+     * Transport security applied to the connections opened by the health probes.
+     */
+    private volatile DirectoryTls tls = DirectoryTls.getDefault();
+
+    /**
+     * Default health probe interval in milliseconds.
+     */
+    private static final int DEFAULT_PROBE_INTERVAL = 10000;
+
+    /**
+     * Constructor that creates a set of the given servers using the settings in the library
+     * configuration.
+     *
+     * @param servers the servers, in order of preference
+     */
+    public DirectoryServerSet(List<DirectoryServer> servers) {
+
+        this(servers,
+            DirectoryServerSelectors.forName(DirectoryContext.getConfigurationProperty(
+                "ldap.servers.strategy", DirectoryServerSelectors.ROUND_ROBIN)), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.servers.probeInterval", DEFAULT_PROBE_INTERVAL)); //$NON-NLS-1$
+    }
+
+    /**
+     * Constructor that creates a set of the given servers.
+     *
+     * @param servers the servers, in order of preference
+     * @param selector the strategy choosing among the available servers
+     * @param probeInterval time in milliseconds between health probes, or zero to disable them
+     */
+    public DirectoryServerSet(List<DirectoryServer> servers, DirectoryServerSelector selector, long probeInterval) {
+
+        super();
+
+        if (servers == null || servers.isEmpty()) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPSRV_ERR_SERVERS_ARG")); //$NON-NLS-1$
+        }
+
+        if (selector == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPSRV_ERR_SELECTOR_ARG")); //$NON-NLS-1$
+        }
+
+        List<DirectoryServerStatus> list = new ArrayList<>(servers.size());
+        for (DirectoryServer server : servers) {
+            if (server == null) {
+                throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPSRV_ERR_SERVERS_ARG")); //$NON-NLS-1$
+            }
+            list.add(new DirectoryServerStatus(server, list.size()));
+        }
+        this.statuses = Collections.unmodifiableList(list);
+        this.selector = selector;
+
+        if (probeInterval > 0) {
+            prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "directory-health-probe"); //$NON-NLS-1$
+                thread.setDaemon(true);
+                return thread;
+            });
+            prober.scheduleWithFixedDelay(
+                this::probeServers, probeInterval, probeInterval, TimeUnit.MILLISECONDS);
+        } else {
+            prober = null;
+        }
+    }
+
+    /**
+     * Creates a set with a single server, without health probing.
+     *
+     * @param directoryHost the directory host name or IP address
+     * @param directoryPort the directory service port
+     *
+     * @return the server set
+     */
+    static DirectoryServerSet of(String directoryHost, int directoryPort) {
+
+        return new DirectoryServerSet(
+            List.of(new DirectoryServer(directoryHost, directoryPort)), DirectoryServerSelectors.failover(), 0);
+    }
+
+    /**
+     * Chooses the server where the next operation runs.
+     *
+     * @return the status of the chosen server
+     */
+    public DirectoryServerStatus select() {
+
+        return select(Collections.emptySet());
+    }
+
+    /**
+     * Chooses the server where the next operation runs, leaving out the given servers, usually
+     * those already tried for the operation, and those whose circuit breaker rejects calls.
+     * The selector chooses among the available servers; if none is available, the first
+     * server in configured order is returned.
+     *
+     * @param excluded the servers to leave out
+     *
+     * @return the status of the chosen server, or <code>null</code> if every server is left out
+     */
+    public DirectoryServerStatus select(Set<DirectoryServer> excluded) {
+
+        List<DirectoryServerStatus> candidates = new ArrayList<>(statuses.size());
+        DirectoryServerStatus fallback = null;
+
+        for (DirectoryServerStatus status : statuses) {
+            if (excluded.contains(status.getServer()) || !status.getCircuitBreaker().isCallPermitted()) {
+                continue;
+            }
+            if (fallback == null) {
+                fallback = status;
+            }
+            if (status.isAvailable()) {
+                candidates.add(status);
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            return fallback;
+        }
+
+        return candidates.size() == 1 ? candidates.get(0) : selector.select(candidates);
+    }
+
+    /**
+     * Runs a health probe on every server whose previous probe has finished.
+     */
+    public void probeServers() {
+
+        for (DirectoryServerStatus status : statuses) {
+            if (probing.add(status.getServer())) {
+                Thread.ofVirtual().name("directory-health-probe-" + status.getServer()) //$NON-NLS-1$
+                    .start(() -> {
+                        try {
+                            probe(status);
+                        } finally {
+                            probing.remove(status.getServer());
+                        }
+                    });
+            }
+        }
+    }
+
+    /**
+     * Opens and closes a connection to a server, updating its status. The connection is
+     * opened and secured with the timeouts and transport security of the set, and the latency
+     * recorded covers both.
+     *
+     * @param status the server status
+     */
+    void probe(DirectoryServerStatus status) {
+
+        DirectoryTls probeTls = tls;
+        LDAPConnection connection = timeouts.newConnection(probeTls);
+        long started = System.nanoTime();
+        try {
+            connection.connect(status.getServer().getHost(), status.getServer().getPort());
+        } catch (LDAPException ldape) {
+            status.markFailed();
+            return;
+        }
+
+        try {
+            probeTls.secure(connection);
+            status.recordLatency(System.nanoTime() - started);
+            status.markAvailable();
+        } catch (LDAPException ldape) {
+            status.markFailed();
+        }
+
+        try {
+            connection.disconnect();
+        } catch (LDAPException ldape) {
+            // the probe already finished
+        }
+    }
+
+    /**
+     * Stops the health probes.
+     */
+    @Override
+    public void close() {
+
+        if (prober != null) {
+            prober.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the servers, in configured order.
+     *
+     * @return the servers
+     */
+    public List<DirectoryServer> getServers() {
+
+        List<DirectoryServer> servers = new ArrayList<>(statuses.size());
+        for (DirectoryServerStatus status : statuses) {
+            servers.add(status.getServer());
+        }
+        return servers;
+    }
+
+    /**
+     * Returns the status of the servers, in configured order.
+     *
+     * @return the server statuses
+     */
+    public List<DirectoryServerStatus> getStatuses() {
+        return statuses;
+    }
+
+    /**
+     * Returns the status of a server.
+     *
+     * @param server the server
+     *
+     * @return the server status, or <code>null</code> if the server is not in the set
+     */
+    public DirectoryServerStatus getStatus(DirectoryServer server) {
+
+        for (DirectoryServerStatus status : statuses) {
+            if (status.getServer().equals(server)) {
+                return status;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of servers.
+     *
+     * @return the number of servers
+     */
+    public int size() {
+        return statuses.size();
+    }
+
+    /**
+     * Returns the strategy choosing among the available servers.
+     *
+     * @return the server selector
+     */
+    public DirectoryServerSelector getSelector() {
+        return selector;
+    }
+
+    /**
+     * Returns the limits applied to the connections opened by the health probes.
+     *
+     * @return the timeouts
+     */
+    public DirectoryTimeouts getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * Sets the limits applied to the connections opened by the health probes.
+     *
+     * @param timeouts the timeouts
+     */
+    public void setTimeouts(DirectoryTimeouts timeouts) {
+
+        if (timeouts == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMGR_ERR_TIMEOUT_ARG")); //$NON-NLS-1$
+        }
+
+        this.timeouts = timeouts;
+    }
+
+    /**
+     * Returns the transport security applied to the connections opened by the health probes.
+     *
+     * @return the transport security
+     */
+    public DirectoryTls getTls() {
+        return tls;
+    }
+
+    /**
+     * Sets the transport security applied to the connections opened by the health probes. It
+     * should be the one used by the pools and managers connecting to the servers, so probes
+     * resume their TLS sessions and measure the same handshake.
+     *
+     * @param tls the transport security
+     */
+    public void setTls(DirectoryTls tls) {
+
+        if (tls == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPTLS_ERR_ARG")); //$NON-NLS-1$
+        }
+
+        this.tls = tls;
+    }
+}
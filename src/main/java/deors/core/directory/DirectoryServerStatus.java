@@ -0,0 +1,210 @@
+package deors.core.directory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runtime status of a directory server within a <code>DirectoryServerSet</code>.<br>
+ *
+ * The status tracks whether the server is believed to be available, the number of operations
+ * running on it and a moving average of its latency, measured by the health probes. Server
+ * selectors use it to choose where the next operation runs. Each server also has a circuit
+ * breaker; servers whose breaker rejects calls are not offered to selectors.<br>
+ *
+ * The class is thread-safe.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectoryServerStatus {
+
+    /**
+     * The server.
+     */
+    private final DirectoryServer server;
+
+    /**
+     * Position of the server in the configured server list.
+     */
+    private final int position;
+
+    /**
+     * Whether the server is believed to be available.
+     */
+    private volatile boolean available = true;
+
+    /**
+     * Number of operations running on the server.
+     */
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    /**
+     * Exponentially weighted moving average of the latency in nanoseconds, or zero if no
+     * latency was recorded yet.
+     */
+    private final AtomicLong averageLatency = new AtomicLong();
+
+    /**
+     * Number of failures recorded.
+     */
+    private final AtomicLong failureCount = new AtomicLong();
+
+    /**
+     * Circuit breaker of the server.
+     */
+    private final DirectoryCircuitBreaker circuitBreaker = new DirectoryCircuitBreaker();
+
+    /**
+     * Weight of older samples in the latency average, as a power of two. Each new sample
+     * contributes one eighth of the average.
+     */
+    private static final int LATENCY_DECAY_SHIFT = 3;
+
+    /**
+     * Constructor.
+     *
+     * @param server the server
+     * @param position the position of the server in the configured server list
+     */
+    DirectoryServerStatus(DirectoryServer server, int position) {
+
+        super();
+        this.server = server;
+        this.position = position;
+    }
+
+    /**
+     * Returns the server.
+     *
+     * @return the server
+     */
+    public DirectoryServer getServer() {
+        return server;
+    }
+
+    /**
+     * Returns the position of the server in the configured server list.
+     *
+     * @return the position, starting at zero
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns whether the server is believed to be available.
+     *
+     * @return <code>true</code> if the server is available
+     */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Returns the number of operations running on the server.
+     *
+     * @return the outstanding operation count
+     */
+    public int getOutstandingCount() {
+        return outstanding.get();
+    }
+
+    /**
+     * Returns the moving average of the latency of the server.
+     *
+     * @return the average latency in nanoseconds, or zero if unknown
+     */
+    public long getAverageLatency() {
+        return averageLatency.get();
+    }
+
+    /**
+     * Returns the number of failures recorded for the server.
+     *
+     * @return the failure count
+     */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * Returns the circuit breaker of the server.
+     *
+     * @return the circuit breaker
+     */
+    public DirectoryCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Records the start of an operation on the server.
+     */
+    void operationStarted() {
+
+        outstanding.incrementAndGet();
+    }
+
+    /**
+     * Records the end of an operation on the server.
+     */
+    void operationCompleted() {
+
+        outstanding.decrementAndGet();
+    }
+
+    /**
+     * Records the end of an operation that failed because of the server.
+     */
+    void operationFailed() {
+
+        outstanding.decrementAndGet();
+        markFailed();
+    }
+
+    /**
+     * Records a latency sample.
+     *
+     * @param durationNanos the latency in nanoseconds
+     */
+    void recordLatency(long durationNanos) {
+
+        long sample = Math.max(1L, durationNanos);
+        long current;
+        long updated;
+        do {
+            current = averageLatency.get();
+            updated = current == 0 ? sample : current + ((sample - current) >> LATENCY_DECAY_SHIFT);
+        } while (!averageLatency.compareAndSet(current, updated));
+    }
+
+    /**
+     * Marks the server as unavailable.
+     */
+    void markFailed() {
+
+        failureCount.incrementAndGet();
+        available = false;
+    }
+
+    /**
+     * Marks the server as available.
+     */
+    void markAvailable() {
+
+        available = true;
+    }
+
+    /**
+     * Returns a string representation of the status.
+     *
+     * @return the string representation
+     */
+    @Override
+    public String toString() {
+
+        return server + (available ? "[available" : "[unavailable") //$NON-NLS-1$ //$NON-NLS-2$
+            + ",outstanding=" + outstanding.get() //$NON-NLS-1$
+            + ",latency=" + averageLatency.get() //$NON-NLS-1$
+            + ",breaker=" + circuitBreaker.getState() + ']'; //$NON-NLS-1$
+    }
+}
@@ -0,0 +1,423 @@
+package deors.core.directory;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.novell.ldap.LDAPException;
+
+/**
+ * Operation listener collecting statistics of directory operations.<br>
+ *
+ * For every operation the statistics record the number of completed and failed executions,
+ * the failures by LDAP result code, the number of executions in flight and a latency
+ * histogram. Recording allocates nothing for the usual LDAP result codes and uses only
+ * striped counters and atomic increments, so a single instance can be shared by many managers
+ * and threads.<br>
+ *
+ * The statistics can be read directly or published as a platform MBean named
+ * <code>deors.core.directory:type=DirectoryStatistics,name=&lt;name&gt;</code>.<br>
+ *
+ * The class is thread-safe.
+ *
+ * @author deors
+ * @version 1.0
+ * @see DirectoryManager#setOperationListener(DirectoryOperationListener)
+ */
+public class DirectoryStatistics implements DirectoryOperationListener, DirectoryStatisticsMXBean {
+
+    /**
+     * Statistics of each operation, indexed by ordinal.
+     */
+    private final OperationStatistics[] operations;
+
+    /**
+     * Name under which the statistics are registered as an MBean, or <code>null</code>.
+     */
+    private volatile ObjectName objectName;
+
+    /**
+     * Domain and type of the MBean names.
+     */
+    private static final String MBEAN_NAME_PREFIX = "deors.core.directory:type=DirectoryStatistics,name="; //$NON-NLS-1$
+
+    /**
+     * Separator between the operation name and the result code in MBean keys.
+     */
+    private static final char RESULT_CODE_SEPARATOR = '/';
+
+    /**
+     * Default constructor.
+     */
+    public DirectoryStatistics() {
+
+        super();
+
+        DirectoryOperation[] values = DirectoryOperation.values();
+        operations = new OperationStatistics[values.length];
+        for (int i = 0; i < values.length; i++) {
+            operations[i] = new OperationStatistics();
+        }
+    }
+
+    /**
+     * Records the start of an operation.
+     *
+     * @param operation the operation
+     */
+    @Override
+    public void operationStarted(DirectoryOperation operation) {
+
+        operations[operation.ordinal()].inFlight.increment();
+    }
+
+    /**
+     * Records the completion of an operation.
+     *
+     * @param operation the operation
+     * @param durationNanos the operation duration in nanoseconds
+     * @param resultCode the LDAP result code
+     */
+    @Override
+    public void operationCompleted(DirectoryOperation operation, long durationNanos, int resultCode) {
+
+        OperationStatistics statistics = operations[operation.ordinal()];
+
+        statistics.inFlight.decrement();
+        statistics.count.increment();
+        statistics.latency.record(durationNanos);
+
+        if (resultCode != LDAPException.SUCCESS) {
+            statistics.errors.increment();
+            LongAdder errors = statistics.errorsByResultCode.get(resultCode);
+            if (errors == null) {
+                errors = statistics.errorsByResultCode.computeIfAbsent(resultCode, code -> new LongAdder());
+            }
+            errors.increment();
+        }
+    }
+
+    /**
+     * Returns the number of completed executions of an operation.
+     *
+     * @param operation the operation
+     *
+     * @return the count
+     */
+    public long getCount(DirectoryOperation operation) {
+
+        return operations[operation.ordinal()].count.sum();
+    }
+
+    /**
+     * Returns the number of failed executions of an operation.
+     *
+     * @param operation the operation
+     *
+     * @return the error count
+     */
+    public long getErrorCount(DirectoryOperation operation) {
+
+        return operations[operation.ordinal()].errors.sum();
+    }
+
+    /**
+     * Returns the number of executions of an operation that failed with the given result code.
+     *
+     * @param operation the operation
+     * @param resultCode the LDAP result code
+     *
+     * @return the error count
+     */
+    public long getErrorCount(DirectoryOperation operation, int resultCode) {
+
+        LongAdder errors = operations[operation.ordinal()].errorsByResultCode.get(resultCode);
+        return errors == null ? 0L : errors.sum();
+    }
+
+    /**
+     * Returns the number of failed executions of an operation by LDAP result code.
+     *
+     * @param operation the operation
+     *
+     * @return the error counts keyed by result code
+     */
+    public Map<Integer, Long> getErrorCountsByResultCode(DirectoryOperation operation) {
+
+        Map<Integer, Long> counts = new TreeMap<>();
+        for (Map.Entry<Integer, LongAdder> entry : operations[operation.ordinal()].errorsByResultCode.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the number of executions of an operation running.
+     *
+     * @param operation the operation
+     *
+     * @return the in-flight count
+     */
+    public long getInFlightCount(DirectoryOperation operation) {
+
+        return operations[operation.ordinal()].inFlight.sum();
+    }
+
+    /**
+     * Returns the latency histogram of an operation.
+     *
+     * @param operation the operation
+     *
+     * @return the latency histogram
+     */
+    public DirectoryLatencyHistogram getLatencyHistogram(DirectoryOperation operation) {
+
+        return operations[operation.ordinal()].latency;
+    }
+
+    /**
+     * Returns the number of completed operations, keyed by operation name.
+     *
+     * @return the operation counts
+     */
+    @Override
+    public Map<String, Long> getOperationCounts() {
+
+        return collect(statistics -> statistics.count.sum());
+    }
+
+    /**
+     * Returns the number of failed operations, keyed by operation name.
+     *
+     * @return the error counts
+     */
+    @Override
+    public Map<String, Long> getErrorCounts() {
+
+        return collect(statistics -> statistics.errors.sum());
+    }
+
+    /**
+     * Returns the number of failed operations, keyed by operation name and result code.
+     *
+     * @return the error counts by result code
+     */
+    @Override
+    public Map<String, Long> getErrorCountsByResultCode() {
+
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (DirectoryOperation operation : DirectoryOperation.values()) {
+            for (Map.Entry<Integer, Long> entry : getErrorCountsByResultCode(operation).entrySet()) {
+                counts.put(operation.name() + RESULT_CODE_SEPARATOR + entry.getKey(), entry.getValue());
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the number of operations running, keyed by operation name.
+     *
+     * @return the in-flight operation counts
+     */
+    @Override
+    public Map<String, Long> getInFlightCounts() {
+
+        return collect(statistics -> statistics.inFlight.sum());
+    }
+
+    /**
+     * Returns the mean latency in microseconds, keyed by operation name.
+     *
+     * @return the mean latencies
+     */
+    @Override
+    public Map<String, Double> getMeanLatencies() {
+
+        return collectLatencies(histogram -> histogram.getMean());
+    }
+
+    /**
+     * Returns the median latency in microseconds, keyed by operation name.
+     *
+     * @return the median latencies
+     */
+    @Override
+    public Map<String, Double> getMedianLatencies() {
+
+        return collectLatencies(histogram -> histogram.getValueAtPercentile(50.0));
+    }
+
+    /**
+     * Returns the 99th percentile latency in microseconds, keyed by operation name.
+     *
+     * @return the 99th percentile latencies
+     */
+    @Override
+    public Map<String, Double> getPercentile99Latencies() {
+
+        return collectLatencies(histogram -> histogram.getValueAtPercentile(99.0));
+    }
+
+    /**
+     * Returns the 99.9th percentile latency in microseconds, keyed by operation name.
+     *
+     * @return the 99.9th percentile latencies
+     */
+    @Override
+    public Map<String, Double> getPercentile999Latencies() {
+
+        return collectLatencies(histogram -> histogram.getValueAtPercentile(99.9));
+    }
+
+    /**
+     * Returns the maximum latency in microseconds, keyed by operation name.
+     *
+     * @return the maximum latencies
+     */
+    @Override
+    public Map<String, Double> getMaxLatencies() {
+
+        return collectLatencies(histogram -> histogram.getMax());
+    }
+
+    /**
+     * Discards all statistics. Operations running are still tracked as in-flight.
+     */
+    @Override
+    public void reset() {
+
+        for (OperationStatistics statistics : operations) {
+            statistics.count.reset();
+            statistics.errors.reset();
+            statistics.errorsByResultCode.clear();
+            statistics.latency.reset();
+        }
+    }
+
+    /**
+     * Registers the statistics in the platform MBean server.
+     *
+     * @param name the value of the <code>name</code> key of the MBean name
+     *
+     * @return the MBean name
+     *
+     * @throws DirectoryException the MBean could not be registered
+     */
+    public ObjectName registerMBean(String name)
+        throws DirectoryException {
+
+        try {
+            ObjectName newObjectName = new ObjectName(MBEAN_NAME_PREFIX + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, newObjectName);
+            objectName = newObjectName;
+            return newObjectName;
+        } catch (JMException jme) {
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPSTATS_ERR_JMX", jme.getMessage()), //$NON-NLS-1$
+                jme);
+        }
+    }
+
+    /**
+     * Unregisters the statistics from the platform MBean server. Calling this method when the
+     * statistics are not registered is a no-op.
+     *
+     * @throws DirectoryException the MBean could not be unregistered
+     */
+    public void unregisterMBean()
+        throws DirectoryException {
+
+        ObjectName registeredName = objectName;
+
+        if (registeredName == null) {
+            return;
+        }
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(registeredName)) {
+                server.unregisterMBean(registeredName);
+            }
+            objectName = null;
+        } catch (JMException jme) {
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPSTATS_ERR_JMX", jme.getMessage()), //$NON-NLS-1$
+                jme);
+        }
+    }
+
+    /**
+     * Collects a counter of every operation into a map keyed by operation name.
+     *
+     * @param counter function reading the counter
+     *
+     * @return the counters
+     */
+    private Map<String, Long> collect(ToLongFunction<OperationStatistics> counter) {
+
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (DirectoryOperation operation : DirectoryOperation.values()) {
+            values.put(operation.name(), counter.applyAsLong(operations[operation.ordinal()]));
+        }
+        return values;
+    }
+
+    /**
+     * Collects a latency figure of every operation, converted to microseconds, into a map
+     * keyed by operation name.
+     *
+     * @param figure function reading the figure in nanoseconds
+     *
+     * @return the latencies
+     */
+    private Map<String, Double> collectLatencies(ToDoubleFunction<DirectoryLatencyHistogram> figure) {
+
+        double nanosPerMicro = TimeUnit.MICROSECONDS.toNanos(1);
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (DirectoryOperation operation : DirectoryOperation.values()) {
+            values.put(operation.name(), figure.applyAsDouble(operations[operation.ordinal()].latency) / nanosPerMicro);
+        }
+        return values;
+    }
+
+    /**
+     * Statistics of one operation.
+     */
+    private static final class OperationStatistics {
+
+        /**
+         * Number of completed executions.
+         */
+        private final LongAdder count = new LongAdder();
+
+        /**
+         * Number of failed executions.
+         */
+        private final LongAdder errors = new LongAdder();
+
+        /**
+         * Number of failed executions by LDAP result code.
+         */
+        private final Map<Integer, LongAdder> errorsByResultCode = new ConcurrentHashMap<>();
+
+        /**
+         * Number of executions running.
+         */
+        private final LongAdder inFlight = new LongAdder();
+
+        /**
+         * Latency histogram.
+         */
+        private final DirectoryLatencyHistogram latency = new DirectoryLatencyHistogram();
+    }
+}
@@ -0,0 +1,84 @@
+package deors.core.directory;
+
+import java.util.Map;
+
+/**
+ * Management interface of <code>DirectoryStatistics</code>.<br>
+ *
+ * Every attribute is a map keyed by operation name. Error counts by result code are keyed by
+ * operation name and LDAP result code separated by a slash, like
+ * <code>GET_ATTRIBUTE_VALUE/81</code>. Latencies are given in microseconds.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public interface DirectoryStatisticsMXBean {
+
+    /**
+     * Returns the number of completed operations.
+     *
+     * @return the operation counts
+     */
+    Map<String, Long> getOperationCounts();
+
+    /**
+     * Returns the number of failed operations.
+     *
+     * @return the error counts
+     */
+    Map<String, Long> getErrorCounts();
+
+    /**
+     * Returns the number of failed operations by LDAP result code.
+     *
+     * @return the error counts by result code
+     */
+    Map<String, Long> getErrorCountsByResultCode();
+
+    /**
+     * Returns the number of operations running.
+     *
+     * @return the in-flight operation counts
+     */
+    Map<String, Long> getInFlightCounts();
+
+    /**
+     * Returns the mean latency.
+     *
+     * @return the mean latencies in microseconds
+     */
+    Map<String, Double> getMeanLatencies();
+
+    /**
+     * Returns the median latency.
+     *
+     * @return the median latencies in microseconds
+     */
+    Map<String, Double> getMedianLatencies();
+
+    /**
+     * Returns the 99th percentile latency.
+     *
+     * @return the 99th percentile latencies in microseconds
+     */
+    Map<String, Double> getPercentile99Latencies();
+
+    /**
+     * Returns the 99.9th percentile latency.
+     *
+     * @return the 99.9th percentile latencies in microseconds
+     */
+    Map<String, Double> getPercentile999Latencies();
+
+    /**
+     * Returns the maximum latency.
+     *
+     * @return the maximum latencies in microseconds
+     */
+    Map<String, Double> getMaxLatencies();
+
+    /**
+     * Discards all statistics. Operations running are still tracked as in-flight.
+     */
+    void reset();
+}
@@ -0,0 +1,1034 @@
+package deors.core.directory;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import com.novell.ldap.LDAPAttribute;
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPControl;
+import com.novell.ldap.LDAPEntry;
+import com.novell.ldap.LDAPException;
+import com.novell.ldap.LDAPMessage;
+import com.novell.ldap.LDAPReferralException;
+import com.novell.ldap.LDAPResponse;
+import com.novell.ldap.LDAPSearchConstraints;
+import com.novell.ldap.LDAPSearchQueue;
+import com.novell.ldap.LDAPSearchResult;
+import com.novell.ldap.LDAPSearchResults;
+import com.novell.ldap.controls.LDAPEntryChangeControl;
+import com.novell.ldap.controls.LDAPPersistSearchControl;
+import com.novell.ldap.util.DN;
+
+/**
+ * Subscription to the changes made to the entries of a directory subtree, created with
+ * <code>DirectoryManager.subscribe()</code>.<br>
+ *
+ * Changes are detected in one of three ways:
+ * <ul>
+ * <li>with the persistent search control, which makes the server notify every change as it
+ * happens and is preferred when the server supports it;</li>
+ * <li>by polling the changelog (draft-good-ldap-changelog) for new change records, which also
+ * reports deletions and renamings, although the search filter is not applied to them;</li>
+ * <li>by polling the subtree for entries whose <code>modifyTimestamp</code> is newer than the
+ * last poll, which works with any server but does not report deletions.</li>
+ * </ul>
+ * In <code>AUTO</code> mode, the first one available in the server is used, as advertised in
+ * its root DSE.<br>
+ *
+ * The subscription runs in a virtual thread holding a connection until it is closed. If the
+ * connection fails, the subscription reconnects after <code>ldap.subscription.retryInterval</code>
+ * milliseconds; changes made while a persistent search was not running are not reported, so
+ * the resync handler is called once it is running again. Polling takes place every
+ * <code>ldap.subscription.pollInterval</code> milliseconds.<br>
+ *
+ * Events are delivered to the handler from the subscription thread, one at a time. Errors,
+ * including those raised by the handler, do not stop the subscription and are available from
+ * <code>getLastError()</code>.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectorySubscription implements AutoCloseable {
+
+    /**
+     * Ways of detecting changes.
+     */
+    public enum Mode {
+
+        /**
+         * The first way supported by the server among the others, in the order listed here.
+         */
+        AUTO,
+
+        /**
+         * Notification of changes with the persistent search control.
+         */
+        PERSISTENT,
+
+        /**
+         * Polling of the changelog.
+         */
+        CHANGELOG,
+
+        /**
+         * Polling of the <code>modifyTimestamp</code> attribute of the entries.
+         */
+        POLLING
+    }
+
+    /**
+     * Source of the connections used by the subscription.
+     */
+    @FunctionalInterface
+    interface ConnectionSource {
+
+        /**
+         * Obtains a connection.
+         *
+         * @return the connection
+         *
+         * @throws DirectoryException an error while obtaining the connection
+         */
+        LDAPConnection acquire()
+            throws DirectoryException;
+    }
+
+    /**
+     * The source of the connections.
+     */
+    private final ConnectionSource source;
+
+    /**
+     * Callback releasing a connection, receiving the error raised, if any.
+     */
+    private final BiConsumer<LDAPConnection, LDAPException> release;
+
+    /**
+     * The search base DN.
+     */
+    private final String searchBase;
+
+    /**
+     * The search scope.
+     */
+    private final int searchScope;
+
+    /**
+     * The search filter.
+     */
+    private final String searchFilter;
+
+    /**
+     * The attribute names, or <code>null</code> for all user attributes.
+     */
+    private final String[] attributeNames;
+
+    /**
+     * The mode requested.
+     */
+    private final Mode mode;
+
+    /**
+     * The handler receiving the events.
+     */
+    private final Consumer<? super DirectoryChangeEvent> eventHandler;
+
+    /**
+     * The handler called when changes may have been missed.
+     */
+    private final Runnable resyncHandler;
+
+    /**
+     * Time between polls in milliseconds.
+     */
+    private final long pollInterval;
+
+    /**
+     * Time between reconnection attempts in milliseconds.
+     */
+    private final long retryInterval;
+
+    /**
+     * The thread running the subscription.
+     */
+    private volatile Thread thread;
+
+    /**
+     * The connection running the persistent search, or <code>null</code>.
+     */
+    private volatile LDAPConnection activeConnection;
+
+    /**
+     * The queue of the persistent search running, or <code>null</code>.
+     */
+    private volatile LDAPSearchQueue activeQueue;
+
+    /**
+     * The mode in use, or <code>null</code> if not yet resolved.
+     */
+    private volatile Mode activeMode;
+
+    /**
+     * Flag that is <code>true</code> while changes are being detected.
+     */
+    private volatile boolean listening;
+
+    /**
+     * Flag that is <code>true</code> once the subscription is closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Number of events delivered.
+     */
+    private volatile long eventCount;
+
+    /**
+     * Number of times the subscription was restarted after an error.
+     */
+    private volatile long restartCount;
+
+    /**
+     * The last error, or <code>null</code>.
+     */
+    private volatile DirectoryException lastError;
+
+    /**
+     * Flag that is <code>true</code> if the server rejected the persistent search control.
+     */
+    private boolean persistentRejected;
+
+    /**
+     * The DN of the changelog, or <code>null</code> if not known.
+     */
+    private String changelogDN;
+
+    /**
+     * The number of the last change record read from the changelog, or -1.
+     */
+    private long lastChangeNumber = -1;
+
+    /**
+     * The newest modification timestamp seen while polling, or <code>null</code>.
+     */
+    private String watermark;
+
+    /**
+     * The DNs, in lower case, of the entries already reported with a modification timestamp
+     * equal to the watermark.
+     */
+    private Set<String> watermarkDNs = new HashSet<>();
+
+    /**
+     * Default time between polls in milliseconds.
+     */
+    private static final int DEFAULT_POLL_INTERVAL = 5000;
+
+    /**
+     * Default time between reconnection attempts in milliseconds.
+     */
+    private static final int DEFAULT_RETRY_INTERVAL = 10000;
+
+    /**
+     * OID of the persistent search control.
+     */
+    private static final String PERSISTENT_SEARCH_OID = "2.16.840.1.113730.3.4.3"; //$NON-NLS-1$
+
+    /**
+     * OID of the entry change control.
+     */
+    private static final String ENTRY_CHANGE_OID = "2.16.840.1.113730.3.4.7"; //$NON-NLS-1$
+
+    /**
+     * Root DSE attribute with the OIDs of the supported controls.
+     */
+    private static final String ATTR_SUPPORTED_CONTROL = "supportedControl"; //$NON-NLS-1$
+
+    /**
+     * Root DSE attribute with the DN of the changelog.
+     */
+    private static final String ATTR_CHANGELOG = "changelog"; //$NON-NLS-1$
+
+    /**
+     * Root DSE attribute with the number of the last change record.
+     */
+    private static final String ATTR_LAST_CHANGE_NUMBER = "lastChangeNumber"; //$NON-NLS-1$
+
+    /**
+     * Change record attribute with the change number.
+     */
+    private static final String ATTR_CHANGE_NUMBER = "changeNumber"; //$NON-NLS-1$
+
+    /**
+     * Change record attribute with the DN of the entry changed.
+     */
+    private static final String ATTR_TARGET_DN = "targetDN"; //$NON-NLS-1$
+
+    /**
+     * Change record attribute with the change type.
+     */
+    private static final String ATTR_CHANGE_TYPE = "changeType"; //$NON-NLS-1$
+
+    /**
+     * Change record attribute with the new RDN of a renamed entry.
+     */
+    private static final String ATTR_NEW_RDN = "newRDN"; //$NON-NLS-1$
+
+    /**
+     * Change record attribute with the new parent of a moved entry.
+     */
+    private static final String ATTR_NEW_SUPERIOR = "newSuperior"; //$NON-NLS-1$
+
+    /**
+     * Operational attribute with the modification time of an entry.
+     */
+    private static final String ATTR_MODIFY_TIMESTAMP = "modifyTimestamp"; //$NON-NLS-1$
+
+    /**
+     * Operational attribute with the creation time of an entry.
+     */
+    private static final String ATTR_CREATE_TIMESTAMP = "createTimestamp"; //$NON-NLS-1$
+
+    /**
+     * Attribute name requesting all user attributes.
+     */
+    private static final String ALL_USER_ATTRIBUTES = "*"; //$NON-NLS-1$
+
+    /**
+     * Length of a generalized time truncated to seconds, without the time zone.
+     */
+    private static final int TIMESTAMP_LENGTH = 14;
+
+    /**
+     * Format of the timestamps in polling filters.
+     */
+    private static final DateTimeFormatter TIMESTAMP_FORMAT =
+        DateTimeFormatter.ofPattern("yyyyMMddHHmmss'Z'", Locale.ROOT).withZone(ZoneOffset.UTC); //$NON-NLS-1$
+
+    /**
+     * Constructor. The subscription is started with <code>start()</code>.
+     *
+     * @param source the source of the connections
+     * @param release callback releasing a connection
+     * @param searchBase the search base DN
+     * @param searchScope the search scope
+     * @param searchFilter the search filter
+     * @param attributeNames the attribute names, or <code>null</code> for all user attributes
+     * @param mode the mode requested
+     * @param eventHandler the handler receiving the events
+     * @param resyncHandler the handler called when changes may have been missed
+     */
+    DirectorySubscription(ConnectionSource source, BiConsumer<LDAPConnection, LDAPException> release,
+                          String searchBase, int searchScope, String searchFilter, String[] attributeNames,
+                          Mode mode, Consumer<? super DirectoryChangeEvent> eventHandler,
+                          Runnable resyncHandler) {
+
+        super();
+        this.source = source;
+        this.release = release;
+        this.searchBase = searchBase;
+        this.searchScope = searchScope;
+        this.searchFilter = searchFilter;
+        this.attributeNames = attributeNames;
+        this.mode = mode;
+        this.eventHandler = eventHandler;
+        this.resyncHandler = resyncHandler;
+        this.pollInterval = DirectoryContext.getConfigurationProperty(
+            "ldap.subscription.pollInterval", DEFAULT_POLL_INTERVAL); //$NON-NLS-1$
+        this.retryInterval = DirectoryContext.getConfigurationProperty(
+            "ldap.subscription.retryInterval", DEFAULT_RETRY_INTERVAL); //$NON-NLS-1$
+        this.activeMode = mode == Mode.AUTO ? null : mode;
+    }
+
+    /**
+     * Returns the mode with the given name, as used in the library configuration.
+     *
+     * @param name the mode name, one of <code>auto</code>, <code>persistent</code>,
+     *             <code>changelog</code> or <code>polling</code>, ignoring case
+     *
+     * @return the mode
+     *
+     * @throws IllegalArgumentException the name is not known
+     */
+    static Mode modeForName(String name) {
+
+        for (Mode candidate : Mode.values()) {
+            if (candidate.name().equalsIgnoreCase(name)) {
+                return candidate;
+            }
+        }
+
+        throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPSUB_ERR_MODE", name)); //$NON-NLS-1$
+    }
+
+    /**
+     * Starts the thread running the subscription.
+     */
+    void start() {
+
+        thread = Thread.ofVirtual().name("directory-subscription-" + searchBase).start(this::run); //$NON-NLS-1$
+    }
+
+    /**
+     * Returns the mode requested.
+     *
+     * @return the mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the mode in use.
+     *
+     * @return the mode, or <code>null</code> if the mode requested is <code>AUTO</code> and the
+     *         server was not yet queried
+     */
+    public Mode getActiveMode() {
+        return activeMode;
+    }
+
+    /**
+     * Returns whether changes are being detected. This is <code>false</code> while the
+     * subscription is connecting or waiting to reconnect after an error.
+     *
+     * @return <code>true</code> if changes are being detected
+     */
+    public boolean isListening() {
+        return listening;
+    }
+
+    /**
+     * Returns whether the subscription is closed.
+     *
+     * @return <code>true</code> once closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns the number of events delivered to the handler.
+     *
+     * @return the event count
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Returns the number of times the subscription was restarted after an error.
+     *
+     * @return the restart count
+     */
+    public long getRestartCount() {
+        return restartCount;
+    }
+
+    /**
+     * Returns the last error raised while detecting changes or by the handler.
+     *
+     * @return the last error, or <code>null</code> if there was none
+     */
+    public DirectoryException getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Stops detecting changes. A persistent search running is abandoned, the connection is
+     * released by the subscription thread shortly afterwards, and no events are delivered
+     * once the handler returns.
+     */
+    @Override
+    public void close() {
+
+        closed = true;
+
+        LDAPConnection connection = activeConnection;
+        LDAPSearchQueue queue = activeQueue;
+        if (connection != null && queue != null) {
+            try {
+                // the abandoned search has no messages left, so the queue stops waiting
+                connection.abandon(queue);
+            } catch (LDAPException ldape) {
+                // the subscription thread abandons the search again
+            }
+        }
+
+        Thread worker = thread;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * Runs the subscription until closed, reconnecting after errors.
+     */
+    private void run() {
+
+        boolean restarted = false;
+
+        while (!closed) {
+            LDAPConnection connection = null;
+            LDAPException error = null;
+            boolean retryNow = false;
+
+            try {
+                connection = source.acquire();
+
+                if (activeMode == null) {
+                    activeMode = resolveMode(connection);
+                }
+
+                switch (activeMode) {
+                    case PERSISTENT:
+                        listen(connection, restarted);
+                        break;
+                    case CHANGELOG:
+                        pollChangelog(connection);
+                        break;
+                    default:
+                        pollTimestamps(connection);
+                        break;
+                }
+            } catch (LDAPException ldape) {
+                error = ldape;
+                lastError = new DirectoryException(
+                    DirectoryContext.getMessage("LDAPSUB_ERR_LISTEN", ldape.getMessage()), ldape); //$NON-NLS-1$
+                if (mode == Mode.AUTO && activeMode == Mode.PERSISTENT
+                    && ldape.getResultCode() == LDAPException.UNAVAILABLE_CRITICAL_EXTENSION) {
+                    persistentRejected = true;
+                    activeMode = null;
+                    retryNow = true;
+                }
+            } catch (DirectoryException de) {
+                lastError = de;
+            } catch (RuntimeException re) {
+                lastError = new DirectoryException(
+                    DirectoryContext.getMessage("LDAPSUB_ERR_LISTEN", re.toString()), re); //$NON-NLS-1$
+            } catch (InterruptedException ie) {
+                // the subscription was closed
+                Thread.currentThread().interrupt();
+            } finally {
+                listening = false;
+                if (connection != null) {
+                    release.accept(connection, error);
+                }
+            }
+
+            if (closed) {
+                break;
+            }
+
+            restarted = true;
+            restartCount++;
+
+            if (!retryNow) {
+                try {
+                    Thread.sleep(retryInterval);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolves the mode to be used in <code>AUTO</code> mode from the root DSE of the server.
+     *
+     * @param connection the connection
+     *
+     * @return the mode
+     *
+     * @throws LDAPException an error while reading the root DSE
+     */
+    private Mode resolveMode(LDAPConnection connection)
+        throws LDAPException {
+
+        LDAPEntry rootDSE = connection.read("", new String[] { //$NON-NLS-1$
+            ATTR_SUPPORTED_CONTROL, ATTR_CHANGELOG, ATTR_LAST_CHANGE_NUMBER});
+
+        LDAPAttribute controls = rootDSE.getAttribute(ATTR_SUPPORTED_CONTROL);
+        if (!persistentRejected && controls != null
+            && Arrays.asList(controls.getStringValueArray()).contains(PERSISTENT_SEARCH_OID)) {
+            return Mode.PERSISTENT;
+        }
+
+        LDAPAttribute changelog = rootDSE.getAttribute(ATTR_CHANGELOG);
+        if (changelog != null && rootDSE.getAttribute(ATTR_LAST_CHANGE_NUMBER) != null) {
+            changelogDN = changelog.getStringValue();
+            return Mode.CHANGELOG;
+        }
+
+        return Mode.POLLING;
+    }
+
+    /**
+     * Runs a persistent search, delivering the changes notified until it ends.
+     *
+     * @param connection the connection
+     * @param restarted whether the subscription is being restarted, so the resync handler is
+     *                  called once the search is running
+     *
+     * @throws LDAPException an error while running the search
+     */
+    private void listen(LDAPConnection connection, boolean restarted)
+        throws LDAPException {
+
+        LDAPSearchConstraints constraints = new LDAPSearchConstraints(connection.getSearchConstraints());
+        constraints.setTimeLimit(0);
+        constraints.setServerTimeLimit(0);
+        constraints.setMaxResults(0);
+        constraints.setControls(new LDAPPersistSearchControl(LDAPPersistSearchControl.ANY, true, true, true));
+
+        LDAPSearchQueue queue = connection.search(searchBase, searchScope, searchFilter, attributeNames,
+            false, (LDAPSearchQueue) null, constraints);
+        boolean running = true;
+        activeConnection = connection;
+        activeQueue = queue;
+
+        try {
+            listening = true;
+            if (restarted) {
+                resync();
+            }
+
+            while (!closed) {
+                // blocks until a change is notified, the connection is lost or close() abandons the search
+                LDAPMessage message = queue.getResponse();
+
+                if (message == null) {
+                    if (closed) {
+                        return;
+                    }
+                    throw new LDAPException(LDAPException.resultCodeToString(LDAPException.CONNECT_ERROR),
+                        LDAPException.CONNECT_ERROR, null);
+                } else if (message instanceof LDAPSearchResult) {
+                    deliver(toEvent((LDAPSearchResult) message));
+                } else if (message instanceof LDAPResponse) {
+                    // the server ended the search
+                    running = false;
+                    ((LDAPResponse) message).chkResultCode();
+                    return;
+                }
+            }
+        } finally {
+            activeQueue = null;
+            activeConnection = null;
+            if (running && connection.isConnected()) {
+                try {
+                    connection.abandon(queue);
+                } catch (LDAPException ldape) {
+                    // the connection is released anyway
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts an entry notified by a persistent search into an event.
+     *
+     * @param result the entry notified
+     *
+     * @return the event
+     */
+    static DirectoryChangeEvent toEvent(LDAPSearchResult result) {
+
+        LDAPEntry entry = result.getEntry();
+        LDAPControl[] controls = result.getControls();
+
+        if (controls != null) {
+            for (LDAPControl control : controls) {
+                LDAPEntryChangeControl change = toEntryChangeControl(control);
+                if (change != null) {
+                    long changeNumber = change.getHasChangeNumber() ? change.getChangeNumber() : -1;
+
+                    switch (change.getChangeType()) {
+                        case LDAPPersistSearchControl.ADD:
+                            return new DirectoryChangeEvent(
+                                DirectoryChange.Type.ADD, entry.getDN(), null, entry, changeNumber);
+                        case LDAPPersistSearchControl.DELETE:
+                            return new DirectoryChangeEvent(
+                                DirectoryChange.Type.DELETE, entry.getDN(), null, entry, changeNumber);
+                        case LDAPPersistSearchControl.MODDN:
+                            return new DirectoryChangeEvent(
+                                DirectoryChange.Type.RENAME, entry.getDN(), change.getPreviousDN(), entry,
+                                changeNumber);
+                        default:
+                            return new DirectoryChangeEvent(
+                                DirectoryChange.Type.MODIFY, entry.getDN(), null, entry, changeNumber);
+                    }
+                }
+            }
+        }
+
+        return new DirectoryChangeEvent(DirectoryChange.Type.MODIFY, entry.getDN(), null, entry, -1);
+    }
+
+    /**
+     * Returns a response control as an entry change control. JLDAP only decodes the control
+     * once the persistent search control class is loaded, so it is decoded here otherwise.
+     *
+     * @param control the response control
+     *
+     * @return the entry change control, or <code>null</code> if the control is not one or
+     *         cannot be decoded
+     */
+    private static LDAPEntryChangeControl toEntryChangeControl(LDAPControl control) {
+
+        if (control instanceof LDAPEntryChangeControl) {
+            return (LDAPEntryChangeControl) control;
+        }
+
+        if (!ENTRY_CHANGE_OID.equals(control.getID())) {
+            return null;
+        }
+
+        try {
+            return new LDAPEntryChangeControl(control.getID(), control.isCritical(), control.getValue());
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * Polls the changelog for new change records until closed.
+     *
+     * @param connection the connection
+     *
+     * @throws LDAPException an error while reading the changelog
+     * @throws InterruptedException the subscription was closed
+     */
+    private void pollChangelog(LDAPConnection connection)
+        throws LDAPException, InterruptedException {
+
+        if (changelogDN == null || lastChangeNumber < 0) {
+            LDAPEntry rootDSE = connection.read("", new String[] { //$NON-NLS-1$
+                ATTR_CHANGELOG, ATTR_LAST_CHANGE_NUMBER});
+            LDAPAttribute changelog = rootDSE.getAttribute(ATTR_CHANGELOG);
+            LDAPAttribute last = rootDSE.getAttribute(ATTR_LAST_CHANGE_NUMBER);
+            if (changelog == null || last == null) {
+                throw new LDAPException(LDAPException.resultCodeToString(LDAPException.NO_SUCH_OBJECT),
+                    LDAPException.NO_SUCH_OBJECT, null);
+            }
+            changelogDN = changelog.getStringValue();
+            if (lastChangeNumber < 0) {
+                lastChangeNumber = Long.parseLong(last.getStringValue().trim());
+            }
+        }
+
+        LDAPSearchConstraints constraints = new LDAPSearchConstraints(connection.getSearchConstraints());
+        constraints.setMaxResults(0);
+
+        String[] recordAttributes = {
+            ATTR_CHANGE_NUMBER, ATTR_TARGET_DN, ATTR_CHANGE_TYPE, ATTR_NEW_RDN, ATTR_NEW_SUPERIOR};
+
+        while (!closed) {
+            LDAPSearchResults results = connection.search(changelogDN, LDAPConnection.SCOPE_ONE,
+                "(" + ATTR_CHANGE_NUMBER + ">=" + (lastChangeNumber + 1) + ")", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                recordAttributes, false, constraints);
+            List<LDAPEntry> records = new ArrayList<>();
+            boolean truncated = false;
+
+            try {
+                while (results.hasMore()) {
+                    try {
+                        records.add(results.next());
+                    } catch (LDAPReferralException ldapre) {
+                        // referrals are not followed
+                        continue;
+                    }
+                }
+            } catch (LDAPException ldape) {
+                if (ldape.getResultCode() != LDAPException.SIZE_LIMIT_EXCEEDED) {
+                    throw ldape;
+                }
+                truncated = true;
+            }
+
+            listening = true;
+            records.sort(Comparator.comparingLong(DirectorySubscription::getChangeNumber));
+
+            for (LDAPEntry record : records) {
+                long changeNumber = getChangeNumber(record);
+                if (changeNumber <= lastChangeNumber) {
+                    continue;
+                }
+                lastChangeNumber = changeNumber;
+
+                DirectoryChangeEvent event = toEvent(record, changeNumber);
+                if (event != null && (isInScope(event.getObjectDN())
+                    || event.getPreviousDN() != null && isInScope(event.getPreviousDN()))) {
+                    deliver(event);
+                }
+            }
+
+            if (truncated) {
+                // records were returned out of order, so some may have been skipped
+                resync();
+            }
+
+            Thread.sleep(pollInterval);
+        }
+    }
+
+    /**
+     * Returns the change number of a change record.
+     *
+     * @param record the change record
+     *
+     * @return the change number, or -1 if not valid
+     */
+    private static long getChangeNumber(LDAPEntry record) {
+
+        LDAPAttribute attribute = record.getAttribute(ATTR_CHANGE_NUMBER);
+
+        try {
+            return attribute == null ? -1 : Long.parseLong(attribute.getStringValue().trim());
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
+    /**
+     * Converts a change record into an event.
+     *
+     * @param record the change record
+     * @param changeNumber the change number
+     *
+     * @return the event, or <code>null</code> if the record is not valid
+     */
+    static DirectoryChangeEvent toEvent(LDAPEntry record, long changeNumber) {
+
+        LDAPAttribute target = record.getAttribute(ATTR_TARGET_DN);
+        LDAPAttribute type = record.getAttribute(ATTR_CHANGE_TYPE);
+
+        if (target == null || type == null) {
+            return null;
+        }
+
+        String targetDN = target.getStringValue();
+
+        switch (type.getStringValue().trim().toLowerCase(Locale.ROOT)) {
+            case "add": //$NON-NLS-1$
+                return new DirectoryChangeEvent(DirectoryChange.Type.ADD, targetDN, null, null, changeNumber);
+            case "delete": //$NON-NLS-1$
+                return new DirectoryChangeEvent(DirectoryChange.Type.DELETE, targetDN, null, null, changeNumber);
+            case "modrdn": //$NON-NLS-1$
+            case "moddn": //$NON-NLS-1$
+                LDAPAttribute newRDN = record.getAttribute(ATTR_NEW_RDN);
+                if (newRDN == null) {
+                    return null;
+                }
+                LDAPAttribute newSuperior = record.getAttribute(ATTR_NEW_SUPERIOR);
+                String resultDN = DirectoryChange.rename(targetDN, newRDN.getStringValue(),
+                    newSuperior == null ? null : newSuperior.getStringValue(), false).getResultDN();
+                return new DirectoryChangeEvent(DirectoryChange.Type.RENAME, resultDN, targetDN, null, changeNumber);
+            default:
+                return new DirectoryChangeEvent(DirectoryChange.Type.MODIFY, targetDN, null, null, changeNumber);
+        }
+    }
+
+    /**
+     * Returns whether an entry is within the search base and scope of the subscription. DNs
+     * that cannot be parsed are considered in scope.
+     *
+     * @param objectDN the DN of the entry
+     *
+     * @return <code>true</code> if the entry is in scope
+     */
+    boolean isInScope(String objectDN) {
+
+        DN base;
+        DN dn;
+
+        try {
+            base = new DN(searchBase);
+            dn = new DN(objectDN);
+        } catch (IllegalArgumentException iae) {
+            return true;
+        }
+
+        boolean descendant = base.countRDNs() == 0 ? dn.countRDNs() > 0 : dn.isDescendantOf(base);
+
+        switch (searchScope) {
+            case LDAPConnection.SCOPE_BASE:
+                return dn.equals(base);
+            case LDAPConnection.SCOPE_ONE:
+                return descendant && dn.countRDNs() == base.countRDNs() + 1;
+            default:
+                return descendant || dn.equals(base);
+        }
+    }
+
+    /**
+     * Polls the subtree for entries modified since the last poll until closed. The first poll
+     * looks back one poll interval, to allow for a clock skew between client and server.
+     *
+     * @param connection the connection
+     *
+     * @throws LDAPException an error while searching the subtree
+     * @throws InterruptedException the subscription was closed
+     */
+    private void pollTimestamps(LDAPConnection connection)
+        throws LDAPException, InterruptedException {
+
+        if (watermark == null) {
+            watermark = TIMESTAMP_FORMAT.format(Instant.now().minusMillis(pollInterval));
+        }
+
+        LDAPSearchConstraints constraints = new LDAPSearchConstraints(connection.getSearchConstraints());
+        constraints.setMaxResults(0);
+
+        String[] pollAttributes;
+        if (attributeNames == null) {
+            pollAttributes = new String[] {ALL_USER_ATTRIBUTES, ATTR_MODIFY_TIMESTAMP, ATTR_CREATE_TIMESTAMP};
+        } else {
+            pollAttributes = Arrays.copyOf(attributeNames, attributeNames.length + 2);
+            pollAttributes[attributeNames.length] = ATTR_MODIFY_TIMESTAMP;
+            pollAttributes[attributeNames.length + 1] = ATTR_CREATE_TIMESTAMP;
+        }
+
+        while (!closed) {
+            LDAPSearchResults results = connection.search(searchBase, searchScope,
+                toPollingFilter(searchFilter, watermark), pollAttributes, false, constraints);
+            listening = true;
+
+            String newest = watermark;
+            Set<String> newestDNs = new HashSet<>();
+
+            while (results.hasMore()) {
+                LDAPEntry entry;
+                try {
+                    entry = results.next();
+                } catch (LDAPReferralException ldapre) {
+                    // referrals are not followed
+                    continue;
+                }
+
+                String modified = getTimestamp(entry, ATTR_MODIFY_TIMESTAMP);
+                String key = entry.getDN().toLowerCase(Locale.ROOT);
+
+                if (modified == null || modified.equals(watermark) && watermarkDNs.contains(key)) {
+                    continue;
+                }
+
+                int comparison = modified.compareTo(newest);
+                if (comparison > 0) {
+                    newest = modified;
+                    newestDNs.clear();
+                }
+                if (comparison >= 0) {
+                    newestDNs.add(key);
+                }
+
+                DirectoryChange.Type type = modified.equals(getTimestamp(entry, ATTR_CREATE_TIMESTAMP))
+                    ? DirectoryChange.Type.ADD : DirectoryChange.Type.MODIFY;
+                deliver(new DirectoryChangeEvent(type, entry.getDN(), null, entry, -1));
+            }
+
+            if (newest.equals(watermark)) {
+                watermarkDNs.addAll(newestDNs);
+            } else {
+                watermark = newest;
+                watermarkDNs = newestDNs;
+            }
+
+            Thread.sleep(pollInterval);
+        }
+    }
+
+    /**
+     * Returns the filter matching the entries of the subscription modified since a given time.
+     *
+     * @param searchFilter the search filter, or <code>null</code> for all entries
+     * @param timestamp the time, as a generalized time
+     *
+     * @return the polling filter
+     */
+    static String toPollingFilter(String searchFilter, String timestamp) {
+
+        String modifiedFilter = "(" + ATTR_MODIFY_TIMESTAMP + ">=" + timestamp + ")"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+        if (searchFilter == null || searchFilter.trim().length() == 0) {
+            return modifiedFilter;
+        }
+
+        String filter = searchFilter.trim();
+        if (filter.charAt(0) != '(') {
+            filter = '(' + filter + ')';
+        }
+
+        return "(&" + filter + modifiedFilter + ")"; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Returns a timestamp of an entry truncated to seconds, so it can be compared with others
+     * regardless of the fraction digits sent by the server.
+     *
+     * @param entry the entry
+     * @param attributeName the timestamp attribute name
+     *
+     * @return the timestamp as a generalized time in UTC, or <code>null</code> if not available
+     */
+    static String getTimestamp(LDAPEntry entry, String attributeName) {
+
+        LDAPAttribute attribute = entry.getAttribute(attributeName);
+
+        if (attribute == null) {
+            return null;
+        }
+
+        String value = attribute.getStringValue();
+        if (value == null || value.length() < TIMESTAMP_LENGTH) {
+            return null;
+        }
+
+        return value.substring(0, TIMESTAMP_LENGTH) + 'Z';
+    }
+
+    /**
+     * Delivers an event to the handler. Errors raised by the handler are recorded.
+     *
+     * @param event the event
+     */
+    private void deliver(DirectoryChangeEvent event) {
+
+        if (closed) {
+            return;
+        }
+
+        eventCount++;
+
+        try {
+            eventHandler.accept(event);
+        } catch (RuntimeException re) {
+            lastError = new DirectoryException(
+                DirectoryContext.getMessage("LDAPSUB_ERR_HANDLER", re.toString()), re); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Calls the resync handler, recording its errors so the subscription keeps running.
+     */
+    private void resync() {
+
+        try {
+            resyncHandler.run();
+        } catch (RuntimeException re) {
+            lastError = new DirectoryException(
+                DirectoryContext.getMessage("LDAPSUB_ERR_HANDLER", re.toString()), re); //$NON-NLS-1$
+        }
+    }
+}
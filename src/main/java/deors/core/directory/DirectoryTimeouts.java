@@ -0,0 +1,236 @@
+package deors.core.directory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPSearchConstraints;
+import com.novell.ldap.LDAPSocketFactory;
+
+/**
+ * Time and size limits applied to directory connections.<br>
+ *
+ * The connect timeout bounds the opening of the socket. The response timeout is a client-side
+ * limit on the time to wait for the response to each request: when exceeded, the request is
+ * abandoned and fails with result code <code>LDAP_TIMEOUT</code>, which is handled as a
+ * connection error. The server time and size limits are sent with every search and enforced
+ * by the directory server, except that paged searches, meant to walk results of any size, do
+ * not send the size limit and return every entry found.<br>
+ *
+ * Default settings are read from the library configuration:
+ * <code>ldap.timeout.connect</code>, <code>ldap.timeout.response</code>,
+ * <code>ldap.search.serverTimeLimit</code> and <code>ldap.search.sizeLimit</code>. A zero
+ * value disables the corresponding limit.<br>
+ *
+ * Instances are immutable.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectoryTimeouts {
+
+    /**
+     * Time in milliseconds to wait for a connection to be opened.
+     */
+    private final int connectTimeout;
+
+    /**
+     * Time in milliseconds to wait for the response to a request.
+     */
+    private final int responseTimeout;
+
+    /**
+     * Time in seconds the server may spend processing a search.
+     */
+    private final int serverTimeLimit;
+
+    /**
+     * Maximum number of entries returned by a search.
+     */
+    private final int sizeLimit;
+
+    /**
+     * Default connect timeout in milliseconds.
+     */
+    private static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+
+    /**
+     * Default response timeout in milliseconds.
+     */
+    private static final int DEFAULT_RESPONSE_TIMEOUT = 30000;
+
+    /**
+     * Default server time limit in seconds.
+     */
+    private static final int DEFAULT_SERVER_TIME_LIMIT = 0;
+
+    /**
+     * Default size limit, which is the JLDAP default.
+     */
+    private static final int DEFAULT_SIZE_LIMIT = 1000;
+
+    /**
+     * Constructor that reads the limits from the library configuration.
+     */
+    public DirectoryTimeouts() {
+
+        this(DirectoryContext.getConfigurationProperty("ldap.timeout.connect", DEFAULT_CONNECT_TIMEOUT), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.timeout.response", DEFAULT_RESPONSE_TIMEOUT), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.search.serverTimeLimit", DEFAULT_SERVER_TIME_LIMIT), //$NON-NLS-1$
+            DirectoryContext.getConfigurationProperty("ldap.search.sizeLimit", DEFAULT_SIZE_LIMIT)); //$NON-NLS-1$
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param connectTimeout time in milliseconds to wait for a connection to be opened, or zero
+     *                       for the operating system default
+     * @param responseTimeout time in milliseconds to wait for the response to a request, or zero
+     *                        to wait indefinitely
+     * @param serverTimeLimit time in seconds the server may spend processing a search, or zero
+     *                        for the server default
+     * @param sizeLimit maximum number of entries returned by a search, or zero for the server
+     *                  default
+     */
+    public DirectoryTimeouts(int connectTimeout, int responseTimeout, int serverTimeLimit, int sizeLimit) {
+
+        super();
+
+        if (connectTimeout < 0 || responseTimeout < 0 || serverTimeLimit < 0 || sizeLimit < 0) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPMGR_ERR_TIMEOUT_ARG")); //$NON-NLS-1$
+        }
+
+        this.connectTimeout = connectTimeout;
+        this.responseTimeout = responseTimeout;
+        this.serverTimeLimit = serverTimeLimit;
+        this.sizeLimit = sizeLimit;
+    }
+
+    /**
+     * Returns the time to wait for a connection to be opened.
+     *
+     * @return the connect timeout in milliseconds, or zero if disabled
+     */
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Returns the time to wait for the response to a request.
+     *
+     * @return the response timeout in milliseconds, or zero if disabled
+     */
+    public int getResponseTimeout() {
+        return responseTimeout;
+    }
+
+    /**
+     * Returns the time the server may spend processing a search.
+     *
+     * @return the server time limit in seconds, or zero if disabled
+     */
+    public int getServerTimeLimit() {
+        return serverTimeLimit;
+    }
+
+    /**
+     * Returns the maximum number of entries returned by a search. Paged searches are not
+     * limited.
+     *
+     * @return the size limit, or zero if disabled
+     */
+    public int getSizeLimit() {
+        return sizeLimit;
+    }
+
+    /**
+     * Creates an unconnected directory connection that applies these limits and the transport
+     * security in the library configuration.
+     *
+     * @return the new connection
+     */
+    LDAPConnection newConnection() {
+
+        return newConnection(DirectoryTls.getDefault());
+    }
+
+    /**
+     * Creates an unconnected directory connection that applies these limits and the given
+     * transport security. The connect timeout also bounds the TLS handshake.
+     *
+     * @param tls the transport security
+     *
+     * @return the new connection
+     */
+    LDAPConnection newConnection(DirectoryTls tls) {
+
+        LDAPSocketFactory socketFactory = tls.getMode() != DirectoryTls.Mode.NONE
+            ? tls.newSocketFactory(new ConnectTimeoutSocketFactory(connectTimeout), connectTimeout)
+            : connectTimeout > 0 ? new ConnectTimeoutSocketFactory(connectTimeout) : null;
+        LDAPConnection connection = socketFactory != null
+            ? new LDAPConnection(socketFactory)
+            : new LDAPConnection();
+        connection.setConstraints(toSearchConstraints());
+        return connection;
+    }
+
+    /**
+     * Returns the search constraints that apply these limits.
+     *
+     * @return new search constraints
+     */
+    LDAPSearchConstraints toSearchConstraints() {
+
+        LDAPSearchConstraints constraints = new LDAPSearchConstraints();
+        constraints.setTimeLimit(responseTimeout);
+        constraints.setServerTimeLimit(serverTimeLimit);
+        constraints.setMaxResults(sizeLimit);
+        return constraints;
+    }
+
+    /**
+     * Socket factory that bounds the time to open a socket, as JLDAP has no connect timeout.
+     */
+    private static final class ConnectTimeoutSocketFactory implements LDAPSocketFactory {
+
+        /**
+         * Time in milliseconds to wait for the socket to be opened.
+         */
+        private final int connectTimeout;
+
+        /**
+         * Constructor.
+         *
+         * @param connectTimeout time in milliseconds to wait for the socket to be opened, or
+         *                       zero to wait indefinitely
+         */
+        ConnectTimeoutSocketFactory(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        /**
+         * Opens a socket to the given host and port.
+         *
+         * @param host the host name or IP address
+         * @param port the port
+         *
+         * @return the connected socket
+         *
+         * @throws IOException an error while connecting, including a timeout
+         */
+        @Override
+        public Socket createSocket(String host, int port)
+            throws IOException {
+
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(host, port), connectTimeout);
+            } catch (IOException ioe) {
+                socket.close();
+                throw ioe;
+            }
+            return socket;
+        }
+    }
+}
@@ -0,0 +1,614 @@
+package deors.core.directory;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPException;
+import com.novell.ldap.LDAPSocketFactory;
+import com.novell.ldap.LDAPTLSSocketFactory;
+
+/**
+ * Transport security applied to directory connections.<br>
+ *
+ * Connections are either plain, opened with TLS from the start (LDAPS), or upgraded to TLS
+ * with the StartTLS extended operation right after being opened and before being bound. All
+ * the connections using an instance share its <code>SSLContext</code>, and therefore its
+ * client session cache: once a full handshake with a server has been done, the connections
+ * opened to it afterwards resume the session with an abbreviated handshake, which saves most
+ * of the connect latency and keeps reconnection storms after a server restart cheap. The
+ * handshake is bounded by the connect timeout of the connection.<br>
+ *
+ * Every handshake is counted and timed, telling full handshakes from resumed ones, so the
+ * effectiveness of the session cache can be monitored.<br>
+ *
+ * Default settings are read from the library configuration: <code>ldap.tls.mode</code>
+ * (<code>none</code>, <code>ldaps</code> or <code>starttls</code>),
+ * <code>ldap.tls.protocol</code>, <code>ldap.tls.verifyHostname</code>, the trust store and
+ * key store files, passwords and types, <code>ldap.tls.sessionCacheSize</code> and
+ * <code>ldap.tls.sessionTimeout</code>. Empty store files use the JDK defaults. The
+ * <code>SSLContext</code> is created when the first connection is opened.<br>
+ *
+ * Managers and pools use the instance returned by <code>getDefault()</code> unless set
+ * otherwise, so the whole application shares one session cache per configuration. The class
+ * is thread-safe.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectoryTls {
+
+    /**
+     * Transport security modes.
+     */
+    public enum Mode {
+
+        /**
+         * Plain connections.
+         */
+        NONE,
+
+        /**
+         * Connections opened with TLS from the start, usually on port 636.
+         */
+        LDAPS,
+
+        /**
+         * Plain connections upgraded to TLS with the StartTLS extended operation.
+         */
+        STARTTLS
+    }
+
+    /**
+     * The transport security mode.
+     */
+    private final Mode mode;
+
+    /**
+     * Whether the server host name is checked against its certificate.
+     */
+    private final boolean verifyHostname;
+
+    /**
+     * The TLS protocol requested to the JDK.
+     */
+    private final String protocol;
+
+    /**
+     * The trust store file, or empty for the JDK default.
+     */
+    private final String trustStore;
+
+    /**
+     * The trust store password, or empty.
+     */
+    private final String trustStorePassword;
+
+    /**
+     * The trust store type.
+     */
+    private final String trustStoreType;
+
+    /**
+     * The key store file, or empty for none.
+     */
+    private final String keyStore;
+
+    /**
+     * The key store password, or empty.
+     */
+    private final String keyStorePassword;
+
+    /**
+     * The key store type.
+     */
+    private final String keyStoreType;
+
+    /**
+     * The maximum number of sessions kept in the client session cache.
+     */
+    private final int sessionCacheSize;
+
+    /**
+     * Time in seconds a cached session can be resumed.
+     */
+    private final int sessionTimeout;
+
+    /**
+     * The SSL context shared by the connections, created on first use.
+     */
+    private volatile SSLContext sslContext;
+
+    /**
+     * Number of handshakes completed.
+     */
+    private final LongAdder handshakes = new LongAdder();
+
+    /**
+     * Number of handshakes completed by resuming a cached session.
+     */
+    private final LongAdder resumedHandshakes = new LongAdder();
+
+    /**
+     * Number of handshakes failed.
+     */
+    private final LongAdder failedHandshakes = new LongAdder();
+
+    /**
+     * Latency of the handshakes completed.
+     */
+    private final DirectoryLatencyHistogram handshakeLatency = new DirectoryLatencyHistogram();
+
+    /**
+     * Default TLS protocol.
+     */
+    private static final String DEFAULT_PROTOCOL = "TLS"; //$NON-NLS-1$
+
+    /**
+     * Default key store and trust store type.
+     */
+    private static final String DEFAULT_STORE_TYPE = "PKCS12"; //$NON-NLS-1$
+
+    /**
+     * Default maximum number of cached sessions.
+     */
+    private static final int DEFAULT_SESSION_CACHE_SIZE = 1000;
+
+    /**
+     * Default time in seconds a cached session can be resumed.
+     */
+    private static final int DEFAULT_SESSION_TIMEOUT = 86400;
+
+    /**
+     * Endpoint identification algorithm checking the host name as set for LDAP in RFC 2830.
+     */
+    private static final String ENDPOINT_IDENTIFICATION = "LDAPS"; //$NON-NLS-1$
+
+    /**
+     * The instance read from the library configuration, created on first use.
+     */
+    private static volatile DirectoryTls defaultInstance;
+
+    /**
+     * Constructor that reads the settings from the library configuration. Each instance has
+     * its own session cache; use <code>getDefault()</code> to share it.
+     *
+     * @throws IllegalArgumentException the configured mode is not known
+     */
+    public DirectoryTls() {
+
+        super();
+
+        this.mode = modeForName(DirectoryContext.getConfigurationProperty(
+            "ldap.tls.mode", Mode.NONE.name())); //$NON-NLS-1$
+        this.verifyHostname = DirectoryContext.getConfigurationProperty("ldap.tls.verifyHostname", true); //$NON-NLS-1$
+        this.protocol = DirectoryContext.getConfigurationProperty("ldap.tls.protocol", DEFAULT_PROTOCOL); //$NON-NLS-1$
+        this.trustStore = DirectoryContext.getConfigurationProperty("ldap.tls.trustStore", DirectoryContext.BLANK); //$NON-NLS-1$
+        this.trustStorePassword = DirectoryContext.getConfigurationProperty(
+            "ldap.tls.trustStorePassword", DirectoryContext.BLANK); //$NON-NLS-1$
+        this.trustStoreType = DirectoryContext.getConfigurationProperty(
+            "ldap.tls.trustStoreType", DEFAULT_STORE_TYPE); //$NON-NLS-1$
+        this.keyStore = DirectoryContext.getConfigurationProperty("ldap.tls.keyStore", DirectoryContext.BLANK); //$NON-NLS-1$
+        this.keyStorePassword = DirectoryContext.getConfigurationProperty(
+            "ldap.tls.keyStorePassword", DirectoryContext.BLANK); //$NON-NLS-1$
+        this.keyStoreType = DirectoryContext.getConfigurationProperty(
+            "ldap.tls.keyStoreType", DEFAULT_STORE_TYPE); //$NON-NLS-1$
+        this.sessionCacheSize = DirectoryContext.getConfigurationProperty(
+            "ldap.tls.sessionCacheSize", DEFAULT_SESSION_CACHE_SIZE); //$NON-NLS-1$
+        this.sessionTimeout = DirectoryContext.getConfigurationProperty(
+            "ldap.tls.sessionTimeout", DEFAULT_SESSION_TIMEOUT); //$NON-NLS-1$
+    }
+
+    /**
+     * Constructor with an <code>SSLContext</code> already initialized. The session cache of the
+     * context is used as configured by the caller.
+     *
+     * @param mode the transport security mode
+     * @param sslContext the SSL context, ignored if the mode is <code>NONE</code>
+     * @param verifyHostname whether the server host name is checked against its certificate
+     *
+     * @throws IllegalArgumentException the mode is <code>null</code>, or the context is
+     *                                  <code>null</code> with a mode other than
+     *                                  <code>NONE</code>
+     */
+    public DirectoryTls(Mode mode, SSLContext sslContext, boolean verifyHostname) {
+
+        super();
+
+        if (mode == null || mode != Mode.NONE && sslContext == null) {
+            throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPTLS_ERR_ARG")); //$NON-NLS-1$
+        }
+
+        this.mode = mode;
+        this.sslContext = sslContext;
+        this.verifyHostname = verifyHostname;
+        this.protocol = DEFAULT_PROTOCOL;
+        this.trustStore = DirectoryContext.BLANK;
+        this.trustStorePassword = DirectoryContext.BLANK;
+        this.trustStoreType = DEFAULT_STORE_TYPE;
+        this.keyStore = DirectoryContext.BLANK;
+        this.keyStorePassword = DirectoryContext.BLANK;
+        this.keyStoreType = DEFAULT_STORE_TYPE;
+        this.sessionCacheSize = DEFAULT_SESSION_CACHE_SIZE;
+        this.sessionTimeout = DEFAULT_SESSION_TIMEOUT;
+    }
+
+    /**
+     * Returns the instance read from the library configuration, shared by the managers and
+     * pools that are not given another one. The instance is created on the first call; if the
+     * configuration is not valid, the call fails and the next one reads it again.
+     *
+     * @return the shared instance
+     *
+     * @throws IllegalArgumentException the configured mode is not known
+     */
+    public static DirectoryTls getDefault() {
+
+        DirectoryTls instance = defaultInstance;
+        if (instance != null) {
+            return instance;
+        }
+
+        synchronized (DirectoryTls.class) {
+            if (defaultInstance == null) {
+                defaultInstance = new DirectoryTls();
+            }
+            return defaultInstance;
+        }
+    }
+
+    /**
+     * Returns the mode with the given name, ignoring case.
+     *
+     * @param name the mode name
+     *
+     * @return the mode
+     *
+     * @throws IllegalArgumentException the name is not known
+     */
+    static Mode modeForName(String name) {
+
+        for (Mode candidate : Mode.values()) {
+            if (candidate.name().equalsIgnoreCase(name)) {
+                return candidate;
+            }
+        }
+
+        throw new IllegalArgumentException(DirectoryContext.getMessage("LDAPTLS_ERR_MODE", name)); //$NON-NLS-1$
+    }
+
+    /**
+     * Returns the transport security mode.
+     *
+     * @return the mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns whether the server host name is checked against its certificate.
+     *
+     * @return <code>true</code> if the host name is checked
+     */
+    public boolean isVerifyHostname() {
+        return verifyHostname;
+    }
+
+    /**
+     * Returns the SSL context shared by the connections, creating it from the configured
+     * stores if not done yet.
+     *
+     * @return the SSL context
+     *
+     * @throws DirectoryException an error while reading the stores or creating the context
+     */
+    public SSLContext getSslContext()
+        throws DirectoryException {
+
+        try {
+            return sslContext();
+        } catch (IOException ioe) {
+            throw new DirectoryException(
+                DirectoryContext.getMessage("LDAPTLS_ERR_CONTEXT", ioe.getMessage()), ioe); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Returns the number of handshakes completed, full or resumed.
+     *
+     * @return the number of handshakes
+     */
+    public long getHandshakeCount() {
+        return handshakes.sum();
+    }
+
+    /**
+     * Returns the number of handshakes completed by resuming a cached session.
+     *
+     * @return the number of resumed handshakes
+     */
+    public long getResumedHandshakeCount() {
+        return resumedHandshakes.sum();
+    }
+
+    /**
+     * Returns the number of handshakes failed, including certificate and host name errors.
+     *
+     * @return the number of failed handshakes
+     */
+    public long getFailedHandshakeCount() {
+        return failedHandshakes.sum();
+    }
+
+    /**
+     * Returns the latency histogram of the handshakes completed. The histogram is live and
+     * can be reset by the caller.
+     *
+     * @return the handshake latency histogram
+     */
+    public DirectoryLatencyHistogram getHandshakeLatency() {
+        return handshakeLatency;
+    }
+
+    /**
+     * Returns a socket factory opening the sockets of one connection with this transport
+     * security. Plain sockets are opened by the given factory.
+     *
+     * @param plainFactory the factory opening plain sockets
+     * @param handshakeTimeout time in milliseconds to wait for the handshake, or zero to wait
+     *                         indefinitely
+     *
+     * @return the socket factory, or the plain factory if the mode is <code>NONE</code>
+     */
+    LDAPSocketFactory newSocketFactory(LDAPSocketFactory plainFactory, int handshakeTimeout) {
+
+        if (mode == Mode.NONE) {
+            return plainFactory;
+        }
+
+        return new TlsSocketFactory(plainFactory, handshakeTimeout);
+    }
+
+    /**
+     * Upgrades a connection just opened to TLS, if the mode is <code>STARTTLS</code>.
+     *
+     * @param connection the connection
+     *
+     * @throws LDAPException an error while running StartTLS or in the handshake
+     */
+    void secure(LDAPConnection connection)
+        throws LDAPException {
+
+        if (mode == Mode.STARTTLS) {
+            connection.startTLS();
+        }
+    }
+
+    /**
+     * Returns the SSL context, creating it from the configured stores if not done yet.
+     *
+     * @return the SSL context
+     *
+     * @throws IOException an error while reading the stores or creating the context
+     */
+    private SSLContext sslContext()
+        throws IOException {
+
+        SSLContext context = sslContext;
+        if (context != null) {
+            return context;
+        }
+
+        synchronized (this) {
+            if (sslContext == null) {
+                try {
+                    sslContext = createContext();
+                } catch (GeneralSecurityException gse) {
+                    throw new SSLException(gse.getMessage(), gse);
+                }
+            }
+            return sslContext;
+        }
+    }
+
+    /**
+     * Creates the SSL context from the configured stores and sets up its client session cache.
+     *
+     * @return the SSL context
+     *
+     * @throws IOException an error while reading the stores
+     * @throws GeneralSecurityException an error while creating the context
+     */
+    private SSLContext createContext()
+        throws IOException, GeneralSecurityException {
+
+        KeyManager[] keyManagers = null;
+        if (!keyStore.isEmpty()) {
+            KeyManagerFactory factory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            factory.init(loadStore(keyStore, keyStoreType, keyStorePassword), keyStorePassword.toCharArray());
+            keyManagers = factory.getKeyManagers();
+        }
+
+        TrustManager[] trustManagers = null;
+        if (!trustStore.isEmpty()) {
+            TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            factory.init(loadStore(trustStore, trustStoreType, trustStorePassword));
+            trustManagers = factory.getTrustManagers();
+        }
+
+        SSLContext context = SSLContext.getInstance(protocol);
+        context.init(keyManagers, trustManagers, null);
+
+        SSLSessionContext sessions = context.getClientSessionContext();
+        sessions.setSessionCacheSize(sessionCacheSize);
+        sessions.setSessionTimeout(sessionTimeout);
+
+        return context;
+    }
+
+    /**
+     * Loads a key store file.
+     *
+     * @param fileName the file name
+     * @param type the store type
+     * @param password the store password, or empty
+     *
+     * @return the key store
+     *
+     * @throws IOException an error while reading the file
+     * @throws GeneralSecurityException an error while loading the store
+     */
+    private static KeyStore loadStore(String fileName, String type, String password)
+        throws IOException, GeneralSecurityException {
+
+        KeyStore store = KeyStore.getInstance(type);
+        try (InputStream input = new FileInputStream(fileName)) {
+            store.load(input, password.isEmpty() ? null : password.toCharArray());
+        }
+        return store;
+    }
+
+    /**
+     * Runs the handshake on a socket layered over a plain one, recording its outcome.
+     *
+     * @param plainSocket the connected plain socket
+     * @param host the server host name, checked against its certificate and used as the key
+     *             of the session cache
+     * @param port the server port
+     * @param handshakeTimeout time in milliseconds to wait for the handshake, or zero to wait
+     *                         indefinitely
+     *
+     * @return the TLS socket
+     *
+     * @throws IOException an error in the handshake, including a timeout
+     */
+    private Socket handshake(Socket plainSocket, String host, int port, int handshakeTimeout)
+        throws IOException {
+
+        SSLSocket socket;
+        try {
+            socket = (SSLSocket) sslContext().getSocketFactory().createSocket(plainSocket, host, port, true);
+        } catch (IOException ioe) {
+            failedHandshakes.increment();
+            plainSocket.close();
+            throw ioe;
+        }
+
+        try {
+            if (verifyHostname) {
+                SSLParameters parameters = socket.getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm(ENDPOINT_IDENTIFICATION);
+                socket.setSSLParameters(parameters);
+            }
+
+            int soTimeout = socket.getSoTimeout();
+            socket.setSoTimeout(handshakeTimeout);
+            long startedMillis = System.currentTimeMillis();
+            long started = System.nanoTime();
+            socket.startHandshake();
+            handshakeLatency.record(System.nanoTime() - started);
+            socket.setSoTimeout(soTimeout);
+
+            // a resumed session keeps the creation time of the handshake that established it
+            SSLSession session = socket.getSession();
+            handshakes.increment();
+            if (session.getCreationTime() < startedMillis) {
+                resumedHandshakes.increment();
+            }
+        } catch (IOException ioe) {
+            failedHandshakes.increment();
+            socket.close();
+            throw ioe;
+        }
+
+        return socket;
+    }
+
+    /**
+     * Socket factory of one connection, opening plain sockets with a delegate factory and
+     * running the TLS handshake on them when the connection is opened (LDAPS) or upgraded
+     * (StartTLS).
+     */
+    private final class TlsSocketFactory implements LDAPTLSSocketFactory {
+
+        /**
+         * The factory opening plain sockets.
+         */
+        private final LDAPSocketFactory plainFactory;
+
+        /**
+         * Time in milliseconds to wait for the handshake.
+         */
+        private final int handshakeTimeout;
+
+        /**
+         * The host name the connection was opened to, kept for the StartTLS handshake.
+         */
+        private volatile String host;
+
+        /**
+         * Constructor.
+         *
+         * @param plainFactory the factory opening plain sockets
+         * @param handshakeTimeout time in milliseconds to wait for the handshake
+         */
+        TlsSocketFactory(LDAPSocketFactory plainFactory, int handshakeTimeout) {
+
+            this.plainFactory = plainFactory;
+            this.handshakeTimeout = handshakeTimeout;
+        }
+
+        /**
+         * Opens a socket to the given host and port, with TLS in LDAPS mode.
+         *
+         * @param host the host name or IP address
+         * @param port the port
+         *
+         * @return the connected socket
+         *
+         * @throws IOException an error while connecting or in the handshake
+         */
+        @Override
+        public Socket createSocket(String host, int port)
+            throws IOException {
+
+            this.host = host;
+            Socket socket = plainFactory.createSocket(host, port);
+            return mode == Mode.LDAPS ? handshake(socket, host, port, handshakeTimeout) : socket;
+        }
+
+        /**
+         * Layers TLS over the plain socket of the connection, after a StartTLS request.
+         *
+         * @param socket the plain socket
+         *
+         * @return the TLS socket
+         *
+         * @throws IOException an error in the handshake
+         */
+        @Override
+        public Socket createSocket(Socket socket)
+            throws IOException {
+
+            String peerHost = host != null ? host : socket.getInetAddress().getHostName();
+            return handshake(socket, peerHost, socket.getPort(), handshakeTimeout);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package deors.core.directory;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Progress of an LDIF export or import, as reported to progress handlers and returned once
+ * finished.<br>
+ *
+ * Instances are immutable snapshots.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public final class DirectoryTransferProgress {
+
+    /**
+     * Number of entries or changes processed.
+     */
+    private final long entryCount;
+
+    /**
+     * Number of changes that failed.
+     */
+    private final long failureCount;
+
+    /**
+     * Number of bytes written or read.
+     */
+    private final long byteCount;
+
+    /**
+     * Time elapsed since the transfer started, in nanoseconds.
+     */
+    private final long elapsedNanos;
+
+    /**
+     * Whether the transfer is finished.
+     */
+    private final boolean finished;
+
+    /**
+     * Constructor.
+     *
+     * @param entryCount number of entries or changes processed
+     * @param failureCount number of changes that failed
+     * @param byteCount number of bytes written or read
+     * @param elapsedNanos time elapsed since the transfer started, in nanoseconds
+     * @param finished whether the transfer is finished
+     */
+    DirectoryTransferProgress(long entryCount, long failureCount, long byteCount, long elapsedNanos,
+                              boolean finished) {
+
+        super();
+        this.entryCount = entryCount;
+        this.failureCount = failureCount;
+        this.byteCount = byteCount;
+        this.elapsedNanos = elapsedNanos;
+        this.finished = finished;
+    }
+
+    /**
+     * Returns the number of entries exported or changes imported so far, including failed
+     * changes.
+     *
+     * @return the entry count
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Returns the number of changes that failed. Always zero for exports.
+     *
+     * @return the failure count
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Returns the number of bytes written or read so far.
+     *
+     * @return the byte count
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Returns the time elapsed since the transfer started.
+     *
+     * @return the elapsed time in milliseconds
+     */
+    public long getElapsedTime() {
+
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    /**
+     * Returns whether the transfer is finished.
+     *
+     * @return <code>true</code> for the final report
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Returns the average throughput in entries per second.
+     *
+     * @return the entries per second, or zero if no time elapsed
+     */
+    public double getEntriesPerSecond() {
+
+        return elapsedNanos == 0 ? 0 : entryCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    /**
+     * Returns the average throughput in bytes per second.
+     *
+     * @return the bytes per second, or zero if no time elapsed
+     */
+    public double getBytesPerSecond() {
+
+        return elapsedNanos == 0 ? 0 : byteCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    /**
+     * Returns a string representation of the progress.
+     *
+     * @return the counts and throughput
+     */
+    @Override
+    public String toString() {
+
+        return String.format(Locale.ROOT, "%d entries (%d failed), %d bytes in %d ms, %.1f entries/s", //$NON-NLS-1$
+            entryCount, failureCount, byteCount, getElapsedTime(), getEntriesPerSecond());
+    }
+}
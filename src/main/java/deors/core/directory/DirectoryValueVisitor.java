@@ -0,0 +1,26 @@
+package deors.core.directory;
+
+/**
+ * Visitor of the values of an attribute, receiving them as character sequences instead of
+ * strings.<br>
+ *
+ * The sequence passed to <code>visitValue()</code> may be a view over a buffer reused for the
+ * next value, so it is valid only until the method returns and must not be retained. Callers
+ * needing the value afterwards should call <code>toString()</code> on it.
+ *
+ * @author deors
+ * @version 1.0
+ * @see DirectoryManager#visitAttributeValues(String, String, DirectoryValueVisitor)
+ */
+@FunctionalInterface
+public interface DirectoryValueVisitor {
+
+    /**
+     * Called once per value, in the order returned by the directory.
+     *
+     * @param value the value, valid only until this method returns
+     *
+     * @return <code>true</code> to continue with the next value, <code>false</code> to stop
+     */
+    boolean visitValue(CharSequence value);
+}
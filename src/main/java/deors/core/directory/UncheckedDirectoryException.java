@@ -0,0 +1,36 @@
+package deors.core.directory;
+
+/**
+ * Wraps a <code>DirectoryException</code> with an unchecked exception. Used by lazily evaluated
+ * results, like search streams and iterators, which cannot throw checked exceptions.
+ *
+ * @author deors
+ * @version 1.0
+ */
+public class UncheckedDirectoryException
+    extends RuntimeException {
+
+    /**
+     * Serialization ID.
+     */
+    private static final long serialVersionUID = 4816253379082545148L;
+
+    /**
+     * Exception constructor.
+     *
+     * @param cause the directory exception
+     */
+    public UncheckedDirectoryException(DirectoryException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    /**
+     * Returns the wrapped directory exception.
+     *
+     * @return the directory exception
+     */
+    @Override
+    public DirectoryException getCause() {
+        return (DirectoryException) super.getCause();
+    }
+}
@@ -0,0 +1,194 @@
+package deors.core.directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedConstruction;
+
+import com.novell.ldap.LDAPAttribute;
+import com.novell.ldap.LDAPAttributeSet;
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPEntry;
+import com.novell.ldap.LDAPException;
+import com.novell.ldap.LDAPResponse;
+import com.novell.ldap.LDAPSearchQueue;
+import com.novell.ldap.LDAPSearchResult;
+
+public class AsyncDirectoryManagerTestCase {
+
+    public AsyncDirectoryManagerTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testConnectIAE() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> new AsyncDirectoryManager().connect("", 2000));
+        assertEquals("error while creating connection: invalid directory host and/or port", ex.getMessage());
+    }
+
+    @Test
+    public void testGetAttributeValueNotConnected() {
+
+        AsyncDirectoryManager adm = new AsyncDirectoryManager();
+        assertFalse(adm.isConnected());
+
+        CompletionException ex = assertThrows(CompletionException.class,
+            () -> adm.getAttributeValue("theObjectDN", "theAttributeName").join());
+        assertInstanceOf(DirectoryException.class, ex.getCause());
+        assertEquals("there is no active connection to perform action", ex.getCause().getMessage());
+    }
+
+    @Test
+    public void testConnectError() {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> doThrow(new LDAPException("error", 1, "error"))
+                    .when(connection).connect("localhost", 2000))) {
+
+            AsyncDirectoryManager adm = new AsyncDirectoryManager();
+            CompletionException ex = assertThrows(CompletionException.class,
+                () -> adm.connect("localhost", 2000).join());
+            assertInstanceOf(DirectoryException.class, ex.getCause());
+            assertFalse(adm.isConnected());
+        }
+    }
+
+    @Test
+    public void testConnectAgainAfterError() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> {
+                    if (context.getCount() == 1) {
+                        doThrow(new LDAPException("error", 1, "error")).when(connection).connect("localhost", 2000);
+                    }
+                });
+             AsyncDirectoryManager adm = new AsyncDirectoryManager()) {
+
+            assertThrows(CompletionException.class, () -> adm.connect("localhost", 2000).join());
+            verify(mocked.constructed().get(0)).disconnect();
+
+            adm.connect("localhost", 2000).join();
+            assertTrue(adm.isConnected());
+        }
+    }
+
+    @Test
+    public void testCloseWhileConnecting() throws DirectoryException, LDAPException, InterruptedException {
+
+        CountDownLatch connecting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> doAnswer(invocation -> {
+                    connecting.countDown();
+                    release.await();
+                    return null;
+                }).when(connection).connect("localhost", 2000))) {
+
+            AsyncDirectoryManager adm = new AsyncDirectoryManager();
+            CompletableFuture<Void> future = adm.connect("localhost", 2000);
+            assertTrue(connecting.await(10, TimeUnit.SECONDS));
+
+            adm.close();
+            release.countDown();
+
+            CompletionException ex = assertThrows(CompletionException.class, future::join);
+            assertEquals("error while creating connection: the manager was closed", ex.getCause().getMessage());
+            verify(mocked.constructed().get(0)).disconnect();
+            assertFalse(adm.isConnected());
+        }
+    }
+
+    @Test
+    public void testConnectTwice() throws DirectoryException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class);
+             AsyncDirectoryManager adm = new AsyncDirectoryManager()) {
+
+            adm.connect("localhost", 2000).join();
+            assertTrue(adm.isConnected());
+
+            CompletionException ex = assertThrows(CompletionException.class,
+                () -> adm.connect("localhost", 2000).join());
+            assertEquals("error while creating connection: an active connection exists", ex.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testGetAttributeValueOk() throws DirectoryException, LDAPException {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("theAttributeName", "theValue"));
+        LDAPSearchResult result = mock(LDAPSearchResult.class);
+        when(result.getMessageID()).thenReturn(7);
+        when(result.getEntry()).thenReturn(new LDAPEntry("theObjectDN", attributes));
+        LDAPResponse response = mock(LDAPResponse.class);
+        when(response.getMessageID()).thenReturn(7);
+        when(response.getResultCode()).thenReturn(LDAPException.SUCCESS);
+
+        LDAPSearchQueue queue = mock(LDAPSearchQueue.class);
+        when(queue.getMessageIDs()).thenReturn(new int[] {7});
+        when(queue.getResponse()).thenReturn(result, response, null);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    eq("theObjectDN"), eq(LDAPConnection.SCOPE_BASE), eq(""),
+                    aryEq(new String[] {"theAttributeName"}), eq(false), nullable(LDAPSearchQueue.class)))
+                    .thenReturn(queue));
+             AsyncDirectoryManager adm = new AsyncDirectoryManager()) {
+
+            adm.connect("localhost", 2000).join();
+            CompletableFuture<String> value = adm.getAttributeValue("theObjectDN", "theAttributeName");
+
+            assertEquals("theValue", value.join());
+            assertEquals(0, adm.getOutstandingCount());
+        }
+    }
+
+    @Test
+    public void testGetAttributeValueError() throws DirectoryException, LDAPException {
+
+        LDAPResponse response = mock(LDAPResponse.class);
+        when(response.getMessageID()).thenReturn(7);
+        when(response.getResultCode()).thenReturn(LDAPException.NO_SUCH_OBJECT);
+
+        LDAPSearchQueue queue = mock(LDAPSearchQueue.class);
+        when(queue.getMessageIDs()).thenReturn(new int[] {7});
+        when(queue.getResponse()).thenReturn(response, null);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    eq("theObjectDN"), eq(LDAPConnection.SCOPE_BASE), eq(""),
+                    aryEq(new String[] {"theAttributeName"}), eq(false), nullable(LDAPSearchQueue.class)))
+                    .thenReturn(queue));
+             AsyncDirectoryManager adm = new AsyncDirectoryManager()) {
+
+            adm.connect("localhost", 2000).join();
+
+            CompletionException ex = assertThrows(CompletionException.class,
+                () -> adm.getAttributeValue("theObjectDN", "theAttributeName").join());
+            assertInstanceOf(DirectoryException.class, ex.getCause());
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package deors.core.directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+import com.novell.ldap.LDAPAttribute;
+
+public class DirectoryAttributeCacheTestCase {
+
+    public DirectoryAttributeCacheTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testConstructorIAE() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> new DirectoryAttributeCache(0, 1000, 1000));
+        assertEquals("error while creating attribute cache: invalid size or time-to-live", ex.getMessage());
+    }
+
+    @Test
+    public void testDefaultConstructor() {
+
+        DirectoryAttributeCache cache = new DirectoryAttributeCache();
+        assertEquals(10000, cache.getMaxSize());
+        assertEquals(300000, cache.getTimeToLive());
+        assertEquals(60000, cache.getNegativeTimeToLive());
+    }
+
+    @Test
+    public void testHitAndMiss() {
+
+        DirectoryAttributeCache cache = new DirectoryAttributeCache(10, 60000, 60000);
+        LDAPAttribute attribute = new LDAPAttribute("mail", "jdoe@example.com");
+
+        assertNull(cache.lookup("uid=jdoe,ou=people", "mail"));
+        cache.store("uid=jdoe,ou=people", "mail", attribute);
+
+        assertSame(attribute, cache.lookup("UID=jdoe,ou=People", "MAIL").attribute);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testNegativeCaching() {
+
+        DirectoryAttributeCache cache = new DirectoryAttributeCache(10, 60000, 60000);
+        cache.store("uid=jdoe,ou=people", "mail", null);
+
+        DirectoryAttributeCache.CacheEntry entry = cache.lookup("uid=jdoe,ou=people", "mail");
+        assertNotNull(entry);
+        assertNull(entry.attribute);
+    }
+
+    @Test
+    public void testZeroTimeToLiveDisablesCaching() {
+
+        DirectoryAttributeCache cache = new DirectoryAttributeCache(10, 60000, 0);
+        cache.store("uid=jdoe,ou=people", "mail", null);
+
+        assertNull(cache.lookup("uid=jdoe,ou=people", "mail"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testExpiration() throws InterruptedException {
+
+        DirectoryAttributeCache cache = new DirectoryAttributeCache(10, 1, 1);
+        cache.store("uid=jdoe,ou=people", "mail", new LDAPAttribute("mail", "jdoe@example.com"));
+
+        Thread.sleep(5);
+
+        assertNull(cache.lookup("uid=jdoe,ou=people", "mail"));
+        assertEquals(1, cache.getExpirationCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+
+        DirectoryAttributeCache cache = new DirectoryAttributeCache(2, 60000, 60000);
+        cache.store("uid=a", "mail", new LDAPAttribute("mail", "a"));
+        cache.store("uid=b", "mail", new LDAPAttribute("mail", "b"));
+        cache.lookup("uid=a", "mail");
+        cache.store("uid=c", "mail", new LDAPAttribute("mail", "c"));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNotNull(cache.lookup("uid=a", "mail"));
+        assertNull(cache.lookup("uid=b", "mail"));
+        assertNotNull(cache.lookup("uid=c", "mail"));
+    }
+
+    @Test
+    public void testSampledEviction() {
+
+        DirectoryAttributeCache cache = new DirectoryAttributeCache(40, 60000, 60000);
+        for (int i = 0; i < 40; i++) {
+            cache.store("uid=" + i, "mail", new LDAPAttribute("mail", Integer.toString(i)));
+        }
+        cache.lookup("uid=0", "mail");
+        cache.store("uid=40", "mail", new LDAPAttribute("mail", "40"));
+
+        assertEquals(40, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNotNull(cache.lookup("uid=0", "mail"));
+        assertNotNull(cache.lookup("uid=40", "mail"));
+    }
+
+    @Test
+    public void testInvalidate() {
+
+        DirectoryAttributeCache cache = new DirectoryAttributeCache(10, 60000, 60000);
+        cache.store("uid=a", "mail", new LDAPAttribute("mail", "a"));
+        cache.store("uid=a", "cn", new LDAPAttribute("cn", "a"));
+        cache.store("uid=ab", "mail", new LDAPAttribute("mail", "ab"));
+        cache.store("uid=b", "mail", new LDAPAttribute("mail", "b"));
+
+        cache.invalidate("uid=b", "mail");
+        assertEquals(3, cache.size());
+
+        cache.invalidate("uid=a");
+        assertEquals(1, cache.size());
+        assertNotNull(cache.lookup("uid=ab", "mail"));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testNormalizedDN() {
+
+        DirectoryAttributeCache cache = new DirectoryAttributeCache(10, 60000, 60000);
+        cache.store("uid=jdoe, ou=people", "mail", new LDAPAttribute("mail", "jdoe@example.com"));
+
+        assertNotNull(cache.lookup("UID=jdoe,ou=People", "mail"));
+
+        cache.invalidate("uid=jdoe,  ou=people");
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testStoreSkippedAfterInvalidation() {
+
+        DirectoryAttributeCache cache = new DirectoryAttributeCache(10, 60000, 60000);
+
+        long generation = cache.getGeneration();
+        cache.invalidate("uid=b");
+        assertFalse(cache.store("uid=a", "mail", new LDAPAttribute("mail", "a"), generation));
+        assertNull(cache.lookup("uid=a", "mail"));
+
+        generation = cache.getGeneration();
+        assertTrue(cache.store("uid=a", "mail", new LDAPAttribute("mail", "a"), generation));
+        cache.clear();
+        assertFalse(cache.store("uid=a", "cn", new LDAPAttribute("cn", "a"), generation));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidateAfterEvictionAndExpiration() throws InterruptedException {
+
+        DirectoryAttributeCache cache = new DirectoryAttributeCache(2, 60000, 1);
+        cache.store("uid=a", "mail", new LDAPAttribute("mail", "a"));
+        cache.store("uid=a", "cn", new LDAPAttribute("cn", "a"));
+        cache.store("uid=b", "mail", null);
+        assertEquals(2, cache.size());
+
+        Thread.sleep(5);
+        assertNull(cache.lookup("uid=b", "mail"));
+
+        cache.store("uid=b", "cn", new LDAPAttribute("cn", "b"));
+        cache.invalidate("UID=A");
+        assertEquals(1, cache.size());
+        assertNotNull(cache.lookup("uid=b", "cn"));
+
+        cache.invalidate("uid=b");
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testConfigurationReload() throws IOException, DirectoryException {
+
+        DirectoryAttributeCache configured = new DirectoryAttributeCache();
+        DirectoryAttributeCache explicit = new DirectoryAttributeCache(10, 60000, 60000);
+        for (String uid : new String[] {"uid=a", "uid=b", "uid=c"}) {
+            configured.store(uid, "mail", new LDAPAttribute("mail", uid));
+            explicit.store(uid, "mail", new LDAPAttribute("mail", uid));
+        }
+
+        Path file = Files.createTempFile("directory", ".properties");
+        try {
+            Files.writeString(file, "ldap.cache.maxSize = 2\nldap.cache.timeToLive = 1000\n", StandardCharsets.UTF_8);
+            DirectoryContext.loadConfiguration(file);
+
+            configured.store("uid=d", "mail", new LDAPAttribute("mail", "d"));
+            explicit.store("uid=d", "mail", new LDAPAttribute("mail", "d"));
+
+            assertEquals(2, configured.getMaxSize());
+            assertEquals(1000, configured.getTimeToLive());
+            assertEquals(2, configured.size());
+            assertNotNull(configured.lookup("uid=d", "mail"));
+            assertEquals(10, explicit.getMaxSize());
+            assertEquals(4, explicit.size());
+        } finally {
+            DirectoryContext.loadConfiguration(null);
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package deors.core.directory;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.novell.ldap.LDAPAttribute;
+
+public class DirectoryAttributeValuesTestCase {
+
+    public DirectoryAttributeValuesTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testGetBuffer() {
+
+        LDAPAttribute attribute = new LDAPAttribute("jpegPhoto", new byte[] {4, 8, -32});
+
+        ByteBuffer buffer = DirectoryAttributeValues.getBuffer(attribute);
+
+        assertTrue(buffer.isReadOnly());
+        assertEquals(3, buffer.remaining());
+        assertEquals(ByteBuffer.wrap(new byte[] {4, 8, -32}), buffer);
+        assertThrows(ReadOnlyBufferException.class, () -> buffer.put(0, (byte) 1));
+        assertArrayEquals(new byte[] {4, 8, -32}, attribute.getByteValue());
+    }
+
+    @Test
+    public void testGetBufferEmpty() {
+
+        assertEquals(0, DirectoryAttributeValues.getBuffer(null).remaining());
+        assertEquals(0, DirectoryAttributeValues.getBuffer(new LDAPAttribute("jpegPhoto")).remaining());
+    }
+
+    @Test
+    public void testGetBuffers() {
+
+        LDAPAttribute attribute = new LDAPAttribute("userCertificate", new byte[] {1, 2});
+        attribute.addValue(new byte[] {3});
+
+        List<ByteBuffer> buffers = DirectoryAttributeValues.getBuffers(attribute).collect(Collectors.toList());
+
+        assertEquals(2, buffers.size());
+        assertEquals(ByteBuffer.wrap(new byte[] {1, 2}), buffers.get(0));
+        assertEquals(ByteBuffer.wrap(new byte[] {3}), buffers.get(1));
+        assertTrue(buffers.get(1).isReadOnly());
+        assertEquals(0, DirectoryAttributeValues.getBuffers(null).count());
+    }
+
+    @Test
+    public void testGetInputStream() throws IOException {
+
+        LDAPAttribute attribute = new LDAPAttribute("jpegPhoto", new byte[] {4, 8, -32});
+
+        try (InputStream stream = DirectoryAttributeValues.getInputStream(attribute)) {
+            assertArrayEquals(new byte[] {4, 8, -32}, stream.readAllBytes());
+        }
+
+        try (InputStream stream = DirectoryAttributeValues.getInputStream(null)) {
+            assertEquals(-1, stream.read());
+        }
+    }
+
+    @Test
+    public void testDirectoryAttributes() throws IOException {
+
+        Map<String, LDAPAttribute> found = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        found.put("jpegPhoto", new LDAPAttribute("jpegPhoto", new byte[] {4, 8, -32}));
+        DirectoryAttributes attributes = new DirectoryAttributes("theObjectDN", found);
+
+        assertEquals(ByteBuffer.wrap(new byte[] {4, 8, -32}), attributes.getValueBuffer("jpegPhoto"));
+        assertEquals(1, attributes.getValueBuffers("jpegPhoto").count());
+        assertEquals(0, attributes.getValueBuffer("cn").remaining());
+
+        try (InputStream stream = attributes.getValueStream("jpegPhoto")) {
+            assertArrayEquals(new byte[] {4, 8, -32}, stream.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testGetStrings() {
+
+        LDAPAttribute attribute = new LDAPAttribute("cn", new String[] {"John", "Jöhn €"});
+
+        assertEquals("John", DirectoryAttributeValues.getString(attribute));
+        assertArrayEquals(new String[] {"John", "Jöhn €"}, DirectoryAttributeValues.getStrings(attribute));
+        assertEquals(null, DirectoryAttributeValues.getString(null));
+        assertEquals(0, DirectoryAttributeValues.getStrings(new LDAPAttribute("cn")).length);
+    }
+
+    @Test
+    public void testVisit() {
+
+        String longValue = "x".repeat(10000) + "ü";
+        LDAPAttribute attribute = new LDAPAttribute("description",
+            new String[] {"plain", "Jöhn € 𝄞", "", longValue});
+        List<String> visited = new ArrayList<>();
+
+        assertEquals(4, DirectoryAttributeValues.visit(attribute, value -> visited.add(value.toString())));
+        assertEquals(Arrays.asList("plain", "Jöhn € 𝄞", "", longValue), visited);
+
+        visited.clear();
+        assertEquals(1, DirectoryAttributeValues.visit(attribute, value -> {
+            visited.add(value.subSequence(1, 3).toString());
+            assertEquals('p', value.charAt(0));
+            assertEquals(5, value.length());
+            assertThrows(IndexOutOfBoundsException.class, () -> value.charAt(5));
+            return false;
+        }));
+        assertEquals(Arrays.asList("la"), visited);
+
+        assertEquals(0, DirectoryAttributeValues.visit(null, value -> true));
+    }
+
+    @Test
+    public void testVisitMalformed() {
+
+        LDAPAttribute attribute = new LDAPAttribute("description", new byte[] {'a', (byte) 0xc3, '(', (byte) 0xf0});
+        List<String> visited = new ArrayList<>();
+
+        DirectoryAttributeValues.visit(attribute, value -> visited.add(value.toString()));
+
+        assertEquals(Arrays.asList("a\ufffd(\ufffd"), visited);
+    }
+
+    @Test
+    public void testVisitNested() {
+
+        LDAPAttribute outer = new LDAPAttribute("cn", new String[] {"outer1", "outer2"});
+        LDAPAttribute inner = new LDAPAttribute("sn", "inner");
+        List<String> visited = new ArrayList<>();
+
+        DirectoryAttributeValues.visit(outer, value -> {
+            DirectoryAttributeValues.visit(inner, innerValue -> visited.add(innerValue.toString()));
+            return visited.add(value.toString());
+        });
+
+        assertEquals(Arrays.asList("inner", "outer1", "inner", "outer2"), visited);
+    }
+}
@@ -0,0 +1,96 @@
+package deors.core.directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.novell.ldap.LDAPAttribute;
+import com.novell.ldap.LDAPAttributeSet;
+import com.novell.ldap.LDAPException;
+import com.novell.ldap.LDAPModification;
+
+public class DirectoryChangeTestCase {
+
+    public DirectoryChangeTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testFactoriesIAE() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> DirectoryChange.delete(""));
+        assertEquals("error while changing directory: invalid change", ex.getMessage());
+
+        assertThrows(IllegalArgumentException.class, () -> DirectoryChange.add("cn=a,o=org", null));
+        assertThrows(IllegalArgumentException.class, () -> DirectoryChange.modify("cn=a,o=org"));
+        assertThrows(IllegalArgumentException.class,
+            () -> DirectoryChange.modify("cn=a,o=org", (LDAPModification) null));
+        assertThrows(IllegalArgumentException.class, () -> DirectoryChange.rename("cn=a,o=org", null, null, true));
+    }
+
+    @Test
+    public void testAdd() {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        DirectoryChange change = DirectoryChange.add("cn=a,o=org", attributes);
+
+        assertEquals(DirectoryChange.Type.ADD, change.getType());
+        assertEquals(DirectoryOperation.ADD, change.getOperation());
+        assertEquals(attributes, change.getAttributes());
+        assertNull(change.getModifications());
+        assertEquals("cn=a,o=org", change.getResultDN());
+        assertEquals("ADD cn=a,o=org", change.toString());
+    }
+
+    @Test
+    public void testModify() {
+
+        LDAPModification modification = new LDAPModification(
+            LDAPModification.REPLACE, new LDAPAttribute("mail", "theMail"));
+        LDAPModification[] modifications = {modification};
+        DirectoryChange change = DirectoryChange.modify("cn=a,o=org", modifications);
+
+        modifications[0] = null;
+
+        assertEquals(DirectoryChange.Type.MODIFY, change.getType());
+        assertEquals(modification, change.getModifications()[0]);
+    }
+
+    @Test
+    public void testRename() {
+
+        DirectoryChange change = DirectoryChange.rename("cn=a,ou=people,o=org", "cn=b", null, true);
+
+        assertEquals(DirectoryChange.Type.RENAME, change.getType());
+        assertEquals("cn=b", change.getNewRDN());
+        assertNull(change.getNewParentDN());
+        assertTrue(change.isDeleteOldRDN());
+        assertEquals("cn=b,ou=people,o=org", change.getResultDN());
+
+        DirectoryChange move = DirectoryChange.rename("cn=a,ou=people,o=org", "cn=a", "ou=former,o=org", false);
+
+        assertFalse(move.isDeleteOldRDN());
+        assertEquals("cn=a,ou=former,o=org", move.getResultDN());
+    }
+
+    @Test
+    public void testResult() {
+
+        DirectoryChange change = DirectoryChange.delete("cn=a,o=org");
+        DirectoryChangeResult ok = new DirectoryChangeResult(change, null);
+        DirectoryChangeResult failed = new DirectoryChangeResult(change, change.toDirectoryException(
+            new LDAPException("error", LDAPException.NO_SUCH_OBJECT, "error")));
+
+        assertTrue(ok.isSuccess());
+        assertEquals(LDAPException.SUCCESS, ok.getResultCode());
+        assertFalse(failed.isSuccess());
+        assertEquals(LDAPException.NO_SUCH_OBJECT, failed.getResultCode());
+        assertTrue(failed.getError().getMessage().startsWith("error while deleting entry: "));
+    }
+}
@@ -0,0 +1,158 @@
+package deors.core.directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class DirectoryCircuitBreakerTestCase {
+
+    public DirectoryCircuitBreakerTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testConstructorIAE() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> new DirectoryCircuitBreaker(50, 20, 10, 1000));
+        assertEquals("error while creating circuit breaker: invalid threshold, window or duration", ex.getMessage());
+
+        assertThrows(IllegalArgumentException.class, () -> new DirectoryCircuitBreaker(101, 1, 10, 1000));
+    }
+
+    @Test
+    public void testStaysClosedBelowMinimumCalls() {
+
+        DirectoryCircuitBreaker breaker = new DirectoryCircuitBreaker(50, 4, 10, 60000);
+
+        breaker.recordFailure();
+        breaker.recordFailure();
+        breaker.recordFailure();
+
+        assertEquals(DirectoryCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(100, breaker.getFailureRate());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void testOpensAtThreshold() {
+
+        DirectoryCircuitBreaker breaker = new DirectoryCircuitBreaker(50, 4, 10, 60000);
+
+        breaker.recordSuccess();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        assertEquals(DirectoryCircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.recordFailure();
+        assertEquals(DirectoryCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        assertFalse(breaker.isCallPermitted());
+    }
+
+    @Test
+    public void testWindowForgetsOldOutcomes() {
+
+        DirectoryCircuitBreaker breaker = new DirectoryCircuitBreaker(50, 4, 4, 60000);
+
+        breaker.recordFailure();
+        for (int i = 0; i < 4; i++) {
+            breaker.recordSuccess();
+        }
+
+        assertEquals(0, breaker.getFailureRate());
+        assertEquals(DirectoryCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testConcurrentOutcomes() throws InterruptedException {
+
+        DirectoryCircuitBreaker breaker = new DirectoryCircuitBreaker(100, 10, 1000, 60000);
+        Thread[] threads = new Thread[4];
+
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    if (i % 2 == 0) {
+                        breaker.recordSuccess();
+                    } else {
+                        breaker.recordFailure();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(DirectoryCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.getFailureRate() > 0);
+
+        for (int i = 0; i < 1000; i++) {
+            breaker.recordSuccess();
+        }
+
+        assertEquals(0, breaker.getFailureRate());
+    }
+
+    @Test
+    public void testTrialCallCloses() {
+
+        DirectoryCircuitBreaker breaker = new DirectoryCircuitBreaker(50, 1, 10, 0);
+
+        breaker.recordFailure();
+        assertEquals(DirectoryCircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.isCallPermitted());
+
+        assertTrue(breaker.allowRequest());
+        assertEquals(DirectoryCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+
+        breaker.recordSuccess();
+        assertEquals(DirectoryCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureRate());
+    }
+
+    @Test
+    public void testTrialCallReopens() {
+
+        DirectoryCircuitBreaker breaker = new DirectoryCircuitBreaker(50, 1, 10, 0);
+
+        breaker.recordFailure();
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordFailure();
+        assertEquals(DirectoryCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testDisabled() {
+
+        DirectoryCircuitBreaker breaker = new DirectoryCircuitBreaker(0, 1, 10, 60000);
+
+        for (int i = 0; i < 10; i++) {
+            breaker.recordFailure();
+        }
+
+        assertEquals(DirectoryCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void testReset() {
+
+        DirectoryCircuitBreaker breaker = new DirectoryCircuitBreaker(50, 1, 10, 60000);
+
+        breaker.recordFailure();
+        assertEquals(DirectoryCircuitBreaker.State.OPEN, breaker.getState());
+
+        breaker.reset();
+        assertEquals(DirectoryCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+}
@@ -0,0 +1,146 @@
+package deors.core.directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class DirectoryConfigurationTestCase {
+
+    public DirectoryConfigurationTestCase() {
+
+        super();
+    }
+
+    private static Path createFile(String contents) throws IOException {
+
+        Path file = Files.createTempFile("directory", ".properties");
+        Files.writeString(file, contents, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    public void testParsedValues() {
+
+        DirectoryConfiguration configuration = new DirectoryConfiguration(
+            Map.of("size", " 12 ", "enabled", "TRUE", "mode", "ldaps", "empty", ""), null);
+
+        assertEquals(12, configuration.getInt("size", 1));
+        assertEquals(1, configuration.getInt("mode", 1));
+        assertEquals(1, configuration.getInt("missing", 1));
+        assertEquals("12", configuration.getString("size", null));
+        assertTrue(configuration.getBoolean("enabled", false));
+        assertFalse(configuration.getBoolean("mode", true));
+        assertTrue(configuration.getBoolean("missing", true));
+        assertEquals('l', configuration.getChar("mode", 'x'));
+        assertEquals('x', configuration.getChar("empty", 'x'));
+        assertEquals("ldaps", configuration.getString("mode", "none", new String[] {"none", "ldaps"}));
+        assertEquals("none", configuration.getString("mode", "none", new String[] {"none", "starttls"}));
+        assertEquals(4, configuration.getPropertyNames().size());
+        assertNull(configuration.getFile());
+    }
+
+    @Test
+    public void testVersionsIncrease() {
+
+        DirectoryConfiguration first = new DirectoryConfiguration(Map.of(), null);
+        DirectoryConfiguration second = new DirectoryConfiguration(Map.of(), null);
+
+        assertTrue(second.getVersion() > first.getVersion());
+        assertTrue(first.hasSameValues(second));
+        assertFalse(first.hasSameValues(new DirectoryConfiguration(Map.of("size", "1"), null)));
+    }
+
+    @Test
+    public void testLoadFileOverridesBundle() throws IOException, DirectoryException {
+
+        Path file = createFile("ldap.pool.maxSize = 3\nldap.custom = value\n");
+        try {
+            DirectoryConfiguration configuration = DirectoryConfiguration.load(
+                "deors.core.directory.configuration", file);
+
+            assertEquals(3, configuration.getInt("ldap.pool.maxSize", 0));
+            assertEquals(2, configuration.getInt("ldap.pool.minSize", 0));
+            assertEquals("value", configuration.getString("ldap.custom", null));
+            assertEquals(file, configuration.getFile());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testLoadMissingFile() {
+
+        Path file = Path.of("missing-directory-configuration.properties");
+
+        DirectoryException ex = assertThrows(DirectoryException.class,
+            () -> DirectoryContext.loadConfiguration(file));
+        assertEquals("error while loading configuration file missing-directory-configuration.properties",
+            ex.getMessage());
+    }
+
+    @Test
+    public void testContextLoadConfiguration() throws IOException, DirectoryException {
+
+        Path file = createFile("ldap.cache.maxSize = 5\n");
+        try {
+            DirectoryConfiguration loaded = DirectoryContext.loadConfiguration(file);
+
+            assertSame(loaded, DirectoryContext.getConfiguration());
+            assertEquals(5, DirectoryContext.getConfigurationProperty("ldap.cache.maxSize", 0));
+            assertSame(loaded, DirectoryContext.loadConfiguration(file));
+        } finally {
+            DirectoryContext.loadConfiguration(null);
+            Files.delete(file);
+        }
+
+        assertEquals(10000, DirectoryContext.getConfigurationProperty("ldap.cache.maxSize", 0));
+    }
+
+    @Test
+    public void testWatchConfiguration() throws IOException, DirectoryException, InterruptedException {
+
+        Path file = createFile("ldap.cache.maxSize = 5\n");
+        try {
+            DirectoryConfiguration loaded = DirectoryContext.watchConfiguration(file);
+            assertTrue(DirectoryContext.isWatchingConfiguration());
+            assertEquals(5, loaded.getInt("ldap.cache.maxSize", 0));
+
+            Files.writeString(file, "ldap.cache.maxSize = 7\n", StandardCharsets.UTF_8);
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (DirectoryContext.getConfigurationProperty("ldap.cache.maxSize", 0) != 7
+                && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+
+            assertEquals(7, DirectoryContext.getConfigurationProperty("ldap.cache.maxSize", 0));
+            assertNotSame(loaded, DirectoryContext.getConfiguration());
+        } finally {
+            DirectoryContext.stopWatchingConfiguration();
+            DirectoryContext.loadConfiguration(null);
+            Files.delete(file);
+        }
+
+        assertFalse(DirectoryContext.isWatchingConfiguration());
+    }
+
+    @Test
+    public void testWatchConfigurationIAE() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> DirectoryContext.watchConfiguration(null));
+        assertEquals("error while watching configuration: invalid file", ex.getMessage());
+    }
+}
@@ -0,0 +1,390 @@
+package deors.core.directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedConstruction;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPException;
+
+public class DirectoryConnectionPoolTestCase {
+
+    public DirectoryConnectionPoolTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testConstructorIAEHost() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> new DirectoryConnectionPool(null, 2000, 1, 2, 0, 0, true, 0));
+        assertEquals("error while creating connection: invalid directory host and/or port", ex.getMessage());
+    }
+
+    @Test
+    public void testConstructorIAESize() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> new DirectoryConnectionPool("localhost", 2000, 3, 2, 0, 0, true, 0));
+        assertEquals("error while creating connection pool: invalid pool size", ex.getMessage());
+    }
+
+    @Test
+    public void testConstructorOpensMinimumSize() throws DirectoryException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class);
+             DirectoryConnectionPool pool = new DirectoryConnectionPool("localhost", 2000, 2, 4, 0, 0, true, 0)) {
+
+            assertEquals(2, mocked.constructed().size());
+            assertEquals(2, pool.getIdleCount());
+            assertEquals(0, pool.getActiveCount());
+        }
+    }
+
+    @Test
+    public void testConstructorError() {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> doThrow(new LDAPException("error", 1, "error"))
+                    .when(connection).connect("localhost", 2000))) {
+
+            assertThrows(DirectoryException.class,
+                () -> new DirectoryConnectionPool("localhost", 2000, 1, 2, 0, 0, true, 0));
+        }
+    }
+
+    @Test
+    public void testBorrowAndReturnReusesConnection() throws DirectoryException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.isConnectionAlive()).thenReturn(true));
+             DirectoryConnectionPool pool = new DirectoryConnectionPool("localhost", 2000, 1, 2, 0, 0, true, 0)) {
+
+            LDAPConnection first = pool.borrowConnection();
+            assertEquals(1, pool.getActiveCount());
+            assertEquals(0, pool.getIdleCount());
+
+            pool.returnConnection(first);
+            assertEquals(0, pool.getActiveCount());
+            assertEquals(1, pool.getIdleCount());
+
+            assertSame(first, pool.borrowConnection());
+            assertEquals(1, mocked.constructed().size());
+        }
+    }
+
+    @Test
+    public void testBorrowDiscardsBrokenConnection() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.isConnectionAlive()).thenReturn(context.getCount() > 1));
+             DirectoryConnectionPool pool = new DirectoryConnectionPool("localhost", 2000, 1, 2, 0, 0, true, 0)) {
+
+            LDAPConnection borrowed = pool.borrowConnection();
+
+            assertEquals(2, mocked.constructed().size());
+            assertSame(mocked.constructed().get(1), borrowed);
+            verify(mocked.constructed().get(0)).disconnect();
+        }
+    }
+
+    @Test
+    public void testBorrowExhausted() throws DirectoryException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class);
+             DirectoryConnectionPool pool = new DirectoryConnectionPool("localhost", 2000, 0, 1, 0, 0, true, 0)) {
+
+            pool.borrowConnection();
+
+            DirectoryException ex = assertThrows(DirectoryException.class, pool::borrowConnection);
+            assertEquals("error while borrowing connection: no connection available in the pool", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testInvalidateReleasesPermit() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class);
+             DirectoryConnectionPool pool = new DirectoryConnectionPool("localhost", 2000, 0, 1, 0, 0, true, 0)) {
+
+            LDAPConnection first = pool.borrowConnection();
+            pool.invalidateConnection(first);
+
+            verify(first).disconnect();
+            assertEquals(0, pool.getIdleCount());
+
+            LDAPConnection second = pool.borrowConnection();
+            assertNotSame(first, second);
+        }
+    }
+
+    @Test
+    public void testEvictIdleConnections() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.isConnectionAlive()).thenReturn(context.getCount() > 2));
+             DirectoryConnectionPool pool = new DirectoryConnectionPool("localhost", 2000, 2, 4, 0, 0, false, 0)) {
+
+            pool.evictIdleConnections();
+
+            verify(mocked.constructed().get(0)).disconnect();
+            verify(mocked.constructed().get(1)).disconnect();
+            assertEquals(4, mocked.constructed().size());
+            assertEquals(2, pool.getIdleCount());
+        }
+    }
+
+    @Test
+    public void testCloseDisconnectsIdleConnections() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class)) {
+
+            DirectoryConnectionPool pool = new DirectoryConnectionPool("localhost", 2000, 1, 2, 0, 0, true, 0);
+            pool.close();
+
+            assertTrue(pool.isClosed());
+            verify(mocked.constructed().get(0)).disconnect();
+
+            DirectoryException ex = assertThrows(DirectoryException.class, pool::borrowConnection);
+            assertEquals("error while borrowing connection: the connection pool is closed", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testIsConnectionError() {
+
+        assertTrue(DirectoryConnectionPool.isConnectionError(
+            new LDAPException("error", LDAPException.SERVER_DOWN, "error")));
+        assertFalse(DirectoryConnectionPool.isConnectionError(
+            new LDAPException("error", LDAPException.NO_SUCH_OBJECT, "error")));
+    }
+
+    @Test
+    public void testConstructorBindsConnections() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class);
+             DirectoryConnectionPool pool = new DirectoryConnectionPool("localhost", 2000,
+                 "cn=admin", "secret", 1, 2, 0, 0, true, 0)) {
+
+            assertEquals("cn=admin", pool.getBindDN());
+            verify(mocked.constructed().get(0)).bind(
+                LDAPConnection.LDAP_V3, "cn=admin", "secret".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testConstructorBindError() throws LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> doThrow(new LDAPException("error", LDAPException.INVALID_CREDENTIALS, "error"))
+                    .when(connection).bind(eq(LDAPConnection.LDAP_V3), eq("cn=admin"), any(byte[].class)))) {
+
+            DirectoryException ex = assertThrows(DirectoryException.class,
+                () -> new DirectoryConnectionPool("localhost", 2000, "cn=admin", "wrong", 1, 2, 0, 0, true, 0));
+            assertEquals(LDAPException.INVALID_CREDENTIALS, ((LDAPException) ex.getCause()).getResultCode());
+            verify(mocked.constructed().get(0)).disconnect();
+        }
+    }
+
+    @Test
+    public void testBorrowFailsOverToNextServer() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> {
+                    doThrow(new LDAPException("error", LDAPException.CONNECT_ERROR, "error"))
+                        .when(connection).connect("host1", 2000);
+                    when(connection.isConnectionAlive()).thenReturn(true);
+                });
+             DirectoryServerSet servers = new DirectoryServerSet(List.of(
+                 new DirectoryServer("host1", 2000), new DirectoryServer("host2", 2000)),
+                 DirectoryServerSelectors.failover(), 0);
+             DirectoryConnectionPool pool = new DirectoryConnectionPool(servers, null, null, 0, 2, 0, 0, true, 0)) {
+
+            LDAPConnection borrowed = pool.borrowConnection();
+
+            assertEquals(2, mocked.constructed().size());
+            assertSame(mocked.constructed().get(1), borrowed);
+            verify(borrowed).connect("host2", 2000);
+            assertFalse(servers.getStatuses().get(0).isAvailable());
+            assertTrue(servers.getStatuses().get(1).isAvailable());
+            assertEquals(1, servers.getStatuses().get(1).getOutstandingCount());
+
+            pool.returnConnection(borrowed);
+            assertEquals(0, servers.getStatuses().get(1).getOutstandingCount());
+            assertEquals(0, servers.getStatuses().get(1).getAverageLatency());
+            assertSame(borrowed, pool.borrowConnection());
+            assertEquals(2, mocked.constructed().size());
+        }
+    }
+
+    @Test
+    public void testBorrowAllServersDown() throws DirectoryException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> doThrow(new LDAPException("error", LDAPException.CONNECT_ERROR, "error"))
+                    .when(connection).connect(any(String.class), eq(2000)));
+             DirectoryServerSet servers = new DirectoryServerSet(List.of(
+                 new DirectoryServer("host1", 2000), new DirectoryServer("host2", 2000)),
+                 DirectoryServerSelectors.roundRobin(), 0);
+             DirectoryConnectionPool pool = new DirectoryConnectionPool(servers, null, null, 0, 2, 0, 0, true, 0)) {
+
+            assertThrows(DirectoryException.class, () -> pool.borrowConnection());
+            assertEquals(2, mocked.constructed().size());
+            assertEquals(0, pool.getActiveCount());
+            assertFalse(servers.getStatuses().get(0).isAvailable());
+            assertFalse(servers.getStatuses().get(1).isAvailable());
+        }
+    }
+
+    @Test
+    public void testInvalidateMarksServerUnavailable() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class);
+             DirectoryServerSet servers = new DirectoryServerSet(List.of(
+                 new DirectoryServer("host1", 2000), new DirectoryServer("host2", 2000)),
+                 DirectoryServerSelectors.failover(), 0);
+             DirectoryConnectionPool pool = new DirectoryConnectionPool(servers, null, null, 0, 2, 0, 0, false, 0)) {
+
+            pool.invalidateConnection(pool.borrowConnection());
+            assertFalse(servers.getStatuses().get(0).isAvailable());
+
+            LDAPConnection borrowed = pool.borrowConnection();
+            verify(borrowed).connect("host2", 2000);
+        }
+    }
+
+    @Test
+    public void testBorrowCircuitOpen() throws DirectoryException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class);
+             DirectoryServerSet servers = new DirectoryServerSet(List.of(
+                 new DirectoryServer("host1", 2000), new DirectoryServer("host2", 2000)),
+                 DirectoryServerSelectors.failover(), 0);
+             DirectoryConnectionPool pool = new DirectoryConnectionPool(servers, null, null, 0, 2, 0, 0, false, 0)) {
+
+            for (DirectoryServerStatus status : servers.getStatuses()) {
+                for (int i = 0; i < 20; i++) {
+                    status.getCircuitBreaker().recordFailure();
+                }
+                assertEquals(DirectoryCircuitBreaker.State.OPEN, status.getCircuitBreaker().getState());
+            }
+
+            DirectoryException ex = assertThrows(DirectoryException.class, () -> pool.borrowConnection());
+            assertEquals("error while borrowing connection: calls to every server are rejected after repeated failures",
+                ex.getMessage());
+            assertEquals(0, mocked.constructed().size());
+            assertEquals(0, pool.getActiveCount());
+        }
+    }
+
+    @Test
+    public void testInvalidateRecordsFailure() throws DirectoryException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class);
+             DirectoryServerSet servers = new DirectoryServerSet(List.of(
+                 new DirectoryServer("host1", 2000), new DirectoryServer("host2", 2000)),
+                 DirectoryServerSelectors.failover(), 0);
+             DirectoryConnectionPool pool = new DirectoryConnectionPool(servers, null, null, 0, 2, 0, 0, false, 0)) {
+
+            for (int i = 0; i < 10; i++) {
+                pool.invalidateConnection(pool.borrowConnection());
+                servers.getStatuses().get(0).markAvailable();
+            }
+
+            DirectoryCircuitBreaker breaker = servers.getStatuses().get(0).getCircuitBreaker();
+            assertEquals(DirectoryCircuitBreaker.State.OPEN, breaker.getState());
+
+            LDAPConnection borrowed = pool.borrowConnection();
+            assertSame(mocked.constructed().get(mocked.constructed().size() - 1), borrowed);
+            assertEquals(1, servers.getStatuses().get(1).getOutstandingCount());
+        }
+    }
+
+    @Test
+    public void testWarmUpOpensMissingConnections() throws DirectoryException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class);
+             DirectoryConnectionPool pool = new DirectoryConnectionPool("localhost", 2000, 0, 4, 0, 0, true, 0)) {
+
+            assertEquals(1, pool.warmUp(1));
+            assertEquals(0, pool.warmUp(1));
+            assertEquals(1, pool.getIdleCount());
+            assertEquals(1, mocked.constructed().size());
+        }
+    }
+
+    @Test
+    public void testWarmUpClosed() throws DirectoryException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class)) {
+            DirectoryConnectionPool pool = new DirectoryConnectionPool("localhost", 2000, 0, 2, 0, 0, true, 0);
+            pool.close();
+            assertThrows(DirectoryException.class, () -> pool.warmUp(2));
+        }
+    }
+
+    @Test
+    public void testResize() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class);
+             DirectoryConnectionPool pool = new DirectoryConnectionPool("localhost", 2000, 0, 1, 0, 0, false, 0)) {
+
+            LDAPConnection first = pool.borrowConnection();
+            pool.resize(0, 2);
+            LDAPConnection second = pool.borrowConnection();
+            assertEquals(2, pool.getActiveCount());
+
+            pool.resize(0, 1);
+            pool.returnConnection(first);
+            assertEquals(0, pool.getIdleCount());
+            verify(first).disconnect();
+
+            pool.returnConnection(second);
+            assertEquals(1, pool.getIdleCount());
+            assertEquals(1, pool.getMaxSize());
+
+            assertThrows(IllegalArgumentException.class, () -> pool.resize(2, 1));
+        }
+    }
+
+    @Test
+    public void testConfigurationReload() throws IOException, DirectoryException {
+
+        Path file = Files.createTempFile("directory", ".properties");
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class);
+             DirectoryConnectionPool pool = new DirectoryConnectionPool("localhost", 2000)) {
+
+            assertEquals(10, pool.getMaxSize());
+
+            Files.writeString(file, "ldap.pool.minSize = 1\nldap.pool.maxSize = 3\n", StandardCharsets.UTF_8);
+            DirectoryContext.loadConfiguration(file);
+            pool.returnConnection(pool.borrowConnection());
+
+            assertEquals(1, pool.getMinSize());
+            assertEquals(3, pool.getMaxSize());
+        } finally {
+            DirectoryContext.loadConfiguration(null);
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package deors.core.directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+import com.novell.ldap.LDAPAttribute;
+import com.novell.ldap.LDAPAttributeSet;
+import com.novell.ldap.LDAPEntry;
+
+public class DirectoryFilterTestCase {
+
+    public DirectoryFilterTestCase() {
+
+        super();
+    }
+
+    private static LDAPEntry createEntry() {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("objectClass", new String[] {"top", "person", "inetOrgPerson"}));
+        attributes.add(new LDAPAttribute("uid", "jdoe"));
+        attributes.add(new LDAPAttribute("cn", "John Doe"));
+        attributes.add(new LDAPAttribute("mail", "JDoe@Corp.com"));
+        attributes.add(new LDAPAttribute("employeeNumber", "42"));
+        attributes.add(new LDAPAttribute("description", "a (b) *c* é"));
+        return new LDAPEntry("uid=jdoe,ou=people,o=org", attributes);
+    }
+
+    @Test
+    public void testParse() {
+
+        DirectoryFilter filter = DirectoryFilter.parse("(&(objectClass=person)(|(mail=*@corp.com)(!(uid=x))))");
+
+        assertEquals(DirectoryFilter.Type.AND, filter.getType());
+        assertEquals(2, filter.getChildren().size());
+        assertEquals(DirectoryFilter.Type.OR, filter.getChildren().get(1).getType());
+        assertEquals(new TreeSet<>(Arrays.asList("mail", "objectclass", "uid")), filter.getAttributeNames());
+        assertEquals("(&(objectClass=person)(|(mail=*@corp.com)(!(uid=x))))", filter.toString());
+        assertTrue(filter.isLocallyEvaluable());
+
+        DirectoryFilter item = DirectoryFilter.parse(" uid=jdoe ");
+        assertEquals(DirectoryFilter.Type.EQUALITY, item.getType());
+        assertEquals("uid", item.getAttributeName());
+        assertEquals("jdoe", item.getValue());
+        assertEquals("(uid=jdoe)", item.toString());
+
+        assertEquals(DirectoryFilter.Type.PRESENT, DirectoryFilter.parse("(cn=*)").getType());
+        assertEquals(DirectoryFilter.Type.GREATER_OR_EQUAL, DirectoryFilter.parse("(employeeNumber>=4)").getType());
+        assertEquals(DirectoryFilter.Type.LESS_OR_EQUAL, DirectoryFilter.parse("(employeeNumber<=4)").getType());
+        assertEquals(DirectoryFilter.Type.APPROXIMATE, DirectoryFilter.parse("(cn~=john)").getType());
+        assertFalse(DirectoryFilter.parse("(&(uid=a)(cn:dn:2.5.13.5:=John))").isLocallyEvaluable());
+
+        DirectoryFilter substrings = DirectoryFilter.parse("(cn=jo*n*d*e)");
+        assertEquals(DirectoryFilter.Type.SUBSTRINGS, substrings.getType());
+        assertEquals("jo", substrings.getValue());
+        assertEquals(Arrays.asList("n", "d"), substrings.getAnySubstrings());
+        assertEquals("e", substrings.getFinalSubstring());
+
+        assertEquals("a (b) *c* é",
+            DirectoryFilter.parse("(description=a \\28b\\29 \\2ac\\2a \\c3\\a9)").getValue());
+    }
+
+    @Test
+    public void testParseIAE() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> DirectoryFilter.parse("(uid=jdoe"));
+        assertEquals("error while parsing filter: (uid=jdoe", ex.getMessage());
+
+        assertThrows(IllegalArgumentException.class, () -> DirectoryFilter.parse(null));
+        assertThrows(IllegalArgumentException.class, () -> DirectoryFilter.parse(""));
+        assertThrows(IllegalArgumentException.class, () -> DirectoryFilter.parse("(=jdoe)"));
+        assertThrows(IllegalArgumentException.class, () -> DirectoryFilter.parse("(u id=jdoe)"));
+        assertThrows(IllegalArgumentException.class, () -> DirectoryFilter.parse("(uid=jdoe))"));
+        assertThrows(IllegalArgumentException.class, () -> DirectoryFilter.parse("(uid=a\\2)"));
+        assertThrows(IllegalArgumentException.class, () -> DirectoryFilter.parse("(uid=a\\zz)"));
+        assertThrows(IllegalArgumentException.class, () -> DirectoryFilter.parse("(!(uid=a)(uid=b))"));
+    }
+
+    @Test
+    public void testMatches() {
+
+        LDAPEntry entry = createEntry();
+
+        assertTrue(DirectoryFilter.parse("uid=JDOE").matches(entry));
+        assertTrue(DirectoryFilter.parse("(&(objectClass=person)(mail=*@corp.com))").matches(entry));
+        assertFalse(DirectoryFilter.parse("(&(objectClass=person)(mail=*@other.com))").matches(entry));
+        assertTrue(DirectoryFilter.parse("(|(uid=x)(cn=john*))").matches(entry));
+        assertTrue(DirectoryFilter.parse("(!(uid=x))").matches(entry));
+        assertTrue(DirectoryFilter.parse("(cn=*n*o*)").matches(entry));
+        assertFalse(DirectoryFilter.parse("(cn=*doe*john*)").matches(entry));
+        assertFalse(DirectoryFilter.parse("(uid=jdo*oe)").matches(entry));
+        assertTrue(DirectoryFilter.parse("(uid=jd*e)").matches(entry));
+        assertTrue(DirectoryFilter.parse("(employeeNumber>=5)").matches(entry));
+        assertFalse(DirectoryFilter.parse("(employeeNumber<=5)").matches(entry));
+        assertTrue(DirectoryFilter.parse("(cn>=john)").matches(entry));
+        assertTrue(DirectoryFilter.parse("(cn~=JOHN DOE)").matches(entry));
+        assertTrue(DirectoryFilter.parse("(objectClass=*)").matches(new LDAPEntry("o=org")));
+        assertFalse(DirectoryFilter.parse("(telephoneNumber=*)").matches(entry));
+        assertTrue(DirectoryFilter.parse("(description=a \\28b\\29*)").matches(entry));
+    }
+
+    @Test
+    public void testUnescapeKeepsSupplementaryCharacters() {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("description", "(\uD83D\uDE00) \u00e9"));
+        LDAPEntry entry = new LDAPEntry("uid=jdoe,ou=people,o=org", attributes);
+
+        assertTrue(DirectoryFilter.parse("(description=\\28\uD83D\uDE00\\29 \u00e9)").matches(entry));
+        assertTrue(DirectoryFilter.parse("(description=\\28\uD83D\uDE00\\29 \\c3\\a9)").matches(entry));
+        assertFalse(DirectoryFilter.parse("(description=\\28?\\29 \u00e9)").matches(entry));
+    }
+
+    @Test
+    public void testExtensibleUndefined() {
+
+        LDAPEntry entry = createEntry();
+
+        assertFalse(DirectoryFilter.parse("(cn:caseExactMatch:=John Doe)").matches(entry));
+        assertFalse(DirectoryFilter.parse("(!(cn:caseExactMatch:=John Doe))").matches(entry));
+        assertTrue(DirectoryFilter.parse("(|(uid=jdoe)(cn:caseExactMatch:=x))").matches(entry));
+        assertFalse(DirectoryFilter.parse("(&(uid=jdoe)(cn:caseExactMatch:=x))").matches(entry));
+    }
+}
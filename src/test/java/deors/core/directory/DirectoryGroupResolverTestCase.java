@@ -0,0 +1,242 @@
+package deors.core.directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.novell.ldap.LDAPAttribute;
+import com.novell.ldap.LDAPException;
+
+public class DirectoryGroupResolverTestCase {
+
+    public DirectoryGroupResolverTestCase() {
+
+        super();
+    }
+
+    private static final String GROUP_BASE = "ou=groups,o=org";
+
+    private static final String G1 = "cn=g1,ou=groups,o=org";
+
+    private static final String G2 = "cn=g2,ou=groups,o=org";
+
+    private static final String G3 = "cn=g3,ou=groups,o=org";
+
+    private static final class GroupSourceManager extends DirectoryManager {
+
+        private final Map<String, String[]> groups = new HashMap<>();
+
+        private final Map<String, Integer> errors = new HashMap<>();
+
+        private int batchCount;
+
+        private Runnable onBatch;
+
+        GroupSourceManager() {
+
+            super();
+            groups.put(G1, new String[] {"uid=a,ou=people,o=org", G2});
+            groups.put(G2, new String[] {"uid=b,ou=people,o=org", "CN=G3,OU=Groups,O=org"});
+            groups.put(G3, new String[] {G1, "uid=c,ou=people,o=org"});
+        }
+
+        @Override
+        public DirectoryBatchResult getAttributes(Collection<String> objectDNs, String... attributeNames) {
+
+            batchCount++;
+            if (onBatch != null) {
+                onBatch.run();
+            }
+            Map<String, DirectoryAttributes> results = new HashMap<>();
+            Map<String, DirectoryException> failed = new HashMap<>();
+            for (String objectDN : objectDNs) {
+                Integer error = errors.get(objectDN.toLowerCase());
+                if (error != null) {
+                    failed.put(objectDN, new DirectoryException("error",
+                        new LDAPException(LDAPException.resultCodeToString(error), error, null)));
+                    continue;
+                }
+                Map<String, LDAPAttribute> attributes = DirectoryAttributes.createAttributeMap();
+                String[] members = groups.get(objectDN.toLowerCase());
+                if (members != null) {
+                    attributes.put("member", new LDAPAttribute("member", members));
+                }
+                results.put(objectDN, new DirectoryAttributes(objectDN, attributes));
+            }
+            return new DirectoryBatchResult(results, failed);
+        }
+
+        @Override
+        public boolean isConnected() {
+
+            return true;
+        }
+    }
+
+    @Test
+    public void testConstructorIAE() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> new DirectoryGroupResolver(null, GROUP_BASE, 10, 1000, "member"));
+        assertEquals("error while creating group resolver: invalid manager, group base, size, time-to-live or member attributes",
+            ex.getMessage());
+
+        assertThrows(IllegalArgumentException.class,
+            () -> new DirectoryGroupResolver(new GroupSourceManager(), GROUP_BASE, 10, 1000, " "));
+        assertThrows(IllegalArgumentException.class,
+            () -> new DirectoryGroupResolver(new GroupSourceManager(), GROUP_BASE, 0, 1000, "member"));
+    }
+
+    @Test
+    public void testIsMemberIAE() {
+
+        DirectoryGroupResolver resolver = new DirectoryGroupResolver(new GroupSourceManager());
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> resolver.isMember(G1, null));
+        assertEquals("error while resolving group membership: invalid group or member DN", ex.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> resolver.isMember(null, G1));
+    }
+
+    @Test
+    public void testIsMemberNested() throws DirectoryException {
+
+        GroupSourceManager manager = new GroupSourceManager();
+        DirectoryGroupResolver resolver = new DirectoryGroupResolver(manager, GROUP_BASE, 10, 60000, "member");
+
+        assertTrue(resolver.isMember(G1, "uid=a,ou=people,o=org"));
+        assertTrue(resolver.isMember(G1, "UID=C,ou=People,o=org"));
+        assertTrue(resolver.isMember(G1, G3));
+        assertFalse(resolver.isMember(G1, "uid=z,ou=people,o=org"));
+
+        assertEquals(3, manager.batchCount);
+        assertEquals(3, resolver.getLookupCount());
+        assertEquals(1, resolver.getExpansionCount());
+        assertEquals(3, resolver.getHitCount());
+    }
+
+    @Test
+    public void testGetMembersWithCycle() throws DirectoryException {
+
+        DirectoryGroupResolver resolver = new DirectoryGroupResolver(
+            new GroupSourceManager(), GROUP_BASE, 10, 60000, "member");
+
+        Set<String> members = resolver.getMembers(G2);
+
+        assertEquals(6, members.size());
+        assertTrue(members.contains("CN=G3,OU=Groups,O=org"));
+        assertTrue(members.contains(G2));
+        assertEquals(6, resolver.getMemberCount(G2));
+    }
+
+    @Test
+    public void testNestedGroupFromMemo() throws DirectoryException {
+
+        GroupSourceManager manager = new GroupSourceManager();
+        DirectoryGroupResolver resolver = new DirectoryGroupResolver(manager, GROUP_BASE, 10, 60000, "member");
+
+        resolver.getMembers(G2);
+        assertEquals(3, resolver.getLookupCount());
+
+        assertTrue(resolver.isMember(G1, "uid=c,ou=people,o=org"));
+        assertEquals(4, resolver.getLookupCount());
+        assertEquals(2, resolver.size());
+    }
+
+    @Test
+    public void testEmptyGroupBaseLooksUpEveryMember() throws DirectoryException {
+
+        DirectoryGroupResolver resolver = new DirectoryGroupResolver(
+            new GroupSourceManager(), "", 10, 60000, "member");
+
+        assertTrue(resolver.isMember(G1, "uid=b,ou=people,o=org"));
+        assertEquals(6, resolver.getLookupCount());
+    }
+
+    @Test
+    public void testInvalidateNestedGroup() throws DirectoryException {
+
+        GroupSourceManager manager = new GroupSourceManager();
+        DirectoryGroupResolver resolver = new DirectoryGroupResolver(manager, GROUP_BASE, 10, 60000, "member");
+
+        resolver.getMembers(G1);
+        assertEquals(1, resolver.size());
+
+        resolver.invalidate("uid=a,ou=people,o=org");
+        assertEquals(1, resolver.size());
+
+        resolver.invalidate(G3);
+        assertEquals(0, resolver.size());
+
+        resolver.getMembers(G1);
+        resolver.clear();
+        assertEquals(0, resolver.size());
+    }
+
+    @Test
+    public void testMissingGroupIsPlainMember() throws DirectoryException {
+
+        GroupSourceManager manager = new GroupSourceManager();
+        manager.errors.put(G3, LDAPException.NO_SUCH_OBJECT);
+        DirectoryGroupResolver resolver = new DirectoryGroupResolver(manager, GROUP_BASE, 10, 60000, "member");
+
+        Set<String> members = resolver.getMembers(G1);
+
+        assertTrue(members.contains("CN=G3,OU=Groups,O=org"));
+        assertFalse(members.contains("uid=c,ou=people,o=org"));
+        assertEquals(1, resolver.size());
+    }
+
+    @Test
+    public void testGroupReadErrorNotMemoized() throws DirectoryException {
+
+        GroupSourceManager manager = new GroupSourceManager();
+        manager.errors.put(G3, LDAPException.INSUFFICIENT_ACCESS_RIGHTS);
+        DirectoryGroupResolver resolver = new DirectoryGroupResolver(manager, GROUP_BASE, 10, 60000, "member");
+
+        DirectoryException ex = assertThrows(DirectoryException.class, () -> resolver.getMembers(G1));
+        assertEquals(LDAPException.INSUFFICIENT_ACCESS_RIGHTS, DirectoryManager.getResultCode(ex));
+        assertEquals(0, resolver.size());
+
+        manager.errors.clear();
+        assertTrue(resolver.isMember(G1, "uid=c,ou=people,o=org"));
+        assertEquals(1, resolver.size());
+    }
+
+    @Test
+    public void testGroupInvalidatedInFlightNotMemoized() throws DirectoryException {
+
+        GroupSourceManager manager = new GroupSourceManager();
+        DirectoryGroupResolver resolver = new DirectoryGroupResolver(manager, GROUP_BASE, 10, 60000, "member");
+        manager.onBatch = () -> resolver.invalidate(G3);
+
+        assertTrue(resolver.isMember(G1, "uid=c,ou=people,o=org"));
+        assertEquals(0, resolver.size());
+
+        manager.onBatch = null;
+        assertTrue(resolver.isMember(G1, "uid=c,ou=people,o=org"));
+        assertEquals(1, resolver.size());
+    }
+
+    @Test
+    public void testNoMemoWithZeroTimeToLive() throws DirectoryException {
+
+        GroupSourceManager manager = new GroupSourceManager();
+        DirectoryGroupResolver resolver = new DirectoryGroupResolver(manager, GROUP_BASE, 10, 0, "member");
+
+        resolver.getMembers(G1);
+        resolver.getMembers(G1);
+
+        assertEquals(0, resolver.size());
+        assertEquals(2, resolver.getExpansionCount());
+        assertEquals(6, manager.batchCount);
+    }
+}
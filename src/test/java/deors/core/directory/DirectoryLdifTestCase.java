@@ -0,0 +1,271 @@
+package deors.core.directory;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedConstruction;
+
+import com.novell.ldap.LDAPAttribute;
+import com.novell.ldap.LDAPAttributeSet;
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPControl;
+import com.novell.ldap.LDAPEntry;
+import com.novell.ldap.LDAPException;
+import com.novell.ldap.LDAPModification;
+import com.novell.ldap.LDAPResponse;
+import com.novell.ldap.LDAPResponseQueue;
+import com.novell.ldap.LDAPSearchConstraints;
+import com.novell.ldap.LDAPSearchResults;
+import com.novell.ldap.controls.LDAPPagedResultsResponse;
+
+public class DirectoryLdifTestCase {
+
+    public DirectoryLdifTestCase() {
+
+        super();
+    }
+
+    private static LDAPEntry createEntry(String cn) {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("cn", cn));
+        attributes.add(new LDAPAttribute("objectClass", "person"));
+        attributes.add(new LDAPAttribute("jpegPhoto", new byte[] {0, -56, 3}));
+        return new LDAPEntry("cn=" + cn + ",o=org", attributes);
+    }
+
+    private static DirectoryLdifReader createReader(String ldif) throws DirectoryException {
+
+        return new DirectoryLdifReader(Channels.newChannel(
+            new ByteArrayInputStream(ldif.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void testChannelIAE() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> new DirectoryLdifReader(null));
+        assertEquals("error while transferring LDIF: invalid channel, reader or writer", ex.getMessage());
+
+        assertThrows(IllegalArgumentException.class, () -> new DirectoryLdifWriter(null));
+    }
+
+    @Test
+    public void testRoundTrip() throws DirectoryException {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        try (DirectoryLdifWriter writer = new DirectoryLdifWriter(Channels.newChannel(output))) {
+            writer.writeEntry(createEntry("a"));
+            writer.writeEntry(createEntry("b"));
+            assertEquals(2, writer.getEntryCount());
+            writer.flush();
+            assertEquals(output.size(), writer.getByteCount());
+        }
+
+        String ldif = output.toString(StandardCharsets.UTF_8);
+        assertTrue(ldif.contains("version: 1"));
+        assertTrue(ldif.contains("jpegPhoto:: AMgD"));
+
+        try (DirectoryLdifReader reader = createReader(ldif)) {
+            assertFalse(reader.isChangeFile());
+
+            DirectoryChange change = reader.readChange();
+            assertEquals(DirectoryChange.Type.ADD, change.getType());
+            assertEquals("cn=a,o=org", change.getObjectDN());
+            assertArrayEquals(new byte[] {0, -56, 3}, change.getAttributes().getAttribute("jpegPhoto").getByteValue());
+
+            assertEquals("cn=b,o=org", reader.readChange().getObjectDN());
+            assertNull(reader.readChange());
+            assertEquals(2, reader.getRecordCount());
+            assertEquals(output.size(), reader.getByteCount());
+        }
+    }
+
+    @Test
+    public void testChangeRecords() throws DirectoryException {
+
+        String ldif = "version: 1\n\n"
+            + "dn: cn=a,o=org\nchangetype: add\ncn: a\n\n"
+            + "dn: cn=b,o=org\nchangetype: modify\nreplace: mail\nmail: theMail\n-\n\n"
+            + "dn: cn=c,o=org\nchangetype: delete\n\n"
+            + "dn: cn=d,o=org\nchangetype: modrdn\nnewrdn: cn=e\ndeleteoldrdn: 1\n\n";
+
+        try (DirectoryLdifReader reader = createReader(ldif)) {
+            assertTrue(reader.isChangeFile());
+
+            List<DirectoryChange> changes = reader.changes().collect(Collectors.toList());
+
+            assertEquals(4, changes.size());
+            assertEquals(DirectoryChange.Type.ADD, changes.get(0).getType());
+            assertEquals(DirectoryChange.Type.MODIFY, changes.get(1).getType());
+            assertEquals(LDAPModification.REPLACE, changes.get(1).getModifications()[0].getOp());
+            assertEquals(DirectoryChange.Type.DELETE, changes.get(2).getType());
+            assertEquals("cn=c,o=org", changes.get(2).getObjectDN());
+            assertEquals(DirectoryChange.Type.RENAME, changes.get(3).getType());
+            assertEquals("cn=e,o=org", changes.get(3).getResultDN());
+        }
+    }
+
+    @Test
+    public void testWithoutVersionLine() throws DirectoryException {
+
+        try (DirectoryLdifReader reader = createReader("# a comment\n\ndn: cn=a,o=org\ncn: a\n\n")) {
+            assertEquals("cn=a,o=org", reader.readChange().getObjectDN());
+            assertNull(reader.readChange());
+        }
+    }
+
+    @Test
+    public void testInvalidRecord() throws DirectoryException {
+
+        try (DirectoryLdifReader reader = createReader("version: 1\n\ndn: cn=a,o=org\nchangetype: bogus\n\n")) {
+            DirectoryException ex = assertThrows(DirectoryException.class, reader::readChange);
+            assertTrue(ex.getMessage().startsWith("error while reading LDIF: "));
+            assertTrue(ex.getMessage().contains("bogus"));
+        }
+    }
+
+    @Test
+    public void testProgress() {
+
+        DirectoryTransferProgress progress = new DirectoryTransferProgress(2000, 1, 4000, 2000000000L, true);
+
+        assertEquals(2000, progress.getElapsedTime());
+        assertEquals(1000, progress.getEntriesPerSecond(), 0.001);
+        assertEquals(2000, progress.getBytesPerSecond(), 0.001);
+        assertTrue(progress.isFinished());
+        assertEquals("2000 entries (1 failed), 4000 bytes in 2000 ms, 1000.0 entries/s", progress.toString());
+        assertEquals(0, new DirectoryTransferProgress(0, 0, 0, 0, false).getEntriesPerSecond(), 0.001);
+    }
+
+    @Test
+    public void testExport() throws DirectoryException, LDAPException {
+
+        LDAPSearchResults page = mock(LDAPSearchResults.class);
+        when(page.hasMore()).thenReturn(true, true, false);
+        when(page.next()).thenReturn(createEntry("a"), createEntry("b"));
+        LDAPPagedResultsResponse control = mock(LDAPPagedResultsResponse.class);
+        when(control.getCookie()).thenReturn(null);
+        when(page.getResponseControls()).thenReturn(new LDAPControl[] {control});
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> {
+                    when(connection.getSearchConstraints()).thenReturn(new LDAPSearchConstraints());
+                    when(connection.search(eq("o=org"), eq(LDAPConnection.SCOPE_SUB), eq("(cn=*)"), isNull(),
+                        eq(false), any(LDAPSearchConstraints.class))).thenReturn(page);
+                })) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            List<DirectoryTransferProgress> reports = new ArrayList<>();
+
+            DirectoryTransferProgress progress;
+            try (DirectoryLdifWriter writer = new DirectoryLdifWriter(Channels.newChannel(output))) {
+                progress = dm.exportLdif(writer, "o=org", LDAPConnection.SCOPE_SUB, "(cn=*)", reports::add);
+            }
+
+            assertEquals(2, progress.getEntryCount());
+            assertEquals(output.size(), progress.getByteCount());
+            assertEquals(1, reports.size());
+            assertTrue(reports.get(0).isFinished());
+            assertTrue(output.toString(StandardCharsets.UTF_8).contains("dn: cn=b,o=org"));
+        }
+    }
+
+    @Test
+    public void testImport() throws DirectoryException, LDAPException {
+
+        LDAPResponse response1 = mock(LDAPResponse.class);
+        when(response1.getMessageID()).thenReturn(1);
+        when(response1.getResultCode()).thenReturn(LDAPException.SUCCESS);
+        LDAPResponse response2 = mock(LDAPResponse.class);
+        when(response2.getMessageID()).thenReturn(2);
+        when(response2.getResultCode()).thenReturn(LDAPException.ENTRY_ALREADY_EXISTS);
+
+        LDAPResponseQueue queue = mock(LDAPResponseQueue.class);
+        when(queue.getMessageIDs()).thenReturn(new int[] {1}, new int[] {1, 2});
+        when(queue.getResponse()).thenReturn(response1, response2);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.add(any(LDAPEntry.class), nullable(LDAPResponseQueue.class)))
+                    .thenReturn(queue))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            List<DirectoryChangeResult> results = new ArrayList<>();
+
+            DirectoryTransferProgress progress;
+            try (DirectoryLdifReader reader = createReader("dn: cn=a,o=org\ncn: a\n\ndn: cn=b,o=org\ncn: b\n\n")) {
+                progress = dm.importLdif(reader, results::add, null);
+            }
+
+            assertEquals(2, progress.getEntryCount());
+            assertEquals(1, progress.getFailureCount());
+            assertEquals(2, results.size());
+            assertEquals(LDAPException.ENTRY_ALREADY_EXISTS, results.get(1).getResultCode());
+        }
+    }
+
+    @Test
+    public void testImportParentBeforeChild() throws DirectoryException, LDAPException {
+
+        List<String> events = new ArrayList<>();
+        List<LDAPResponse> responses = new ArrayList<>();
+        for (int messageID = 1; messageID <= 3; messageID++) {
+            LDAPResponse response = mock(LDAPResponse.class);
+            when(response.getMessageID()).thenReturn(messageID);
+            when(response.getResultCode()).thenReturn(LDAPException.SUCCESS);
+            responses.add(response);
+        }
+
+        LDAPResponseQueue queue = mock(LDAPResponseQueue.class);
+        when(queue.getMessageIDs()).thenReturn(new int[] {1}, new int[] {2}, new int[] {2, 3});
+        when(queue.getResponse()).thenAnswer(invocation -> {
+            events.add("response");
+            return responses.remove(0);
+        });
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.add(any(LDAPEntry.class), nullable(LDAPResponseQueue.class)))
+                    .thenAnswer(invocation -> {
+                        events.add("add " + ((LDAPEntry) invocation.getArgument(0)).getDN());
+                        return queue;
+                    }))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            List<DirectoryChangeResult> results = new ArrayList<>();
+
+            DirectoryTransferProgress progress;
+            try (DirectoryLdifReader reader = createReader("dn: ou=people,o=org\nou: people\n\n"
+                + "dn: uid=jdoe, ou=people,o=org\nuid: jdoe\n\n"
+                + "dn: ou=groups,o=org\nou: groups\n\n")) {
+                progress = dm.importLdif(reader, results::add, null);
+            }
+
+            assertEquals(3, progress.getEntryCount());
+            assertEquals(0, progress.getFailureCount());
+            assertEquals(List.of("add ou=people,o=org", "response", "add uid=jdoe, ou=people,o=org",
+                "add ou=groups,o=org", "response", "response"), events);
+        }
+    }
+}
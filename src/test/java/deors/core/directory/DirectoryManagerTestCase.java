@@ -6,14 +6,40 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
 import org.junit.jupiter.api.Test;
 import org.mockito.MockedConstruction;
 
@@ -22,6 +48,12 @@ import com.novell.ldap.LDAPAttributeSet;
 import com.novell.ldap.LDAPConnection;
 import com.novell.ldap.LDAPEntry;
 import com.novell.ldap.LDAPException;
+import com.novell.ldap.LDAPMessage;
+import com.novell.ldap.LDAPModification;
+import com.novell.ldap.LDAPResponse;
+import com.novell.ldap.LDAPResponseQueue;
+import com.novell.ldap.LDAPSearchQueue;
+import com.novell.ldap.LDAPSearchResult;
 import com.novell.ldap.LDAPSearchResults;
 
 public class DirectoryManagerTestCase {
@@ -310,6 +342,38 @@ public class DirectoryManagerTestCase {
         }
     }
 
+    @Test
+    public void testVisitAttributeValuesOk() throws DirectoryException, LDAPException {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("theAttributeName", new String[] {"theValue1", "theValue2"}));
+        LDAPEntry entry = new LDAPEntry("theObjectDN", attributes);
+        LDAPSearchResults searchResults = mock(LDAPSearchResults.class);
+        when(searchResults.hasMore()).thenReturn(true);
+        when(searchResults.next()).thenReturn(entry);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false))
+                    .thenReturn(searchResults))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            List<String> values = new ArrayList<>();
+            assertEquals(2, dm.visitAttributeValues("theObjectDN", "theAttributeName",
+                value -> values.add(value.toString())));
+            assertEquals(Arrays.asList("theValue1", "theValue2"), values);
+        }
+    }
+
+    @Test
+    public void testVisitAttributeValuesIAE() {
+
+        DirectoryManager dm = new DirectoryManager();
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> dm.visitAttributeValues("theObjectDN", "theAttributeName", null));
+        assertEquals("error while reading attribute values: invalid visitor", ex.getMessage());
+    }
+
     @Test
     public void testGetAttributeValueBytesEmpty() throws DirectoryException, LDAPException {
 
@@ -347,6 +411,85 @@ public class DirectoryManagerTestCase {
         }
     }
 
+    @Test
+    public void testGetAttributeValueBufferOk() throws DirectoryException, LDAPException {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        LDAPAttribute attribute = new LDAPAttribute("theAttributeName", new byte[] {4, 8, -32});
+        attribute.addValue(new byte[] {15});
+        attributes.add(attribute);
+        LDAPEntry entry = new LDAPEntry("theObjectDN", attributes);
+        LDAPSearchResults searchResults = mock(LDAPSearchResults.class);
+        when(searchResults.hasMore()).thenReturn(true);
+        when(searchResults.next()).thenReturn(entry);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false))
+                    .thenReturn(searchResults))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+
+            ByteBuffer buffer = dm.getAttributeValueBuffer("theObjectDN", "theAttributeName");
+            assertTrue(buffer.isReadOnly());
+            assertEquals(ByteBuffer.wrap(new byte[] {4, 8, -32}), buffer);
+            assertEquals(2, dm.getAttributeValueBuffers("theObjectDN", "theAttributeName").count());
+
+            ByteBuffer target = ByteBuffer.allocate(8);
+            assertEquals(3, dm.writeAttributeValue("theObjectDN", "theAttributeName", target));
+            assertEquals(3, target.position());
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            assertEquals(3, dm.writeAttributeValue("theObjectDN", "theAttributeName", Channels.newChannel(output)));
+            assertArrayEquals(new byte[] {4, 8, -32}, output.toByteArray());
+        }
+    }
+
+    @Test
+    public void testGetAttributeValueBufferNotFound() throws DirectoryException, LDAPException {
+
+        LDAPSearchResults searchResults = mock(LDAPSearchResults.class);
+        when(searchResults.hasMore()).thenReturn(false);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false))
+                    .thenReturn(searchResults))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+
+            assertEquals(0, dm.getAttributeValueBuffer("theObjectDN", "theAttributeName").remaining());
+            assertEquals(0, dm.writeAttributeValue("theObjectDN", "theAttributeName", ByteBuffer.allocate(0)));
+        }
+    }
+
+    @Test
+    public void testWriteAttributeValueError() throws DirectoryException, LDAPException, IOException {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("theAttributeName", new byte[] {4, 8, -32}));
+        LDAPEntry entry = new LDAPEntry("theObjectDN", attributes);
+        LDAPSearchResults searchResults = mock(LDAPSearchResults.class);
+        when(searchResults.hasMore()).thenReturn(true);
+        when(searchResults.next()).thenReturn(entry);
+        WritableByteChannel channel = mock(WritableByteChannel.class);
+        when(channel.write(any(ByteBuffer.class))).thenThrow(new IOException("closed"));
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false))
+                    .thenReturn(searchResults))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+
+            DirectoryException ex = assertThrows(DirectoryException.class,
+                () -> dm.writeAttributeValue("theObjectDN", "theAttributeName", channel));
+            assertEquals("error while writing attribute value: closed", ex.getMessage());
+            assertThrows(BufferOverflowException.class,
+                () -> dm.writeAttributeValue("theObjectDN", "theAttributeName", ByteBuffer.allocate(2)));
+        }
+    }
+
     @Test
     public void testGetAttributeValueBytesError() throws DirectoryException, LDAPException {
 
@@ -360,4 +503,1025 @@ public class DirectoryManagerTestCase {
                 () -> dm.getAttributeValueBytes("theObjectDN", "theAttributeName"));
         }
     }
+
+    @Test
+    public void testConstructorIAEPool() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> new DirectoryManager((DirectoryConnectionPool) null));
+        assertEquals("error while creating manager: invalid connection pool", ex.getMessage());
+    }
+
+    @Test
+    public void testPooledGetAttributeValueReturnsConnection() throws DirectoryException, LDAPException {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("theAttributeName", "theValue"));
+        LDAPEntry entry = new LDAPEntry("theObjectDN", attributes);
+        LDAPSearchResults searchResults = mock(LDAPSearchResults.class);
+        when(searchResults.hasMore()).thenReturn(true);
+        when(searchResults.next()).thenReturn(entry);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false))
+                    .thenReturn(searchResults));
+             DirectoryConnectionPool pool = new DirectoryConnectionPool("localhost", 2000, 0, 1, 0, 0, false, 0)) {
+
+            DirectoryManager dm = new DirectoryManager(pool);
+            assertTrue(dm.isConnected());
+            assertNull(dm.getConnection());
+            assertEquals("theValue", dm.getAttributeValue("theObjectDN", "theAttributeName"));
+            assertEquals(0, pool.getActiveCount());
+            assertEquals(1, pool.getIdleCount());
+
+            dm.close();
+            assertFalse(dm.isConnected());
+            assertFalse(pool.isClosed());
+        }
+    }
+
+    @Test
+    public void testPooledGetAttributeValueInvalidatesBrokenConnection() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false))
+                    .thenThrow(new LDAPException("error", LDAPException.SERVER_DOWN, "error")));
+             DirectoryConnectionPool pool = new DirectoryConnectionPool("localhost", 2000, 0, 1, 0, 0, false, 0)) {
+
+            DirectoryManager dm = new DirectoryManager(pool);
+            assertThrows(DirectoryException.class,
+                () -> dm.getAttributeValue("theObjectDN", "theAttributeName"));
+            assertEquals(0, pool.getActiveCount());
+            assertEquals(0, pool.getIdleCount());
+            verify(mocked.constructed().get(0)).disconnect();
+        }
+    }
+
+    @Test
+    public void testPooledGetAttributeValueRetriesOnAnotherServer() throws DirectoryException, LDAPException {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("theAttributeName", "theValue"));
+        LDAPEntry entry = new LDAPEntry("theObjectDN", attributes);
+        LDAPSearchResults searchResults = mock(LDAPSearchResults.class);
+        when(searchResults.hasMore()).thenReturn(true);
+        when(searchResults.next()).thenReturn(entry);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> {
+                    if (context.getCount() == 1) {
+                        when(connection.search(
+                            "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false))
+                            .thenThrow(new LDAPException("error", LDAPException.SERVER_DOWN, "error"));
+                    } else {
+                        when(connection.search(
+                            "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false))
+                            .thenReturn(searchResults);
+                    }
+                });
+             DirectoryServerSet servers = new DirectoryServerSet(List.of(
+                 new DirectoryServer("host1", 2000), new DirectoryServer("host2", 2000)),
+                 DirectoryServerSelectors.failover(), 0);
+             DirectoryConnectionPool pool = new DirectoryConnectionPool(servers, null, null, 0, 2, 0, 0, false, 0)) {
+
+            DirectoryManager dm = new DirectoryManager(pool);
+            assertEquals("theValue", dm.getAttributeValue("theObjectDN", "theAttributeName"));
+
+            assertEquals(2, mocked.constructed().size());
+            verify(mocked.constructed().get(0)).connect("host1", 2000);
+            verify(mocked.constructed().get(0)).disconnect();
+            verify(mocked.constructed().get(1)).connect("host2", 2000);
+            assertFalse(servers.getStatuses().get(0).isAvailable());
+            assertEquals(1, pool.getIdleCount());
+        }
+    }
+
+    @Test
+    public void testCreateConnectionFailsOverToNextServer() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> doThrow(new LDAPException("error", LDAPException.CONNECT_ERROR, "error"))
+                    .when(connection).connect("host1", 2000));
+             DirectoryServerSet servers = new DirectoryServerSet(List.of(
+                 new DirectoryServer("host1", 2000), new DirectoryServer("host2", 2000)),
+                 DirectoryServerSelectors.failover(), 0)) {
+
+            DirectoryManager dm = new DirectoryManager(servers);
+            assertTrue(dm.isConnected());
+            assertEquals(2, mocked.constructed().size());
+            assertEquals(mocked.constructed().get(1), dm.getConnection());
+            assertFalse(servers.getStatuses().get(0).isAvailable());
+        }
+    }
+
+    @Test
+    public void testCreateConnectionAllServersDown() {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> doThrow(new LDAPException("error", LDAPException.CONNECT_ERROR, "error"))
+                    .when(connection).connect(anyString(), eq(2000)));
+             DirectoryServerSet servers = new DirectoryServerSet(List.of(
+                 new DirectoryServer("host1", 2000), new DirectoryServer("host2", 2000)),
+                 DirectoryServerSelectors.roundRobin(), 0)) {
+
+            DirectoryManager dm = new DirectoryManager();
+            assertThrows(DirectoryException.class, () -> dm.createConnection(servers));
+            assertFalse(dm.isConnected());
+            assertEquals(2, mocked.constructed().size());
+        }
+    }
+
+    @Test
+    public void testGetAttributeValueCircuitOpen() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false))
+                    .thenThrow(new LDAPException("error", LDAPException.LDAP_TIMEOUT, "error")))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+
+            for (int i = 0; i < 20; i++) {
+                assertThrows(DirectoryException.class,
+                    () -> dm.getAttributeValue("theObjectDN", "theAttributeName"));
+            }
+
+            DirectoryException ex = assertThrows(DirectoryException.class,
+                () -> dm.getAttributeValue("theObjectDN", "theAttributeName"));
+            assertEquals("error while accessing directory: calls to server localhost:2000 are rejected after repeated failures",
+                ex.getMessage());
+            verify(mocked.constructed().get(0), times(20)).search(
+                "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false);
+        }
+    }
+
+    @Test
+    public void testGetAttributeValueCached() throws DirectoryException, LDAPException {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("theAttributeName", "theValue"));
+        LDAPEntry entry = new LDAPEntry("theObjectDN", attributes);
+        LDAPSearchResults searchResults = mock(LDAPSearchResults.class);
+        when(searchResults.hasMore()).thenReturn(true);
+        when(searchResults.next()).thenReturn(entry);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false))
+                    .thenReturn(searchResults))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            DirectoryAttributeCache cache = new DirectoryAttributeCache(10, 60000, 60000);
+            dm.setAttributeCache(cache);
+
+            assertEquals("theValue", dm.getAttributeValue("theObjectDN", "theAttributeName"));
+            assertArrayEquals(new String[] {"theValue"}, dm.getAttributeValues("theObjectDN", "theAttributeName"));
+
+            verify(mocked.constructed().get(0), times(1)).search(
+                "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false);
+            assertEquals(1, cache.getHitCount());
+            assertEquals(1, cache.getMissCount());
+        }
+    }
+
+    @Test
+    public void testGetAttributeValueInvalidatedInFlight() throws DirectoryException, LDAPException {
+
+        DirectoryAttributeCache cache = new DirectoryAttributeCache(10, 60000, 60000);
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("theAttributeName", "theValue"));
+        LDAPEntry entry = new LDAPEntry("theObjectDN", attributes);
+        LDAPSearchResults searchResults = mock(LDAPSearchResults.class);
+        when(searchResults.hasMore()).thenReturn(true);
+        when(searchResults.next()).thenAnswer(invocation -> {
+            cache.invalidate("theObjectDN");
+            return entry;
+        });
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false))
+                    .thenReturn(searchResults))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            dm.setAttributeCache(cache);
+
+            assertEquals("theValue", dm.getAttributeValue("theObjectDN", "theAttributeName"));
+            assertEquals(0, cache.size());
+        }
+    }
+
+    @Test
+    public void testGetAttributeValueNotFoundCached() throws DirectoryException, LDAPException {
+
+        LDAPSearchResults searchResults = mock(LDAPSearchResults.class);
+        when(searchResults.hasMore()).thenReturn(false);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false))
+                    .thenReturn(searchResults))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            dm.setAttributeCache(new DirectoryAttributeCache(10, 60000, 60000));
+
+            assertNull(dm.getAttributeValue("theObjectDN", "theAttributeName"));
+            assertArrayEquals(new byte[0], dm.getAttributeValueBytes("theObjectDN", "theAttributeName"));
+
+            verify(mocked.constructed().get(0), times(1)).search(
+                "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false);
+        }
+    }
+
+    @Test
+    public void testGetAttributesNotConnected() {
+
+        DirectoryException ex = assertThrows(DirectoryException.class, () -> {
+            DirectoryManager dm = new DirectoryManager();
+            dm.getAttributes((String) null, "theAttributeName");
+        });
+        assertEquals("there is no active connection to perform action", ex.getMessage());
+    }
+
+    @Test
+    public void testGetAttributesOk() throws DirectoryException, LDAPException {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("cn", "theName"));
+        attributes.add(new LDAPAttribute("mail", new String[] {"theMail1", "theMail2"}));
+        attributes.add(new LDAPAttribute("jpegPhoto", new byte[] {4, 8, -32}));
+        LDAPEntry entry = new LDAPEntry("theObjectDN", attributes);
+        LDAPSearchResults searchResults = mock(LDAPSearchResults.class);
+        when(searchResults.hasMore()).thenReturn(true);
+        when(searchResults.next()).thenReturn(entry);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    "theObjectDN", LDAPConnection.SCOPE_BASE, "",
+                    new String[] {"cn", "mail", "jpegPhoto", "description"}, false))
+                    .thenReturn(searchResults))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            DirectoryAttributes result = dm.getAttributes("theObjectDN", "cn", "mail", "jpegPhoto", "description");
+
+            assertEquals("theObjectDN", result.getObjectDN());
+            assertEquals(3, result.size());
+            assertEquals("theName", result.getValue("CN"));
+            assertArrayEquals(new String[] {"theMail1", "theMail2"}, result.getValues("mail"));
+            assertArrayEquals(new byte[] {4, 8, -32}, result.getValueBytes("jpegPhoto"));
+            assertFalse(result.contains("description"));
+            assertNull(result.getValue("description"));
+        }
+    }
+
+    @Test
+    public void testGetAttributesDNNotFound() throws DirectoryException, LDAPException {
+
+        LDAPSearchResults searchResults = mock(LDAPSearchResults.class);
+        when(searchResults.hasMore()).thenReturn(false);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"cn", "mail"}, false))
+                    .thenReturn(searchResults))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            DirectoryAttributes result = dm.getAttributes("theObjectDN", "cn", "mail");
+
+            assertTrue(result.isEmpty());
+            assertArrayEquals(new String[0], result.getValues("mail"));
+            assertArrayEquals(new byte[0], result.getValueBytes("mail"));
+        }
+    }
+
+    @Test
+    public void testGetAttributesCached() throws DirectoryException, LDAPException {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("cn", "theName"));
+        LDAPEntry entry = new LDAPEntry("theObjectDN", attributes);
+        LDAPSearchResults searchResults = mock(LDAPSearchResults.class);
+        when(searchResults.hasMore()).thenReturn(true);
+        when(searchResults.next()).thenReturn(entry);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"cn", "mail"}, false))
+                    .thenReturn(searchResults))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            dm.setAttributeCache(new DirectoryAttributeCache(10, 60000, 60000));
+
+            dm.getAttributes("theObjectDN", "cn", "mail");
+            DirectoryAttributes result = dm.getAttributes("theObjectDN", "cn", "mail");
+            assertEquals("theName", result.getValue("cn"));
+            assertNull(dm.getAttributeValue("theObjectDN", "mail"));
+
+            verify(mocked.constructed().get(0), times(1)).search(
+                "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"cn", "mail"}, false);
+        }
+    }
+
+    @Test
+    public void testToDirectoryAttributes() {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("cn", "theName"));
+        attributes.add(new LDAPAttribute("empty"));
+
+        DirectoryAttributes result = DirectoryManager.toDirectoryAttributes(
+            "theObjectDN", new LDAPEntry("theObjectDN", attributes));
+        assertEquals(1, result.size());
+        assertTrue(result.contains("CN"));
+        assertFalse(result.contains("empty"));
+
+        assertTrue(DirectoryManager.toDirectoryAttributes("theObjectDN", null).isEmpty());
+    }
+
+    @Test
+    public void testGetAttributesBatchIAE() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> {
+            try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class)) {
+                DirectoryManager dm = new DirectoryManager("localhost", 2000);
+                dm.getAttributes((Collection<String>) null, "mail");
+            }
+        });
+        assertEquals("error while searching directory: invalid object DN collection", ex.getMessage());
+    }
+
+    @Test
+    public void testGetAttributesBatchOk() throws DirectoryException, LDAPException {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("mail", "theMail"));
+        LDAPSearchResult result1 = mock(LDAPSearchResult.class);
+        when(result1.getMessageID()).thenReturn(1);
+        when(result1.getEntry()).thenReturn(new LDAPEntry("theObjectDN1", attributes));
+        LDAPResponse response1 = mock(LDAPResponse.class);
+        when(response1.getMessageID()).thenReturn(1);
+        when(response1.getResultCode()).thenReturn(LDAPException.SUCCESS);
+        LDAPResponse response2 = mock(LDAPResponse.class);
+        when(response2.getMessageID()).thenReturn(2);
+        when(response2.getResultCode()).thenReturn(LDAPException.NO_SUCH_OBJECT);
+
+        LDAPSearchQueue queue = mock(LDAPSearchQueue.class);
+        when(queue.getMessageIDs()).thenReturn(new int[] {1}, new int[] {1, 2});
+        when(queue.getResponse()).thenReturn(result1, response1, response2);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    anyString(), eq(LDAPConnection.SCOPE_BASE), eq(""), aryEq(new String[] {"mail"}),
+                    eq(false), nullable(LDAPSearchQueue.class)))
+                    .thenReturn(queue))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            DirectoryBatchResult result = dm.getAttributes(
+                Arrays.asList("theObjectDN1", "theObjectDN2"), "mail");
+
+            assertEquals("theMail", result.get("theObjectDN1").getValue("mail"));
+            assertNull(result.get("theObjectDN2"));
+            assertTrue(result.hasErrors());
+            assertEquals(LDAPException.NO_SUCH_OBJECT,
+                ((LDAPException) result.getError("theObjectDN2").getCause()).getResultCode());
+        }
+    }
+
+    @Test
+    public void testGetAttributesBatchNoResponse() throws DirectoryException, LDAPException {
+
+        LDAPResponse response1 = mock(LDAPResponse.class);
+        when(response1.getMessageID()).thenReturn(1);
+        when(response1.getResultCode()).thenReturn(LDAPException.SUCCESS);
+
+        LDAPSearchQueue queue = mock(LDAPSearchQueue.class);
+        when(queue.getMessageIDs()).thenReturn(new int[] {1}, new int[] {1, 2});
+        when(queue.getResponse()).thenReturn(response1, (LDAPMessage) null);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    anyString(), eq(LDAPConnection.SCOPE_BASE), eq(""), aryEq(new String[] {"mail"}),
+                    eq(false), nullable(LDAPSearchQueue.class)))
+                    .thenReturn(queue))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+
+            DirectoryException ex = assertThrows(DirectoryException.class, () -> dm.getAttributes(
+                Arrays.asList("theObjectDN1", "theObjectDN2"), "mail"));
+            assertEquals(LDAPException.SERVER_DOWN, ((LDAPException) ex.getCause()).getResultCode());
+        }
+    }
+
+    @Test
+    public void testAddEntryOk() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class)) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            DirectoryAttributeCache cache = new DirectoryAttributeCache(10, 60000, 60000);
+            cache.store("theObjectDN", "mail", null);
+            dm.setAttributeCache(cache);
+
+            LDAPAttributeSet attributes = new LDAPAttributeSet();
+            attributes.add(new LDAPAttribute("mail", "theMail"));
+            dm.addEntry("theObjectDN", attributes);
+
+            verify(mocked.constructed().get(0)).add(any(LDAPEntry.class));
+            assertEquals(0, cache.size());
+        }
+    }
+
+    @Test
+    public void testModifyEntryOk() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class)) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            LDAPModification modification = new LDAPModification(
+                LDAPModification.REPLACE, new LDAPAttribute("mail", "theMail"));
+            dm.modifyEntry("theObjectDN", modification);
+
+            verify(mocked.constructed().get(0)).modify(eq("theObjectDN"), aryEq(new LDAPModification[] {modification}));
+        }
+    }
+
+    @Test
+    public void testRenameEntryOk() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class)) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            dm.renameEntry("cn=old,o=org", "cn=new", null, true);
+            dm.renameEntry("cn=old,o=org", "cn=new", "ou=people,o=org", false);
+
+            verify(mocked.constructed().get(0)).rename("cn=old,o=org", "cn=new", true);
+            verify(mocked.constructed().get(0)).rename("cn=old,o=org", "cn=new", "ou=people,o=org", false);
+        }
+    }
+
+    @Test
+    public void testDeleteEntryError() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> doThrow(new LDAPException("error", LDAPException.NO_SUCH_OBJECT, "error"))
+                    .when(connection).delete("theObjectDN"))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+
+            DirectoryException ex = assertThrows(DirectoryException.class, () -> dm.deleteEntry("theObjectDN"));
+            assertTrue(ex.getMessage().startsWith("error while deleting entry: "));
+            assertEquals(LDAPException.NO_SUCH_OBJECT, ((LDAPException) ex.getCause()).getResultCode());
+        }
+    }
+
+    @Test
+    public void testApplyChangesIAE() throws DirectoryException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class)) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+
+            assertThrows(IllegalArgumentException.class, () -> dm.applyChanges(null, result -> { }));
+            assertThrows(IllegalArgumentException.class, () -> dm.applyChange(null));
+        }
+    }
+
+    @Test
+    public void testApplyChangesOk() throws DirectoryException, LDAPException {
+
+        LDAPResponse response1 = mock(LDAPResponse.class);
+        when(response1.getMessageID()).thenReturn(1);
+        when(response1.getResultCode()).thenReturn(LDAPException.SUCCESS);
+        LDAPResponse response2 = mock(LDAPResponse.class);
+        when(response2.getMessageID()).thenReturn(2);
+        when(response2.getResultCode()).thenReturn(LDAPException.NO_SUCH_OBJECT);
+        LDAPResponse response3 = mock(LDAPResponse.class);
+        when(response3.getMessageID()).thenReturn(3);
+        when(response3.getResultCode()).thenReturn(LDAPException.SUCCESS);
+
+        LDAPResponseQueue queue = mock(LDAPResponseQueue.class);
+        when(queue.getMessageIDs()).thenReturn(new int[] {1}, new int[] {1, 2}, new int[] {1, 2, 3});
+        when(queue.getResponse()).thenReturn(response1, response3, response2);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.delete(anyString(), nullable(LDAPResponseQueue.class)))
+                    .thenReturn(queue))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            List<DirectoryChangeResult> results = new ArrayList<>();
+
+            long failures = dm.applyChanges(Stream.of(
+                DirectoryChange.delete("theObjectDN1"),
+                DirectoryChange.delete("theObjectDN2"),
+                DirectoryChange.delete("theObjectDN3")), results::add);
+
+            assertEquals(1, failures);
+            assertEquals(3, results.size());
+            assertEquals("theObjectDN1", results.get(0).getChange().getObjectDN());
+            assertTrue(results.get(0).isSuccess());
+            assertEquals("theObjectDN3", results.get(1).getChange().getObjectDN());
+            assertEquals("theObjectDN2", results.get(2).getChange().getObjectDN());
+            assertEquals(LDAPException.NO_SUCH_OBJECT, results.get(2).getResultCode());
+        }
+    }
+
+    @Test
+    public void testApplyChangesConnectionError() throws DirectoryException, LDAPException {
+
+        LDAPResponse response1 = mock(LDAPResponse.class);
+        when(response1.getMessageID()).thenReturn(1);
+        when(response1.getResultCode()).thenReturn(LDAPException.SUCCESS);
+
+        LDAPResponseQueue queue = mock(LDAPResponseQueue.class);
+        when(queue.getMessageIDs()).thenReturn(new int[] {1}, new int[] {1, 2});
+        when(queue.getResponse()).thenReturn(response1)
+            .thenThrow(new LDAPException("error", LDAPException.CONNECT_ERROR, "error"));
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.delete(anyString(), nullable(LDAPResponseQueue.class)))
+                    .thenReturn(queue))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            List<DirectoryChangeResult> results = new ArrayList<>();
+
+            DirectoryException ex = assertThrows(DirectoryException.class, () -> dm.applyChanges(Stream.of(
+                DirectoryChange.delete("theObjectDN1"),
+                DirectoryChange.delete("theObjectDN2")), results::add));
+
+            assertTrue(ex.getMessage().startsWith("error while applying changes: "));
+            assertEquals(2, results.size());
+            assertTrue(results.get(0).isSuccess());
+            assertEquals(LDAPException.CONNECT_ERROR, results.get(1).getResultCode());
+        }
+    }
+
+    @Test
+    public void testApplyChangesNoResponse() throws DirectoryException, LDAPException {
+
+        LDAPResponse response1 = mock(LDAPResponse.class);
+        when(response1.getMessageID()).thenReturn(1);
+        when(response1.getResultCode()).thenReturn(LDAPException.SUCCESS);
+
+        LDAPResponseQueue queue = mock(LDAPResponseQueue.class);
+        when(queue.getMessageIDs()).thenReturn(new int[] {1}, new int[] {1, 2});
+        when(queue.getResponse()).thenReturn(response1, (LDAPMessage) null);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.delete(anyString(), nullable(LDAPResponseQueue.class)))
+                    .thenReturn(queue))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            List<DirectoryChangeResult> results = new ArrayList<>();
+
+            DirectoryException ex = assertThrows(DirectoryException.class, () -> dm.applyChanges(Stream.of(
+                DirectoryChange.delete("theObjectDN1"),
+                DirectoryChange.delete("theObjectDN2")), results::add));
+
+            assertTrue(ex.getMessage().startsWith("error while applying changes: "));
+            assertEquals(2, results.size());
+            assertTrue(results.get(0).isSuccess());
+            assertEquals(LDAPException.SERVER_DOWN, results.get(1).getResultCode());
+        }
+    }
+
+    @Test
+    public void testGetAttributesBatchCached() throws DirectoryException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class)) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            DirectoryAttributeCache cache = new DirectoryAttributeCache(10, 60000, 60000);
+            cache.store("theObjectDN1", "mail", new LDAPAttribute("mail", "theMail"));
+            dm.setAttributeCache(cache);
+
+            DirectoryBatchResult result = dm.getAttributes(Arrays.asList("theObjectDN1"), "mail");
+
+            assertEquals("theMail", result.get("theObjectDN1").getValue("mail"));
+            assertFalse(result.hasErrors());
+        }
+    }
+
+    @Test
+    public void testConcurrentCloseConnectionOnlyOneSucceeds() throws Exception {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class)) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            int threads = 16;
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicInteger closed = new AtomicInteger();
+            List<Future<?>> tasks = new ArrayList<>();
+
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < threads; i++) {
+                    tasks.add(executor.submit(() -> {
+                        start.await();
+                        try {
+                            dm.closeConnection();
+                            closed.incrementAndGet();
+                        } catch (DirectoryException de) {
+                            // another thread closed the connection first
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> task : tasks) {
+                    task.get();
+                }
+            }
+
+            assertEquals(1, closed.get());
+            assertFalse(dm.isConnected());
+            verify(mocked.constructed().get(0), times(1)).disconnect();
+        }
+    }
+
+    @Test
+    public void testConcurrentPooledGetAttributeValue() throws Exception {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("theAttributeName", "theValue"));
+        LDAPEntry entry = new LDAPEntry("theObjectDN", attributes);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> {
+                    LDAPSearchResults searchResults = mock(LDAPSearchResults.class);
+                    when(searchResults.hasMore()).thenReturn(true);
+                    when(searchResults.next()).thenReturn(entry);
+                    when(connection.search(
+                        "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false))
+                        .thenReturn(searchResults);
+                });
+             DirectoryConnectionPool pool = new DirectoryConnectionPool("localhost", 2000, 4, 4, 0, 0, false, 0)) {
+
+            DirectoryManager dm = new DirectoryManager(pool);
+            int threads = 200;
+            List<Future<String>> tasks = new ArrayList<>();
+
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < threads; i++) {
+                    tasks.add(executor.submit(() -> dm.getAttributeValue("theObjectDN", "theAttributeName")));
+                }
+                for (Future<String> task : tasks) {
+                    assertEquals("theValue", task.get());
+                }
+            }
+
+            assertEquals(4, mocked.constructed().size());
+            assertEquals(0, pool.getActiveCount());
+            assertEquals(4, pool.getIdleCount());
+        }
+    }
+
+    @Test
+    public void testConcurrentGetAttributeValueCoalesced() throws Exception {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("theAttributeName", "theValue"));
+        LDAPEntry entry = new LDAPEntry("theObjectDN", attributes);
+        LDAPSearchResults searchResults = mock(LDAPSearchResults.class);
+        when(searchResults.hasMore()).thenReturn(true);
+        when(searchResults.next()).thenReturn(entry);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false))
+                    .thenAnswer(invocation -> {
+                        release.await();
+                        return searchResults;
+                    }))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            int threads = 50;
+            List<Future<String>> tasks = new ArrayList<>();
+
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < threads; i++) {
+                    tasks.add(executor.submit(() -> dm.getAttributeValue("theObjectDN", "theAttributeName")));
+                }
+                while (dm.getCoalescedReadCount() < threads - 1) {
+                    Thread.sleep(10);
+                }
+                release.countDown();
+                for (Future<String> task : tasks) {
+                    assertEquals("theValue", task.get());
+                }
+            }
+
+            verify(mocked.constructed().get(0), times(1)).search(
+                "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false);
+            assertEquals(threads - 1, dm.getCoalescedReadCount());
+        }
+    }
+
+    @Test
+    public void testConcurrentGetAttributeValueCoalescedError() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false))
+                    .thenAnswer(invocation -> {
+                        release.await();
+                        throw new LDAPException("error", 1, "error");
+                    }))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            List<Future<DirectoryException>> tasks = new ArrayList<>();
+
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < 2; i++) {
+                    tasks.add(executor.submit(() -> assertThrows(DirectoryException.class,
+                        () -> dm.getAttributeValue("theObjectDN", "theAttributeName"))));
+                }
+                while (dm.getCoalescedReadCount() < 1) {
+                    Thread.sleep(10);
+                }
+                release.countDown();
+                assertSame(tasks.get(0).get(), tasks.get(1).get());
+            }
+
+            verify(mocked.constructed().get(0), times(1)).search(
+                "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false);
+        }
+    }
+
+    @Test
+    public void testOperationListenerNotConnected() {
+
+        DirectoryManager dm = new DirectoryManager();
+        DirectoryStatistics statistics = new DirectoryStatistics();
+        dm.setOperationListener(statistics);
+
+        assertThrows(DirectoryException.class, () -> dm.getAttributeValue("theObjectDN", "theAttributeName"));
+        assertThrows(DirectoryException.class, dm::closeConnection);
+
+        assertEquals(1, statistics.getErrorCount(DirectoryOperation.GET_ATTRIBUTE_VALUE, LDAPException.OTHER));
+        assertEquals(1, statistics.getErrorCount(DirectoryOperation.CLOSE));
+        assertEquals(0, statistics.getInFlightCount(DirectoryOperation.GET_ATTRIBUTE_VALUE));
+    }
+
+    @Test
+    public void testOperationListenerRecordsOperations() throws DirectoryException, LDAPException {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("theAttributeName", "theValue"));
+        LDAPEntry entry = new LDAPEntry("theObjectDN", attributes);
+        LDAPSearchResults searchResults = mock(LDAPSearchResults.class);
+        when(searchResults.hasMore()).thenReturn(true);
+        when(searchResults.next()).thenReturn(entry);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> {
+                    when(connection.search(
+                        "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false))
+                        .thenReturn(searchResults);
+                    when(connection.search(
+                        "theMissingDN", LDAPConnection.SCOPE_BASE, "", new String[] {"theAttributeName"}, false))
+                        .thenThrow(new LDAPException("error", LDAPException.NO_SUCH_OBJECT, "error"));
+                })) {
+
+            DirectoryManager dm = new DirectoryManager();
+            DirectoryStatistics statistics = new DirectoryStatistics();
+            dm.setOperationListener(statistics);
+
+            dm.createConnection("localhost", 2000);
+            assertEquals("theValue", dm.getAttributeValue("theObjectDN", "theAttributeName"));
+            assertThrows(DirectoryException.class, () -> dm.getAttributeValue("theMissingDN", "theAttributeName"));
+            dm.closeConnection();
+
+            assertEquals(1, statistics.getCount(DirectoryOperation.CONNECT));
+            assertEquals(2, statistics.getCount(DirectoryOperation.GET_ATTRIBUTE_VALUE));
+            assertEquals(1, statistics.getErrorCount(DirectoryOperation.GET_ATTRIBUTE_VALUE,
+                LDAPException.NO_SUCH_OBJECT));
+            assertEquals(1, statistics.getCount(DirectoryOperation.CLOSE));
+            assertEquals(0, statistics.getErrorCount(DirectoryOperation.CLOSE));
+        }
+    }
+
+    @Test
+    public void testBindNotConnected() {
+
+        DirectoryManager dm = new DirectoryManager();
+
+        DirectoryException ex = assertThrows(DirectoryException.class, () -> dm.bind("cn=admin", "secret"));
+        assertEquals("there is no active connection to perform action", ex.getMessage());
+        assertThrows(DirectoryException.class, () -> dm.verifyCredentials("uid=jdoe", "secret"));
+    }
+
+    @Test
+    public void testBindOk() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class)) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            dm.bind("cn=admin", "secret");
+
+            verify(mocked.constructed().get(0)).bind(
+                LDAPConnection.LDAP_V3, "cn=admin", "secret".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testBindError() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> doThrow(new LDAPException("error", LDAPException.INVALID_CREDENTIALS, "error"))
+                    .when(connection).bind(eq(LDAPConnection.LDAP_V3), eq("cn=admin"), any(byte[].class)))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+
+            DirectoryException ex = assertThrows(DirectoryException.class, () -> dm.bind("cn=admin", "wrong"));
+            assertEquals(LDAPException.INVALID_CREDENTIALS, ((LDAPException) ex.getCause()).getResultCode());
+        }
+    }
+
+    @Test
+    public void testBindPooled() throws DirectoryException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class);
+             DirectoryConnectionPool pool = new DirectoryConnectionPool("localhost", 2000, 0, 1, 0, 0, false, 0)) {
+
+            DirectoryManager dm = new DirectoryManager(pool);
+
+            DirectoryException ex = assertThrows(DirectoryException.class, () -> dm.bind("cn=admin", "secret"));
+            assertEquals("error while binding: the identity of pooled connections is set in the connection pool",
+                ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testVerifyCredentialsSeparateConnection() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class)) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            dm.bind("cn=admin", "secret");
+
+            assertTrue(dm.verifyCredentials("uid=jdoe", "password"));
+
+            assertEquals(2, mocked.constructed().size());
+            LDAPConnection connection = mocked.constructed().get(0);
+            LDAPConnection checkConnection = mocked.constructed().get(1);
+            verify(connection, never()).bind(eq(LDAPConnection.LDAP_V3), eq("uid=jdoe"), any(byte[].class));
+            verify(connection, times(1)).bind(
+                LDAPConnection.LDAP_V3, "cn=admin", "secret".getBytes(StandardCharsets.UTF_8));
+            verify(checkConnection).connect("localhost", 2000);
+            verify(checkConnection).bind(
+                LDAPConnection.LDAP_V3, "uid=jdoe", "password".getBytes(StandardCharsets.UTF_8));
+            verify(checkConnection).disconnect();
+        }
+    }
+
+    @Test
+    public void testVerifyCredentialsInvalid() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> doThrow(new LDAPException("error", LDAPException.INVALID_CREDENTIALS, "error"))
+                    .when(connection).bind(eq(LDAPConnection.LDAP_V3), eq("uid=jdoe"), any(byte[].class)))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            DirectoryStatistics statistics = new DirectoryStatistics();
+            dm.setOperationListener(statistics);
+
+            assertFalse(dm.verifyCredentials("uid=jdoe", "wrong"));
+            assertFalse(dm.verifyCredentials("uid=jdoe", ""));
+
+            assertEquals(2, mocked.constructed().size());
+            verify(mocked.constructed().get(0), never()).bind(
+                eq(LDAPConnection.LDAP_V3), eq("uid=jdoe"), any(byte[].class));
+            verify(mocked.constructed().get(1), times(1)).bind(
+                eq(LDAPConnection.LDAP_V3), eq("uid=jdoe"), any(byte[].class));
+            verify(mocked.constructed().get(1)).disconnect();
+            assertEquals(2, statistics.getErrorCount(DirectoryOperation.VERIFY_CREDENTIALS,
+                LDAPException.INVALID_CREDENTIALS));
+        }
+    }
+
+    @Test
+    public void testVerifyCredentialsPooled() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class);
+             DirectoryConnectionPool pool = new DirectoryConnectionPool("localhost", 2000,
+                 "cn=admin", "secret", 1, 1, 0, 0, false, 0)) {
+
+            DirectoryManager dm = new DirectoryManager(pool);
+
+            assertTrue(dm.verifyCredentials("uid=jdoe", "password"));
+            assertTrue(dm.verifyCredentials("uid=jdoe", "password"));
+
+            assertEquals(1, mocked.constructed().size());
+            assertEquals(1, pool.getIdleCount());
+            verify(mocked.constructed().get(0), times(3)).bind(
+                LDAPConnection.LDAP_V3, "cn=admin", "secret".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testVerifyCredentialsPooledRestoreError() throws DirectoryException, LDAPException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> doThrow(new LDAPException("error", LDAPException.OTHER, "error"))
+                    .when(connection).bind(LDAPConnection.LDAP_V3, null, (byte[]) null));
+             DirectoryConnectionPool pool = new DirectoryConnectionPool("localhost", 2000, 1, 1, 0, 0, false, 0)) {
+
+            DirectoryManager dm = new DirectoryManager(pool);
+
+            assertThrows(DirectoryException.class, () -> dm.verifyCredentials("uid=jdoe", "password"));
+            assertEquals(0, pool.getIdleCount());
+            assertEquals(0, pool.getActiveCount());
+            verify(mocked.constructed().get(0)).disconnect();
+        }
+    }
+
+    @Test
+    public void testWarmUpIAE() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> {
+            DirectoryManager dm = new DirectoryManager();
+            dm.warmUp(1, null);
+        });
+        assertEquals("error while warming up: invalid canary DN", ex.getMessage());
+    }
+
+    @Test
+    public void testWarmUpNotConnected() {
+
+        DirectoryManager dm = new DirectoryManager();
+        DirectoryException ex = assertThrows(DirectoryException.class, () -> dm.warmUp(1, ""));
+        assertEquals("there is no active connection to perform action", ex.getMessage());
+        assertFalse(dm.isReady());
+    }
+
+    @Test
+    public void testWarmUpOk() throws DirectoryException, LDAPException {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("objectClass", "top"));
+        LDAPEntry entry = new LDAPEntry("", attributes);
+        LDAPSearchResults searchResults = mock(LDAPSearchResults.class);
+        when(searchResults.hasMore()).thenReturn(true);
+        when(searchResults.next()).thenReturn(entry);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    "", LDAPConnection.SCOPE_BASE, "", new String[] {"objectClass"}, false))
+                    .thenReturn(searchResults))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            assertFalse(dm.isReady());
+            dm.warmUp(4, "");
+            assertTrue(dm.isReady());
+            dm.closeConnection();
+            assertFalse(dm.isReady());
+        }
+    }
+
+    @Test
+    public void testWarmUpCanaryNotFound() throws DirectoryException, LDAPException {
+
+        LDAPSearchResults searchResults = mock(LDAPSearchResults.class);
+        when(searchResults.hasMore()).thenReturn(false);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    "theObjectDN", LDAPConnection.SCOPE_BASE, "", new String[] {"objectClass"}, false))
+                    .thenReturn(searchResults))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            DirectoryException ex = assertThrows(DirectoryException.class, () -> dm.warmUp(1, "theObjectDN"));
+            assertEquals("error while warming up: canary entry theObjectDN not found", ex.getMessage());
+            assertFalse(dm.isReady());
+        }
+    }
+
+    @Test
+    public void testGetObjectOk() throws DirectoryException, LDAPException {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("uid", "jdoe"));
+        attributes.add(new LDAPAttribute("uidNumber", "1001"));
+        LDAPEntry entry = new LDAPEntry("theObjectDN", attributes);
+        LDAPSearchResults searchResults = mock(LDAPSearchResults.class);
+        when(searchResults.hasMore()).thenReturn(true);
+        when(searchResults.next()).thenReturn(entry);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> when(connection.search(
+                    "theObjectDN", LDAPConnection.SCOPE_BASE, "",
+                    new String[] {"uid", "cn", "mail", "uidNumber", "enabled"}, false))
+                    .thenReturn(searchResults))) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            DirectoryObjectMapperTestCase.Person person = dm.getObject("theObjectDN", DirectoryObjectMapperTestCase.Person.class);
+            assertEquals("theObjectDN", person.dn());
+            assertEquals("jdoe", person.uid());
+            assertEquals(1001, person.uidNumber());
+        }
+    }
 }
@@ -0,0 +1,197 @@
+package deors.core.directory;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.novell.ldap.LDAPAttribute;
+import com.novell.ldap.LDAPAttributeSet;
+import com.novell.ldap.LDAPEntry;
+
+public class DirectoryObjectMapperTestCase {
+
+    public DirectoryObjectMapperTestCase() {
+
+        super();
+    }
+
+    public record Person(@DirectoryObjectDN String dn, String uid, @DirectoryAttribute("cn") String name,
+                         List<String> mail, int uidNumber, Boolean enabled) {
+    }
+
+    public static class Account {
+
+        @DirectoryObjectDN
+        private String dn;
+
+        @DirectoryAttribute
+        private String uid;
+
+        @DirectoryAttribute("description")
+        private String[] descriptions;
+
+        private String ignored = "kept";
+
+        public Account() {
+
+            super();
+        }
+    }
+
+    public static class ServiceAccount extends Account {
+
+        @DirectoryAttribute("loginShell")
+        private String shell;
+
+        @DirectoryAttribute("shadowExpire")
+        private long expires;
+
+        public ServiceAccount() {
+
+            super();
+        }
+    }
+
+    public static class Unmapped {
+
+        private String uid;
+
+        public Unmapped() {
+
+            super();
+        }
+    }
+
+    public record UnsupportedType(Map<String, String> uid) {
+    }
+
+    public static class ImmutableAccount {
+
+        @DirectoryAttribute
+        private final String uid = null;
+
+        public ImmutableAccount() {
+
+            super();
+        }
+    }
+
+    private static LDAPEntry createEntry() {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("UID", "jdoe"));
+        attributes.add(new LDAPAttribute("cn", "John Doe"));
+        attributes.add(new LDAPAttribute("mail", new String[] {"jdoe@example.org", "john@example.org"}));
+        attributes.add(new LDAPAttribute("uidNumber", "1001"));
+        attributes.add(new LDAPAttribute("enabled", "TRUE"));
+        attributes.add(new LDAPAttribute("description", new String[] {"first", "second"}));
+        attributes.add(new LDAPAttribute("loginShell", "/bin/sh"));
+        return new LDAPEntry("uid=jdoe,ou=people,o=org", attributes);
+    }
+
+    @Test
+    public void testForTypeIsCached() {
+
+        assertSame(DirectoryObjectMapper.forType(Person.class), DirectoryObjectMapper.forType(Person.class));
+        assertEquals(Person.class, DirectoryObjectMapper.forType(Person.class).getType());
+    }
+
+    @Test
+    public void testAttributeNames() {
+
+        assertArrayEquals(new String[] {"uid", "cn", "mail", "uidNumber", "enabled"},
+            DirectoryObjectMapper.forType(Person.class).getAttributeNames());
+    }
+
+    @Test
+    public void testMapRecord() throws DirectoryException {
+
+        Person person = DirectoryObjectMapper.forType(Person.class).map(createEntry());
+
+        assertEquals("uid=jdoe,ou=people,o=org", person.dn());
+        assertEquals("jdoe", person.uid());
+        assertEquals("John Doe", person.name());
+        assertEquals(List.of("jdoe@example.org", "john@example.org"), person.mail());
+        assertEquals(1001, person.uidNumber());
+        assertTrue(person.enabled());
+    }
+
+    @Test
+    public void testMapRecordMissingAttributes() throws DirectoryException {
+
+        Person person = DirectoryObjectMapper.forType(Person.class).map(
+            new LDAPEntry("uid=empty,o=org", new LDAPAttributeSet()));
+
+        assertEquals("uid=empty,o=org", person.dn());
+        assertNull(person.uid());
+        assertEquals(List.of(), person.mail());
+        assertEquals(0, person.uidNumber());
+        assertNull(person.enabled());
+    }
+
+    @Test
+    public void testMapClassWithInheritedFields() throws DirectoryException {
+
+        ServiceAccount account = DirectoryObjectMapper.forType(ServiceAccount.class).map(createEntry());
+
+        assertEquals("uid=jdoe,ou=people,o=org", ((Account) account).dn);
+        assertEquals("jdoe", ((Account) account).uid);
+        assertArrayEquals(new String[] {"first", "second"}, ((Account) account).descriptions);
+        assertEquals("kept", ((Account) account).ignored);
+        assertEquals("/bin/sh", account.shell);
+        assertEquals(0, account.expires);
+        assertFalse(List.of(DirectoryObjectMapper.forType(ServiceAccount.class).getAttributeNames()).contains("ignored"));
+    }
+
+    @Test
+    public void testMapDirectoryAttributes() throws DirectoryException {
+
+        Map<String, LDAPAttribute> attributes = DirectoryAttributes.createAttributeMap();
+        attributes.put("uid", new LDAPAttribute("uid", "jdoe"));
+        attributes.put("uidnumber", new LDAPAttribute("uidNumber", "7"));
+
+        Person person = DirectoryObjectMapper.forType(Person.class).map(
+            new DirectoryAttributes("uid=jdoe,o=org", attributes));
+
+        assertEquals("uid=jdoe,o=org", person.dn());
+        assertEquals("jdoe", person.uid());
+        assertEquals(7, person.uidNumber());
+    }
+
+    @Test
+    public void testMapInvalidValue() {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("uidNumber", "many"));
+
+        DirectoryException ex = assertThrows(DirectoryException.class,
+            () -> DirectoryObjectMapper.forType(Person.class).map(new LDAPEntry("uid=bad,o=org", attributes)));
+        assertEquals("error while mapping entry uid=bad,o=org: invalid value of attribute uidNumber", ex.getMessage());
+    }
+
+    @Test
+    public void testForTypeIAE() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> DirectoryObjectMapper.forType(Unmapped.class));
+        assertEquals("error while mapping objects: type " + Unmapped.class.getName() + " has no mapped attributes",
+            ex.getMessage());
+
+        ex = assertThrows(IllegalArgumentException.class,
+            () -> DirectoryObjectMapper.forType(UnsupportedType.class));
+        assertEquals("error while mapping objects: unsupported type of property uid in " + UnsupportedType.class.getName(),
+            ex.getMessage());
+
+        assertThrows(IllegalArgumentException.class, () -> DirectoryObjectMapper.forType(ImmutableAccount.class));
+        assertThrows(IllegalArgumentException.class, () -> DirectoryObjectMapper.forType(null));
+    }
+}
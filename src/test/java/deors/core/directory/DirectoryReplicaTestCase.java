@@ -0,0 +1,440 @@
+package deors.core.directory;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import com.novell.ldap.LDAPAttribute;
+import com.novell.ldap.LDAPAttributeSet;
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPEntry;
+
+public class DirectoryReplicaTestCase {
+
+    public DirectoryReplicaTestCase() {
+
+        super();
+    }
+
+    private static LDAPEntry createEntry(String uid, String mail, String... telephoneNumbers) {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("uid", uid));
+        attributes.add(new LDAPAttribute("mail", mail));
+        if (telephoneNumbers.length > 0) {
+            attributes.add(new LDAPAttribute("telephoneNumber", telephoneNumbers));
+        }
+        return new LDAPEntry("uid=" + uid + ",ou=people,o=org", attributes);
+    }
+
+    private static LDAPEntry createEntry(String objectDN) {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("description", objectDN));
+        return new LDAPEntry(objectDN, attributes);
+    }
+
+    private static final class ReplicaSourceManager extends DirectoryManager {
+
+        private final List<LDAPEntry> directoryEntries = new ArrayList<>();
+
+        private Consumer<? super DirectoryChangeEvent> eventHandler;
+
+        private Runnable resyncHandler;
+
+        private int searchCount;
+
+        private Runnable baseSearchHook;
+
+        ReplicaSourceManager() {
+
+            super();
+        }
+
+        @Override
+        Stream<LDAPEntry> searchDirectory(String searchBase, int searchScope, String searchFilter,
+                                          int pageSize, String... attributeNames) {
+
+            if (searchScope == LDAPConnection.SCOPE_BASE) {
+                if (baseSearchHook != null) {
+                    baseSearchHook.run();
+                }
+                return directoryEntries.stream().filter(entry -> entry.getDN().equals(searchBase));
+            }
+
+            searchCount++;
+            return new ArrayList<>(directoryEntries).stream();
+        }
+
+        @Override
+        public boolean isConnected() {
+
+            return true;
+        }
+
+        @Override
+        DirectorySubscription subscribe(String searchBase, int searchScope, String searchFilter,
+                                        DirectorySubscription.Mode mode,
+                                        Consumer<? super DirectoryChangeEvent> eventHandler,
+                                        Runnable resyncHandler, String... attributeNames) {
+
+            this.eventHandler = eventHandler;
+            this.resyncHandler = resyncHandler;
+            return new DirectorySubscription(() -> null, (connection, error) -> { }, searchBase, searchScope,
+                searchFilter, null, mode, eventHandler, resyncHandler);
+        }
+    }
+
+    @Test
+    public void testConstructorIAE() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> new DirectoryReplica(null, "o=org", LDAPConnection.SCOPE_SUB, null));
+        assertEquals("error while creating replica: invalid manager or search base", ex.getMessage());
+
+        assertThrows(IllegalArgumentException.class,
+            () -> new DirectoryReplica(new DirectoryManager(), null, LDAPConnection.SCOPE_SUB, null));
+    }
+
+    @Test
+    public void testNotLoaded() {
+
+        DirectoryReplica replica = new DirectoryReplica(
+            new DirectoryManager(), "ou=people,o=org", LDAPConnection.SCOPE_SUB, null);
+
+        assertFalse(replica.isLoaded());
+        assertNull(replica.getValue("uid=a,ou=people,o=org", "mail"));
+        assertEquals(0, replica.size());
+        assertEquals(1, replica.getMissCount());
+    }
+
+    @Test
+    public void testLoadAndRead() throws DirectoryException {
+
+        ReplicaSourceManager manager = new ReplicaSourceManager();
+        manager.directoryEntries.add(createEntry("a", "a@org", "1", "2"));
+        manager.directoryEntries.add(createEntry("b", "b@org"));
+
+        try (DirectoryReplica replica = new DirectoryReplica(
+                manager, "ou=people,o=org", LDAPConnection.SCOPE_SUB, null)) {
+
+            replica.start();
+
+            assertTrue(replica.isLoaded());
+            assertEquals(2, replica.size());
+            assertEquals(1, replica.getLoadCount());
+            assertEquals("a@org", replica.getValue("uid=a,ou=people,o=org", "mail"));
+            assertEquals("a@org", replica.getValue("UID=A, ou=People, o=org", "MAIL"));
+            assertArrayEquals(new String[] {"1", "2"},
+                replica.getValues("uid=a,ou=people,o=org", "telephoneNumber"));
+            assertArrayEquals(new String[] {"b@org"}, replica.getValues("uid=b,ou=people,o=org", "mail"));
+            assertNull(replica.getValue("uid=b,ou=people,o=org", "telephoneNumber"));
+            assertNull(replica.getValue("uid=c,ou=people,o=org", "mail"));
+            assertTrue(replica.contains("uid=b,ou=people,o=org"));
+            assertEquals(4, replica.getHitCount());
+            assertEquals(2, replica.getMissCount());
+
+            String[] values = replica.getValues("uid=a,ou=people,o=org", "telephoneNumber");
+            values[0] = "changed";
+            assertEquals("1", replica.getValue("uid=a,ou=people,o=org", "telephoneNumber"));
+
+            List<CharSequence> visited = new ArrayList<>();
+            assertEquals(2, replica.visitValues("uid=a,ou=people,o=org", "telephoneNumber", visited::add));
+            assertEquals(1, replica.visitValues("uid=b,ou=people,o=org", "mail", visited::add));
+            assertEquals(-1, replica.visitValues("uid=b,ou=people,o=org", "telephoneNumber", visited::add));
+            assertEquals(Arrays.asList("1", "2", "b@org"), visited);
+        }
+    }
+
+    @Test
+    public void testChangesApplied() throws DirectoryException {
+
+        ReplicaSourceManager manager = new ReplicaSourceManager();
+        manager.directoryEntries.add(createEntry("a", "a@org"));
+        manager.directoryEntries.add(createEntry("b", "b@org"));
+
+        try (DirectoryReplica replica = new DirectoryReplica(
+                manager, "ou=people,o=org", LDAPConnection.SCOPE_SUB, null)) {
+
+            replica.start();
+
+            manager.eventHandler.accept(new DirectoryChangeEvent(DirectoryChange.Type.MODIFY,
+                "uid=a,ou=people,o=org", null, createEntry("a", "new@org"), -1));
+            assertEquals("new@org", replica.getValue("uid=a,ou=people,o=org", "mail"));
+
+            manager.eventHandler.accept(new DirectoryChangeEvent(DirectoryChange.Type.DELETE,
+                "uid=b,ou=people,o=org", null, null, -1));
+            assertFalse(replica.contains("uid=b,ou=people,o=org"));
+
+            LDAPEntry renamed = createEntry("c", "a@org");
+            manager.eventHandler.accept(new DirectoryChangeEvent(DirectoryChange.Type.RENAME,
+                "uid=c,ou=people,o=org", "uid=a,ou=people,o=org", renamed, -1));
+            assertFalse(replica.contains("uid=a,ou=people,o=org"));
+            assertEquals("a@org", replica.getValue("uid=c,ou=people,o=org", "mail"));
+
+            // changelog events carry no entry, so it is read from the directory
+            manager.directoryEntries.add(createEntry("d", "d@org"));
+            manager.eventHandler.accept(new DirectoryChangeEvent(DirectoryChange.Type.ADD,
+                "uid=d,ou=people,o=org", null, null, 9));
+            assertEquals("d@org", replica.getValue("uid=d,ou=people,o=org", "mail"));
+
+            manager.eventHandler.accept(new DirectoryChangeEvent(DirectoryChange.Type.MODIFY,
+                "uid=e,ou=people,o=org", null, null, 10));
+            assertFalse(replica.contains("uid=e,ou=people,o=org"));
+
+            assertEquals(5, replica.getChangeCount());
+        }
+    }
+
+    @Test
+    public void testEntryReadWithoutLock() throws DirectoryException {
+
+        ReplicaSourceManager manager = new ReplicaSourceManager();
+        manager.directoryEntries.add(createEntry("a", "a@org"));
+
+        try (DirectoryReplica replica = new DirectoryReplica(
+                manager, "ou=people,o=org", LDAPConnection.SCOPE_SUB, null)) {
+
+            replica.start();
+
+            manager.baseSearchHook = () -> {
+                try {
+                    CompletableFuture.runAsync(() -> replica.setIndexedAttributes("mail")).get(10, TimeUnit.SECONDS);
+                } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                    throw new IllegalStateException(e);
+                }
+            };
+            manager.eventHandler.accept(new DirectoryChangeEvent(DirectoryChange.Type.MODIFY,
+                "uid=a,ou=people,o=org", null, null, 9));
+
+            assertEquals("a@org", replica.getValue("uid=a,ou=people,o=org", "mail"));
+            assertEquals(1, replica.getChangeCount());
+        }
+    }
+
+    @Test
+    public void testRenameMovesSubtree() throws DirectoryException {
+
+        ReplicaSourceManager manager = new ReplicaSourceManager();
+        manager.directoryEntries.add(createEntry("ou=sales,ou=people,o=org"));
+        manager.directoryEntries.add(createEntry("ou=east,ou=sales,ou=people,o=org"));
+        manager.directoryEntries.add(createEntry("uid=a,ou=east,ou=sales,ou=people,o=org"));
+
+        try (DirectoryReplica replica = new DirectoryReplica(
+                manager, "ou=people,o=org", LDAPConnection.SCOPE_SUB, null)) {
+
+            replica.start();
+            replica.setIndexedAttributes("description");
+
+            manager.eventHandler.accept(new DirectoryChangeEvent(DirectoryChange.Type.RENAME,
+                "ou=market,ou=people,o=org", "ou=sales,ou=people,o=org",
+                createEntry("ou=market,ou=people,o=org"), -1));
+
+            assertEquals(3, replica.size());
+            assertFalse(replica.contains("uid=a,ou=east,ou=sales,ou=people,o=org"));
+            assertTrue(replica.contains("uid=a,ou=east,ou=market,ou=people,o=org"));
+            List<LDAPEntry> found = replica.search("ou=people,o=org", LDAPConnection.SCOPE_SUB,
+                "(description=uid=a,ou=east,ou=sales,ou=people,o=org)");
+            assertEquals(1, found.size());
+            assertEquals("uid=a,ou=east,ou=market,ou=people,o=org", found.get(0).getDN());
+
+            manager.eventHandler.accept(new DirectoryChangeEvent(DirectoryChange.Type.RENAME,
+                "ou=market,ou=archive,o=org", "ou=market,ou=people,o=org",
+                createEntry("ou=market,ou=archive,o=org"), -1));
+
+            assertEquals(0, replica.size());
+        }
+    }
+
+    @Test
+    public void testResyncReloads() throws DirectoryException {
+
+        ReplicaSourceManager manager = new ReplicaSourceManager();
+        manager.directoryEntries.add(createEntry("a", "a@org"));
+
+        try (DirectoryReplica replica = new DirectoryReplica(
+                manager, "ou=people,o=org", LDAPConnection.SCOPE_SUB, null)) {
+
+            replica.start();
+            manager.directoryEntries.add(createEntry("b", "b@org"));
+            manager.resyncHandler.run();
+
+            assertEquals(2, manager.searchCount);
+            assertEquals(2, replica.getLoadCount());
+            assertEquals("b@org", replica.getValue("uid=b,ou=people,o=org", "mail"));
+        }
+    }
+
+    @Test
+    public void testClose() throws DirectoryException {
+
+        ReplicaSourceManager manager = new ReplicaSourceManager();
+        manager.directoryEntries.add(createEntry("a", "a@org"));
+
+        DirectoryReplica replica = new DirectoryReplica(manager, "ou=people,o=org", LDAPConnection.SCOPE_SUB, null);
+        replica.start();
+        DirectorySubscription subscription = replica.getSubscription();
+
+        replica.close();
+
+        assertTrue(subscription.isClosed());
+        assertFalse(replica.isLoaded());
+        assertNull(replica.getSubscription());
+    }
+
+    @Test
+    public void testEntriesShareNamesAndValues() {
+
+        DirectoryReplica.ValuePool pool = new DirectoryReplica.ValuePool();
+
+        DirectoryReplica.ReplicaEntry first = DirectoryReplica.ReplicaEntry.of(
+            createEntry("a", new String("shared@org")), pool);
+        DirectoryReplica.ReplicaEntry second = DirectoryReplica.ReplicaEntry.of(
+            createEntry("b", new String("shared@org")), pool);
+
+        assertSame(first.get("mail"), second.get("mail"));
+        assertEquals("a", first.get("UID"));
+        assertNull(first.get("cn"));
+
+        pool.releaseValues();
+        DirectoryReplica.ReplicaEntry third = DirectoryReplica.ReplicaEntry.of(
+            createEntry("c", "c@org", "1", "2"), pool);
+        assertArrayEquals(new String[] {"1", "2"}, (String[]) third.get("telephoneNumber"));
+    }
+
+    @Test
+    public void testSearchWithIndex() throws DirectoryException {
+
+        ReplicaSourceManager manager = new ReplicaSourceManager();
+        manager.directoryEntries.add(createEntry("jdoe", "jdoe@corp.com"));
+        manager.directoryEntries.add(createEntry("jsmith", "jsmith@corp.com", "1"));
+        manager.directoryEntries.add(createEntry("admin", "admin@other.com"));
+
+        try (DirectoryReplica replica = new DirectoryReplica(
+                manager, "ou=people,o=org", LDAPConnection.SCOPE_SUB, null)) {
+
+            replica.start();
+            replica.setIndexedAttributes("uid", "mail");
+            manager.setReplica(replica);
+            DirectoryStatistics statistics = new DirectoryStatistics();
+            manager.setOperationListener(statistics);
+
+            List<LDAPEntry> found = replica.search("ou=people,o=org", LDAPConnection.SCOPE_SUB, "uid=JDOE");
+            assertEquals(1, found.size());
+            assertEquals("uid=jdoe,ou=people,o=org", found.get(0).getDN());
+            assertEquals("jdoe@corp.com", found.get(0).getAttribute("mail").getStringValue());
+
+            assertEquals(2, replica.search("ou=people,o=org", LDAPConnection.SCOPE_ONE,
+                "(&(uid=*)(mail=*@corp.com))").size());
+            assertEquals(3, replica.search("ou=people,o=org", LDAPConnection.SCOPE_SUB,
+                "(|(uid=j*)(mail=admin@other.com))", "uid").stream()
+                .filter(entry -> entry.getAttribute("mail") == null).count());
+            assertEquals(1, replica.search("uid=jsmith,ou=people,o=org", LDAPConnection.SCOPE_BASE,
+                "(telephoneNumber=1)").size());
+            assertEquals(0, replica.search("ou=people,o=org", LDAPConnection.SCOPE_SUB, "(uid=nobody)").size());
+
+            try (Stream<LDAPEntry> results = manager.search("ou=people,o=org", LDAPConnection.SCOPE_SUB,
+                    "(uid=jsmith)")) {
+                assertEquals("uid=jsmith,ou=people,o=org", results.findFirst().get().getDN());
+            }
+            assertEquals(6, replica.getSearchCount());
+            assertEquals(1, manager.searchCount);
+            assertEquals(1, statistics.getCount(DirectoryOperation.SEARCH));
+
+            // searches the replica cannot answer are notified by the directory search only
+            try (Stream<LDAPEntry> results = manager.search("o=org", LDAPConnection.SCOPE_SUB, "(uid=jsmith)")) {
+                assertEquals(3, results.count());
+            }
+            assertEquals(2, manager.searchCount);
+            assertEquals(1, statistics.getCount(DirectoryOperation.SEARCH));
+            assertEquals(0, statistics.getInFlightCount(DirectoryOperation.SEARCH));
+
+            manager.eventHandler.accept(new DirectoryChangeEvent(DirectoryChange.Type.MODIFY,
+                "uid=jdoe,ou=people,o=org", null, createEntry("jdoe", "john@corp.com"), -1));
+            assertEquals(0, replica.search("ou=people,o=org", LDAPConnection.SCOPE_SUB,
+                "(mail=jdoe@corp.com)").size());
+            assertEquals(1, replica.search("ou=people,o=org", LDAPConnection.SCOPE_SUB,
+                "(mail=john*)").size());
+
+            manager.eventHandler.accept(new DirectoryChangeEvent(DirectoryChange.Type.DELETE,
+                "uid=jdoe,ou=people,o=org", null, null, -1));
+            assertEquals(0, replica.search("ou=people,o=org", LDAPConnection.SCOPE_SUB, "(uid=jdoe)").size());
+        }
+    }
+
+    @Test
+    public void testSearchNotMirrored() throws DirectoryException {
+
+        ReplicaSourceManager manager = new ReplicaSourceManager();
+        manager.directoryEntries.add(createEntry("jdoe", "jdoe@corp.com"));
+
+        try (DirectoryReplica replica = new DirectoryReplica(
+                manager, "ou=people,o=org", LDAPConnection.SCOPE_SUB, null, "uid", "mail")) {
+
+            replica.start();
+
+            assertNull(replica.search("o=org", LDAPConnection.SCOPE_SUB, "(uid=jdoe)"));
+            assertNull(replica.search("ou=people,o=org", LDAPConnection.SCOPE_SUB, "(cn=John)"));
+            assertNull(replica.search("ou=people,o=org", LDAPConnection.SCOPE_SUB, "(uid=jdoe)", "cn"));
+            assertNull(replica.search("ou=people,o=org", LDAPConnection.SCOPE_SUB, "(uid=jdoe)", "+"));
+            assertNull(replica.search("ou=people,o=org", LDAPConnection.SCOPE_SUB, "(uid:caseExactMatch:=jdoe)"));
+            assertNull(replica.search("ou=people,o=org", LDAPConnection.SCOPE_SUB, "(uid=jdoe"));
+            assertEquals(1, replica.search("ou=people,o=org", LDAPConnection.SCOPE_SUB,
+                "(&(objectClass=*)(uid=jdoe))", "1.1").size());
+
+            // all user attributes cannot be answered when only some are mirrored
+            assertNull(replica.search("ou=people,o=org", LDAPConnection.SCOPE_SUB, "(uid=jdoe)"));
+            assertNull(replica.search("ou=people,o=org", LDAPConnection.SCOPE_SUB, "(uid=jdoe)", (String[]) null));
+            assertNull(replica.search("ou=people,o=org", LDAPConnection.SCOPE_SUB, "(uid=jdoe)", "*"));
+            assertEquals(1, replica.search("ou=people,o=org", LDAPConnection.SCOPE_SUB,
+                "(uid=jdoe)", "uid", "mail").size());
+        }
+
+        try (DirectoryReplica replica = new DirectoryReplica(
+                manager, "ou=people,o=org", LDAPConnection.SCOPE_SUB, "(mail=*@corp.com)")) {
+
+            replica.start();
+
+            assertNull(replica.search("ou=people,o=org", LDAPConnection.SCOPE_SUB, "(uid=jdoe)"));
+            assertEquals(1, replica.search("ou=people,o=org", LDAPConnection.SCOPE_SUB,
+                "(&(uid=jdoe)(mail=*@corp.com))").size());
+        }
+    }
+
+    @Test
+    public void testIndex() {
+
+        DirectoryReplica.ValuePool pool = new DirectoryReplica.ValuePool();
+        DirectoryReplica.ReplicaIndex index = new DirectoryReplica.ReplicaIndex("mail", null);
+
+        DirectoryReplica.ReplicaEntry first = DirectoryReplica.ReplicaEntry.of(createEntry("a", "Same@org"), pool);
+        DirectoryReplica.ReplicaEntry second = DirectoryReplica.ReplicaEntry.of(createEntry("b", "same@org"), pool);
+
+        index.add("a", first);
+        index.add("b", second);
+        assertEquals(2, index.withValue("SAME@ORG").size());
+        assertEquals(2, index.withPrefix("sa").size());
+        assertEquals(0, index.withPrefix("t").size());
+
+        index.remove("a", first);
+        assertEquals(1, index.withValue("same@org").size());
+        index.remove("b", second);
+        assertTrue(index.withValue("same@org").isEmpty());
+    }
+}
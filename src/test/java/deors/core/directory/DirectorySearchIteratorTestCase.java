@@ -0,0 +1,189 @@
+package deors.core.directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedConstruction;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPControl;
+import com.novell.ldap.LDAPEntry;
+import com.novell.ldap.LDAPException;
+import com.novell.ldap.LDAPSearchConstraints;
+import com.novell.ldap.LDAPSearchResults;
+import com.novell.ldap.controls.LDAPPagedResultsResponse;
+
+public class DirectorySearchIteratorTestCase {
+
+    public DirectorySearchIteratorTestCase() {
+
+        super();
+    }
+
+    private static LDAPSearchResults page(byte[] cookie, LDAPEntry... entries) throws LDAPException {
+
+        LDAPSearchResults results = mock(LDAPSearchResults.class);
+        Boolean[] more = new Boolean[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            more[i] = i < entries.length - 1;
+        }
+        when(results.hasMore()).thenReturn(entries.length > 0, more);
+        if (entries.length > 0) {
+            LDAPEntry[] rest = new LDAPEntry[entries.length - 1];
+            System.arraycopy(entries, 1, rest, 0, rest.length);
+            when(results.next()).thenReturn(entries[0], rest);
+        }
+        LDAPPagedResultsResponse response = mock(LDAPPagedResultsResponse.class);
+        when(response.getCookie()).thenReturn(cookie);
+        when(results.getResponseControls()).thenReturn(new LDAPControl[] {response});
+        return results;
+    }
+
+    @Test
+    public void testIteratesAllPages() throws LDAPException {
+
+        LDAPEntry entry1 = new LDAPEntry("uid=1");
+        LDAPEntry entry2 = new LDAPEntry("uid=2");
+        LDAPEntry entry3 = new LDAPEntry("uid=3");
+        LDAPSearchResults page1 = page(new byte[] {1}, entry1, entry2);
+        LDAPSearchResults page2 = page(new byte[0], entry3);
+
+        LDAPConnection connection = mock(LDAPConnection.class);
+        when(connection.getSearchConstraints()).thenReturn(new LDAPSearchConstraints());
+        when(connection.search(eq("ou=people"), eq(LDAPConnection.SCOPE_SUB), eq("(uid=*)"), isNull(),
+            eq(false), any(LDAPSearchConstraints.class))).thenReturn(page1, page2);
+
+        List<LDAPException> released = new ArrayList<>();
+        DirectorySearchIterator iterator = new DirectorySearchIterator(connection,
+            (c, e) -> released.add(e), "ou=people", LDAPConnection.SCOPE_SUB, "(uid=*)", null, 2);
+
+        assertTrue(iterator.hasNext());
+        assertSame(entry1, iterator.next());
+        assertTrue(released.isEmpty());
+        assertSame(entry2, iterator.next());
+        assertSame(entry3, iterator.next());
+        assertFalse(iterator.hasNext());
+        assertThrows(NoSuchElementException.class, iterator::next);
+
+        assertEquals(1, released.size());
+        assertNull(released.get(0));
+    }
+
+    @Test
+    public void testSizeLimitNotApplied() throws LDAPException {
+
+        LDAPEntry entry1 = new LDAPEntry("uid=1");
+        LDAPEntry entry2 = new LDAPEntry("uid=2");
+        LDAPEntry entry3 = new LDAPEntry("uid=3");
+        LDAPSearchResults page1 = page(new byte[] {1}, entry1, entry2);
+        LDAPSearchResults page2 = page(new byte[0], entry3);
+
+        LDAPSearchConstraints limited = new LDAPSearchConstraints();
+        limited.setMaxResults(1);
+        LDAPConnection connection = mock(LDAPConnection.class);
+        when(connection.getSearchConstraints()).thenReturn(limited);
+        when(connection.search(eq("ou=people"), eq(LDAPConnection.SCOPE_SUB), eq("(uid=*)"), isNull(),
+            eq(false), argThat((LDAPSearchConstraints constraints) -> constraints.getMaxResults() == 0)))
+            .thenReturn(page1, page2);
+
+        DirectorySearchIterator iterator = new DirectorySearchIterator(connection,
+            (c, e) -> { }, "ou=people", LDAPConnection.SCOPE_SUB, "(uid=*)", null, 2);
+
+        List<LDAPEntry> found = new ArrayList<>();
+        iterator.forEachRemaining(found::add);
+
+        assertEquals(List.of(entry1, entry2, entry3), found);
+        assertEquals(1, limited.getMaxResults());
+    }
+
+    @Test
+    public void testCloseAbandonsSearch() throws LDAPException {
+
+        LDAPSearchResults page1 = page(new byte[] {1}, new LDAPEntry("uid=1"), new LDAPEntry("uid=2"));
+
+        LDAPConnection connection = mock(LDAPConnection.class);
+        when(connection.getSearchConstraints()).thenReturn(new LDAPSearchConstraints());
+        when(connection.search(eq("ou=people"), eq(LDAPConnection.SCOPE_SUB), eq("(uid=*)"), isNull(),
+            eq(false), any(LDAPSearchConstraints.class))).thenReturn(page1);
+
+        List<LDAPException> released = new ArrayList<>();
+        DirectorySearchIterator iterator = new DirectorySearchIterator(connection,
+            (c, e) -> released.add(e), "ou=people", LDAPConnection.SCOPE_SUB, "(uid=*)", null, 2);
+
+        iterator.next();
+        iterator.close();
+        iterator.close();
+
+        verify(connection).abandon(page1);
+        assertEquals(1, released.size());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testSearchError() throws LDAPException {
+
+        LDAPException error = new LDAPException("error", LDAPException.SERVER_DOWN, "error");
+        LDAPConnection connection = mock(LDAPConnection.class);
+        when(connection.getSearchConstraints()).thenReturn(new LDAPSearchConstraints());
+        when(connection.search(eq("ou=people"), eq(LDAPConnection.SCOPE_SUB), eq("(uid=*)"), isNull(),
+            eq(false), any(LDAPSearchConstraints.class))).thenThrow(error);
+
+        List<LDAPException> released = new ArrayList<>();
+        DirectorySearchIterator iterator = new DirectorySearchIterator(connection,
+            (c, e) -> released.add(e), "ou=people", LDAPConnection.SCOPE_SUB, "(uid=*)", null, 2);
+
+        UncheckedDirectoryException ex = assertThrows(UncheckedDirectoryException.class, iterator::hasNext);
+        assertSame(error, ex.getCause().getCause());
+        assertSame(error, released.get(0));
+    }
+
+    @Test
+    public void testManagerSearchStream() throws DirectoryException, LDAPException {
+
+        LDAPSearchResults page1 = page(null, new LDAPEntry("uid=1"), new LDAPEntry("uid=2"));
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> {
+                    when(connection.getSearchConstraints()).thenReturn(new LDAPSearchConstraints());
+                    when(connection.search(eq("ou=people"), eq(LDAPConnection.SCOPE_ONE), eq("(uid=*)"),
+                        eq(new String[] {"uid"}), eq(false), any(LDAPSearchConstraints.class))).thenReturn(page1);
+                })) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            try (Stream<LDAPEntry> entries = dm.search("ou=people", LDAPConnection.SCOPE_ONE, "(uid=*)", 10, "uid")) {
+                assertEquals(List.of("uid=1", "uid=2"),
+                    entries.map(LDAPEntry::getDN).collect(Collectors.toList()));
+            }
+        }
+    }
+
+    @Test
+    public void testManagerSearchPageSizeIAE() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> {
+            try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class)) {
+                new DirectoryManager("localhost", 2000).search("ou=people", LDAPConnection.SCOPE_ONE, "(uid=*)", 0);
+            }
+        });
+        assertEquals("error while searching directory: invalid page size", ex.getMessage());
+    }
+}
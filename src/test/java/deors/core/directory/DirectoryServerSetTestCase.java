@@ -0,0 +1,258 @@
+package deors.core.directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.verify;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.net.ssl.SSLContext;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedConstruction;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPException;
+
+public class DirectoryServerSetTestCase {
+
+    public DirectoryServerSetTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testParse() {
+
+        assertEquals(new DirectoryServer("host1", 2000), DirectoryServer.parse("host1:2000"));
+        assertEquals(new DirectoryServer("host1", 389), DirectoryServer.parse(" host1 "));
+        assertEquals(new DirectoryServer("host1", 2000), DirectoryServer.parse("HOST1:2000"));
+        assertEquals("host1:2000", DirectoryServer.parse("host1:2000").toString());
+    }
+
+    @Test
+    public void testParseList() {
+
+        List<DirectoryServer> servers = DirectoryServer.parseList("host1:2000, host2");
+
+        assertEquals(2, servers.size());
+        assertEquals(new DirectoryServer("host1", 2000), servers.get(0));
+        assertEquals(new DirectoryServer("host2", 389), servers.get(1));
+    }
+
+    @Test
+    public void testParseIAE() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> DirectoryServer.parse("host1:port"));
+        assertEquals("error while parsing server address: host1:port", ex.getMessage());
+
+        assertThrows(IllegalArgumentException.class, () -> DirectoryServer.parse(":2000"));
+    }
+
+    @Test
+    public void testConstructorIAE() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> new DirectoryServerSet(List.of(), DirectoryServerSelectors.roundRobin(), 0));
+        assertEquals("error while creating server set: invalid server list", ex.getMessage());
+
+        assertThrows(IllegalArgumentException.class,
+            () -> new DirectoryServerSet(List.of(new DirectoryServer("host1", 2000)), null, 0));
+    }
+
+    @Test
+    public void testUnknownStrategy() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> DirectoryServerSelectors.forName("random"));
+        assertEquals("error while creating server set: unknown selection strategy random", ex.getMessage());
+    }
+
+    @Test
+    public void testRoundRobin() {
+
+        try (DirectoryServerSet servers = createServerSet(DirectoryServerSelectors.roundRobin())) {
+
+            List<DirectoryServerStatus> statuses = servers.getStatuses();
+            assertSame(statuses.get(0), servers.select());
+            assertSame(statuses.get(1), servers.select());
+            assertSame(statuses.get(2), servers.select());
+            assertSame(statuses.get(0), servers.select());
+        }
+    }
+
+    @Test
+    public void testFewestOutstanding() {
+
+        try (DirectoryServerSet servers = createServerSet(DirectoryServerSelectors.fewestOutstanding())) {
+
+            List<DirectoryServerStatus> statuses = servers.getStatuses();
+            statuses.get(0).operationStarted();
+            statuses.get(0).operationStarted();
+            statuses.get(1).operationStarted();
+
+            for (int i = 0; i < 5; i++) {
+                assertSame(statuses.get(2), servers.select());
+            }
+        }
+    }
+
+    @Test
+    public void testLatencyWeighted() {
+
+        try (DirectoryServerSet servers = createServerSet(DirectoryServerSelectors.latencyWeighted())) {
+
+            List<DirectoryServerStatus> statuses = servers.getStatuses();
+            statuses.get(0).recordLatency(1000);
+            statuses.get(1).recordLatency(1000000);
+            statuses.get(2).markFailed();
+
+            int fast = 0;
+            for (int i = 0; i < 1000; i++) {
+                DirectoryServerStatus selected = servers.select();
+                assertNotSame(statuses.get(2), selected);
+                if (selected == statuses.get(0)) {
+                    fast++;
+                }
+            }
+            assertTrue(fast > 950);
+        }
+    }
+
+    @Test
+    public void testFailover() {
+
+        try (DirectoryServerSet servers = createServerSet(DirectoryServerSelectors.failover())) {
+
+            List<DirectoryServerStatus> statuses = servers.getStatuses();
+            assertSame(statuses.get(0), servers.select());
+
+            statuses.get(0).markFailed();
+            assertSame(statuses.get(1), servers.select());
+            assertEquals(1, statuses.get(0).getFailureCount());
+
+            statuses.get(0).markAvailable();
+            assertSame(statuses.get(0), servers.select());
+        }
+    }
+
+    @Test
+    public void testSelectAllUnavailable() {
+
+        try (DirectoryServerSet servers = createServerSet(DirectoryServerSelectors.roundRobin())) {
+
+            List<DirectoryServerStatus> statuses = servers.getStatuses();
+            for (DirectoryServerStatus status : statuses) {
+                status.markFailed();
+            }
+
+            assertSame(statuses.get(0), servers.select());
+        }
+    }
+
+    @Test
+    public void testSelectExcluded() {
+
+        try (DirectoryServerSet servers = createServerSet(DirectoryServerSelectors.roundRobin())) {
+
+            List<DirectoryServerStatus> statuses = servers.getStatuses();
+            Set<DirectoryServer> excluded = new HashSet<>();
+            excluded.add(statuses.get(0).getServer());
+            excluded.add(statuses.get(1).getServer());
+
+            assertSame(statuses.get(2), servers.select(excluded));
+
+            excluded.add(statuses.get(2).getServer());
+            assertNull(servers.select(excluded));
+        }
+    }
+
+    @Test
+    public void testAverageLatency() {
+
+        try (DirectoryServerSet servers = createServerSet(DirectoryServerSelectors.roundRobin())) {
+
+            DirectoryServerStatus status = servers.getStatus(new DirectoryServer("host1", 2000));
+            assertEquals(0, status.getAverageLatency());
+
+            status.operationStarted();
+            assertEquals(1, status.getOutstandingCount());
+            status.operationCompleted();
+            assertEquals(0, status.getOutstandingCount());
+            assertEquals(0, status.getAverageLatency());
+
+            status.recordLatency(800);
+            assertEquals(800, status.getAverageLatency());
+
+            status.recordLatency(1600);
+            assertEquals(900, status.getAverageLatency());
+        }
+    }
+
+    @Test
+    public void testSetTlsIAE() {
+
+        try (DirectoryServerSet servers = createServerSet(DirectoryServerSelectors.roundRobin())) {
+
+            IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> servers.setTls(null));
+            assertEquals("error while configuring TLS: invalid mode or SSL context", ex.getMessage());
+            assertThrows(IllegalArgumentException.class, () -> servers.setTimeouts(null));
+        }
+    }
+
+    @Test
+    public void testProbeSecuresConnection() throws LDAPException, NoSuchAlgorithmException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class);
+             DirectoryServerSet servers = createServerSet(DirectoryServerSelectors.roundRobin())) {
+
+            servers.setTls(new DirectoryTls(DirectoryTls.Mode.STARTTLS, SSLContext.getDefault(), true));
+            DirectoryServerStatus status = servers.getStatuses().get(0);
+            servers.probe(status);
+
+            LDAPConnection connection = mocked.constructed().get(0);
+            verify(connection).connect("host1", 2000);
+            verify(connection).startTLS();
+            verify(connection).disconnect();
+            assertTrue(status.isAvailable());
+            assertTrue(status.getAverageLatency() > 0);
+        }
+    }
+
+    @Test
+    public void testProbeTlsFailure() throws LDAPException, NoSuchAlgorithmException {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> doThrow(new LDAPException("error", LDAPException.CONNECT_ERROR, "error"))
+                    .when(connection).startTLS());
+             DirectoryServerSet servers = createServerSet(DirectoryServerSelectors.roundRobin())) {
+
+            servers.setTls(new DirectoryTls(DirectoryTls.Mode.STARTTLS, SSLContext.getDefault(), true));
+            DirectoryServerStatus status = servers.getStatuses().get(0);
+            servers.probe(status);
+
+            verify(mocked.constructed().get(0)).disconnect();
+            assertFalse(status.isAvailable());
+            assertEquals(0, status.getAverageLatency());
+        }
+    }
+
+    private static DirectoryServerSet createServerSet(DirectoryServerSelector selector) {
+
+        return new DirectoryServerSet(List.of(
+            new DirectoryServer("host1", 2000),
+            new DirectoryServer("host2", 2000),
+            new DirectoryServer("host3", 2000)), selector, 0);
+    }
+}
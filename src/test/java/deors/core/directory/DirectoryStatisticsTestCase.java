@@ -0,0 +1,124 @@
+package deors.core.directory;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+import com.novell.ldap.LDAPException;
+
+public class DirectoryStatisticsTestCase {
+
+    public DirectoryStatisticsTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testHistogramEmpty() {
+
+        DirectoryLatencyHistogram histogram = new DirectoryLatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0.0, histogram.getMean());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(99.0));
+    }
+
+    @Test
+    public void testHistogramBuckets() {
+
+        for (long value : new long[] {0, 1, 31, 32, 63, 64, 1000, 123456789L, 1L << 42}) {
+            int index = DirectoryLatencyHistogram.getBucketIndex(value);
+            long upperBound = DirectoryLatencyHistogram.getBucketUpperBound(index);
+            assertTrue(upperBound >= value);
+            assertTrue(upperBound - value <= value / 32);
+        }
+
+        assertEquals(DirectoryLatencyHistogram.getBucketIndex(Long.MAX_VALUE),
+            DirectoryLatencyHistogram.getBucketIndex(1L << 50));
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+
+        DirectoryLatencyHistogram histogram = new DirectoryLatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500.0, histogram.getMean());
+        assertEquals(1000000, histogram.getMax());
+
+        long median = histogram.getValueAtPercentile(50.0);
+        assertTrue(median >= 500000 && median <= 500000 * 33 / 32);
+        long p99 = histogram.getValueAtPercentile(99.0);
+        assertTrue(p99 >= 990000 && p99 <= 1000000);
+        assertEquals(1000000, histogram.getValueAtPercentile(100.0));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50.0));
+    }
+
+    @Test
+    public void testOperationCounts() {
+
+        DirectoryStatistics statistics = new DirectoryStatistics();
+
+        statistics.operationStarted(DirectoryOperation.GET_ATTRIBUTE_VALUE);
+        statistics.operationStarted(DirectoryOperation.GET_ATTRIBUTE_VALUE);
+        assertEquals(2, statistics.getInFlightCount(DirectoryOperation.GET_ATTRIBUTE_VALUE));
+
+        statistics.operationCompleted(DirectoryOperation.GET_ATTRIBUTE_VALUE, 1000, LDAPException.SUCCESS);
+        statistics.operationCompleted(DirectoryOperation.GET_ATTRIBUTE_VALUE, 3000, LDAPException.SERVER_DOWN);
+
+        assertEquals(0, statistics.getInFlightCount(DirectoryOperation.GET_ATTRIBUTE_VALUE));
+        assertEquals(2, statistics.getCount(DirectoryOperation.GET_ATTRIBUTE_VALUE));
+        assertEquals(1, statistics.getErrorCount(DirectoryOperation.GET_ATTRIBUTE_VALUE));
+        assertEquals(1, statistics.getErrorCount(DirectoryOperation.GET_ATTRIBUTE_VALUE, LDAPException.SERVER_DOWN));
+        assertEquals(0, statistics.getErrorCount(DirectoryOperation.GET_ATTRIBUTE_VALUE, LDAPException.BUSY));
+        assertEquals(2, statistics.getLatencyHistogram(DirectoryOperation.GET_ATTRIBUTE_VALUE).getCount());
+        assertEquals(0, statistics.getCount(DirectoryOperation.CONNECT));
+
+        assertEquals(Long.valueOf(2), statistics.getOperationCounts().get("GET_ATTRIBUTE_VALUE"));
+        assertEquals(Long.valueOf(1), statistics.getErrorCounts().get("GET_ATTRIBUTE_VALUE"));
+        assertEquals(Long.valueOf(1), statistics.getErrorCountsByResultCode().get("GET_ATTRIBUTE_VALUE/81"));
+        assertEquals(Double.valueOf(3.0), statistics.getMaxLatencies().get("GET_ATTRIBUTE_VALUE"));
+        assertEquals(Double.valueOf(2.0), statistics.getMeanLatencies().get("GET_ATTRIBUTE_VALUE"));
+
+        statistics.reset();
+        assertEquals(0, statistics.getCount(DirectoryOperation.GET_ATTRIBUTE_VALUE));
+        assertTrue(statistics.getErrorCountsByResultCode().isEmpty());
+    }
+
+    @Test
+    public void testRegisterMBean() throws Exception {
+
+        DirectoryStatistics statistics = new DirectoryStatistics();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        ObjectName name = statistics.registerMBean("test");
+        try {
+            assertEquals("deors.core.directory:type=DirectoryStatistics,name=\"test\"", name.toString());
+            assertTrue(server.isRegistered(name));
+            assertNotNull(server.getAttribute(name, "OperationCounts"));
+            assertThrows(DirectoryException.class, () -> new DirectoryStatistics().registerMBean("test"));
+        } finally {
+            statistics.unregisterMBean();
+        }
+
+        assertFalse(server.isRegistered(name));
+        assertDoesNotThrow(statistics::unregisterMBean);
+    }
+}
@@ -0,0 +1,357 @@
+package deors.core.directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedConstruction;
+
+import com.novell.ldap.LDAPAttribute;
+import com.novell.ldap.LDAPAttributeSet;
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPControl;
+import com.novell.ldap.LDAPEntry;
+import com.novell.ldap.LDAPException;
+import com.novell.ldap.LDAPSearchConstraints;
+import com.novell.ldap.LDAPSearchQueue;
+import com.novell.ldap.LDAPSearchResult;
+import com.novell.ldap.LDAPSearchResults;
+import com.novell.ldap.controls.LDAPEntryChangeControl;
+
+public class DirectorySubscriptionTestCase {
+
+    public DirectorySubscriptionTestCase() {
+
+        super();
+    }
+
+    private static DirectorySubscription createSubscription(String searchBase, int searchScope) {
+
+        return new DirectorySubscription(() -> null, (connection, error) -> { }, searchBase, searchScope,
+            "(objectClass=*)", null, DirectorySubscription.Mode.POLLING, event -> { }, () -> { });
+    }
+
+    private static LDAPEntry createRecord(String changeNumber, String targetDN, String changeType) {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("changeNumber", changeNumber));
+        attributes.add(new LDAPAttribute("targetDN", targetDN));
+        attributes.add(new LDAPAttribute("changeType", changeType));
+        return new LDAPEntry("changeNumber=" + changeNumber + ",cn=changelog", attributes);
+    }
+
+    private static byte[] encodeEntryChange(int changeType, String previousDN, int changeNumber) {
+
+        byte[] dn = previousDN.getBytes(StandardCharsets.UTF_8);
+        byte[] value = new byte[2 + 3 + 2 + dn.length + 3];
+        int i = 0;
+        value[i++] = 0x30;
+        value[i++] = (byte) (value.length - 2);
+        value[i++] = 0x0a;
+        value[i++] = 1;
+        value[i++] = (byte) changeType;
+        value[i++] = 0x04;
+        value[i++] = (byte) dn.length;
+        System.arraycopy(dn, 0, value, i, dn.length);
+        i += dn.length;
+        value[i++] = 0x02;
+        value[i++] = 1;
+        value[i] = (byte) changeNumber;
+        return value;
+    }
+
+    @Test
+    public void testModeForName() {
+
+        assertEquals(DirectorySubscription.Mode.AUTO, DirectorySubscription.modeForName("auto"));
+        assertEquals(DirectorySubscription.Mode.CHANGELOG, DirectorySubscription.modeForName("ChangeLog"));
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> DirectorySubscription.modeForName("push"));
+        assertEquals("error while subscribing to changes: unknown subscription mode push", ex.getMessage());
+    }
+
+    @Test
+    public void testPersistentSearchEvents() throws Exception {
+
+        LDAPEntry entry = new LDAPEntry("cn=new,o=org", new LDAPAttributeSet());
+
+        DirectoryChangeEvent plain = DirectorySubscription.toEvent(new LDAPSearchResult(entry, null));
+        assertEquals(DirectoryChange.Type.MODIFY, plain.getType());
+        assertEquals("cn=new,o=org", plain.getObjectDN());
+        assertEquals(-1, plain.getChangeNumber());
+
+        LDAPControl control = new LDAPEntryChangeControl("2.16.840.1.113730.3.4.7", false,
+            encodeEntryChange(8, "cn=old,o=org", 7));
+        DirectoryChangeEvent renamed = DirectorySubscription.toEvent(
+            new LDAPSearchResult(entry, new LDAPControl[] {control}));
+
+        assertEquals(DirectoryChange.Type.RENAME, renamed.getType());
+        assertEquals("cn=new,o=org", renamed.getObjectDN());
+        assertEquals("cn=old,o=org", renamed.getPreviousDN());
+        assertEquals(entry, renamed.getEntry());
+        assertEquals(7, renamed.getChangeNumber());
+        assertEquals("RENAME cn=old,o=org -> cn=new,o=org", renamed.toString());
+    }
+
+    @Test
+    public void testChangelogEvents() {
+
+        DirectoryChangeEvent deleted = DirectorySubscription.toEvent(createRecord("5", "cn=a,o=org", "delete"), 5);
+        assertEquals(DirectoryChange.Type.DELETE, deleted.getType());
+        assertEquals("cn=a,o=org", deleted.getObjectDN());
+        assertNull(deleted.getEntry());
+        assertEquals(5, deleted.getChangeNumber());
+
+        assertEquals(DirectoryChange.Type.ADD,
+            DirectorySubscription.toEvent(createRecord("6", "cn=a,o=org", "add"), 6).getType());
+        assertEquals(DirectoryChange.Type.MODIFY,
+            DirectorySubscription.toEvent(createRecord("7", "cn=a,o=org", "modify"), 7).getType());
+
+        LDAPEntry record = createRecord("8", "cn=a,ou=old,o=org", "modrdn");
+        record.getAttributeSet().add(new LDAPAttribute("newRDN", "cn=b"));
+        record.getAttributeSet().add(new LDAPAttribute("newSuperior", "ou=new,o=org"));
+        DirectoryChangeEvent renamed = DirectorySubscription.toEvent(record, 8);
+
+        assertEquals(DirectoryChange.Type.RENAME, renamed.getType());
+        assertEquals("cn=b,ou=new,o=org", renamed.getObjectDN());
+        assertEquals("cn=a,ou=old,o=org", renamed.getPreviousDN());
+
+        assertNull(DirectorySubscription.toEvent(createRecord("9", "cn=a,o=org", "modrdn"), 9));
+        assertNull(DirectorySubscription.toEvent(new LDAPEntry("changeNumber=10,cn=changelog"), 10));
+    }
+
+    @Test
+    public void testIsInScope() {
+
+        DirectorySubscription subtree = createSubscription("ou=People, o=Org", LDAPConnection.SCOPE_SUB);
+        assertTrue(subtree.isInScope("ou=people,o=org"));
+        assertTrue(subtree.isInScope("uid=a,ou=sub,ou=people,o=org"));
+        assertFalse(subtree.isInScope("cn=admins,ou=groups,o=org"));
+        assertTrue(subtree.isInScope("not a dn"));
+
+        DirectorySubscription children = createSubscription("ou=people,o=org", LDAPConnection.SCOPE_ONE);
+        assertTrue(children.isInScope("uid=a,ou=people,o=org"));
+        assertFalse(children.isInScope("uid=a,ou=sub,ou=people,o=org"));
+        assertFalse(children.isInScope("ou=people,o=org"));
+
+        DirectorySubscription base = createSubscription("uid=a,ou=people,o=org", LDAPConnection.SCOPE_BASE);
+        assertTrue(base.isInScope("UID=a,ou=people,o=org"));
+        assertFalse(base.isInScope("uid=b,ou=people,o=org"));
+
+        DirectorySubscription root = createSubscription("", LDAPConnection.SCOPE_SUB);
+        assertTrue(root.isInScope("uid=a,ou=people,o=org"));
+    }
+
+    @Test
+    public void testPollingFilter() {
+
+        assertEquals("(modifyTimestamp>=20261017120000Z)",
+            DirectorySubscription.toPollingFilter(null, "20261017120000Z"));
+        assertEquals("(&(uid=*)(modifyTimestamp>=20261017120000Z))",
+            DirectorySubscription.toPollingFilter("uid=*", "20261017120000Z"));
+        assertEquals("(&(|(uid=a)(uid=b))(modifyTimestamp>=20261017120000Z))",
+            DirectorySubscription.toPollingFilter(" (|(uid=a)(uid=b)) ", "20261017120000Z"));
+    }
+
+    @Test
+    public void testGetTimestamp() {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("modifyTimestamp", "20261017120000.123Z"));
+        attributes.add(new LDAPAttribute("createTimestamp", "2026"));
+        LDAPEntry entry = new LDAPEntry("cn=a,o=org", attributes);
+
+        assertEquals("20261017120000Z", DirectorySubscription.getTimestamp(entry, "modifyTimestamp"));
+        assertNull(DirectorySubscription.getTimestamp(entry, "createTimestamp"));
+        assertNull(DirectorySubscription.getTimestamp(entry, "missing"));
+    }
+
+    @Test
+    public void testCacheInvalidateEvent() {
+
+        DirectoryAttributeCache cache = new DirectoryAttributeCache(10, 60000, 60000);
+        cache.store("cn=old,o=org", "mail", new LDAPAttribute("mail", "old@org"));
+        cache.store("cn=new,o=org", "mail", null);
+        cache.store("cn=other,o=org", "mail", new LDAPAttribute("mail", "other@org"));
+
+        cache.invalidate(new DirectoryChangeEvent(
+            DirectoryChange.Type.RENAME, "cn=new,o=org", "cn=old,o=org", null, -1));
+
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testSubscribeIAE() throws DirectoryException {
+
+        DirectoryManager dm = new DirectoryManager();
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> dm.subscribe(null, LDAPConnection.SCOPE_SUB, null, DirectorySubscription.Mode.AUTO, null));
+        assertEquals("error while subscribing to changes: invalid search base or mode", ex.getMessage());
+
+        assertThrows(DirectoryException.class,
+            () -> dm.subscribe("o=org", LDAPConnection.SCOPE_SUB, null, event -> { }));
+    }
+
+    @Test
+    public void testSubscribePolling() throws Exception {
+
+        LDAPAttributeSet attributes = new LDAPAttributeSet();
+        attributes.add(new LDAPAttribute("modifyTimestamp", "20261017120000Z"));
+        attributes.add(new LDAPAttribute("createTimestamp", "20261017110000Z"));
+        LDAPEntry entry = new LDAPEntry("uid=a,ou=people,o=org", attributes);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> {
+                    LDAPSearchResults results = mock(LDAPSearchResults.class);
+                    when(results.hasMore()).thenReturn(true, false);
+                    when(results.next()).thenReturn(entry);
+                    when(connection.getSearchConstraints()).thenReturn(new LDAPSearchConstraints());
+                    when(connection.search(eq("ou=people,o=org"), eq(LDAPConnection.SCOPE_SUB), anyString(),
+                        any(String[].class), eq(false), any(LDAPSearchConstraints.class))).thenReturn(results);
+                })) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            DirectoryAttributeCache cache = new DirectoryAttributeCache(10, 60000, 60000);
+            cache.store("uid=a,ou=people,o=org", "mail", new LDAPAttribute("mail", "a@org"));
+            dm.setAttributeCache(cache);
+
+            List<DirectoryChangeEvent> events = new CopyOnWriteArrayList<>();
+            CountDownLatch delivered = new CountDownLatch(1);
+
+            try (DirectorySubscription subscription = dm.subscribe("ou=people,o=org", LDAPConnection.SCOPE_SUB,
+                    "(uid=*)", DirectorySubscription.Mode.POLLING, event -> {
+                        events.add(event);
+                        delivered.countDown();
+                    })) {
+
+                assertTrue(delivered.await(5, TimeUnit.SECONDS));
+                assertEquals(DirectorySubscription.Mode.POLLING, subscription.getActiveMode());
+                assertEquals(1, subscription.getEventCount());
+            }
+
+            assertEquals(DirectoryChange.Type.MODIFY, events.get(0).getType());
+            assertEquals("uid=a,ou=people,o=org", events.get(0).getObjectDN());
+            assertEquals(0, cache.size());
+        }
+    }
+
+    @Test
+    public void testSubscribePersistent() throws Exception {
+
+        LDAPEntry entry = new LDAPEntry("uid=a,ou=people,o=org", new LDAPAttributeSet());
+        LDAPSearchQueue queue = mock(LDAPSearchQueue.class);
+        CountDownLatch abandoned = new CountDownLatch(1);
+        when(queue.getResponse()).thenReturn(new LDAPSearchResult(entry, null)).thenAnswer(invocation -> {
+            abandoned.await(5, TimeUnit.SECONDS);
+            return null;
+        });
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> {
+                    when(connection.isConnected()).thenReturn(true);
+                    doAnswer(invocation -> {
+                        abandoned.countDown();
+                        return null;
+                    }).when(connection).abandon(queue);
+                    when(connection.getSearchConstraints()).thenReturn(new LDAPSearchConstraints());
+                    when(connection.search(eq("ou=people,o=org"), eq(LDAPConnection.SCOPE_SUB), eq("(uid=*)"),
+                        isNull(), eq(false), nullable(LDAPSearchQueue.class), any(LDAPSearchConstraints.class)))
+                        .thenReturn(queue);
+                })) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+            CountDownLatch delivered = new CountDownLatch(1);
+
+            DirectorySubscription subscription = dm.subscribe("ou=people,o=org", LDAPConnection.SCOPE_SUB,
+                "(uid=*)", DirectorySubscription.Mode.PERSISTENT, event -> delivered.countDown());
+
+            assertTrue(delivered.await(5, TimeUnit.SECONDS));
+            assertTrue(subscription.isListening());
+
+            subscription.close();
+
+            assertTrue(subscription.isClosed());
+            verify(mocked.constructed().get(0), timeout(5000).atLeastOnce()).abandon(queue);
+            assertEquals(0, subscription.getRestartCount());
+        }
+    }
+
+    @Test
+    public void testSubscribeRetriesAfterError() throws Exception {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> {
+                    when(connection.getSearchConstraints()).thenReturn(new LDAPSearchConstraints());
+                    when(connection.search(anyString(), anyInt(), anyString(), any(String[].class), eq(false),
+                        any(LDAPSearchConstraints.class))).thenThrow(
+                            new LDAPException("error", LDAPException.BUSY, "error"));
+                })) {
+
+            DirectoryManager dm = new DirectoryManager("localhost", 2000);
+
+            try (DirectorySubscription subscription = dm.subscribe("o=org", LDAPConnection.SCOPE_SUB, null,
+                    DirectorySubscription.Mode.POLLING, null)) {
+
+                verify(mocked.constructed().get(0), timeout(5000)).search(anyString(), anyInt(), anyString(),
+                    any(String[].class), eq(false), any(LDAPSearchConstraints.class));
+
+                long started = System.nanoTime();
+                while (subscription.getLastError() == null
+                    && System.nanoTime() - started < TimeUnit.SECONDS.toNanos(5)) {
+                    Thread.sleep(10);
+                }
+
+                assertFalse(subscription.isListening());
+                assertEquals("error while listening to changes: error", subscription.getLastError().getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testSubscribeRetriesAfterRuntimeError() throws Exception {
+
+        DirectorySubscription subscription = new DirectorySubscription(() -> {
+            throw new IllegalStateException("error");
+        }, (connection, error) -> { }, "o=org", LDAPConnection.SCOPE_SUB, "(objectClass=*)", null,
+            DirectorySubscription.Mode.POLLING, event -> { }, () -> { });
+        subscription.start();
+
+        try {
+            long started = System.nanoTime();
+            while (subscription.getRestartCount() == 0
+                && System.nanoTime() - started < TimeUnit.SECONDS.toNanos(5)) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(1, subscription.getRestartCount());
+            assertFalse(subscription.isClosed());
+            assertEquals("error while listening to changes: java.lang.IllegalStateException: error",
+                subscription.getLastError().getMessage());
+        } finally {
+            subscription.close();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package deors.core.directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.verify;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedConstruction;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPSearchConstraints;
+
+public class DirectoryTimeoutsTestCase {
+
+    public DirectoryTimeoutsTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testSearchConstraints() {
+
+        DirectoryTimeouts timeouts = new DirectoryTimeouts(1000, 2000, 3, 50);
+        LDAPSearchConstraints constraints = timeouts.toSearchConstraints();
+
+        assertEquals(2000, constraints.getTimeLimit());
+        assertEquals(3, constraints.getServerTimeLimit());
+        assertEquals(50, constraints.getMaxResults());
+    }
+
+    @Test
+    public void testDefaults() {
+
+        DirectoryTimeouts timeouts = new DirectoryTimeouts();
+
+        assertEquals(5000, timeouts.getConnectTimeout());
+        assertEquals(30000, timeouts.getResponseTimeout());
+        assertEquals(0, timeouts.getServerTimeLimit());
+        assertEquals(1000, timeouts.getSizeLimit());
+    }
+
+    @Test
+    public void testConstructorIAE() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> new DirectoryTimeouts(-1, 0, 0, 0));
+        assertEquals("error while configuring connection: invalid time or size limits", ex.getMessage());
+    }
+
+    @Test
+    public void testNewConnectionSetsConstraints() {
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class)) {
+
+            LDAPConnection connection = new DirectoryTimeouts(1000, 2000, 3, 50).newConnection();
+
+            assertEquals(1, mocked.constructed().size());
+            verify(connection).setConstraints(any(LDAPSearchConstraints.class));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package deors.core.directory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.NoSuchAlgorithmException;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedConstruction;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPException;
+import com.novell.ldap.LDAPSocketFactory;
+import com.novell.ldap.LDAPTLSSocketFactory;
+
+public class DirectoryTlsTestCase {
+
+    public DirectoryTlsTestCase() {
+
+        super();
+    }
+
+    @Test
+    public void testDefaults() {
+
+        DirectoryTls tls = DirectoryTls.getDefault();
+
+        assertSame(tls, DirectoryTls.getDefault());
+        assertEquals(DirectoryTls.Mode.NONE, tls.getMode());
+        assertTrue(tls.isVerifyHostname());
+        assertEquals(0, tls.getHandshakeCount());
+    }
+
+    @Test
+    public void testModeForName() {
+
+        assertEquals(DirectoryTls.Mode.LDAPS, DirectoryTls.modeForName("ldaps"));
+        assertEquals(DirectoryTls.Mode.STARTTLS, DirectoryTls.modeForName("StartTLS"));
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> DirectoryTls.modeForName("ssl"));
+        assertEquals("error while configuring TLS: unknown mode ssl", ex.getMessage());
+    }
+
+    @Test
+    public void testConstructorIAE() {
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+            () -> new DirectoryTls(DirectoryTls.Mode.LDAPS, null, true));
+        assertEquals("error while configuring TLS: invalid mode or SSL context", ex.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> new DirectoryTls(null, null, true));
+    }
+
+    @Test
+    public void testSslContextFromConfiguration() throws DirectoryException {
+
+        DirectoryTls tls = new DirectoryTls();
+        SSLContext context = tls.getSslContext();
+
+        assertSame(context, tls.getSslContext());
+        SSLSessionContext sessions = context.getClientSessionContext();
+        assertEquals(1000, sessions.getSessionCacheSize());
+        assertEquals(86400, sessions.getSessionTimeout());
+    }
+
+    @Test
+    public void testSocketFactoryNone() {
+
+        LDAPSocketFactory plainFactory = Socket::new;
+        DirectoryTls tls = new DirectoryTls(DirectoryTls.Mode.NONE, null, true);
+
+        assertSame(plainFactory, tls.newSocketFactory(plainFactory, 1000));
+    }
+
+    @Test
+    public void testHandshakeFailure() throws IOException, NoSuchAlgorithmException {
+
+        DirectoryTls tls = new DirectoryTls(DirectoryTls.Mode.LDAPS, SSLContext.getDefault(), true);
+        LDAPSocketFactory socketFactory = tls.newSocketFactory(Socket::new, 1000);
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Thread closer = Thread.ofVirtual().start(() -> {
+                try (Socket accepted = server.accept()) {
+                    accepted.getOutputStream().write(new byte[] {0, 0, 0, 0, 0});
+                } catch (IOException ioe) {
+                    // the test fails on the client side
+                }
+            });
+
+            assertThrows(IOException.class,
+                () -> socketFactory.createSocket(InetAddress.getLoopbackAddress().getHostAddress(), server.getLocalPort()));
+            closer.interrupt();
+        }
+
+        assertEquals(1, tls.getFailedHandshakeCount());
+        assertEquals(0, tls.getHandshakeCount());
+    }
+
+    @Test
+    public void testSecureStartTls() throws LDAPException, NoSuchAlgorithmException {
+
+        LDAPConnection connection = mock(LDAPConnection.class);
+
+        new DirectoryTls(DirectoryTls.Mode.LDAPS, SSLContext.getDefault(), true).secure(connection);
+        verify(connection, never()).startTLS();
+
+        new DirectoryTls(DirectoryTls.Mode.STARTTLS, SSLContext.getDefault(), true).secure(connection);
+        verify(connection).startTLS();
+    }
+
+    @Test
+    public void testNewConnectionUsesTlsSocketFactory() throws NoSuchAlgorithmException {
+
+        DirectoryTls tls = new DirectoryTls(DirectoryTls.Mode.LDAPS, SSLContext.getDefault(), true);
+
+        try (MockedConstruction<LDAPConnection> mocked = mockConstruction(LDAPConnection.class,
+                (connection, context) -> {
+                    assertEquals(1, context.arguments().size());
+                    assertInstanceOf(LDAPTLSSocketFactory.class, context.arguments().get(0));
+                })) {
+
+            assertNotNull(new DirectoryTimeouts(1000, 2000, 0, 0).newConnection(tls));
+            assertEquals(1, mocked.constructed().size());
+        }
+    }
+}